@@ -5,6 +5,7 @@ import android.app.Instrumentation
 import android.content.ClipboardManager
 import android.content.Context
 import android.view.View
+import androidx.recyclerview.widget.RecyclerView
 import androidx.test.espresso.Espresso.onView
 import androidx.test.espresso.Espresso.pressBack
 import androidx.test.espresso.UiController
@@ -28,6 +29,7 @@ import org.hamcrest.Matcher
 import org.hamcrest.Matchers.allOf
 import org.hamcrest.Matchers.not
 import org.junit.After
+import org.junit.Assert.assertEquals
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
@@ -37,6 +39,7 @@ import org.session.libsession.utilities.TextSecurePreferences
 import org.session.libsignal.utilities.guava.Optional
 import org.thoughtcrime.securesms.conversation.v2.ConversationActivityV2
 import org.thoughtcrime.securesms.conversation.v2.input_bar.InputBar
+import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 import org.thoughtcrime.securesms.home.HomeActivity
 import org.thoughtcrime.securesms.mms.GlideApp
 
@@ -162,6 +165,31 @@ class HomeActivityTests {
         onView(withText(dialogPromptText)).check(matches(isDisplayed()))
     }
 
+    @Test
+    fun testChat_bindingMessagesDoesNotQueryDatabase() {
+        setupLoggedInState()
+        goToMyChat()
+        repeat(5) { sendMessage("message $it") }
+
+        val activity = activityMonitor.waitForActivity() as ConversationActivityV2
+        val recyclerView = activity.findViewById<RecyclerView>(R.id.conversationRecyclerView)
+        val adapter = recyclerView.adapter!!
+        val bindAll = {
+            for (position in 0 until adapter.itemCount) {
+                val holder = adapter.createViewHolder(recyclerView, adapter.getItemViewType(position))
+                adapter.bindViewHolder(holder, position)
+            }
+        }
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync {
+            // The cursor comes with its records' relations, recipients and bind context preloaded,
+            // so not even the first pass over the rows may reach the database
+            val accessCount = SQLCipherOpenHelper.getMainThreadAccessCount()
+            bindAll()
+            assertEquals(accessCount, SQLCipherOpenHelper.getMainThreadAccessCount())
+        }
+    }
+
     /**
      * Perform action of waiting for a specific time.
      */
@@ -0,0 +1,184 @@
+package org.thoughtcrime.securesms.database
+
+import android.content.ContentValues
+import android.database.Cursor
+import android.os.Debug
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.android.mms.pdu_alt.PduHeaders
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.session.libsignal.utilities.Log
+import org.thoughtcrime.securesms.database.model.MessageRecord
+import org.thoughtcrime.securesms.database.model.MmsMessageRecord
+import org.thoughtcrime.securesms.dependencies.DatabaseComponent
+
+/**
+ * Loads a 50k message thread the way `ConversationLoader` does, with an attachment on every mms and
+ * reactions on every fifth message, and reads pages of records from it the way the conversation
+ * adapter binds them. It compares the query that aggregates attachments and reactions into JSON
+ * columns with [MmsSmsDatabase.getConversation], which loads them with batch queries, and logs the
+ * time and bytes allocated by each.
+ */
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class ConversationPageBenchmark {
+
+    private class Run(val name: String, val nanos: Long, val bytes: Long, val records: List<MessageRecord>)
+
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext.applicationContext
+    private val databaseComponent = DatabaseComponent.get(context)
+    private val db get() = databaseComponent.openHelper().writableDatabase
+
+    @Before
+    fun setUp() {
+        deleteFixture()
+        insertFixture()
+    }
+
+    @After
+    fun tearDown() {
+        deleteFixture()
+    }
+
+    @Test
+    fun loadPages() {
+        // Warm both paths up so the first measured load doesn't pay for compiling statements
+        loadAggregated(MESSAGE_COUNT - PAGE_SIZE)
+        loadBatched(MESSAGE_COUNT - PAGE_SIZE)
+
+        // The latest messages are bound first, the others as the conversation is scrolled up
+        for (position in listOf(MESSAGE_COUNT - PAGE_SIZE, MESSAGE_COUNT / 2, 0)) {
+            val aggregated = measure("aggregated") { loadAggregated(position) }
+            val batched = measure("batched") { loadBatched(position) }
+
+            for (run in listOf(aggregated, batched)) {
+                Log.i(TAG, "Page at $position, ${run.name}: ${run.records.size} messages in ${run.nanos / 1000} us, ${run.bytes / 1024} KiB allocated")
+            }
+
+            assertEquals(aggregated.records.map { it.id }, batched.records.map { it.id })
+            assertEquals(aggregated.records.map { it.reactions.size }, batched.records.map { it.reactions.size })
+            assertEquals(
+                aggregated.records.map { (it as? MmsMessageRecord)?.slideDeck?.slides?.size },
+                batched.records.map { (it as? MmsMessageRecord)?.slideDeck?.slides?.size }
+            )
+        }
+    }
+
+    private fun loadAggregated(position: Int): List<MessageRecord> {
+        val selection = "${MmsSmsColumns.THREAD_ID} = $THREAD_ID"
+        val query = MmsSmsDatabase.buildConversationQuery(selection, "${MmsSmsColumns.NORMALIZED_DATE_SENT} ASC", null)
+        return db.rawQuery(query, null).use { it.readPage(position) }
+    }
+
+    private fun loadBatched(position: Int): List<MessageRecord> =
+        databaseComponent.mmsSmsDatabase().getConversation(THREAD_ID, false).use { it.readPage(position) }
+
+    // Counts the rows like the loader does, then reads a page of records like binding them does
+    private fun Cursor.readPage(position: Int): List<MessageRecord> {
+        assertEquals(MESSAGE_COUNT, count)
+        val reader = databaseComponent.mmsSmsDatabase().readerFor(this)
+        return (position until position + PAGE_SIZE).map { moveToPosition(it); reader.current }
+    }
+
+    private fun measure(name: String, load: () -> List<MessageRecord>): Run {
+        val bytesBefore = allocatedBytes()
+        val start = System.nanoTime()
+        val records = load()
+        val nanos = System.nanoTime() - start
+        return Run(name, nanos, allocatedBytes() - bytesBefore, records)
+    }
+
+    private fun allocatedBytes(): Long = Debug.getRuntimeStat("art.gc.bytes-allocated")?.toLongOrNull() ?: 0
+
+    private fun insertFixture() {
+        db.beginTransaction()
+        try {
+            for (i in 1..MESSAGE_COUNT) {
+                val isMms = i % 4 == 0
+                val messageId = if (isMms) insertMms(i) else insertSms(i)
+
+                if (isMms) insertAttachment(messageId, i)
+                if (i % 5 == 0) {
+                    insertReaction(messageId, isMms, "👍", i)
+                    insertReaction(messageId, isMms, "❤️", i)
+                }
+            }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+    }
+
+    private fun insertSms(i: Int): Long = db.insert(SmsDatabase.TABLE_NAME, null, ContentValues().apply {
+        put(MmsSmsColumns.THREAD_ID, THREAD_ID)
+        put(MmsSmsColumns.ADDRESS, AUTHOR)
+        put(MmsSmsColumns.BODY, "Message $i")
+        put(MmsSmsColumns.READ, 1)
+        put(SmsDatabase.DATE_SENT, i.toLong())
+        put(SmsDatabase.DATE_RECEIVED, i.toLong())
+        put(SmsDatabase.TYPE, MmsSmsColumns.Types.BASE_INBOX_TYPE)
+    })
+
+    private fun insertMms(i: Int): Long = db.insert(MmsDatabase.TABLE_NAME, null, ContentValues().apply {
+        put(MmsSmsColumns.THREAD_ID, THREAD_ID)
+        put(MmsSmsColumns.ADDRESS, AUTHOR)
+        put(MmsSmsColumns.BODY, "Message $i")
+        put(MmsSmsColumns.READ, 1)
+        put(MmsDatabase.DATE_SENT, i.toLong())
+        put(MmsDatabase.DATE_RECEIVED, i.toLong())
+        put(MmsDatabase.MESSAGE_BOX, MmsSmsColumns.Types.BASE_INBOX_TYPE)
+        put(MmsDatabase.MESSAGE_TYPE, PduHeaders.MESSAGE_TYPE_RETRIEVE_CONF)
+        put(MmsDatabase.PART_COUNT, 1)
+    })
+
+    private fun insertAttachment(mmsId: Long, i: Int) {
+        db.insert(AttachmentDatabase.TABLE_NAME, null, ContentValues().apply {
+            put(AttachmentDatabase.MMS_ID, mmsId)
+            put(AttachmentDatabase.UNIQUE_ID, i.toLong())
+            put(AttachmentDatabase.CONTENT_TYPE, "image/jpeg")
+            put(AttachmentDatabase.TRANSFER_STATE, 0)
+            put(AttachmentDatabase.SIZE, 100_000L)
+            put(AttachmentDatabase.WIDTH, 1024)
+            put(AttachmentDatabase.HEIGHT, 768)
+        })
+    }
+
+    private fun insertReaction(messageId: Long, isMms: Boolean, emoji: String, i: Int) {
+        db.insert(ReactionDatabase.TABLE_NAME, null, ContentValues().apply {
+            put(ReactionDatabase.MESSAGE_ID, messageId)
+            put(ReactionDatabase.IS_MMS, if (isMms) 1 else 0)
+            put(ReactionDatabase.AUTHOR_ID, AUTHOR)
+            put(ReactionDatabase.EMOJI, emoji)
+            put(ReactionDatabase.SERVER_ID, "")
+            put(ReactionDatabase.COUNT, 1)
+            put(ReactionDatabase.SORT_ID, i)
+            put(ReactionDatabase.DATE_SENT, i.toLong())
+            put(ReactionDatabase.DATE_RECEIVED, i.toLong())
+        })
+    }
+
+    private fun deleteFixture() {
+        val args = arrayOf(THREAD_ID.toString())
+        db.delete(
+            AttachmentDatabase.TABLE_NAME,
+            "${AttachmentDatabase.MMS_ID} IN (SELECT ${MmsSmsColumns.ID} FROM ${MmsDatabase.TABLE_NAME} WHERE ${MmsSmsColumns.THREAD_ID} = ?)",
+            args
+        )
+        // Reactions are deleted along with their messages by triggers
+        db.delete(SmsDatabase.TABLE_NAME, "${MmsSmsColumns.THREAD_ID} = ?", args)
+        db.delete(MmsDatabase.TABLE_NAME, "${MmsSmsColumns.THREAD_ID} = ?", args)
+    }
+
+    companion object {
+        private const val TAG = "ConversationPageBenchmark"
+        private const val THREAD_ID = 987_654_321L
+        private const val MESSAGE_COUNT = 50_000
+        private const val PAGE_SIZE = 25
+        private const val AUTHOR = "050123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef"
+    }
+}
@@ -0,0 +1,127 @@
+package org.thoughtcrime.securesms.database
+
+import android.content.ContentValues
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.android.mms.pdu_alt.PduHeaders
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.session.libsession.utilities.Address
+import org.thoughtcrime.securesms.dependencies.DatabaseComponent
+
+/**
+ * Runs the queries [MmsSmsDatabase] builds over both message tables against the app's schema, with
+ * a thread whose messages alternate between sms and mms, so a clause naming a column one of the
+ * tables doesn't have fails here rather than only on a device.
+ */
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class MmsSmsQueryTests {
+
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext.applicationContext
+    private val databaseComponent = DatabaseComponent.get(context)
+    private val db get() = databaseComponent.openHelper().writableDatabase
+    private val mmsSmsDatabase get() = databaseComponent.mmsSmsDatabase()
+
+    private var threadId = -1L
+
+    @Before
+    fun setUp() {
+        threadId = db.insert(ThreadDatabase.TABLE_NAME, null, ContentValues().apply {
+            put(ThreadDatabase.ADDRESS, AUTHOR)
+        })
+        // Sent at 1..5, odd ones are sms and even ones mms
+        for (i in 1..MESSAGE_COUNT) {
+            if (i % 2 == 0) insertMms(i) else insertSms(i)
+        }
+    }
+
+    @After
+    fun tearDown() {
+        val args = arrayOf(threadId.toString())
+        db.delete(SmsDatabase.TABLE_NAME, "${MmsSmsColumns.THREAD_ID} = ?", args)
+        db.delete(MmsDatabase.TABLE_NAME, "${MmsSmsColumns.THREAD_ID} = ?", args)
+        db.delete(ThreadDatabase.TABLE_NAME, "${ThreadDatabase.ID} = ?", args)
+    }
+
+    @Test
+    fun messagePositionCountsBothTables() {
+        val author = Address.fromSerialized(AUTHOR)
+
+        assertEquals(1, mmsSmsDatabase.getMessagePositionInConversation(threadId, sentAt(4), author, true))
+        assertEquals(3, mmsSmsDatabase.getMessagePositionInConversation(threadId, sentAt(4), author, false))
+        assertEquals(2, mmsSmsDatabase.getMessagePositionInConversation(threadId, sentAt(3), author, true))
+        assertEquals(-1, mmsSmsDatabase.getMessagePositionInConversation(threadId, sentAt(4), Address.fromSerialized(OTHER_AUTHOR), true))
+        assertEquals(-1, mmsSmsDatabase.getMessagePositionInConversation(threadId, sentAt(MESSAGE_COUNT + 1), author, true))
+    }
+
+    @Test
+    fun pageBoundariesSeeBothTables() {
+        assertTrue(mmsSmsDatabase.hasNextPage(threadId, sentAt(2)))
+        assertFalse(mmsSmsDatabase.hasNextPage(threadId, sentAt(1)))
+        assertTrue(mmsSmsDatabase.hasPreviousPage(threadId, sentAt(4)))
+        assertFalse(mmsSmsDatabase.hasPreviousPage(threadId, sentAt(MESSAGE_COUNT)))
+    }
+
+    @Test
+    fun previousPageMergesBothTables() {
+        assertEquals(sentAt(4), mmsSmsDatabase.getPreviousPage(threadId, sentAt(2), 2))
+        assertEquals(sentAt(MESSAGE_COUNT), mmsSmsDatabase.getPreviousPage(threadId, sentAt(1), MESSAGE_COUNT))
+        assertEquals(-1L, mmsSmsDatabase.getPreviousPage(threadId, sentAt(MESSAGE_COUNT), 2))
+    }
+
+    @Test
+    fun messageLookupFindsBothTables() {
+        val sms = mmsSmsDatabase.getMessageLookupFor(sentAt(3), AUTHOR)!!
+        val mms = mmsSmsDatabase.getMessageLookupFor(sentAt(4), AUTHOR)!!
+
+        assertFalse(sms.isMms)
+        assertTrue(mms.isMms)
+        assertEquals(threadId, mms.threadId)
+        assertNull(mmsSmsDatabase.getMessageLookupFor(sentAt(4), OTHER_AUTHOR))
+        assertEquals(mms.id, mmsSmsDatabase.getMessageLookupForTimestamp(sentAt(4))!!.id)
+        assertNull(mmsSmsDatabase.getMessageLookupForTimestamp(sentAt(MESSAGE_COUNT + 1)))
+    }
+
+    private fun sentAt(i: Int): Long = FIRST_SENT_TIMESTAMP + i
+
+    private fun insertSms(i: Int) {
+        db.insert(SmsDatabase.TABLE_NAME, null, ContentValues().apply {
+            put(MmsSmsColumns.THREAD_ID, threadId)
+            put(MmsSmsColumns.ADDRESS, AUTHOR)
+            put(MmsSmsColumns.BODY, "Message $i")
+            put(MmsSmsColumns.READ, 1)
+            put(SmsDatabase.DATE_SENT, sentAt(i))
+            put(SmsDatabase.DATE_RECEIVED, sentAt(i))
+            put(SmsDatabase.TYPE, MmsSmsColumns.Types.BASE_INBOX_TYPE)
+        })
+    }
+
+    private fun insertMms(i: Int) {
+        db.insert(MmsDatabase.TABLE_NAME, null, ContentValues().apply {
+            put(MmsSmsColumns.THREAD_ID, threadId)
+            put(MmsSmsColumns.ADDRESS, AUTHOR)
+            put(MmsSmsColumns.BODY, "Message $i")
+            put(MmsSmsColumns.READ, 1)
+            put(MmsDatabase.DATE_SENT, sentAt(i))
+            put(MmsDatabase.DATE_RECEIVED, sentAt(i))
+            put(MmsDatabase.MESSAGE_BOX, MmsSmsColumns.Types.BASE_INBOX_TYPE)
+            put(MmsDatabase.MESSAGE_TYPE, PduHeaders.MESSAGE_TYPE_RETRIEVE_CONF)
+        })
+    }
+
+    companion object {
+        private const val MESSAGE_COUNT = 5
+        // Far from any real sent timestamp, as some lookups aren't scoped to the thread
+        private const val FIRST_SENT_TIMESTAMP = 42_000_000L
+        private const val AUTHOR = "050123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef"
+        private const val OTHER_AUTHOR = "05fedcba9876543210fedcba9876543210fedcba9876543210fedcba9876543210"
+    }
+}
@@ -0,0 +1,154 @@
+package org.thoughtcrime.securesms.database
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.thoughtcrime.securesms.dependencies.DatabaseComponent
+
+/**
+ * Runs `EXPLAIN QUERY PLAN` over the hot conversation, thread and search queries and checks that
+ * none of them falls back to a full scan of a message or thread table or sorts through a temp
+ * B-tree. The only sorts allowed are those of queries ranking what a filter or full text match
+ * returned, which no index can return in order.
+ */
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class QueryPlanTests {
+
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext.applicationContext
+    private val databaseComponent = DatabaseComponent.get(context)
+    private val db get() = databaseComponent.openHelper().readableDatabase
+
+    private val baseTables = setOf(
+        SmsDatabase.TABLE_NAME,
+        MmsDatabase.TABLE_NAME,
+        AttachmentDatabase.TABLE_NAME,
+        ReactionDatabase.TABLE_NAME,
+        ThreadDatabase.TABLE_NAME,
+        RecipientDatabase.TABLE_NAME,
+        GroupDatabase.TABLE_NAME,
+        GroupMemberDatabase.TABLE_NAME
+    )
+
+    private fun queryPlan(sql: String, args: Array<String>): List<String> =
+        db.rawQuery("EXPLAIN QUERY PLAN $sql", args).use { cursor ->
+            val detail = cursor.getColumnIndexOrThrow("detail")
+            generateSequence { if (cursor.moveToNext()) cursor.getString(detail) else null }.toList()
+        }
+
+    /**
+     * @param sortsMatches Whether the query may sort its matches through a temp B-tree to order
+     *                     them. Grouping or deduplicating through one is never allowed.
+     */
+    private fun assertIndexed(sql: String, args: Array<String> = emptyArray(), sortsMatches: Boolean = false) {
+        val plan = queryPlan(sql, args)
+        val scans = plan.filter { row ->
+            val words = row.split(' ')
+            words.getOrNull(0) == "SCAN" && words.getOrNull(1) in baseTables
+        }
+        assertTrue("Full table scan in plan $plan for $sql", scans.isEmpty())
+        val tempBTrees = plan.filter { it.startsWith("USE TEMP B-TREE") }
+        val allowed = if (sortsMatches) tempBTrees.filter { it.endsWith("ORDER BY") } else emptyList()
+        assertEquals("Temp B-tree in plan $plan for $sql", allowed, tempBTrees)
+    }
+
+    private fun threadAndTimestampArgs() = arrayOf("1", "1000", "1", "1000")
+
+    @Test
+    fun conversationPageUsesIndexesWithoutSorting() {
+        val selection = "${MmsSmsColumns.THREAD_ID} = 1 AND ${MmsSmsColumns.NORMALIZED_DATE_SENT} <= 1000"
+        // Both halves are read in index order, the union's ORDER BY only merges them
+        assertIndexed(MmsSmsDatabase.buildConversationPageQuery(selection, "${MmsSmsColumns.NORMALIZED_DATE_SENT} DESC", "50"))
+    }
+
+    @Test
+    fun conversationRelationsUseIndexesWithoutSorting() {
+        assertIndexed(
+            "SELECT * FROM ${AttachmentDatabase.TABLE_NAME} WHERE ${AttachmentDatabase.MMS_ID} IN (?, ?) ORDER BY ${AttachmentDatabase.MMS_ID}, ${AttachmentDatabase.ROW_ID}",
+            arrayOf("1", "2")
+        )
+        assertIndexed(
+            "SELECT * FROM ${ReactionDatabase.TABLE_NAME} WHERE ${ReactionDatabase.IS_MMS} = ? AND ${ReactionDatabase.MESSAGE_ID} IN (?, ?)",
+            arrayOf("1", "1", "2")
+        )
+    }
+
+    @Test
+    fun conversationUsesIndexesWithoutSorting() {
+        val selection = "${MmsSmsColumns.THREAD_ID} = 1"
+        assertIndexed(MmsSmsDatabase.buildConversationPageQuery(selection, "${MmsSmsColumns.NORMALIZED_DATE_SENT} ASC", null))
+        assertIndexed(MmsSmsDatabase.buildConversationPageQuery(selection, "${MmsSmsColumns.NORMALIZED_DATE_SENT} DESC", "1"))
+    }
+
+    @Test
+    fun unreadCountUsesIndexesWithoutSorting() {
+        val selection = "${MmsSmsColumns.READ} = 0 AND ${MmsSmsColumns.NOTIFIED} = 0 AND ${MmsSmsColumns.THREAD_ID} = 1"
+        assertIndexed(MmsSmsDatabase.buildConversationPageQuery(selection, null, null))
+    }
+
+    @Test
+    fun pageBoundariesUseIndexesWithoutSorting() {
+        assertIndexed(MmsSmsDatabase.buildExistsQuery("${SmsDatabase.DATE_SENT} < ?", "${MmsDatabase.DATE_SENT} < ?"), threadAndTimestampArgs())
+        assertIndexed(MmsSmsDatabase.buildExistsQuery("${SmsDatabase.DATE_SENT} > ?", "${MmsDatabase.DATE_SENT} > ?"), threadAndTimestampArgs())
+    }
+
+    @Test
+    fun previousPageUsesIndexes() {
+        // Both halves are read in index order, the compound ORDER BY only merges them
+        assertIndexed(MmsSmsDatabase.buildSentTimestampQuery("${SmsDatabase.DATE_SENT} > ?", "${MmsDatabase.DATE_SENT} > ?", " ASC") + " LIMIT 50", threadAndTimestampArgs())
+    }
+
+    @Test
+    fun messagePositionUsesIndexesWithoutSorting() {
+        assertIndexed(
+            MmsSmsDatabase.buildExistsQuery(
+                "${SmsDatabase.DATE_SENT} = ? AND ${MmsSmsColumns.ADDRESS} = ?",
+                "${MmsDatabase.DATE_SENT} = ? AND ${MmsSmsColumns.ADDRESS} = ?"
+            ),
+            arrayOf("1", "1000", "05abc", "1", "1000", "05abc")
+        )
+        assertIndexed(MmsSmsDatabase.buildCountQuery("${SmsDatabase.DATE_SENT} > ?", "${MmsDatabase.DATE_SENT} > ?"), threadAndTimestampArgs())
+        assertIndexed(MmsSmsDatabase.buildCountQuery("${SmsDatabase.DATE_SENT} < ?", "${MmsDatabase.DATE_SENT} < ?"), threadAndTimestampArgs())
+    }
+
+    @Test
+    fun messageLookupUsesIndexesWithoutSorting() {
+        val addressClause = "${MmsSmsColumns.ADDRESS} = ?"
+        assertIndexed(MmsSmsDatabase.buildLookupQuery(addressClause, addressClause), arrayOf("1000", "05abc", "1000", "05abc"))
+        assertIndexed(MmsSmsDatabase.buildLookupQuery(null, null), arrayOf("1000", "1000"))
+    }
+
+    @Test
+    fun filteredConversationListUsesIndexes() {
+        val threadDb = databaseComponent.threadDatabase()
+        val selection = "${ThreadDatabase.TABLE_NAME}.${ThreadDatabase.ADDRESS} = ? OR ${ThreadDatabase.TABLE_NAME}.${ThreadDatabase.ADDRESS} = ?"
+        // Sorting by pinned / date only ever touches the filtered threads
+        assertIndexed(threadDb.createQuery(selection, 0), arrayOf("05abc", "05def"), sortsMatches = true)
+    }
+
+    @Test
+    fun threadLookupByAddressUsesIndex() {
+        assertIndexed("SELECT ${ThreadDatabase.ID} FROM ${ThreadDatabase.TABLE_NAME} WHERE ${ThreadDatabase.ADDRESS} = ?", arrayOf("05abc"))
+    }
+
+    @Test
+    fun groupMembershipUsesIndexesInBothDirections() {
+        with(GroupMemberDatabase) {
+            assertIndexed("SELECT $PROFILE_ID FROM $TABLE_NAME WHERE $GROUP_ID = ? AND $ROLE = ? ORDER BY $PROFILE_ID", arrayOf("group", "STANDARD"))
+            assertIndexed("SELECT $GROUP_ID FROM $TABLE_NAME WHERE $PROFILE_ID IN (?, ?) AND $ROLE = ?", arrayOf("05abc", "05def", "STANDARD"))
+        }
+    }
+
+    @Test
+    fun messageSearchUsesFullTextIndex() {
+        assertIndexed(SearchDatabase.MESSAGES_QUERY, arrayOf("1000", "hello*", "1000", "hello*", "100"), sortsMatches = true)
+        assertIndexed(SearchDatabase.MESSAGES_AFTER_QUERY, arrayOf("1000", "hello*", "1000", "hello*", "-1.5", "-1.5", "900", "900", "1", "10", "100"), sortsMatches = true)
+        assertIndexed(SearchDatabase.CONTACTS_QUERY, arrayOf("1000", "hello*", "100"), sortsMatches = true)
+        assertIndexed(SearchDatabase.GROUPS_QUERY, arrayOf("1000", "hello*", "100"), sortsMatches = true)
+        assertIndexed(SearchDatabase.MESSAGES_FOR_THREAD_QUERY, arrayOf("hello*", "1", "hello*", "1"), sortsMatches = true)
+    }
+}
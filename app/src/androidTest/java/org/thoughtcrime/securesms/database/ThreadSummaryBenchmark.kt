@@ -0,0 +1,119 @@
+package org.thoughtcrime.securesms.database
+
+import android.content.ContentValues
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.session.libsignal.utilities.Log
+import org.thoughtcrime.securesms.dependencies.DatabaseComponent
+
+/**
+ * Grows a thread to 50k messages and, at a few sizes along the way, logs the cost per message of
+ * inserting a message and updating the thread, against recounting the thread and reading its
+ * snippet the way the update used to. Then checks that the counts kept by the triggers match a
+ * recount.
+ */
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class ThreadSummaryBenchmark {
+
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext.applicationContext
+    private val databaseComponent = DatabaseComponent.get(context)
+    private val db get() = databaseComponent.openHelper().writableDatabase
+    private val threadDatabase get() = databaseComponent.threadDatabase()
+    private val mmsSmsDatabase get() = databaseComponent.mmsSmsDatabase()
+
+    private var threadId = -1L
+    private var messageCount = 0
+
+    @Before
+    fun setUp() {
+        threadId = db.insert(ThreadDatabase.TABLE_NAME, null, ContentValues().apply {
+            put(ThreadDatabase.ADDRESS, AUTHOR)
+        })
+    }
+
+    @After
+    fun tearDown() {
+        val args = arrayOf(threadId.toString())
+        db.delete(SmsDatabase.TABLE_NAME, "${MmsSmsColumns.THREAD_ID} = ?", args)
+        db.delete(MmsDatabase.TABLE_NAME, "${MmsSmsColumns.THREAD_ID} = ?", args)
+        db.delete(ThreadDatabase.TABLE_NAME, "${ThreadDatabase.ID} = ?", args)
+    }
+
+    @Test
+    fun updateCostPerMessage() {
+        for (size in THREAD_SIZES) {
+            grow(size - SAMPLE_SIZE)
+
+            val incremental = measure {
+                insertMessage()
+                threadDatabase.update(threadId, false, false)
+            }
+            val recount = measure {
+                mmsSmsDatabase.getConversationCount(threadId)
+                mmsSmsDatabase.readerFor(mmsSmsDatabase.getConversationSnippet(threadId)).use { it.next }
+            }
+
+            Log.i(TAG, "Thread of $messageCount messages: insert and update ${incremental / 1000} us per message, recount ${recount / 1000} us per message")
+        }
+
+        assertEquals(mmsSmsDatabase.getConversationCount(threadId), threadDatabase.getMessageCount(threadId).toLong())
+        assertEquals(messageCount.toString(), readThreadColumn(ThreadDatabase.UNREAD_COUNT))
+
+        val lastSeen = messageCount / 2L
+        threadDatabase.setRead(threadId, lastSeen)
+        val unread = readThreadColumn(ThreadDatabase.UNREAD_COUNT)
+        threadDatabase.setLastSeen(threadId, lastSeen)
+
+        assertEquals(readThreadColumn(ThreadDatabase.UNREAD_COUNT), unread)
+        assertEquals("Message $messageCount", readThreadColumn(ThreadDatabase.SNIPPET))
+    }
+
+    private fun grow(size: Int) {
+        db.beginTransaction()
+        try {
+            while (messageCount < size) insertMessage()
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+    }
+
+    private fun measure(block: () -> Unit): Long {
+        val start = System.nanoTime()
+        repeat(SAMPLE_SIZE) { block() }
+        return (System.nanoTime() - start) / SAMPLE_SIZE
+    }
+
+    private fun insertMessage() {
+        val i = ++messageCount
+        db.insert(SmsDatabase.TABLE_NAME, null, ContentValues().apply {
+            put(MmsSmsColumns.THREAD_ID, threadId)
+            put(MmsSmsColumns.ADDRESS, AUTHOR)
+            put(MmsSmsColumns.BODY, "Message $i")
+            put(MmsSmsColumns.READ, 0)
+            put(SmsDatabase.DATE_SENT, i.toLong())
+            put(SmsDatabase.DATE_RECEIVED, i.toLong())
+            put(SmsDatabase.TYPE, MmsSmsColumns.Types.BASE_INBOX_TYPE)
+        })
+    }
+
+    private fun readThreadColumn(column: String): String? =
+        db.rawQuery("SELECT $column FROM ${ThreadDatabase.TABLE_NAME} WHERE ${ThreadDatabase.ID} = ?", arrayOf(threadId.toString())).use {
+            it.moveToFirst()
+            it.getString(0)
+        }
+
+    companion object {
+        private const val TAG = "ThreadSummaryBenchmark"
+        private const val SAMPLE_SIZE = 50
+        private val THREAD_SIZES = listOf(1_000, 10_000, 50_000)
+        private const val AUTHOR = "050123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef"
+    }
+}
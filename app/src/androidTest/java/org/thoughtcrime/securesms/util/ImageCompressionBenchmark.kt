@@ -0,0 +1,74 @@
+package org.thoughtcrime.securesms.util
+
+import android.graphics.Bitmap
+import android.graphics.Bitmap.CompressFormat
+import android.graphics.Color
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.session.libsignal.utilities.Log
+import kotlin.math.sin
+import kotlin.random.Random
+
+/**
+ * Runs [ImageCompressionPlanner] over a fixture set of generated photos and logs the attempts and
+ * time each of them took, the fixtures cover smooth, detailed and flat content at camera sizes
+ * against the attachment and avatar size limits.
+ */
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class ImageCompressionBenchmark {
+
+    private class Fixture(val name: String, val width: Int, val height: Int, val noise: Int, val waves: Double)
+
+    private val fixtures = listOf(
+        Fixture("landscape", 3264, 2448, noise = 12, waves = 6.0),
+        Fixture("portrait", 2448, 3264, noise = 12, waves = 6.0),
+        Fixture("detailed", 3264, 2448, noise = 96, waves = 40.0),
+        Fixture("flat", 1920, 1080, noise = 0, waves = 1.0)
+    )
+
+    private val maxSizes = listOf(10_000_000, 1_000_000, 300_000)
+
+    @Test
+    fun compressFixtures() {
+        for (fixture in fixtures) {
+            for (maxSize in maxSizes) {
+                BitmapUtil.BitmapImage(generate(fixture), CompressFormat.JPEG).use { image ->
+                    val result = ImageCompressionPlanner.compress(image, maxSize)
+                    Log.i(TAG, "${fixture.name} under $maxSize bytes: $result")
+
+                    assertTrue(result.bytes.size <= maxSize)
+                    assertTrue(result.compressions <= ImageCompressionPlanner.MAX_COMPRESSIONS)
+                }
+            }
+        }
+    }
+
+    /**
+     * Smooth waves of colour with per pixel noise, deterministic for each fixture.
+     */
+    private fun generate(fixture: Fixture): Bitmap {
+        val random = Random(fixture.name.hashCode())
+        val pixels = IntArray(fixture.width * fixture.height)
+        for (y in 0 until fixture.height) {
+            for (x in 0 until fixture.width) {
+                val wave = sin(x * fixture.waves / fixture.width) * sin(y * fixture.waves / fixture.height)
+                val base = (128 + 100 * wave).toInt()
+                val noise = if (fixture.noise > 0) random.nextInt(-fixture.noise, fixture.noise) else 0
+                pixels[y * fixture.width + x] = Color.rgb(
+                    (base + noise).coerceIn(0, 255),
+                    (255 - base + noise).coerceIn(0, 255),
+                    (base / 2 + noise).coerceIn(0, 255)
+                )
+            }
+        }
+        return Bitmap.createBitmap(pixels, fixture.width, fixture.height, Bitmap.Config.ARGB_8888)
+    }
+
+    companion object {
+        private const val TAG = "ImageCompressionBenchmark"
+    }
+}
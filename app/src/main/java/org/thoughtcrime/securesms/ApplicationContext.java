@@ -283,6 +283,7 @@ public class ApplicationContext extends Application implements DefaultLifecycleO
             poller.stopIfNeeded();
         }
         ClosedGroupPollerV2.getShared().stopAll();
+        configFactory.flushPendingDumpsSoon();
     }
 
     @Override
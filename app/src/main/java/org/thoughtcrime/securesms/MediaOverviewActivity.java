@@ -64,6 +64,7 @@ import org.thoughtcrime.securesms.database.loaders.ThreadMediaLoader;
 import org.thoughtcrime.securesms.mms.GlideApp;
 import org.thoughtcrime.securesms.permissions.Permissions;
 import org.session.libsession.utilities.recipients.Recipient;
+import org.session.libsession.utilities.recipients.RecipientModifiedListener;
 import org.thoughtcrime.securesms.util.AttachmentUtil;
 import org.thoughtcrime.securesms.util.SaveAttachmentTask;
 import org.thoughtcrime.securesms.util.StickyHeaderDecoration;
@@ -94,6 +95,8 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity {
   private ViewPager    viewPager;
   private Recipient    recipient;
 
+  private RecipientModifiedListener recipientListener;
+
   @Override
   protected void onCreate(Bundle bundle, boolean ready) {
     setContentView(R.layout.media_overview_activity);
@@ -131,9 +134,21 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity {
     actionBar.setTitle(recipient.toShortString());
     actionBar.setDisplayHomeAsUpEnabled(true);
     actionBar.setHomeButtonEnabled(true);
-    this.recipient.addListener(recipient -> {
+    this.recipientListener = recipient -> {
       Util.runOnMain(() -> actionBar.setTitle(recipient.toShortString()));
-    });
+    };
+    this.recipient.addListener(recipientListener);
+    // Keep the recipient we listen to from being evicted and replaced in the cache
+    Recipient.pin(recipient.getAddress());
+  }
+
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    if (recipientListener != null) {
+      recipient.removeListener(recipientListener);
+      Recipient.unpin(recipient.getAddress());
+    }
   }
 
   public void onEnterMultiSelect() {
@@ -273,6 +273,12 @@ public class MediaPreviewActivity extends PassphraseRequiredActionBarActivity im
     restartItem = cleanupMedia();
   }
 
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    if (viewPagerListener != null) viewPagerListener.pinRecipient(null);
+  }
+
   @Override
   protected void onNewIntent(Intent intent) {
     super.onNewIntent(intent);
@@ -555,6 +561,10 @@ public class MediaPreviewActivity extends PassphraseRequiredActionBarActivity im
 
     private int currentPage = -1;
 
+    // The recipient of the current page, kept from being evicted and replaced in the cache while
+    // it is listened to
+    private @Nullable Address pinnedAddress;
+
     @Override
     public void onPageSelected(int position) {
       if (currentPage != -1 && currentPage != position) onPageUnselected(currentPage);
@@ -565,6 +575,7 @@ public class MediaPreviewActivity extends PassphraseRequiredActionBarActivity im
       if (adapter != null) {
         MediaItem item = adapter.getMediaItemFor(position);
         if (item.recipient != null) item.recipient.addListener(MediaPreviewActivity.this);
+        pinRecipient(item.recipient);
         viewModel.setActiveAlbumRailItem(MediaPreviewActivity.this, position);
         updateActionBar();
       }
@@ -582,6 +593,12 @@ public class MediaPreviewActivity extends PassphraseRequiredActionBarActivity im
       }
     }
 
+    void pinRecipient(@Nullable Recipient recipient) {
+      if (pinnedAddress != null) Recipient.unpin(pinnedAddress);
+      pinnedAddress = recipient != null ? recipient.getAddress() : null;
+      if (pinnedAddress != null) Recipient.pin(pinnedAddress);
+    }
+
     @Override
     public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
 
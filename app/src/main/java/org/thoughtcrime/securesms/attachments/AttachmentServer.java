@@ -4,6 +4,8 @@ package org.thoughtcrime.securesms.attachments;
 import android.content.Context;
 import android.net.Uri;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import org.session.libsignal.utilities.Log;
 import org.thoughtcrime.securesms.mms.PartAuthority;
@@ -26,23 +28,40 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.security.MessageDigest;
+import java.util.Collections;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Serves a single attachment over HTTP on localhost so media players can stream it.
+ *
+ * Connections are handled concurrently by up to {@link #MAX_WORKERS} threads, so the parallel range
+ * requests a player makes while seeking don't queue behind a long running download. Ranges are
+ * served by opening the decrypted stream at the requested offset rather than reading up to it.
+ *
  * @author      Stefan "frostymarvelous" Froelich <stefan d0t froelich At whisppa DoT com>
  */
 public class AttachmentServer implements Runnable {
 
   private static final String TAG = AttachmentServer.class.getSimpleName();
 
-  private final Context      context;
-  private final Attachment   attachment;
-  private final ServerSocket socket;
-  private final int          port;
-  private final String       auth;
+  private static final int MAX_WORKERS = 4;
+
+  private final Context         context;
+  private final Attachment      attachment;
+  private final ServerSocket    socket;
+  private final int             port;
+  private final String          auth;
+  private final ExecutorService workers;
+  private final Set<Socket>     clients;
 
   private volatile boolean isRunning;
 
@@ -55,6 +74,11 @@ public class AttachmentServer implements Runnable {
       this.socket       = new ServerSocket(0, 0, InetAddress.getByAddress(new byte[]{127, 0, 0, 1}));
       this.port         = socket.getLocalPort();
       this.auth         = Hex.toStringCondensed(Util.getSecretBytes(16));
+      this.clients      = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+      ThreadPoolExecutor workers = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, 15, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> new Thread(r, "attachment-server-" + port));
+      workers.allowCoreThreadTimeOut(true);
+      this.workers = workers;
 
       this.socket.setSoTimeout(5000);
     } catch (UnknownHostException e) {
@@ -73,53 +97,133 @@ public class AttachmentServer implements Runnable {
 
   public void stop() {
     isRunning = false;
+    workers.shutdownNow();
+
+    try {
+      socket.close();
+    } catch (IOException e) {
+      Log.w(TAG, e);
+    }
+
+    for (Socket client : clients) {
+      closeQuietly(client);
+    }
   }
 
   @Override
   public void run() {
     while (isRunning) {
-      Socket client = null;
-
       try {
-        client = socket.accept();
-
-        if (client != null) {
-          StreamToMediaPlayerTask task = new StreamToMediaPlayerTask(client, "/" + auth);
-
-          if (task.processRequest()) {
-            task.execute();
-          }
+        Socket client = socket.accept();
+        clients.add(client);
+
+        try {
+          workers.execute(new StreamToMediaPlayerTask(client, "/" + auth));
+        } catch (RejectedExecutionException e) {
+          clients.remove(client);
+          closeQuietly(client);
         }
-
       } catch (SocketTimeoutException e) {
         Log.w(TAG, e);
       } catch (IOException e) {
-        Log.e(TAG, "Error connecting to client", e);
-      } finally {
-        try {if (client != null) client.close();} catch (IOException e) {}
+        if (isRunning) Log.e(TAG, "Error connecting to client", e);
       }
     }
 
     Log.d(TAG, "Proxy interrupted. Shutting down.");
   }
 
+  private static void closeQuietly(@NonNull Socket client) {
+    try {
+      client.close();
+    } catch (IOException e) {
+      // Nothing left to do with it
+    }
+  }
+
+  /**
+   * Parses a single range {@code Range} header against a body of {@code size} bytes.
+   *
+   * @return the range with an inclusive end clamped to the body, one starting at {@code size} if
+   * it can't be satisfied, or null if there's no range or it's not one we support, in which case
+   * the whole body should be sent.
+   */
+  @VisibleForTesting
+  static @Nullable ByteRange parseRange(@Nullable String header, long size) {
+    if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) return null;
 
-  private class StreamToMediaPlayerTask {
+    String range   = header.substring(6).trim();
+    int    charPos = range.indexOf('-');
+
+    if (charPos < 0) return null;
+
+    try {
+      String first = range.substring(0, charPos).trim();
+      String last  = range.substring(charPos + 1).trim();
+
+      if (first.isEmpty()) {
+        // Suffix range, the last n bytes
+        long suffix = Long.parseLong(last);
+        return suffix > 0 ? new ByteRange(Math.max(0, size - suffix), size - 1) : new ByteRange(size, size - 1);
+      }
+
+      long start = Long.parseLong(first);
+      long end   = last.isEmpty() ? size - 1 : Long.parseLong(last);
+
+      if (start < 0)     return null;
+      if (start >= size) return new ByteRange(size, size - 1);
+      if (end < start)   return null;
+
+      return new ByteRange(start, Math.min(end, size - 1));
+    } catch (NumberFormatException e) {
+      Log.w(TAG, "Unparseable range: " + header);
+      return null;
+    }
+  }
+
+  @VisibleForTesting
+  static final class ByteRange {
+    final long start;
+    final long end;
+
+    ByteRange(long start, long end) {
+      this.start = start;
+      this.end   = end;
+    }
+
+    long length() {
+      return end - start + 1;
+    }
+  }
+
+  private class StreamToMediaPlayerTask implements Runnable {
 
     private final @NonNull Socket client;
     private final @NonNull String auth;
 
-    private long       cbSkip;
     private Properties parameters;
     private Properties request;
     private Properties requestHeaders;
-//    private String filePath;
 
     public StreamToMediaPlayerTask(@NonNull Socket client, @NonNull String auth) {
       this.client = client;
       this.auth   = auth;
     }
 
+    @Override
+    public void run() {
+      try {
+        if (processRequest()) {
+          execute();
+        }
+      } catch (IOException e) {
+        Log.e(TAG, "Error serving client", e);
+      } finally {
+        clients.remove(client);
+        closeQuietly(client);
+      }
+    }
+
     public boolean processRequest() throws IOException {
             InputStream is         = client.getInputStream();
       final int         bufferSize = 8192;
@@ -153,23 +257,6 @@ public class AttachmentServer implements Runnable {
         e1.printStackTrace();
       }
 
-      for (Map.Entry<Object, Object> e : requestHeaders.entrySet()) {
-        Log.i(TAG, "Header: " + e.getKey() + " : " + e.getValue());
-      }
-
-      String range = requestHeaders.getProperty("range");
-
-      if (range != null) {
-        Log.i(TAG, "range is: " + range);
-        range = range.substring(6);
-        int charPos = range.indexOf('-');
-        if (charPos > 0) {
-          range = range.substring(0, charPos);
-        }
-        cbSkip = Long.parseLong(range);
-        Log.i(TAG, "range found!! " + cbSkip);
-      }
-
       if (!"GET".equals(request.get("method"))) {
         Log.e(TAG, "Only GET is supported: " + request.get("method"));
         return false;
@@ -182,50 +269,64 @@ public class AttachmentServer implements Runnable {
         return false;
       }
 
-//      filePath = request.getProperty("uri");
-
       return true;
     }
 
     protected void execute() throws IOException {
-      InputStream inputStream = PartAuthority.getAttachmentStream(context, attachment.getDataUri());
-      long        fileSize    = attachment.getSize();
+      long      startTime = System.currentTimeMillis();
+      long      fileSize  = attachment.getSize();
+      ByteRange range     = parseRange(requestHeaders.getProperty("range"), fileSize);
 
       String headers = "";
-      if (cbSkip > 0) {// It is a seek or skip request if there's a Range
-        // header
+      if (range != null && range.start >= fileSize) {
+        headers += "HTTP/1.1 416 Range Not Satisfiable\r\n";
+        headers += "Content-Range: bytes */" + fileSize + "\r\n";
+        headers += "Content-Length: 0\r\n";
+        headers += "Connection: close\r\n";
+        headers += "\r\n";
+
+        client.getOutputStream().write(headers.getBytes());
+        Log.w(TAG, "Unsatisfiable range: " + requestHeaders.getProperty("range") + " for " + fileSize + " bytes");
+        return;
+      }
+
+      long offset = range != null ? range.start : 0;
+      long length = range != null ? range.length() : fileSize;
+
+      if (range != null) {
         headers += "HTTP/1.1 206 Partial Content\r\n";
         headers += "Content-Type: " + attachment.getContentType() + "\r\n";
         headers += "Accept-Ranges: bytes\r\n";
-        headers += "Content-Length: " + (fileSize - cbSkip) + "\r\n";
-        headers += "Content-Range: bytes " + cbSkip + "-" + (fileSize - 1) + "/" + fileSize + "\r\n";
-        headers += "Connection: Keep-Alive\r\n";
+        headers += "Content-Length: " + length + "\r\n";
+        headers += "Content-Range: bytes " + range.start + "-" + range.end + "/" + fileSize + "\r\n";
+        headers += "Connection: close\r\n";
         headers += "\r\n";
       } else {
         headers += "HTTP/1.1 200 OK\r\n";
         headers += "Content-Type: " + attachment.getContentType() + "\r\n";
         headers += "Accept-Ranges: bytes\r\n";
         headers += "Content-Length: " + fileSize + "\r\n";
-        headers += "Connection: Keep-Alive\r\n";
+        headers += "Connection: close\r\n";
         headers += "\r\n";
       }
 
-      Log.i(TAG, "headers: " + headers);
-
-      OutputStream output = null;
-      byte[] buff = new byte[64 * 1024];
-      try {
+      long         firstByteTime = -1;
+      long         sent          = 0;
+      OutputStream output        = null;
+      byte[]       buff          = new byte[64 * 1024];
+      try (InputStream inputStream = PartAuthority.getAttachmentStream(context, attachment.getDataUri(), offset)) {
         output = new BufferedOutputStream(client.getOutputStream(), 32 * 1024);
         output.write(headers.getBytes());
 
-        inputStream.skip(cbSkip);
-//        dataSource.skipFully(data, cbSkip);//try to skip as much as possible
-
         // Loop as long as there's stuff to send and client has not closed
         int cbRead;
-        while (!client.isClosed() && (cbRead = inputStream.read(buff, 0, buff.length)) != -1) {
+        while (sent < length && !client.isClosed() && (cbRead = inputStream.read(buff, 0, (int) Math.min(buff.length, length - sent))) != -1) {
+          if (firstByteTime < 0) firstByteTime = System.currentTimeMillis();
           output.write(buff, 0, cbRead);
+          sent += cbRead;
         }
+
+        output.flush();
       }
       catch (SocketException socketException) {
         Log.e(TAG, "SocketException() thrown, proxy client has probably closed. This can exit harmlessly");
@@ -235,18 +336,10 @@ public class AttachmentServer implements Runnable {
         Log.e(TAG, e.getClass().getName() + " : " + e.getLocalizedMessage());
       }
 
-      // Cleanup
-      try {
-        if (output != null) {
-          output.close();
-        }
-        client.close();
-      }
-      catch (IOException e) {
-        Log.e(TAG, "IOException while cleaning up streaming task:");
-        Log.e(TAG, e.getClass().getName() + " : " + e.getLocalizedMessage());
-        e.printStackTrace();
-      }
+      Log.d(TAG, String.format(Locale.ROOT, "Served bytes %d-%d/%d: sent %d, first byte %d ms, total %d ms",
+                               offset, offset + length - 1, fileSize, sent,
+                               firstByteTime < 0 ? -1 : firstByteTime - startTime,
+                               System.currentTimeMillis() - startTime));
     }
 
     /**
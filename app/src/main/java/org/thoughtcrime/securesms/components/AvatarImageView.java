@@ -20,6 +20,7 @@ import com.bumptech.glide.load.engine.DiskCacheStrategy;
 
 import org.session.libsession.avatars.ContactColors;
 import org.session.libsession.avatars.ContactPhoto;
+import org.session.libsession.avatars.PlaceholderAvatarPhoto;
 import org.session.libsession.avatars.ResourceContactPhoto;
 import org.session.libsession.utilities.Address;
 import org.session.libsession.utilities.ThemeUtil;
@@ -27,7 +28,6 @@ import org.session.libsession.utilities.recipients.Recipient;
 import org.session.libsession.utilities.recipients.RecipientExporter;
 import org.thoughtcrime.securesms.mms.GlideApp;
 import org.thoughtcrime.securesms.mms.GlideRequests;
-import org.thoughtcrime.securesms.util.AvatarPlaceholderGenerator;
 
 import java.util.Objects;
 
@@ -130,21 +130,22 @@ public class AvatarImageView extends AppCompatImageView {
           requestManager.clear(this);
           recipientContactPhoto = photo;
 
-          Drawable photoPlaceholderDrawable = AvatarPlaceholderGenerator.generate(
-                  getContext(), 128, recipient.getAddress().serialize(), recipient.getName());
+          String                 address     = recipient.getAddress().serialize();
+          PlaceholderAvatarPhoto placeholder = new PlaceholderAvatarPhoto(getContext(), address, recipient.getName() != null ? recipient.getName() : address);
 
+          // Cache the downsampled result rather than decrypting the original (or rendering the
+          // placeholder) on every bind
           if (photo.contactPhoto != null) {
             requestManager.load(photo.contactPhoto)
-                          .fallback(photoPlaceholderDrawable)
-                          .error(photoPlaceholderDrawable)
-                          .diskCacheStrategy(DiskCacheStrategy.NONE)
+                          .error(requestManager.load(placeholder).diskCacheStrategy(DiskCacheStrategy.RESOURCE).circleCrop())
+                          .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
                           .circleCrop()
                           .into(this);
           } else {
-            requestManager.load(photoPlaceholderDrawable)
-                    .circleCrop()
-                    .into(this);
-//            setImageDrawable(photoPlaceholderDrawable);
+            requestManager.load(placeholder)
+                          .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                          .circleCrop()
+                          .into(this);
           }
         }
       }
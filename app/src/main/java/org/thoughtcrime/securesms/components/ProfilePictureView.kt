@@ -122,14 +122,18 @@ class ProfilePictureView @JvmOverloads constructor(
             val avatar = (signalProfilePicture as? ProfileContactPhoto)?.avatarObject
 
             val placeholder = PlaceholderAvatarPhoto(context, publicKey, displayName ?: "${publicKey.take(4)}...${publicKey.takeLast(4)}")
+            // Load at the fixed size of the slot, so the downsampled avatar is cached (encrypted)
+            // once per size and scrolling back to it skips decrypting and scaling the original
+            val pixelSize = resources.getDimensionPixelSize(sizeResId)
 
             if (signalProfilePicture != null && avatar != "0" && avatar != "") {
                 glide.clear(imageView)
                 glide.load(signalProfilePicture)
                     .placeholder(unknownRecipientDrawable)
                     .centerCrop()
-                    .error(glide.load(placeholder))
-                    .diskCacheStrategy(DiskCacheStrategy.NONE)
+                    .error(glide.load(placeholder).override(pixelSize).diskCacheStrategy(DiskCacheStrategy.RESOURCE).circleCrop())
+                    .override(pixelSize)
+                    .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
                     .circleCrop()
                     .into(imageView)
             } else if (recipient.isOpenGroupRecipient && recipient.groupAvatarId == null) {
@@ -142,9 +146,10 @@ class ProfilePictureView @JvmOverloads constructor(
                 glide.clear(imageView)
                 glide.load(placeholder)
                     .placeholder(unknownRecipientDrawable)
-                    .centerCrop()
+                    .override(pixelSize)
+                    .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
                     .circleCrop()
-                    .diskCacheStrategy(DiskCacheStrategy.NONE).circleCrop().into(imageView)
+                    .into(imageView)
             }
             profilePicturesCache[publicKey] = recipient.profileAvatar
         } else {
@@ -22,8 +22,10 @@ import org.session.libsession.utilities.FutureTaskListener;
 import org.session.libsignal.utilities.Log;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiDrawInfo;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiParser;
+import org.thoughtcrime.securesms.components.emoji.parsing.EmojiTree;
 import org.thoughtcrime.securesms.emoji.EmojiPageCache;
 import org.thoughtcrime.securesms.emoji.EmojiSource;
+import org.thoughtcrime.securesms.util.LRUCache;
 import org.thoughtcrime.securesms.util.Util;
 
 import java.util.concurrent.ExecutionException;
@@ -34,11 +36,39 @@ public class EmojiProvider {
   private static final    String TAG   = Log.tag(EmojiProvider.class);
   private static final    Paint  PAINT = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
 
+  private static final int                                CANDIDATE_CACHE_SIZE = 256;
+  private static final LRUCache<Object, CachedCandidates> CANDIDATE_CACHE      = new LRUCache<>(CANDIDATE_CACHE_SIZE);
+
   public static @Nullable EmojiParser.CandidateList getCandidates(@Nullable CharSequence text) {
     if (text == null) return null;
     return new EmojiParser(EmojiSource.getLatest().getEmojiTree()).findCandidates(text);
   }
 
+  /**
+   * Same as {@link #getCandidates(CharSequence)}, but remembers the result under {@code cacheKey}
+   * (e.g. a message id) so that rebinding the same text doesn't parse it again.
+   */
+  public static @Nullable EmojiParser.CandidateList getCandidates(@Nullable Object cacheKey, @Nullable CharSequence text) {
+    if (text == null || cacheKey == null) return getCandidates(text);
+
+    EmojiTree tree = EmojiSource.getLatest().getEmojiTree();
+
+    synchronized (CANDIDATE_CACHE) {
+      CachedCandidates cached = CANDIDATE_CACHE.get(cacheKey);
+      if (cached != null && cached.tree == tree && TextUtils.equals(cached.text, text)) {
+        return cached.candidates;
+      }
+    }
+
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(text);
+
+    synchronized (CANDIDATE_CACHE) {
+      CANDIDATE_CACHE.put(cacheKey, new CachedCandidates(tree, text.toString(), candidates));
+    }
+
+    return candidates;
+  }
+
   static  @Nullable Spannable emojify(@Nullable CharSequence text, @NonNull TextView tv, boolean jumboEmoji) {
     if (tv.isInEditMode()) {
       return null;
@@ -127,6 +157,18 @@ public class EmojiProvider {
     return drawable;
   }
 
+  private static final class CachedCandidates {
+    private final EmojiTree                 tree;
+    private final String                    text;
+    private final EmojiParser.CandidateList candidates;
+
+    private CachedCandidates(@NonNull EmojiTree tree, @NonNull String text, @NonNull EmojiParser.CandidateList candidates) {
+      this.tree       = tree;
+      this.text       = text;
+      this.candidates = candidates;
+    }
+  }
+
   static final class EmojiDrawable extends Drawable {
     private final float intrinsicWidth;
     private final float intrinsicHeight;
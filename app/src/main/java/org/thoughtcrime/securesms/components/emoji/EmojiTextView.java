@@ -31,6 +31,7 @@ public class EmojiTextView extends AppCompatTextView {
   private int          maxLength;
   private CharSequence overflowText;
   private CharSequence previousOverflowText;
+  private Object       candidatesCacheKey;
 
   public EmojiTextView(Context context) {
     this(context, null);
@@ -58,7 +59,7 @@ public class EmojiTextView extends AppCompatTextView {
       return;
     }
 
-    EmojiParser.CandidateList candidates = EmojiProvider.getCandidates(text);
+    EmojiParser.CandidateList candidates = EmojiProvider.getCandidates(candidatesCacheKey, text);
 
     if (scaleEmojis && candidates != null && candidates.allEmojis) {
       int   emojis = candidates.size();
@@ -105,6 +106,14 @@ public class EmojiTextView extends AppCompatTextView {
     }
   }
 
+  /**
+   * Identifies the text about to be set, e.g. a message id, so that the emoji found in it are
+   * remembered across rebinds. Pass null for text that doesn't have a stable identity.
+   */
+  public void setCandidatesCacheKey(@Nullable Object candidatesCacheKey) {
+    this.candidatesCacheKey = candidatesCacheKey;
+  }
+
   public void setOverflowText(@Nullable CharSequence overflowText) {
     this.overflowText = overflowText;
     setText(previousText, BufferType.SPANNABLE);
@@ -24,8 +24,9 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -40,14 +41,13 @@ public class EmojiParser {
   }
 
   public @NonNull CandidateList findCandidates(@Nullable CharSequence text) {
-    List<Candidate> results = new LinkedList<>();
+    if (text == null || !mayContainEmoji(text)) return new CandidateList(Collections.emptyList(), false);
 
-    if (text == null) return new CandidateList(results, false);
-
-    boolean allEmojis = text.length() > 0;
+    List<Candidate> results   = new ArrayList<>();
+    boolean         allEmojis = true;
 
     for (int i = 0; i < text.length(); i++) {
-      int emojiEnd = getEmojiEndPos(text, i);
+      int emojiEnd = emojiTree.canStartEmoji(text.charAt(i)) ? emojiTree.findEmojiEnd(text, i) : -1;
 
       if (emojiEnd != -1) {
         EmojiDrawInfo drawInfo = emojiTree.getEmoji(text, i, emojiEnd);
@@ -69,20 +69,15 @@ public class EmojiParser {
     return new CandidateList(results, allEmojis);
   }
 
-  private int getEmojiEndPos(CharSequence text, int startPos) {
-    int best = -1;
-
-    for (int j = startPos + 1; j <= text.length(); j++) {
-      EmojiTree.Matches status = emojiTree.isEmoji(text, startPos, j);
-
-      if (status.exactMatch()) {
-        best = j;
-      } else if (status.impossibleMatch()) {
-        return best;
-      }
+  /**
+   * Most message bodies are plain text, in which case a single pass over the chars is enough to
+   * know that there is nothing to parse.
+   */
+  private boolean mayContainEmoji(@NonNull CharSequence text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (emojiTree.canStartEmoji(text.charAt(i))) return true;
     }
-
-    return best;
+    return false;
   }
 
   public static class Candidate {
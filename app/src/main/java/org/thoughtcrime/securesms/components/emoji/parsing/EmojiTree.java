@@ -22,8 +22,8 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 
 import androidx.annotation.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Based in part on code from emoji-java
@@ -32,42 +32,63 @@ public class EmojiTree {
 
   private final EmojiTreeNode root = new EmojiTreeNode();
 
+  // Chars that can begin an emoji, text without any of them is never walked down the tree
+  private final BitSet startChars = new BitSet();
+
   private static final char TERMINATOR = '\ufe0f';
 
   public void add(String emojiEncoding, EmojiDrawInfo emoji) {
     EmojiTreeNode tree = root;
 
-    for (char c: emojiEncoding.toCharArray()) {
-      if (!tree.hasChild(c)) {
-        tree.addChild(c);
-      }
-
-      tree = tree.getChild(c);
+    for (int i = 0; i < emojiEncoding.length(); i++) {
+      tree = tree.getOrAddChild(emojiEncoding.charAt(i));
     }
 
     tree.setEmoji(emoji);
-  }
 
-  public Matches isEmoji(CharSequence sequence, int startPosition, int endPosition) {
-    if (sequence == null) {
-      return Matches.POSSIBLY;
+    if (!emojiEncoding.isEmpty()) {
+      startChars.set(emojiEncoding.charAt(0));
     }
+  }
+
+  public boolean canStartEmoji(char character) {
+    return startChars.get(character);
+  }
 
+  /**
+   * @return The end of the longest emoji starting at {@code startPosition}, or -1 if there is none.
+   */
+  public int findEmojiEnd(CharSequence sequence, int startPosition) {
     EmojiTreeNode tree = root;
+    int           best = -1;
 
-    for (int i=startPosition; i<endPosition; i++) {
+    for (int i = startPosition; i < sequence.length(); i++) {
       char character = sequence.charAt(i);
 
-      if (!tree.hasChild(character)) {
-        return Matches.IMPOSSIBLE;
+      tree = tree.getChild(character);
+
+      if (tree == null) {
+        return best;
       }
 
-      tree = tree.getChild(character);
+      if (isExactMatch(tree, character)) {
+        best = i + 1;
+      }
     }
 
-    if (tree.isEndOfEmoji()) {
-      return Matches.EXACTLY;
-    } else if (sequence.charAt(endPosition-1) != TERMINATOR && tree.hasChild(TERMINATOR) && tree.getChild(TERMINATOR).isEndOfEmoji()) {
+    return best;
+  }
+
+  public Matches isEmoji(CharSequence sequence, int startPosition, int endPosition) {
+    if (sequence == null) {
+      return Matches.POSSIBLY;
+    }
+
+    EmojiTreeNode tree = find(sequence, startPosition, endPosition);
+
+    if (tree == null) {
+      return Matches.IMPOSSIBLE;
+    } else if (isExactMatch(tree, sequence.charAt(endPosition - 1))) {
       return Matches.EXACTLY;
     } else {
       return Matches.POSSIBLY;
@@ -75,28 +96,54 @@ public class EmojiTree {
   }
 
   public @Nullable EmojiDrawInfo getEmoji(CharSequence unicode, int startPosition, int endPosition) {
-    EmojiTreeNode tree = root;
-
-    for (int i=startPosition; i<endPosition; i++) {
-      char character = unicode.charAt(i);
-
-      if (!tree.hasChild(character)) {
-        return null;
-      }
+    EmojiTreeNode tree = find(unicode, startPosition, endPosition);
 
-      tree = tree.getChild(character);
+    if (tree == null) {
+      return null;
     }
 
+    EmojiTreeNode terminated = tree.getChild(TERMINATOR);
+
     if      (tree.getEmoji() != null)                                                  return tree.getEmoji();
-    else if (unicode.charAt(endPosition-1) != TERMINATOR && tree.hasChild(TERMINATOR)) return tree.getChild(TERMINATOR).getEmoji();
+    else if (unicode.charAt(endPosition-1) != TERMINATOR && terminated != null)        return terminated.getEmoji();
     else    return null;
   }
 
+  private @Nullable EmojiTreeNode find(CharSequence sequence, int startPosition, int endPosition) {
+    EmojiTreeNode tree = root;
+
+    for (int i = startPosition; i < endPosition && tree != null; i++) {
+      tree = tree.getChild(sequence.charAt(i));
+    }
+
+    return tree;
+  }
+
+  /**
+   * A node matches exactly if it ends an emoji, or if the emoji only needs the variation selector
+   * and {@code lastCharacter} isn't one already.
+   */
+  private static boolean isExactMatch(EmojiTreeNode tree, char lastCharacter) {
+    if (tree.isEndOfEmoji()) {
+      return true;
+    }
+
+    EmojiTreeNode terminated = lastCharacter != TERMINATOR ? tree.getChild(TERMINATOR) : null;
+    return terminated != null && terminated.isEndOfEmoji();
+  }
 
+  /**
+   * Children are kept in arrays sorted by char rather than a map, which keeps the few thousand
+   * nodes of the tree small and avoids boxing every char looked up.
+   */
   private static class EmojiTreeNode {
 
-    private Map<Character, EmojiTreeNode> children = new HashMap<>();
-    private EmojiDrawInfo emoji;
+    private static final char[]          NO_KEYS     = new char[0];
+    private static final EmojiTreeNode[] NO_CHILDREN = new EmojiTreeNode[0];
+
+    private char[]          keys     = NO_KEYS;
+    private EmojiTreeNode[] children = NO_CHILDREN;
+    private EmojiDrawInfo   emoji;
 
     public void setEmoji(EmojiDrawInfo emoji) {
       this.emoji = emoji;
@@ -106,16 +153,35 @@ public class EmojiTree {
       return emoji;
     }
 
-    boolean hasChild(char child) {
-      return children.containsKey(child);
+    @Nullable EmojiTreeNode getChild(char child) {
+      int index = Arrays.binarySearch(keys, child);
+      return index >= 0 ? children[index] : null;
     }
 
-    void addChild(char child) {
-      children.put(child, new EmojiTreeNode());
-    }
+    EmojiTreeNode getOrAddChild(char child) {
+      int index = Arrays.binarySearch(keys, child);
+
+      if (index >= 0) {
+        return children[index];
+      }
+
+      int           insertAt = -index - 1;
+      EmojiTreeNode node     = new EmojiTreeNode();
+
+      char[]          newKeys     = new char[keys.length + 1];
+      EmojiTreeNode[] newChildren = new EmojiTreeNode[children.length + 1];
+
+      System.arraycopy(keys, 0, newKeys, 0, insertAt);
+      System.arraycopy(children, 0, newChildren, 0, insertAt);
+      newKeys[insertAt]     = child;
+      newChildren[insertAt] = node;
+      System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+      System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+
+      keys     = newKeys;
+      children = newChildren;
 
-    EmojiTreeNode getChild(char child) {
-      return children.get(child);
+      return node;
     }
 
     boolean isEndOfEmoji() {
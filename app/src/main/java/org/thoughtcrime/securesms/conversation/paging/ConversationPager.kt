@@ -71,30 +71,19 @@ class ConversationPagingSource(
 
     override suspend fun load(params: LoadParams<PageLoad>): LoadResult<PageLoad, MessageAndContact> {
         val pageLoad = params.key ?: withContext(Dispatchers.IO) {
-            messageDb.getConversationSnippet(threadId).use {
-                val reader = messageDb.readerFor(it)
-                var record: MessageRecord? = null
-                if (reader != null) {
-                    record = reader.next
-                    while (record != null && record.isDeleted) {
-                        record = reader.next
-                    }
-                }
-                record?.dateSent?.let { fromTime ->
-                    PageLoad(fromTime)
-                }
+            messageDb.getLatestMessage(threadId)?.dateSent?.let { fromTime ->
+                PageLoad(fromTime)
             }
         } ?: return LoadResult.Page(emptyList(), null, null)
 
         val result = withContext(Dispatchers.IO) {
-            val cursor = messageDb.getConversationPage(
+            val reader = messageDb.getConversationPage(
                 threadId,
                 pageLoad.fromTime,
                 pageLoad.toTime ?: -1L,
                 params.loadSize
             )
             val processedList = mutableListOf<MessageAndContact>()
-            val reader = messageDb.readerFor(cursor)
             while (reader.next != null && !invalid) {
                 reader.current?.let { item ->
                     val contact = getContact(item.individualRecipient.address.serialize())
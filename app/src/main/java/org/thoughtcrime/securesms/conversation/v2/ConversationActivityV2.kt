@@ -121,6 +121,7 @@ import org.thoughtcrime.securesms.conversation.v2.input_bar.mentions.MentionCand
 import org.thoughtcrime.securesms.conversation.v2.menus.ConversationActionModeCallback
 import org.thoughtcrime.securesms.conversation.v2.menus.ConversationActionModeCallbackDelegate
 import org.thoughtcrime.securesms.conversation.v2.menus.ConversationMenuHelper
+import org.thoughtcrime.securesms.conversation.v2.messages.ConversationBindContext
 import org.thoughtcrime.securesms.conversation.v2.messages.VisibleMessageView
 import org.thoughtcrime.securesms.conversation.v2.messages.VisibleMessageViewDelegate
 import org.thoughtcrime.securesms.conversation.v2.search.SearchBottomBar
@@ -272,6 +273,7 @@ class ConversationActivityV2 : PassphraseRequiredActionBarActivity(), InputBarDe
 
     private val bufferedLastSeenChannel = Channel<Long>(capacity = 512, onBufferOverflow = BufferOverflow.DROP_OLDEST)
     private var emojiPickerVisible = false
+    private var pinnedRecipientAddress: Address? = null
 
     private val isScrolledToBottom: Boolean
         get() = binding?.conversationRecyclerView?.isScrolledToBottom ?: true
@@ -294,11 +296,16 @@ class ConversationActivityV2 : PassphraseRequiredActionBarActivity(), InputBarDe
     // as read if we reverse the message list so this is now hard-coded to false
     private val reverseMessageList = false
 
-    private val adapter by lazy {
+    // Only initialized on a background thread, see onCreate
+    private val adapterLazy = lazy {
+        // The rows of the first cursor are bound against the context loaded along with it, later
+        // cursors come with their own from ConversationLoader
         val cursor = mmsSmsDb.getConversation(viewModel.threadId, reverseMessageList)
+        val bindContext = ConversationBindContext.load(this, viewModel.threadId)
         val adapter = ConversationAdapter(
             this,
             cursor,
+            bindContext,
             storage.getLastSeen(viewModel.threadId),
             reverseMessageList,
             onItemPress = { message, position, view, event ->
@@ -333,6 +340,7 @@ class ConversationActivityV2 : PassphraseRequiredActionBarActivity(), InputBarDe
         adapter.visibleMessageViewDelegate = this
         adapter
     }
+    private val adapter by adapterLazy
 
     private val glide by lazy { GlideApp.with(this) }
     private val lockViewHitMargin by lazy { toPx(40, resources) }
@@ -471,6 +479,7 @@ class ConversationActivityV2 : PassphraseRequiredActionBarActivity(), InputBarDe
     override fun onResume() {
         super.onResume()
         ApplicationContext.getInstance(this).messageNotifier.setVisibleThread(viewModel.threadId)
+        viewModel.openGroup?.let { JobQueue.shared.setOpenGroupInForeground(it.groupId, true) }
 
         contentResolver.registerContentObserver(
             MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
@@ -482,6 +491,7 @@ class ConversationActivityV2 : PassphraseRequiredActionBarActivity(), InputBarDe
     override fun onPause() {
         super.onPause()
         ApplicationContext.getInstance(this).messageNotifier.setVisibleThread(-1)
+        viewModel.openGroup?.let { JobQueue.shared.setOpenGroupInForeground(it.groupId, false) }
         contentResolver.unregisterContentObserver(screenshotObserver)
     }
 
@@ -502,12 +512,13 @@ class ConversationActivityV2 : PassphraseRequiredActionBarActivity(), InputBarDe
     }
 
     override fun onCreateLoader(id: Int, bundle: Bundle?): Loader<Cursor> {
-        return ConversationLoader(viewModel.threadId, reverseMessageList, this@ConversationActivityV2)
+        return ConversationLoader(viewModel.threadId, reverseMessageList, this@ConversationActivityV2) { adapter.bindContext }
     }
 
     override fun onLoadFinished(loader: Loader<Cursor>, cursor: Cursor?) {
         val oldCount = adapter.itemCount
         val newCount = cursor?.count ?: 0
+        (loader as? ConversationLoader)?.bindContext?.let { adapter.bindContext = it }
         adapter.changeCursor(cursor)
 
         if (cursor != null) {
@@ -671,11 +682,17 @@ class ConversationActivityV2 : PassphraseRequiredActionBarActivity(), InputBarDe
     }
 
     private fun setUpRecipientObserver() {
-        viewModel.recipient?.addListener(this)
+        val recipient = viewModel.recipient ?: return
+        recipient.addListener(this)
+        // Keep the recipient we listen to from being evicted and replaced in the cache
+        Recipient.pin(recipient.address)
+        pinnedRecipientAddress = recipient.address
     }
 
     private fun tearDownRecipientObserver() {
         viewModel.recipient?.removeListener(this)
+        pinnedRecipientAddress?.let(Recipient::unpin)
+        pinnedRecipientAddress = null
     }
 
     private fun getLatestOpenGroupInfoIfNeeded() {
@@ -1070,6 +1087,8 @@ class ConversationActivityV2 : PassphraseRequiredActionBarActivity(), InputBarDe
             blindedRecipient?.blocksCommunityMessageRequests == true -> R.string.activity_conversation_empty_state_blocks_community_requests to recipient.toShortString()
             else -> R.string.activity_conversation_empty_state_default to recipient.toShortString()
         }
+        // Updated again once the first cursor is loaded
+        if (!adapterLazy.isInitialized()) return
         val showPlaceholder = adapter.itemCount == 0
         binding.placeholderText.isVisible = showPlaceholder
         if (showPlaceholder) {
@@ -3,26 +3,22 @@ package org.thoughtcrime.securesms.conversation.v2
 import android.content.Context
 import android.content.Intent
 import android.database.Cursor
-import android.util.SparseArray
-import android.util.SparseBooleanArray
 import android.view.LayoutInflater
 import android.view.MotionEvent
 import android.view.View
 import android.view.ViewGroup
-import androidx.annotation.WorkerThread
-import androidx.core.util.getOrDefault
-import androidx.core.util.set
 import androidx.lifecycle.LifecycleCoroutineScope
 import androidx.recyclerview.widget.RecyclerView.ViewHolder
 import kotlinx.coroutines.Dispatchers.IO
-import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.Dispatchers.Main
 import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import network.loki.messenger.R
 import network.loki.messenger.databinding.ViewVisibleMessageBinding
-import org.session.libsession.messaging.contacts.Contact
 import org.thoughtcrime.securesms.conversation.v2.messages.ControlMessageView
+import org.thoughtcrime.securesms.conversation.v2.messages.ConversationBindContext
 import org.thoughtcrime.securesms.conversation.v2.messages.VisibleMessageView
 import org.thoughtcrime.securesms.conversation.v2.messages.VisibleMessageViewDelegate
 import org.thoughtcrime.securesms.database.CursorRecyclerViewAdapter
@@ -37,6 +33,7 @@ import kotlin.math.min
 class ConversationAdapter(
     context: Context,
     cursor: Cursor,
+    bindContext: ConversationBindContext?,
     originalLastSeen: Long,
     private val isReversed: Boolean,
     private val onItemPress: (MessageRecord, Int, VisibleMessageView, MotionEvent) -> Unit,
@@ -53,25 +50,44 @@ class ConversationAdapter(
     private var searchQuery: String? = null
     var visibleMessageViewDelegate: VisibleMessageViewDelegate? = null
 
-    private val updateQueue = Channel<String>(1024, onBufferOverflow = BufferOverflow.DROP_OLDEST)
-    private val contactCache = SparseArray<Contact>(100)
-    private val contactLoadedCache = SparseBooleanArray(100)
+    private val contactRequests = Channel<String>(Channel.UNLIMITED)
+    // Senders whose contact is being loaded, only accessed from the main thread
+    private val pendingContacts = mutableSetOf<String>()
     private val lastSeen = AtomicLong(originalLastSeen)
 
+    /**
+     * What rows are bound against, replaced with the one loaded alongside each new cursor. Binding
+     * doesn't query the database, the contacts of unknown senders are loaded in the background.
+     */
+    @Volatile
+    var bindContext: ConversationBindContext? = null
+        set(value) {
+            field = value?.copy(requestContact = ::requestContact)
+        }
+
     init {
+        this.bindContext = bindContext
         lifecycleCoroutineScope.launch(IO) {
             while (isActive) {
-                val item = updateQueue.receive()
-                val contact = getSenderInfo(item) ?: continue
-                contactCache[item.hashCode()] = contact
-                contactLoadedCache[item.hashCode()] = true
+                val sessionIds = mutableSetOf(contactRequests.receive())
+                // Load everything that was requested in the meantime at once
+                while (true) {
+                    sessionIds += contactRequests.tryReceive().getOrNull() ?: break
+                }
+                val contacts = contactDB.getContactsWithSessionIDs(sessionIds)
+                withContext(Main) {
+                    pendingContacts -= sessionIds
+                    this@ConversationAdapter.bindContext = this@ConversationAdapter.bindContext?.withContacts(sessionIds, contacts) ?: return@withContext
+                    notifyItemRangeChanged(0, itemCount)
+                }
             }
         }
     }
 
-    @WorkerThread
-    private fun getSenderInfo(sender: String): Contact? {
-        return contactDB.getContactWithSessionID(sender)
+    private fun requestContact(sessionId: String) {
+        if (pendingContacts.add(sessionId)) {
+            contactRequests.trySend(sessionId)
+        }
     }
 
     sealed class ViewType(val rawValue: Int) {
@@ -112,19 +128,12 @@ class ConversationAdapter(
         val messageBefore = getMessageBefore(position, cursor)
         when (viewHolder) {
             is VisibleMessageViewHolder -> {
+                val bindContext = bindContext ?: return
                 val visibleMessageView = ViewVisibleMessageBinding.bind(viewHolder.view).visibleMessageView
                 val isSelected = selectedItems.contains(message)
                 visibleMessageView.snIsSelected = isSelected
                 visibleMessageView.indexInAdapter = position
                 val senderId = message.individualRecipient.address.serialize()
-                val senderIdHash = senderId.hashCode()
-                updateQueue.trySend(senderId)
-                if (contactCache[senderIdHash] == null && !contactLoadedCache.getOrDefault(senderIdHash, false)) {
-                    getSenderInfo(senderId)?.let { contact ->
-                        contactCache[senderIdHash] = contact
-                    }
-                }
-                val contact = contactCache[senderIdHash]
 
                 visibleMessageView.bind(
                         message,
@@ -132,7 +141,7 @@ class ConversationAdapter(
                         getMessageAfter(position, cursor),
                         glide,
                         searchQuery,
-                        contact,
+                        bindContext,
                         senderId,
                         lastSeen.get(),
                         visibleMessageViewDelegate,
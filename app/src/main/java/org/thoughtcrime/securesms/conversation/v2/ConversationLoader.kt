@@ -2,16 +2,25 @@ package org.thoughtcrime.securesms.conversation.v2
 
 import android.content.Context
 import android.database.Cursor
+import org.thoughtcrime.securesms.conversation.v2.messages.ConversationBindContext
 import org.thoughtcrime.securesms.dependencies.DatabaseComponent
 import org.thoughtcrime.securesms.util.AbstractCursorLoader
 
 class ConversationLoader(
     private val threadID: Long,
     private val reverse: Boolean,
-    context: Context
+    context: Context,
+    private val previousBindContext: () -> ConversationBindContext? = { null }
 ) : AbstractCursorLoader(context) {
 
+    // Loaded alongside each cursor so that its rows are bound against the same state of the conversation
+    @Volatile
+    var bindContext: ConversationBindContext? = null
+        private set
+
     override fun getCursor(): Cursor {
-        return DatabaseComponent.get(context).mmsSmsDatabase().getConversation(threadID, reverse)
+        val cursor = DatabaseComponent.get(context).mmsSmsDatabase().getConversation(threadID, reverse)
+        bindContext = ConversationBindContext.load(context, threadID, previousBindContext())
+        return cursor
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package org.thoughtcrime.securesms.conversation.v2.messages
+
+import android.content.Context
+import androidx.annotation.WorkerThread
+import org.session.libsession.messaging.contacts.Contact
+import org.session.libsession.messaging.open_groups.GroupMemberRole
+import org.session.libsession.messaging.open_groups.OpenGroup
+import org.session.libsession.messaging.open_groups.OpenGroupApi
+import org.session.libsession.utilities.recipients.Recipient
+import org.session.libsignal.utilities.Log
+import org.thoughtcrime.securesms.dependencies.DatabaseComponent
+
+/**
+ * Everything about a conversation that binding one of its messages needs, loaded in the
+ * background so that [VisibleMessageView.bind] doesn't have to touch the database while scrolling.
+ *
+ * Instances are immutable, a new one is loaded whenever the conversation changes and [withContacts]
+ * adds the contacts of senders that weren't known yet. Looking up an unknown sender calls
+ * [requestContact] so that it can be loaded in the background and the message bound again.
+ */
+data class ConversationBindContext(
+    val thread: Recipient,
+    val openGroup: OpenGroup?,
+    val capabilities: Set<String>,
+    val moderators: Set<String>,
+    val lastMessageId: Long,
+    // Senders that were looked up, mapped to null when they don't have a contact
+    val contacts: Map<String, Contact?> = emptyMap(),
+    val requestContact: (String) -> Unit = {}
+) {
+
+    val isGroupThread: Boolean get() = thread.isGroupRecipient
+
+    val contactContext: Contact.ContactContext get() = Contact.contextForRecipient(thread)
+
+    // Regular conversations and servers that don't report their capabilities support reactions
+    val supportsReactions: Boolean
+        get() = capabilities.isEmpty() || OpenGroupApi.Capability.REACTIONS.name.lowercase() in capabilities
+
+    fun isModerator(publicKey: String): Boolean = publicKey in moderators
+
+    fun contact(sessionId: String): Contact? {
+        if (sessionId !in contacts) requestContact(sessionId)
+        return contacts[sessionId]
+    }
+
+    fun withContacts(sessionIds: Collection<String>, loaded: Collection<Contact>): ConversationBindContext {
+        val loadedById = loaded.associateBy { it.sessionID }
+        return copy(contacts = contacts + sessionIds.associateWith { loadedById[it] })
+    }
+
+    companion object {
+        private const val TAG = "ConversationBindContext"
+
+        private val moderatorRoles = listOf(
+            GroupMemberRole.MODERATOR, GroupMemberRole.ADMIN,
+            GroupMemberRole.HIDDEN_MODERATOR, GroupMemberRole.HIDDEN_ADMIN
+        )
+
+        /**
+         * Loads the context of [threadId], or null if the thread doesn't exist anymore. The contacts
+         * already known to [previous] are reloaded so that name changes are picked up.
+         */
+        @JvmStatic
+        @WorkerThread
+        fun load(context: Context, threadId: Long, previous: ConversationBindContext? = null): ConversationBindContext? {
+            val databases = DatabaseComponent.get(context)
+            val thread = databases.threadDatabase().getRecipientForThreadId(threadId) ?: return null
+            val openGroup = databases.lokiThreadDatabase().getOpenGroupChat(threadId)
+            val capabilities = openGroup?.let { databases.lokiAPIDatabase().getServerCapabilities(it.server).toSet() } ?: emptySet()
+            val moderators = openGroup?.let { group ->
+                val memberDatabase = databases.groupMemberDatabase()
+                moderatorRoles.flatMapTo(mutableSetOf()) { memberDatabase.getGroupMembers(group.groupId, it) }
+            } ?: emptySet()
+            val lastMessageId = try {
+                databases.mmsSmsDatabase().getLastMessageID(threadId)
+            } catch (e: Exception) {
+                // Empty conversation
+                Log.d(TAG, "No last message for thread $threadId")
+                -1L
+            }
+            val contactIds = previous?.contacts?.keys ?: emptySet()
+            val contacts = databases.sessionContactDatabase().getContactsWithSessionIDs(contactIds)
+
+            return ConversationBindContext(thread, openGroup, capabilities, moderators, lastMessageId)
+                .withContacts(contactIds, contacts)
+        }
+    }
+}
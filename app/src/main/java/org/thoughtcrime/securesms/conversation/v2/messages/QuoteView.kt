@@ -68,9 +68,9 @@ class QuoteView @JvmOverloads constructor(context: Context, attrs: AttributeSet?
     // region Updating
     fun bind(authorPublicKey: String, body: String?, attachments: SlideDeck?, thread: Recipient,
         isOutgoingMessage: Boolean, isOpenGroupInvitation: Boolean, threadID: Long,
-        isOriginalMissing: Boolean, glide: GlideRequests) {
+        isOriginalMissing: Boolean, glide: GlideRequests, bindContext: ConversationBindContext? = null) {
         // Author
-        val author = contactDb.getContactWithSessionID(authorPublicKey)
+        val author = if (bindContext != null) bindContext.contact(authorPublicKey) else contactDb.getContactWithSessionID(authorPublicKey)
         val localNumber = TextSecurePreferences.getLocalNumber(context)
         val quoteIsLocalUser = localNumber != null && localNumber == author?.sessionID
 
@@ -80,7 +80,12 @@ class QuoteView @JvmOverloads constructor(context: Context, attrs: AttributeSet?
         binding.quoteViewAuthorTextView.text = authorDisplayName
         binding.quoteViewAuthorTextView.setTextColor(getTextColor(isOutgoingMessage))
         // Body
-        binding.quoteViewBodyTextView.text = if (isOpenGroupInvitation) resources.getString(R.string.open_group_invitation_view__open_group_invitation) else MentionUtilities.highlightMentions((body ?: "").toSpannable(), threadID, context)
+        binding.quoteViewBodyTextView.text = when {
+            isOpenGroupInvitation -> resources.getString(R.string.open_group_invitation_view__open_group_invitation)
+            bindContext != null -> MentionUtilities.highlightMentions((body ?: "").toSpannable(), false, context,
+                { bindContext.openGroup }, bindContext::contact).toString()
+            else -> MentionUtilities.highlightMentions((body ?: "").toSpannable(), threadID, context)
+        }
         binding.quoteViewBodyTextView.setTextColor(getTextColor(isOutgoingMessage))
         // Accent line / attachment preview
         val hasAttachments = (attachments != null && attachments.asAttachments().isNotEmpty()) && !isOriginalMissing
@@ -27,12 +27,12 @@ import org.session.libsession.messaging.sending_receiving.attachments.Attachment
 import org.session.libsession.messaging.sending_receiving.attachments.DatabaseAttachment
 import org.session.libsession.utilities.ThemeUtil
 import org.session.libsession.utilities.getColorFromAttr
-import org.session.libsession.utilities.recipients.Recipient
 import org.thoughtcrime.securesms.conversation.v2.ConversationActivityV2
 import org.thoughtcrime.securesms.conversation.v2.ModalUrlBottomSheet
 import org.thoughtcrime.securesms.conversation.v2.utilities.MentionUtilities
 import org.thoughtcrime.securesms.conversation.v2.utilities.ModalURLSpan
 import org.thoughtcrime.securesms.conversation.v2.utilities.TextUtilities.getIntersectedModalSpans
+import org.thoughtcrime.securesms.database.model.MessageId
 import org.thoughtcrime.securesms.database.model.MessageRecord
 import org.thoughtcrime.securesms.database.model.MmsMessageRecord
 import org.thoughtcrime.securesms.database.model.SmsMessageRecord
@@ -62,12 +62,13 @@ class VisibleMessageContentView : ConstraintLayout {
         isStartOfMessageCluster: Boolean = true,
         isEndOfMessageCluster: Boolean = true,
         glide: GlideRequests = GlideApp.with(this),
-        thread: Recipient,
+        bindContext: ConversationBindContext,
         searchQuery: String? = null,
         contactIsTrusted: Boolean = true,
         onAttachmentNeedsDownload: (Long, Long) -> Unit,
         suppressThumbnails: Boolean = false
     ) {
+        val thread = bindContext.thread
         // Background
         val color = if (message.isOutgoing) context.getAccentColor()
         else context.getColorFromAttr(R.attr.message_received_background_color)
@@ -121,7 +122,7 @@ class VisibleMessageContentView : ConstraintLayout {
             }
             binding.quoteView.root.bind(quote.author.toString(), quoteText, quote.attachment, thread,
                 message.isOutgoing, message.isOpenGroupInvitation, message.threadId,
-                quote.isOriginalMissing, glide)
+                quote.isOriginalMissing, glide, bindContext)
             onContentClick.add { event ->
                 val r = Rect()
                 binding.quoteView.root.getGlobalVisibleRect(r)
@@ -225,7 +226,8 @@ class VisibleMessageContentView : ConstraintLayout {
             val color = getTextColor(context, message)
             binding.bodyTextView.setTextColor(color)
             binding.bodyTextView.setLinkTextColor(color)
-            val body = getBodySpans(context, message, searchQuery)
+            val body = getBodySpans(context, message, searchQuery, bindContext)
+            binding.bodyTextView.setCandidatesCacheKey(MessageId(message.id, message.isMms))
             binding.bodyTextView.text = body
             onContentClick.add { e: MotionEvent ->
                 binding.bodyTextView.getIntersectedModalSpans(e).iterator().forEach { span ->
@@ -278,10 +280,10 @@ class VisibleMessageContentView : ConstraintLayout {
     // region Convenience
     companion object {
 
-        fun getBodySpans(context: Context, message: MessageRecord, searchQuery: String?): Spannable {
+        fun getBodySpans(context: Context, message: MessageRecord, searchQuery: String?, bindContext: ConversationBindContext): Spannable {
             var body = message.body.toSpannable()
 
-            body = MentionUtilities.highlightMentions(body, message.isOutgoing, message.threadId, context)
+            body = MentionUtilities.highlightMentions(body, message.isOutgoing, context, { bindContext.openGroup }, bindContext::contact)
             body = SearchUtil.getHighlightedSpan(Locale.getDefault(),
                 { BackgroundColorSpan(Color.WHITE) }, body, searchQuery)
             body = SearchUtil.getHighlightedSpan(Locale.getDefault(),
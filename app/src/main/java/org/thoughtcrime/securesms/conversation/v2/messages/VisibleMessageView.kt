@@ -27,9 +27,6 @@ import androidx.core.view.marginBottom
 import dagger.hilt.android.AndroidEntryPoint
 import network.loki.messenger.R
 import network.loki.messenger.databinding.ViewVisibleMessageBinding
-import org.session.libsession.messaging.contacts.Contact
-import org.session.libsession.messaging.contacts.Contact.ContactContext
-import org.session.libsession.messaging.open_groups.OpenGroupApi
 import org.session.libsession.snode.SnodeAPI
 import org.session.libsession.utilities.Address
 import org.session.libsession.utilities.ViewUtil
@@ -38,14 +35,9 @@ import org.session.libsignal.utilities.IdPrefix
 import org.session.libsignal.utilities.ThreadUtils
 import org.thoughtcrime.securesms.ApplicationContext
 import org.thoughtcrime.securesms.conversation.v2.ConversationActivityV2
-import org.thoughtcrime.securesms.database.LokiAPIDatabase
-import org.thoughtcrime.securesms.database.LokiThreadDatabase
 import org.thoughtcrime.securesms.database.MmsDatabase
-import org.thoughtcrime.securesms.database.MmsSmsDatabase
 import org.thoughtcrime.securesms.database.SmsDatabase
-import org.thoughtcrime.securesms.database.ThreadDatabase
 import org.thoughtcrime.securesms.database.model.MessageRecord
-import org.thoughtcrime.securesms.groups.OpenGroupManager
 import org.thoughtcrime.securesms.home.UserDetailsBottomSheet
 import org.thoughtcrime.securesms.mms.GlideApp
 import org.thoughtcrime.securesms.mms.GlideRequests
@@ -64,10 +56,6 @@ import kotlin.math.sqrt
 @AndroidEntryPoint
 class VisibleMessageView : LinearLayout {
 
-    @Inject lateinit var threadDb: ThreadDatabase
-    @Inject lateinit var lokiThreadDb: LokiThreadDatabase
-    @Inject lateinit var lokiApiDb: LokiAPIDatabase
-    @Inject lateinit var mmsSmsDb: MmsSmsDatabase
     @Inject lateinit var smsDb: SmsDatabase
     @Inject lateinit var mmsDb: MmsDatabase
 
@@ -127,15 +115,16 @@ class VisibleMessageView : LinearLayout {
         next: MessageRecord? = null,
         glide: GlideRequests = GlideApp.with(this),
         searchQuery: String? = null,
-        contact: Contact? = null,
+        bindContext: ConversationBindContext,
         senderSessionID: String,
         lastSeen: Long,
         delegate: VisibleMessageViewDelegate? = null,
         onAttachmentNeedsDownload: (Long, Long) -> Unit
     ) {
         val threadID = message.threadId
-        val thread = threadDb.getRecipientForThreadId(threadID) ?: return
-        val isGroupThread = thread.isGroupRecipient
+        val thread = bindContext.thread
+        val isGroupThread = bindContext.isGroupThread
+        val contact = bindContext.contact(senderSessionID)
         val isStartOfMessageCluster = isStartOfMessageCluster(message, previous, isGroupThread)
         val isEndOfMessageCluster = isEndOfMessageCluster(message, next, isGroupThread)
         // Show profile picture and sender name if this is a group thread AND
@@ -166,7 +155,7 @@ class VisibleMessageView : LinearLayout {
                 binding.profilePictureView.update(message.individualRecipient)
                 binding.profilePictureView.setOnClickListener {
                     if (thread.isOpenGroupRecipient) {
-                        val openGroup = lokiThreadDb.getOpenGroupChat(threadID)
+                        val openGroup = bindContext.openGroup
                         if (IdPrefix.fromValue(senderSessionID) == IdPrefix.BLINDED && openGroup?.canWrite == true) {
                             // TODO: support v2 soon
                             val intent = Intent(context, ConversationActivityV2::class.java)
@@ -179,23 +168,12 @@ class VisibleMessageView : LinearLayout {
                     }
                 }
                 if (thread.isOpenGroupRecipient) {
-                    val openGroup = lokiThreadDb.getOpenGroupChat(threadID) ?: return
-                    var standardPublicKey = ""
-                    var blindedPublicKey: String? = null
-                    if (IdPrefix.fromValue(senderSessionID)?.isBlinded() == true) {
-                        blindedPublicKey = senderSessionID
-                    } else {
-                        standardPublicKey = senderSessionID
-                    }
-                    val isModerator = OpenGroupManager.isUserModerator(context, openGroup.groupId, standardPublicKey, blindedPublicKey)
-                    binding.moderatorIconImageView.isVisible = !message.isOutgoing && isModerator
+                    binding.moderatorIconImageView.isVisible = !message.isOutgoing && bindContext.isModerator(senderSessionID)
                 }
             }
         }
         binding.senderNameTextView.isVisible = !message.isOutgoing && (isStartOfMessageCluster && (isGroupThread || snIsSelected))
-        val contactContext =
-            if (thread.isOpenGroupRecipient) ContactContext.OPEN_GROUP else ContactContext.REGULAR
-        binding.senderNameTextView.text = contact?.displayName(contactContext) ?: senderSessionID
+        binding.senderNameTextView.text = contact?.displayName(bindContext.contactContext) ?: senderSessionID
         // Unread marker
         binding.unreadMarkerContainer.isVisible = lastSeen != -1L && message.timestamp > lastSeen && (previous == null || previous.timestamp <= lastSeen) && !message.isOutgoing
         // Date break
@@ -221,7 +199,7 @@ class VisibleMessageView : LinearLayout {
             }
             binding.messageStatusImageView.contentDescription = contentDescription
 
-            val lastMessageID = mmsSmsDb.getLastMessageID(message.threadId)
+            val lastMessageID = bindContext.lastMessageId
             binding.messageStatusTextView.isVisible = (
                 textId != null && (
                     !message.isSent ||
@@ -246,8 +224,7 @@ class VisibleMessageView : LinearLayout {
         binding.emojiReactionsView.root.layoutParams = emojiLayoutParams
 
         if (message.reactions.isNotEmpty()) {
-            val capabilities = lokiThreadDb.getOpenGroupChat(threadID)?.server?.let { lokiApiDb.getServerCapabilities(it) }
-            if (capabilities.isNullOrEmpty() || capabilities.contains(OpenGroupApi.Capability.REACTIONS.name.lowercase())) {
+            if (bindContext.supportsReactions) {
                 binding.emojiReactionsView.root.setReactions(message.id, message.reactions, message.isOutgoing, delegate)
                 binding.emojiReactionsView.root.isVisible = true
             } else {
@@ -265,7 +242,7 @@ class VisibleMessageView : LinearLayout {
             isStartOfMessageCluster,
             isEndOfMessageCluster,
             glide,
-            thread,
+            bindContext,
             searchQuery,
             message.isOutgoing || isGroupThread || (contact?.isTrusted ?: false),
             onAttachmentNeedsDownload
@@ -29,6 +29,6 @@ object MentionManagerUtilities {
             reader.close()
             result.add(TextSecurePreferences.getLocalNumber(context)!!)
         }
-        MentionsManager.userPublicKeyCache[threadID] = result
+        MentionsManager.setCandidates(threadID, result)
     }
 }
\ No newline at end of file
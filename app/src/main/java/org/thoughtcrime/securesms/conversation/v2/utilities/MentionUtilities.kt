@@ -11,6 +11,7 @@ import androidx.core.content.res.ResourcesCompat
 import network.loki.messenger.R
 import nl.komponents.kovenant.combine.Tuple2
 import org.session.libsession.messaging.contacts.Contact
+import org.session.libsession.messaging.open_groups.OpenGroup
 import org.session.libsession.messaging.utilities.SodiumUtilities
 import org.session.libsession.utilities.TextSecurePreferences
 import org.thoughtcrime.securesms.dependencies.DatabaseComponent
@@ -27,13 +28,32 @@ object MentionUtilities {
 
     @JvmStatic
     fun highlightMentions(text: CharSequence, isOutgoingMessage: Boolean, threadID: Long, context: Context): SpannableString {
+        val databases = DatabaseComponent.get(context)
+        return highlightMentions(
+            text, isOutgoingMessage, context,
+            getOpenGroup = { databases.storage().getOpenGroup(threadID) },
+            getContact = { databases.sessionContactDatabase().getContactWithSessionID(it) }
+        )
+    }
+
+    /**
+     * Looks up the open group and the mentioned contacts through [getOpenGroup] and [getContact],
+     * which are only called if [text] contains a mention.
+     */
+    fun highlightMentions(
+        text: CharSequence,
+        isOutgoingMessage: Boolean,
+        context: Context,
+        getOpenGroup: () -> OpenGroup?,
+        getContact: (String) -> Contact?
+    ): SpannableString {
         @Suppress("NAME_SHADOWING") var text = text
         val pattern = Pattern.compile("@[0-9a-fA-F]*")
         var matcher = pattern.matcher(text)
         val mentions = mutableListOf<Tuple2<Range<Int>, String>>()
         var startIndex = 0
         val userPublicKey = TextSecurePreferences.getLocalNumber(context)!!
-        val openGroup = DatabaseComponent.get(context).storage().getOpenGroup(threadID)
+        val openGroup by lazy(LazyThreadSafetyMode.NONE, getOpenGroup)
         if (matcher.find(startIndex)) {
             while (true) {
                 val publicKey = text.subSequence(matcher.start() + 1, matcher.end()).toString() // +1 to get rid of the @
@@ -41,7 +61,7 @@ object MentionUtilities {
                 val userDisplayName: String? = if (publicKey.equals(userPublicKey, ignoreCase = true) || isUserBlindedPublicKey) {
                     context.getString(R.string.MessageRecord_you)
                 } else {
-                    val contact = DatabaseComponent.get(context).sessionContactDatabase().getContactWithSessionID(publicKey)
+                    val contact = getContact(publicKey)
                     @Suppress("NAME_SHADOWING") val context = if (openGroup != null) Contact.ContactContext.OPEN_GROUP else Contact.ContactContext.REGULAR
                     contact?.displayName(context)
                 }
@@ -46,6 +46,7 @@ import org.session.libsession.messaging.sending_receiving.attachments.DatabaseAt
 import org.session.libsession.utilities.MediaTypes;
 import org.session.libsession.utilities.Util;
 import org.session.libsignal.utilities.ExternalStorageUtil;
+import org.session.libsignal.utilities.Hex;
 import org.session.libsignal.utilities.JsonUtil;
 import org.session.libsignal.utilities.Log;
 import org.thoughtcrime.securesms.crypto.AttachmentSecret;
@@ -62,6 +63,7 @@ import org.thoughtcrime.securesms.util.BitmapDecodingException;
 import org.thoughtcrime.securesms.util.BitmapUtil;
 import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.MediaUtil.ThumbnailData;
+import org.thoughtcrime.securesms.util.SqlUtil;
 import org.thoughtcrime.securesms.video.EncryptedMediaDataSource;
 
 import java.io.File;
@@ -69,7 +71,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -110,6 +116,7 @@ public class AttachmentDatabase extends Database {
           static final String STICKER_ID             = "sticker_id";
           static final String FAST_PREFLIGHT_ID      = "fast_preflight_id";
   public  static final String DATA_RANDOM            = "data_random";
+          static final String DATA_HASH              = "data_hash";
   private static final String THUMBNAIL_RANDOM       = "thumbnail_random";
           static final String WIDTH                  = "width";
           static final String HEIGHT                 = "height";
@@ -155,6 +162,11 @@ public class AttachmentDatabase extends Database {
     "CREATE INDEX IF NOT EXISTS part_sticker_pack_id_index ON " + TABLE_NAME + " (" + STICKER_PACK_ID + ");",
   };
 
+  // SHA-256 of the plaintext, rows with the same hash share a single data file
+  public static final String ADD_DATA_HASH_COMMAND = "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + DATA_HASH + " TEXT DEFAULT NULL;";
+
+  public static final String CREATE_DATA_HASH_INDEX = "CREATE INDEX IF NOT EXISTS part_data_hash_index ON " + TABLE_NAME + " (" + DATA_HASH + ");";
+
   private final ExecutorService thumbnailExecutor = Util.newSingleThreadedLifoExecutor();
 
   private final AttachmentSecret attachmentSecret;
@@ -254,6 +266,37 @@ public class AttachmentDatabase extends Database {
     }
   }
 
+  /**
+   * Loads the attachments of a batch of messages through the mms id index, quote attachments
+   * included, keyed by the id of the message they belong to.
+   */
+  public @NonNull Map<Long, List<DatabaseAttachment>> getAttachmentsForMessages(@NonNull Collection<Long> mmsIds) {
+    Map<Long, List<DatabaseAttachment>> results = new HashMap<>();
+    if (mmsIds.isEmpty()) return results;
+
+    SQLiteDatabase database = databaseHelper.getReadableDatabase();
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQuery(MMS_ID, mmsIds)) {
+      // The mms id index already returns each message's attachments in row id order
+      try (Cursor cursor = database.query(TABLE_NAME, PROJECTION, query.getWhere(), query.getWhereArgs(), null, null, MMS_ID + ", " + ROW_ID)) {
+        while (cursor != null && cursor.moveToNext()) {
+          for (DatabaseAttachment attachment : getAttachment(cursor)) {
+            List<DatabaseAttachment> attachments = results.get(attachment.getMmsId());
+
+            if (attachments == null) {
+              attachments = new ArrayList<>();
+              results.put(attachment.getMmsId(), attachments);
+            }
+
+            attachments.add(attachment);
+          }
+        }
+      }
+    }
+
+    return results;
+  }
+
   public @NonNull List<DatabaseAttachment> getPendingAttachments() {
     final SQLiteDatabase           database    = databaseHelper.getReadableDatabase();
     final List<DatabaseAttachment> attachments = new LinkedList<>();
@@ -279,90 +322,20 @@ public class AttachmentDatabase extends Database {
         queryBuilder.append(" OR ");
       }
     }
-    String idsAsString = queryBuilder.toString();
-    SQLiteDatabase database = databaseHelper.getReadableDatabase();
-    Cursor cursor = null;
-    List<MmsAttachmentInfo> attachmentInfos = new ArrayList<>();
-    try {
-      cursor = database.query(TABLE_NAME, new String[] { DATA, THUMBNAIL, CONTENT_TYPE}, idsAsString, null, null, null, null);
-      while (cursor != null && cursor.moveToNext()) {
-        attachmentInfos.add(new MmsAttachmentInfo(cursor.getString(0), cursor.getString(1), cursor.getString(2)));
-      }
-    } finally {
-      if (cursor != null) {
-        cursor.close();
-      }
-    }
-    deleteAttachmentsOnDisk(attachmentInfos);
-    database.delete(TABLE_NAME, idsAsString, null);
-    notifyAttachmentListeners();
+    deleteAttachments(queryBuilder.toString(), null);
   }
 
-  @SuppressWarnings("ResultOfMethodCallIgnored")
   void deleteAttachmentsForMessage(long mmsId) {
-    SQLiteDatabase database = databaseHelper.getWritableDatabase();
-    Cursor cursor           = null;
-
-    try {
-      cursor = database.query(TABLE_NAME, new String[] {DATA, THUMBNAIL, CONTENT_TYPE}, MMS_ID + " = ?",
-                              new String[] {mmsId+""}, null, null, null);
-
-      while (cursor != null && cursor.moveToNext()) {
-        deleteAttachmentOnDisk(cursor.getString(0), cursor.getString(1), cursor.getString(2));
-      }
-    } finally {
-      if (cursor != null)
-        cursor.close();
-    }
-
-    database.delete(TABLE_NAME, MMS_ID + " = ?", new String[] {mmsId + ""});
-    notifyAttachmentListeners();
+    deleteAttachments(MMS_ID + " = ?", new String[] {mmsId + ""});
   }
 
-  @SuppressWarnings("ResultOfMethodCallIgnored")
   void deleteAttachmentsForMessages(long[] mmsIds) {
-    SQLiteDatabase database = databaseHelper.getWritableDatabase();
-    Cursor cursor           = null;
-    String mmsIdString = StringUtils.join(mmsIds, ',');
-
-    try {
-      cursor = database.query(TABLE_NAME, new String[] {DATA, THUMBNAIL, CONTENT_TYPE}, MMS_ID + " IN (?)",
-              new String[] {mmsIdString}, null, null, null);
-
-      while (cursor != null && cursor.moveToNext()) {
-        deleteAttachmentOnDisk(cursor.getString(0), cursor.getString(1), cursor.getString(2));
-      }
-    } finally {
-      if (cursor != null)
-        cursor.close();
-    }
-
-    database.delete(TABLE_NAME, MMS_ID + " IN (?)", new String[] {mmsIdString});
-    notifyAttachmentListeners();
+    deleteAttachments(MMS_ID + " IN (" + StringUtils.join(mmsIds, ',') + ")", null);
   }
 
   public void deleteAttachment(@NonNull AttachmentId id) {
-    SQLiteDatabase database = databaseHelper.getWritableDatabase();
-
-    try (Cursor cursor = database.query(TABLE_NAME,
-                                        new String[]{DATA, THUMBNAIL, CONTENT_TYPE},
-                                        PART_ID_WHERE,
-                                        id.toStrings(),
-                                        null,
-                                        null,
-                                        null))
-    {
-      if (cursor == null || !cursor.moveToNext()) {
-        Log.w(TAG, "Tried to delete an attachment, but it didn't exist.");
-        return;
-      }
-      String data        = cursor.getString(0);
-      String thumbnail   = cursor.getString(1);
-      String contentType = cursor.getString(2);
-
-      database.delete(TABLE_NAME, PART_ID_WHERE, id.toStrings());
-      deleteAttachmentOnDisk(data, thumbnail, contentType);
-      notifyAttachmentListeners();
+    if (deleteAttachments(PART_ID_WHERE, id.toStrings()) == 0) {
+      Log.w(TAG, "Tried to delete an attachment, but it didn't exist.");
     }
   }
 
@@ -381,14 +354,44 @@ public class AttachmentDatabase extends Database {
     notifyAttachmentListeners();
   }
 
-  private void deleteAttachmentsOnDisk(List<MmsAttachmentInfo> mmsAttachmentInfos) {
-    for (MmsAttachmentInfo info : mmsAttachmentInfos) {
-      if (info.getDataFile() != null && !TextUtils.isEmpty(info.getDataFile())) {
-        File data = new File(info.getDataFile());
-        if (data.exists()) {
-          data.delete();
+  /**
+   * Deletes the matching rows and then the files only they referenced. The rows are read and
+   * deleted in one transaction so a concurrent insert can't pick one of their files as a duplicate
+   * once we've decided to remove it.
+   */
+  private int deleteAttachments(@NonNull String where, @Nullable String[] args) {
+    SQLiteDatabase          database        = databaseHelper.getWritableDatabase();
+    List<MmsAttachmentInfo> attachmentInfos = new ArrayList<>();
+
+    database.beginTransaction();
+    try {
+      try (Cursor cursor = database.query(TABLE_NAME, new String[] {DATA, THUMBNAIL, CONTENT_TYPE, DATA_HASH}, where, args, null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          attachmentInfos.add(new MmsAttachmentInfo(cursor.getString(0), cursor.getString(1), cursor.getString(2), cursor.getString(3)));
         }
       }
+
+      if (!attachmentInfos.isEmpty()) {
+        database.delete(TABLE_NAME, where, args);
+      }
+
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+
+    if (!attachmentInfos.isEmpty()) {
+      deleteAttachmentsOnDisk(attachmentInfos);
+      notifyAttachmentListeners();
+    }
+
+    return attachmentInfos.size();
+  }
+
+  private void deleteAttachmentsOnDisk(List<MmsAttachmentInfo> mmsAttachmentInfos) {
+    for (MmsAttachmentInfo info : mmsAttachmentInfos) {
+      deleteDataFileIfUnreferenced(info.getDataFile(), info.getDataHash());
+
       if (info.getThumbnailFile() != null && !TextUtils.isEmpty(info.getThumbnailFile())) {
         File thumbnail = new File(info.getThumbnailFile());
         if (thumbnail.exists()) {
@@ -405,19 +408,28 @@ public class AttachmentDatabase extends Database {
     }
   }
 
+  /**
+   * Data files are shared between all rows with the same content hash, so a file is only removed
+   * once no row points at it anymore. Must be called after the row releasing it was written.
+   */
   @SuppressWarnings("ResultOfMethodCallIgnored")
-  private void deleteAttachmentOnDisk(@Nullable String data, @Nullable String thumbnail, @Nullable String contentType) {
-    if (!TextUtils.isEmpty(data)) {
-      new File(data).delete();
+  private void deleteDataFileIfUnreferenced(@Nullable String data, @Nullable String hash) {
+    if (TextUtils.isEmpty(data)) {
+      return;
     }
 
-    if (!TextUtils.isEmpty(thumbnail)) {
-      new File(thumbnail).delete();
+    if (hash != null) {
+      try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, new String[] {ROW_ID},
+                                                                      DATA_HASH + " = ? AND " + DATA + " = ?",
+                                                                      new String[] {hash, data}, null, null, null, "1"))
+      {
+        if (cursor != null && cursor.moveToFirst()) {
+          return;
+        }
+      }
     }
 
-    if (MediaUtil.isImageType(contentType) || thumbnail != null) {
-      Glide.get(context).clearDiskCache();
-    }
+    new File(data).delete();
   }
 
   public void insertAttachmentsForPlaceholder(long mmsId, @NonNull AttachmentId attachmentId, @NonNull InputStream inputStream)
@@ -427,27 +439,43 @@ public class AttachmentDatabase extends Database {
     SQLiteDatabase     database    = databaseHelper.getWritableDatabase();
     ContentValues      values      = new ContentValues();
     DataInfo           dataInfo    = setAttachmentData(inputStream);
+    boolean            isThumbnail = placeholder != null && placeholder.isQuote() && !placeholder.getContentType().startsWith("image");
+    int                updated;
 
-    if (placeholder != null && placeholder.isQuote() && !placeholder.getContentType().startsWith("image")) {
-      values.put(THUMBNAIL, dataInfo.file.getAbsolutePath());
-      values.put(THUMBNAIL_RANDOM, dataInfo.random);
-    } else {
-      values.put(DATA, dataInfo.file.getAbsolutePath());
-      values.put(SIZE, dataInfo.length);
-      values.put(DATA_RANDOM, dataInfo.random);
+    database.beginTransaction();
+    try {
+      if (isThumbnail) {
+        values.put(THUMBNAIL, dataInfo.file.getAbsolutePath());
+        values.put(THUMBNAIL_RANDOM, dataInfo.random);
+      } else {
+        dataInfo = deduplicate(database, dataInfo);
+        values.put(DATA, dataInfo.file.getAbsolutePath());
+        values.put(SIZE, dataInfo.length);
+        values.put(DATA_RANDOM, dataInfo.random);
+        values.put(DATA_HASH, dataInfo.hash);
+      }
+
+      values.put(TRANSFER_STATE, AttachmentTransferProgress.TRANSFER_PROGRESS_DONE);
+      values.put(CONTENT_LOCATION, (String)null);
+      values.put(CONTENT_DISPOSITION, (String)null);
+      values.put(DIGEST, (byte[])null);
+      values.put(NAME, (String) null);
+      values.put(FAST_PREFLIGHT_ID, (String)null);
+      values.put(URL, "");
+
+      updated = database.update(TABLE_NAME, values, PART_ID_WHERE, attachmentId.toStrings());
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
     }
 
-    values.put(TRANSFER_STATE, AttachmentTransferProgress.TRANSFER_PROGRESS_DONE);
-    values.put(CONTENT_LOCATION, (String)null);
-    values.put(CONTENT_DISPOSITION, (String)null);
-    values.put(DIGEST, (byte[])null);
-    values.put(NAME, (String) null);
-    values.put(FAST_PREFLIGHT_ID, (String)null);
-    values.put(URL, "");
-
-    if (database.update(TABLE_NAME, values, PART_ID_WHERE, attachmentId.toStrings()) == 0) {
-      //noinspection ResultOfMethodCallIgnored
-      dataInfo.file.delete();
+    if (updated == 0) {
+      if (isThumbnail) {
+        //noinspection ResultOfMethodCallIgnored
+        dataInfo.file.delete();
+      } else {
+        deleteDataFileIfUnreferenced(dataInfo.file.getAbsolutePath(), dataInfo.hash);
+      }
     } else {
       notifyConversationListeners(DatabaseComponent.get(context).mmsDatabase().getThreadIdForMessage(mmsId));
       notifyConversationListListeners();
@@ -539,16 +567,32 @@ public class AttachmentDatabase extends Database {
       throw new MmsException("No attachment data found!");
     }
 
-    dataInfo = setAttachmentData(dataInfo.file, mediaStream.getStream());
+    // The old file may be shared with other attachments, so never rewrite it in place
+    DataInfo previous = dataInfo;
+    dataInfo = setAttachmentData(mediaStream.getStream());
 
-    ContentValues contentValues = new ContentValues();
-    contentValues.put(SIZE, dataInfo.length);
-    contentValues.put(CONTENT_TYPE, mediaStream.getMimeType());
-    contentValues.put(WIDTH, mediaStream.getWidth());
-    contentValues.put(HEIGHT, mediaStream.getHeight());
-    contentValues.put(DATA_RANDOM, dataInfo.random);
+    database.beginTransaction();
+    try {
+      dataInfo = deduplicate(database, dataInfo);
 
-    database.update(TABLE_NAME, contentValues, PART_ID_WHERE, databaseAttachment.getAttachmentId().toStrings());
+      ContentValues contentValues = new ContentValues();
+      contentValues.put(DATA, dataInfo.file.getAbsolutePath());
+      contentValues.put(SIZE, dataInfo.length);
+      contentValues.put(CONTENT_TYPE, mediaStream.getMimeType());
+      contentValues.put(WIDTH, mediaStream.getWidth());
+      contentValues.put(HEIGHT, mediaStream.getHeight());
+      contentValues.put(DATA_RANDOM, dataInfo.random);
+      contentValues.put(DATA_HASH, dataInfo.hash);
+
+      database.update(TABLE_NAME, contentValues, PART_ID_WHERE, databaseAttachment.getAttachmentId().toStrings());
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+
+    if (!previous.file.equals(dataInfo.file)) {
+      deleteDataFileIfUnreferenced(previous.file.getAbsolutePath(), previous.hash);
+    }
 
     return new DatabaseAttachment(databaseAttachment.getAttachmentId(),
                                   databaseAttachment.getMmsId(),
@@ -635,7 +679,7 @@ public class AttachmentDatabase extends Database {
     }
 
     try {
-      cursor = database.query(TABLE_NAME, new String[]{dataType, SIZE, randomColumn}, PART_ID_WHERE, attachmentId.toStrings(),
+      cursor = database.query(TABLE_NAME, new String[]{dataType, SIZE, randomColumn, DATA_HASH}, PART_ID_WHERE, attachmentId.toStrings(),
                               null, null, null);
 
       if (cursor != null && cursor.moveToFirst()) {
@@ -645,7 +689,8 @@ public class AttachmentDatabase extends Database {
 
         return new DataInfo(new File(cursor.getString(0)),
                             cursor.getLong(1),
-                            cursor.getBlob(2));
+                            cursor.getBlob(2),
+                            DATA.equals(dataType) ? cursor.getString(3) : null);
       } else {
         return null;
       }
@@ -683,12 +728,47 @@ public class AttachmentDatabase extends Database {
       throws MmsException
   {
     try {
+      MessageDigest              digest = MessageDigest.getInstance("SHA-256");
       Pair<byte[], OutputStream> out    = ModernEncryptingPartOutputStream.createFor(attachmentSecret, destination, false);
-      long                       length = Util.copy(in, out.second);
+      long                       length = Util.copy(new DigestInputStream(in, digest), out.second);
 
-      return new DataInfo(destination, length, out.first);
+      return new DataInfo(destination, length, out.first, Hex.toStringCondensed(digest.digest()));
     } catch (IOException e) {
       throw new MmsException(e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Swaps a freshly written data file for an existing one holding the same plaintext, deleting the
+   * new file. Must run in the transaction that stores the returned path so that the file we point
+   * at can't be released in between.
+   */
+  @SuppressWarnings("ResultOfMethodCallIgnored")
+  private @NonNull DataInfo deduplicate(@NonNull SQLiteDatabase database, @NonNull DataInfo dataInfo) {
+    if (dataInfo.hash == null) {
+      return dataInfo;
+    }
+
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {DATA, DATA_RANDOM},
+                                        DATA_HASH + " = ? AND " + DATA + " IS NOT NULL",
+                                        new String[] {dataInfo.hash}, null, null, null, "1"))
+    {
+      if (cursor == null || !cursor.moveToFirst()) {
+        return dataInfo;
+      }
+
+      File existing = new File(cursor.getString(0));
+
+      if (existing.equals(dataInfo.file) || !existing.exists()) {
+        return dataInfo;
+      }
+
+      dataInfo.file.delete();
+      Log.d(TAG, "Reusing " + existing.getName() + " for duplicate attachment data");
+
+      return new DataInfo(existing, dataInfo.length, cursor.getBlob(1), dataInfo.hash);
     }
   }
 
@@ -791,13 +871,24 @@ public class AttachmentDatabase extends Database {
     contentValues.put(CAPTION, attachment.getCaption());
     contentValues.put(URL, attachment.getUrl());
 
-    if (dataInfo != null) {
-      contentValues.put(DATA, dataInfo.file.getAbsolutePath());
-      contentValues.put(SIZE, dataInfo.length);
-      contentValues.put(DATA_RANDOM, dataInfo.random);
+    long rowId;
+
+    database.beginTransaction();
+    try {
+      if (dataInfo != null) {
+        dataInfo = deduplicate(database, dataInfo);
+        contentValues.put(DATA, dataInfo.file.getAbsolutePath());
+        contentValues.put(SIZE, dataInfo.length);
+        contentValues.put(DATA_RANDOM, dataInfo.random);
+        contentValues.put(DATA_HASH, dataInfo.hash);
+      }
+
+      rowId = database.insert(TABLE_NAME, null, contentValues);
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
     }
 
-    long         rowId        = database.insert(TABLE_NAME, null, contentValues);
     AttachmentId attachmentId = new AttachmentId(rowId, uniqueId);
     Uri          thumbnailUri = attachment.getThumbnailUri();
     boolean      hasThumbnail = false;
@@ -993,11 +1084,13 @@ public class AttachmentDatabase extends Database {
     private final File   file;
     private final long   length;
     private final byte[] random;
+    private final String hash;
 
-    private DataInfo(File file, long length, byte[] random) {
+    private DataInfo(File file, long length, byte[] random, String hash) {
       this.file = file;
       this.length = length;
       this.random = random;
+      this.hash = hash;
     }
   }
 }
@@ -5,8 +5,8 @@ import androidx.core.content.contentValuesOf
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 import org.thoughtcrime.securesms.database.model.EmojiSearchData
 import org.thoughtcrime.securesms.util.CursorUtil
+import org.thoughtcrime.securesms.util.LRUCache
 import kotlin.math.max
-import kotlin.math.roundToInt
 
 /**
  * Contains all info necessary for full-text search of emoji tags.
@@ -17,40 +17,75 @@ class EmojiSearchDatabase(context: Context, helper: SQLCipherOpenHelper) : Datab
     const val TABLE_NAME = "emoji_search"
     const val LABEL = "label"
     const val EMOJI = "emoji"
-    const val CREATE_EMOJI_SEARCH_TABLE_COMMAND = "CREATE VIRTUAL TABLE $TABLE_NAME USING fts5($LABEL, $EMOJI UNINDEXED)"
+    const val SCORE = "score"
+    // Prefix indexes so that the first few letters typed are matched without scanning the term list
+    const val CREATE_EMOJI_SEARCH_TABLE_COMMAND = "CREATE VIRTUAL TABLE $TABLE_NAME USING fts5($LABEL, $EMOJI UNINDEXED, prefix='1 2 3')"
+    const val DROP_EMOJI_SEARCH_TABLE_COMMAND = "DROP TABLE IF EXISTS $TABLE_NAME"
+
+    private const val MIN_FETCH_LIMIT = 100
+    private const val CACHE_SIZE = 64
+
+    /**
+     * Ranks the labels matching `?2` by how "similar" they are to the phrase `?1`, each emoji is
+     * returned once with its best score. A lower score means more similar, with 0 being a perfect
+     * match.
+     *
+     * Letters before the phrase weigh more than those after it as a way to prefer labels that
+     * start with it, labels only containing the words in another order come last.
+     */
+    private const val QUERY = """
+      SELECT $EMOJI, MIN(
+        CASE instr(lower($LABEL), ?1)
+          WHEN 0 THEN 1000 + length($LABEL)
+          ELSE CAST(round((instr(lower($LABEL), ?1) - 1) * 1.5 + length($LABEL) - (instr(lower($LABEL), ?1) - 1) - length(?1)) AS INTEGER)
+        END
+      ) AS $SCORE, MIN(rowid) AS first_row
+      FROM $TABLE_NAME
+      WHERE $TABLE_NAME MATCH ?2
+      GROUP BY $EMOJI
+      ORDER BY $SCORE, first_row
+      LIMIT ?3
+    """
+
+    private val NON_WORD = "[^\\p{L}\\p{N}]+".toRegex()
   }
 
+  private class Results(val limit: Int, val emoji: List<String>)
+
+  // Keyed by the normalized phrase, so each prefix typed into the picker is only queried once
+  private val cache = LRUCache<String, Results>(CACHE_SIZE)
+
   /**
    * @param query A search query. Doesn't need any special formatted -- it'll be sanitized.
    * @return A list of emoji that are related to the search term, ordered by relevance.
    */
   fun query(originalQuery: String, originalLimit: Int): List<String> {
-    val query: String = originalQuery.trim()
+    val tokens = originalQuery.lowercase().split(NON_WORD).filter { it.isNotEmpty() }
 
-    if (query.isEmpty()) {
+    if (tokens.isEmpty()) {
       return emptyList()
     }
 
-    val limit: Int = max(originalLimit, 100)
-    val entries = mutableListOf<Entry>()
-
-    readableDatabase.query(TABLE_NAME, arrayOf(LABEL, EMOJI), "$LABEL LIKE ?", arrayOf("%$query%"), null, null, null, "$limit")
-      .use { cursor ->
-        while (cursor.moveToNext()) {
-          entries += Entry(
-            label = CursorUtil.requireString(cursor, LABEL),
-            emoji = CursorUtil.requireString(cursor, EMOJI)
-          )
-        }
-      }
+    val phrase = tokens.joinToString(" ")
+
+    synchronized(cache) { cache[phrase] }
+      ?.takeIf { it.limit >= originalLimit }
+      ?.let { return it.emoji.take(originalLimit) }
+
+    // Every token must match a word of the label, the last one may be incomplete
+    val match = tokens.joinToString(" ") { "\"$it\"" } + "*"
+    val limit: Int = max(originalLimit, MIN_FETCH_LIMIT)
+    val emoji = mutableListOf<String>()
 
-    return entries
-      .sortedWith { lhs, rhs ->
-        similarityScore(query, lhs.label) - similarityScore(query, rhs.label)
+    readableDatabase.rawQuery(QUERY, arrayOf(phrase, match, limit.toString())).use { cursor ->
+      while (cursor.moveToNext()) {
+        emoji += CursorUtil.requireString(cursor, EMOJI)
       }
-      .distinctBy { it.emoji }
-      .take(originalLimit)
-      .map { it.emoji }
+    }
+
+    synchronized(cache) { cache[phrase] = Results(limit, emoji) }
+
+    return emoji.take(originalLimit)
   }
 
   /**
@@ -71,31 +106,7 @@ class EmojiSearchDatabase(context: Context, helper: SQLCipherOpenHelper) : Datab
     }
     writableDatabase.setTransactionSuccessful()
     writableDatabase.endTransaction()
-  }
 
-  /**
-   * Ranks how "similar" a match is to the original search term.
-   * A lower score means more similar, with 0 being a perfect match.
-   *
-   * We know that the `searchTerm` must be a substring of the `match`.
-   * We determine similarity by how many letters appear before or after the `searchTerm` in the `match`.
-   * We give letters that come before the term a bigger weight than those that come after as a way to prefer matches that are prefixed by the `searchTerm`.
-   */
-  private fun similarityScore(searchTerm: String, match: String): Int {
-    if (searchTerm == match) {
-      return 0
-    }
-
-    val startIndex = match.indexOf(searchTerm)
-
-    val prefixCount = startIndex
-    val suffixCount = match.length - (startIndex + searchTerm.length)
-
-    val prefixRankWeight = 1.5f
-    val suffixRankWeight = 1f
-
-    return ((prefixCount * prefixRankWeight) + (suffixCount * suffixRankWeight)).roundToInt()
+    synchronized(cache) { cache.clear() }
   }
-
-  private data class Entry(val label: String, val emoji: String)
 }
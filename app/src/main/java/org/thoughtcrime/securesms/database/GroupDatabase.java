@@ -14,6 +14,7 @@ import com.annimon.stream.Stream;
 import net.zetetic.database.sqlcipher.SQLiteDatabase;
 
 import org.jetbrains.annotations.NotNull;
+import org.session.libsession.messaging.open_groups.GroupMemberRole;
 import org.session.libsession.utilities.Address;
 import org.session.libsession.utilities.GroupRecord;
 import org.session.libsession.utilities.TextSecurePreferences;
@@ -23,10 +24,12 @@ import org.session.libsignal.database.LokiOpenGroupDatabaseProtocol;
 import org.session.libsignal.messages.SignalServiceAttachmentPointer;
 import org.session.libsignal.utilities.guava.Optional;
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
+import org.thoughtcrime.securesms.dependencies.DatabaseComponent;
 import org.thoughtcrime.securesms.util.BitmapUtil;
 
 import java.io.Closeable;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -37,11 +40,13 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
   private static final String TAG = GroupDatabase.class.getSimpleName();
 
   public  static final String TABLE_NAME          = "groups";
-  private static final String ID                  = "_id";
+          static final String ID                  = "_id";
   public  static final String GROUP_ID            = "group_id";
-  private static final String TITLE               = "title";
-  private static final String MEMBERS             = "members";
-  private static final String ZOMBIE_MEMBERS      = "zombie_members";
+          static final String TITLE               = "title";
+  // Members, zombie members and admins live in the group_member table, the columns are kept for
+  // migrations only and reads go through the GROUP_PROJECTION subqueries of the same name
+          static final String MEMBERS             = "members";
+          static final String ZOMBIE_MEMBERS      = "zombie_members";
   private static final String AVATAR              = "avatar";
   private static final String AVATAR_ID           = "avatar_id";
   private static final String AVATAR_KEY          = "avatar_key";
@@ -80,12 +85,23 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
       "CREATE UNIQUE INDEX IF NOT EXISTS group_id_index ON " + TABLE_NAME + " (" + GROUP_ID + ");",
   };
 
-  private static final String[] GROUP_PROJECTION = {
-      GROUP_ID, TITLE, MEMBERS, ZOMBIE_MEMBERS, AVATAR, AVATAR_ID, AVATAR_KEY, AVATAR_CONTENT_TYPE, AVATAR_RELAY, AVATAR_DIGEST,
-      TIMESTAMP, ACTIVE, MMS, AVATAR_URL, ADMINS, UPDATED
+  private static final String[] MEMBER_LIST_PROJECTION = {
+      GroupMemberDatabase.memberListColumn(TABLE_NAME + "." + GROUP_ID, GroupMemberRole.STANDARD, MEMBERS),
+      GroupMemberDatabase.memberListColumn(TABLE_NAME + "." + GROUP_ID, GroupMemberRole.ZOOMBIE, ZOMBIE_MEMBERS),
+      GroupMemberDatabase.memberListColumn(TABLE_NAME + "." + GROUP_ID, GroupMemberRole.ADMIN, ADMINS)
   };
 
-  static final List<String> TYPED_GROUP_PROJECTION = Stream.of(GROUP_PROJECTION).map(columnName -> TABLE_NAME + "." + columnName).toList();
+  private static final String[] GROUP_COLUMN_PROJECTION = {
+      GROUP_ID, TITLE, AVATAR, AVATAR_ID, AVATAR_KEY, AVATAR_CONTENT_TYPE, AVATAR_RELAY, AVATAR_DIGEST,
+      TIMESTAMP, ACTIVE, MMS, AVATAR_URL, UPDATED
+  };
+
+  private static final String[] GROUP_PROJECTION = Stream.concat(Stream.of(GROUP_COLUMN_PROJECTION), Stream.of(MEMBER_LIST_PROJECTION))
+                                                         .toArray(String[]::new);
+
+  static final List<String> TYPED_GROUP_PROJECTION = Stream.concat(Stream.of(GROUP_COLUMN_PROJECTION).map(columnName -> TABLE_NAME + "." + columnName),
+                                                                   Stream.of(MEMBER_LIST_PROJECTION))
+                                                           .toList();
 
   public static String getCreateUpdatedTimestampCommand() {
     return "ALTER TABLE "+ TABLE_NAME + " " +
@@ -97,7 +113,7 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
   }
 
   public Optional<GroupRecord> getGroup(String groupId) {
-    try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, null, GROUP_ID + " = ?",
+    try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, GROUP_PROJECTION, GROUP_ID + " = ?",
                                                                     new String[] {groupId},
                                                                     null, null, null))
     {
@@ -120,7 +136,7 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
 
   public Reader getGroupsFilteredByTitle(String constraint) {
     @SuppressLint("Recycle")
-    Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, null, TITLE + " LIKE ?",
+    Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, GROUP_PROJECTION, TITLE + " LIKE ?",
                                                                                         new String[]{"%" + constraint + "%"},
                                                                                         null, null, null);
 
@@ -129,7 +145,7 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
 
   public Reader getGroups() {
     @SuppressLint("Recycle")
-    Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, null, null, null, null, null, null);
+    Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, GROUP_PROJECTION, null, null, null, null, null);
     return new Reader(cursor);
   }
 
@@ -149,20 +165,18 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
       return null;
     }
 
-    String[] queriesValues = new String[members.size()];
-
-    StringBuilder queries = new StringBuilder();
-    for (int i=0; i < members.size(); i++) {
-      boolean isEnd = i == (members.size() - 1);
-      queries.append(MEMBERS + " LIKE ?");
-      queriesValues[i] = "%"+members.get(i)+"%";
-      if (!isEnd) {
-        queries.append(" OR ");
-      }
+    String[] queriesValues = new String[members.size() + 1];
+    for (int i = 0; i < members.size(); i++) {
+      queriesValues[i] = members.get(i);
     }
+    queriesValues[members.size()] = GroupMemberRole.STANDARD.name();
+
+    String query = GROUP_ID + " IN (SELECT " + GroupMemberDatabase.GROUP_ID + " FROM " + GroupMemberDatabase.TABLE_NAME +
+                   " WHERE " + GroupMemberDatabase.PROFILE_ID + " IN (" + Util.join(Collections.nCopies(members.size(), "?"), ", ") + ")" +
+                   " AND " + GroupMemberDatabase.ROLE + " = ?)";
 
-    return databaseHelper.getReadableDatabase().query(TABLE_NAME, null,
-            queries.toString(),
+    return databaseHelper.getReadableDatabase().query(TABLE_NAME, GROUP_PROJECTION,
+            query,
             queriesValues,
             null, null, null);
   }
@@ -216,7 +230,6 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
     ContentValues contentValues = new ContentValues();
     contentValues.put(GROUP_ID, groupId);
     contentValues.put(TITLE, title);
-    contentValues.put(MEMBERS, Address.toSerializedList(members, ','));
 
     if (avatar != null) {
       contentValues.put(AVATAR_ID, avatar.getId());
@@ -231,11 +244,21 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
     contentValues.put(ACTIVE, 1);
     contentValues.put(MMS, false);
 
-    if (admins != null) {
-      contentValues.put(ADMINS, Address.toSerializedList(admins, ','));
-    }
+    SQLiteDatabase      db                  = databaseHelper.getWritableDatabase();
+    GroupMemberDatabase groupMemberDatabase = getGroupMemberDatabase();
+    long                threadId;
 
-    long threadId = databaseHelper.getWritableDatabase().insert(TABLE_NAME, null, contentValues);
+    db.beginTransaction();
+    try {
+      threadId = db.insert(TABLE_NAME, null, contentValues);
+      groupMemberDatabase.setGroupMembers(groupId, GroupMemberRole.STANDARD, serialize(members));
+      if (admins != null) {
+        groupMemberDatabase.setGroupMembers(groupId, GroupMemberRole.ADMIN, serialize(admins));
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     Recipient.applyCached(Address.fromSerialized(groupId), recipient -> {
       recipient.setName(title);
@@ -249,7 +272,17 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
   }
 
   public boolean delete(@NonNull String groupId) {
-    int result = databaseHelper.getWritableDatabase().delete(TABLE_NAME, GROUP_ID + " = ?", new String[]{groupId});
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+    int            result;
+
+    db.beginTransaction();
+    try {
+      result = db.delete(TABLE_NAME, GROUP_ID + " = ?", new String[]{groupId});
+      getGroupMemberDatabase().deleteGroupMembers(groupId);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     if (result > 0) {
       Recipient.removeCached(Address.fromSerialized(groupId));
@@ -354,11 +387,17 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
     Collections.sort(members);
 
     ContentValues contents = new ContentValues();
-    contents.put(MEMBERS, Address.toSerializedList(members, ','));
     contents.put(ACTIVE, 1);
 
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contents, GROUP_ID + " = ?",
-                                                new String[] {groupId});
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+    db.beginTransaction();
+    try {
+      db.update(TABLE_NAME, contents, GROUP_ID + " = ?", new String[] {groupId});
+      getGroupMemberDatabase().setGroupMembers(groupId, GroupMemberRole.STANDARD, serialize(members));
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     Recipient.applyCached(Address.fromSerialized(groupId), recipient -> {
       recipient.setParticipants(Stream.of(members).map(a -> Recipient.from(context, a, false)).toList());
@@ -366,22 +405,22 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
   }
 
   public void updateZombieMembers(String groupId, List<Address> members) {
-    Collections.sort(members);
-
-    ContentValues contents = new ContentValues();
-    contents.put(ZOMBIE_MEMBERS, Address.toSerializedList(members, ','));
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contents, GROUP_ID + " = ?",
-            new String[] {groupId});
+    getGroupMemberDatabase().setGroupMembers(groupId, GroupMemberRole.ZOOMBIE, serialize(members));
   }
 
   public void updateAdmins(String groupId, List<Address> admins) {
-    Collections.sort(admins);
-
     ContentValues contents = new ContentValues();
-    contents.put(ADMINS, Address.toSerializedList(admins, ','));
     contents.put(ACTIVE, 1);
 
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contents, GROUP_ID + " = ?", new String[] {groupId});
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+    db.beginTransaction();
+    try {
+      db.update(TABLE_NAME, contents, GROUP_ID + " = ?", new String[] {groupId});
+      getGroupMemberDatabase().setGroupMembers(groupId, GroupMemberRole.ADMIN, serialize(admins));
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
   }
 
   public void updateFormationTimestamp(String groupId, Long formationTimestamp) {
@@ -398,15 +437,19 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
     databaseHelper.getWritableDatabase().update(TABLE_NAME, contents, GROUP_ID + " = ?", new String[] {groupId});
   }
 
-  public void removeMember(String groupId, Address source) {
-    List<Address> currentMembers = getCurrentMembers(groupId, false);
-    currentMembers.remove(source);
+  public void addMember(String groupId, Address member) {
+    if (!getGroupMemberDatabase().addGroupMember(groupId, member.serialize(), GroupMemberRole.STANDARD)) return;
 
-    ContentValues contents = new ContentValues();
-    contents.put(MEMBERS, Address.toSerializedList(currentMembers, ','));
+    Recipient.applyCached(Address.fromSerialized(groupId), recipient -> {
+      List<Recipient> current = recipient.getParticipants();
 
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contents, GROUP_ID + " = ?",
-                                                new String[] {groupId});
+      current.add(Recipient.from(context, member, false));
+      recipient.setParticipants(current);
+    });
+  }
+
+  public void removeMember(String groupId, Address source) {
+    if (!getGroupMemberDatabase().removeGroupMember(groupId, source.serialize(), GroupMemberRole.STANDARD)) return;
 
     Recipient.applyCached(Address.fromSerialized(groupId), recipient -> {
       List<Recipient> current = recipient.getParticipants();
@@ -418,28 +461,14 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
   }
 
   private List<Address> getCurrentMembers(String groupId, boolean zombieMembers) {
-    Cursor cursor = null;
-
-    String membersColumn = MEMBERS;
-    if (zombieMembers) membersColumn = ZOMBIE_MEMBERS;
+    GroupMemberRole role    = zombieMembers ? GroupMemberRole.ZOOMBIE : GroupMemberRole.STANDARD;
+    List<Address>   members = new LinkedList<>();
 
-    try {
-      cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, new String[] {membersColumn},
-                                                          GROUP_ID + " = ?",
-                                                          new String[] {groupId},
-                                                          null, null, null);
-
-      if (cursor != null && cursor.moveToFirst()) {
-        String serializedMembers = cursor.getString(cursor.getColumnIndexOrThrow(membersColumn));
-        if (serializedMembers != null && !serializedMembers.isEmpty())
-          return Address.fromSerializedList(serializedMembers, ',');
-      }
-
-      return new LinkedList<>();
-    } finally {
-      if (cursor != null)
-        cursor.close();
+    for (String member : getGroupMemberDatabase().getGroupMembers(groupId, role)) {
+      members.add(Address.fromSerialized(member));
     }
+
+    return members;
   }
 
   private List<Address> getCurrentZombieMembers(String groupId) {
@@ -478,7 +507,26 @@ public class GroupDatabase extends Database implements LokiOpenGroupDatabaseProt
     ContentValues contentValues = new ContentValues(1);
     contentValues.put(GROUP_ID, newEncodedGroupId);
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
-    db.update(TABLE_NAME, contentValues, query, new String[]{legacyEncodedGroupId});
+    db.beginTransaction();
+    try {
+      db.update(TABLE_NAME, contentValues, query, new String[]{legacyEncodedGroupId});
+      getGroupMemberDatabase().migrateGroupId(legacyEncodedGroupId, newEncodedGroupId);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  private GroupMemberDatabase getGroupMemberDatabase() {
+    return DatabaseComponent.get(context).groupMemberDatabase();
+  }
+
+  private static List<String> serialize(List<Address> addresses) {
+    List<String> serialized = new ArrayList<>(addresses.size());
+    for (Address address : addresses) {
+      serialized.add(address.serialize());
+    }
+    return serialized;
   }
 
     public static class Reader implements Closeable {
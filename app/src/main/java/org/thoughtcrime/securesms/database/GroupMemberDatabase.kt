@@ -3,10 +3,16 @@ package org.thoughtcrime.securesms.database
 import android.content.ContentValues
 import android.content.Context
 import android.database.Cursor
+import net.zetetic.database.sqlcipher.SQLiteDatabase
 import org.session.libsession.messaging.open_groups.GroupMember
 import org.session.libsession.messaging.open_groups.GroupMemberRole
+import org.session.libsession.utilities.GroupUtil
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 
+/**
+ * Membership of both communities (moderators and admins) and legacy closed groups (members,
+ * zombie members and admins), one row per group, member and role.
+ */
 class GroupMemberDatabase(context: Context, helper: SQLCipherOpenHelper) : Database(context, helper) {
 
     companion object {
@@ -23,10 +29,60 @@ class GroupMemberDatabase(context: Context, helper: SQLCipherOpenHelper) : Datab
         $GROUP_ID TEXT NOT NULL,
         $PROFILE_ID TEXT NOT NULL,
         $ROLE TEXT NOT NULL,
-        PRIMARY KEY ($GROUP_ID, $PROFILE_ID)
+        PRIMARY KEY ($GROUP_ID, $PROFILE_ID, $ROLE)
       )
     """.trimIndent()
 
+        // The primary key answers "who is in group X", this one answers "which groups is X in"
+        @JvmField
+        val CREATE_PROFILE_INDEX_COMMAND =
+            "CREATE INDEX IF NOT EXISTS group_member_profile_index ON $TABLE_NAME ($PROFILE_ID, $GROUP_ID);"
+
+        /**
+         * Moves the table to the (group, member, role) primary key and copies the legacy closed
+         * group member lists out of the comma separated columns of the groups table.
+         */
+        @JvmField
+        val MIGRATE_TO_ROLE_KEY_COMMANDS = arrayOf(
+            "ALTER TABLE $TABLE_NAME RENAME TO ${TABLE_NAME}_old;",
+            CREATE_GROUP_MEMBER_TABLE_COMMAND,
+            "INSERT OR IGNORE INTO $TABLE_NAME ($GROUP_ID, $PROFILE_ID, $ROLE) SELECT $GROUP_ID, $PROFILE_ID, $ROLE FROM ${TABLE_NAME}_old;",
+            "DROP TABLE ${TABLE_NAME}_old;",
+            CREATE_PROFILE_INDEX_COMMAND,
+            copyLegacyListCommand(GroupDatabase.MEMBERS, GroupMemberRole.STANDARD),
+            copyLegacyListCommand(GroupDatabase.ZOMBIE_MEMBERS, GroupMemberRole.ZOOMBIE),
+            copyLegacyListCommand(GroupDatabase.ADMINS, GroupMemberRole.ADMIN),
+            deleteOrphanedClosedGroupMembersCommand()
+        )
+
+        private fun copyLegacyListCommand(column: String, role: GroupMemberRole) = """
+      WITH RECURSIVE split($GROUP_ID, $PROFILE_ID, rest) AS (
+        SELECT ${GroupDatabase.GROUP_ID}, '', $column || ',' FROM ${GroupDatabase.TABLE_NAME} WHERE $column IS NOT NULL
+        UNION ALL
+        SELECT $GROUP_ID, substr(rest, 1, instr(rest, ',') - 1), substr(rest, instr(rest, ',') + 1) FROM split WHERE rest != ''
+      )
+      INSERT OR IGNORE INTO $TABLE_NAME ($GROUP_ID, $PROFILE_ID, $ROLE)
+      SELECT $GROUP_ID, $PROFILE_ID, '${role.name}' FROM split WHERE $PROFILE_ID != ''
+    """.trimIndent()
+
+        // Closed groups that were removed from the groups table before membership moved here
+        // don't get to keep their member rows
+        private fun deleteOrphanedClosedGroupMembersCommand() = """
+      DELETE FROM $TABLE_NAME WHERE $GROUP_ID LIKE '${GroupUtil.CLOSED_GROUP_PREFIX}%'
+        AND $GROUP_ID NOT IN (SELECT ${GroupDatabase.GROUP_ID} FROM ${GroupDatabase.TABLE_NAME})
+    """.trimIndent()
+
+        /**
+         * A comma separated list of the members of the group in [groupIdColumn] with the given
+         * role, in the format of [org.session.libsession.utilities.Address.toSerializedList].
+         * Members are listed in profile id order, group_concat alone doesn't promise any order.
+         */
+        @JvmStatic
+        fun memberListColumn(groupIdColumn: String, role: GroupMemberRole, alias: String) =
+            "(SELECT group_concat($PROFILE_ID, ',') FROM (SELECT $PROFILE_ID FROM $TABLE_NAME " +
+                "WHERE $TABLE_NAME.$GROUP_ID = $groupIdColumn AND $TABLE_NAME.$ROLE = '${role.name}' " +
+                "ORDER BY $PROFILE_ID)) AS $alias"
+
         private fun readGroupMember(cursor: Cursor): GroupMember {
             return GroupMember(
                 groupId = cursor.getString(cursor.getColumnIndexOrThrow(GROUP_ID)),
@@ -52,33 +108,81 @@ class GroupMemberDatabase(context: Context, helper: SQLCipherOpenHelper) : Datab
     }
 
     fun setGroupMembers(members: List<GroupMember>) {
-        writableDatabase.beginTransaction()
+        members.groupBy { it.groupId to it.role }.forEach { (key, members) ->
+            setGroupMembers(key.first, key.second, members.map { it.profileId })
+        }
+    }
+
+    fun getGroupMembers(groupId: String, role: GroupMemberRole): List<String> {
+        val query = "$GROUP_ID = ? AND $ROLE = ?"
+        val args = arrayOf(groupId, role.name)
+
+        return readableDatabase.query(TABLE_NAME, arrayOf(PROFILE_ID), query, args, null, null, PROFILE_ID).use { cursor ->
+            generateSequence { if (cursor.moveToNext()) cursor.getString(0) else null }.toList()
+        }
+    }
+
+    /**
+     * Replaces the members of [groupId] with [role], only the rows of members who joined or left
+     * are written.
+     */
+    fun setGroupMembers(groupId: String, role: GroupMemberRole, profileIds: Collection<String>) {
+        val db = writableDatabase
+        db.beginTransaction()
         try {
-            val grouped = members.groupBy { it.role }
-            grouped.forEach { (role, members) ->
-                if (members.isEmpty()) return@forEach
-
-                val toDeleteQuery = "$GROUP_ID = ? AND $ROLE = ?"
-                val toDeleteArgs = arrayOf(members.first().groupId, role.name)
-
-                writableDatabase.delete(TABLE_NAME, toDeleteQuery, toDeleteArgs)
-
-                members.forEach { member ->
-                    val values = ContentValues().apply {
-                        put(GROUP_ID, member.groupId)
-                        put(PROFILE_ID, member.profileId)
-                        put(ROLE, member.role.name)
-                    }
-                    val query = "$GROUP_ID = ? AND $PROFILE_ID = ?"
-                    val args = arrayOf(member.groupId, member.profileId)
-
-                    writableDatabase.insertOrUpdate(TABLE_NAME, values, query, args)
-                }
-                writableDatabase.setTransactionSuccessful()
-            }
+            val current = getGroupMembers(groupId, role).toSet()
+            val updated = profileIds.toSet()
+
+            (current - updated).forEach { deleteMember(db, groupId, it, role) }
+            (updated - current).forEach { insertMember(db, groupId, it, role) }
+
+            db.setTransactionSuccessful()
         } finally {
-            writableDatabase.endTransaction()
+            db.endTransaction()
+        }
+    }
+
+    fun addGroupMember(groupId: String, profileId: String, role: GroupMemberRole): Boolean =
+        insertMember(writableDatabase, groupId, profileId, role)
+
+    fun removeGroupMember(groupId: String, profileId: String, role: GroupMemberRole): Boolean =
+        deleteMember(writableDatabase, groupId, profileId, role)
+
+    /**
+     * The ids of the groups in which any of [profileIds] has [role].
+     */
+    fun getGroupIdsWithMembers(profileIds: Collection<String>, role: GroupMemberRole): Set<String> {
+        if (profileIds.isEmpty()) return emptySet()
+
+        return profileIds.chunked(900).flatMapTo(mutableSetOf()) { chunk ->
+            val query = "$PROFILE_ID IN (${chunk.joinToString(",") { "?" }}) AND $ROLE = ?"
+            val args = (chunk + role.name).toTypedArray()
+
+            readableDatabase.query(TABLE_NAME, arrayOf(GROUP_ID), query, args, null, null, null).use { cursor ->
+                generateSequence { if (cursor.moveToNext()) cursor.getString(0) else null }.toList()
+            }
         }
     }
 
-}
\ No newline at end of file
+    fun deleteGroupMembers(groupId: String) {
+        writableDatabase.delete(TABLE_NAME, "$GROUP_ID = ?", arrayOf(groupId))
+    }
+
+    fun migrateGroupId(legacyGroupId: String, newGroupId: String) {
+        val values = ContentValues(1).apply { put(GROUP_ID, newGroupId) }
+        writableDatabase.update(TABLE_NAME, values, "$GROUP_ID = ?", arrayOf(legacyGroupId))
+    }
+
+    private fun insertMember(db: SQLiteDatabase, groupId: String, profileId: String, role: GroupMemberRole): Boolean {
+        val values = ContentValues(3).apply {
+            put(GROUP_ID, groupId)
+            put(PROFILE_ID, profileId)
+            put(ROLE, role.name)
+        }
+        return db.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE) != -1L
+    }
+
+    private fun deleteMember(db: SQLiteDatabase, groupId: String, profileId: String, role: GroupMemberRole): Boolean =
+        db.delete(TABLE_NAME, "$GROUP_ID = ? AND $PROFILE_ID = ? AND $ROLE = ?", arrayOf(groupId, profileId, role.name)) > 0
+
+}
@@ -0,0 +1,31 @@
+package org.thoughtcrime.securesms.database
+
+import org.session.libsession.messaging.sending_receiving.attachments.DatabaseAttachment
+import org.thoughtcrime.securesms.database.model.MessageId
+import org.thoughtcrime.securesms.database.model.ReactionRecord
+
+/**
+ * The attachments and reactions of a set of messages, loaded with one batch query each instead of
+ * being aggregated into every message row. Readers given these look a message's attachments and
+ * reactions up here rather than in the cursor.
+ */
+class MessageRelations(
+    private val attachments: Map<Long, List<DatabaseAttachment>>,
+    private val reactions: Map<MessageId, List<ReactionRecord>>
+) {
+
+    fun getAttachments(mmsId: Long): List<DatabaseAttachment> = attachments[mmsId] ?: emptyList()
+
+    fun getReactions(messageId: MessageId): List<ReactionRecord> = reactions[messageId] ?: emptyList()
+
+    companion object {
+        @JvmStatic
+        fun load(attachmentDatabase: AttachmentDatabase, reactionDatabase: ReactionDatabase, messageIds: Collection<MessageId>): MessageRelations {
+            val mmsIds = messageIds.filter { it.mms }.map { it.id }
+            return MessageRelations(
+                attachmentDatabase.getAttachmentsForMessages(mmsIds),
+                reactionDatabase.getReactionsForMessages(messageIds)
+            )
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.thoughtcrime.securesms.database
+
+import android.database.Cursor
+import android.database.CursorWrapper
+
+/**
+ * A cursor over message rows without aggregated attachments and reactions, carrying the
+ * [MessageRelations] loaded for all of its rows. [MmsSmsDatabase.readerFor] reads a message's
+ * attachments and reactions from there, so records can be read from it without further queries.
+ */
+class MessageRelationsCursor(cursor: Cursor, val relations: MessageRelations) : CursorWrapper(cursor)
@@ -54,6 +54,7 @@ import org.thoughtcrime.securesms.attachments.MmsNotificationAttachment
 import org.thoughtcrime.securesms.database.SmsDatabase.InsertListener
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 import org.thoughtcrime.securesms.database.model.MediaMmsMessageRecord
+import org.thoughtcrime.securesms.database.model.MessageId
 import org.thoughtcrime.securesms.database.model.MessageRecord
 import org.thoughtcrime.securesms.database.model.MmsMessageRecord
 import org.thoughtcrime.securesms.database.model.NotificationMmsMessageRecord
@@ -1136,6 +1137,10 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
         return Reader(cursor)
     }
 
+    fun readerFor(cursor: Cursor?, relations: MessageRelations?): Reader {
+        return Reader(cursor, relations)
+    }
+
     fun readerFor(message: OutgoingMediaMessage?, threadId: Long): OutgoingMessageReader {
         return OutgoingMessageReader(message, threadId)
     }
@@ -1188,7 +1193,11 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
 
     }
 
-    inner class Reader(private val cursor: Cursor?) : Closeable {
+    /**
+     * Reads the attachments and reactions of each message from [relations] when given, and from
+     * the aggregated columns of the cursor otherwise.
+     */
+    inner class Reader(private val cursor: Cursor?, private val relations: MessageRelations? = null) : Closeable {
         val next: MessageRecord?
             get() = if (cursor == null || !cursor.moveToNext()) null else current
         val current: MessageRecord
@@ -1285,7 +1294,7 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
             val recipient = getRecipientFor(address)
             val mismatches = getMismatchedIdentities(mismatchDocument)
             val networkFailures = getFailures(networkDocument)
-            val attachments = get(context).attachmentDatabase().getAttachment(
+            val attachments = relations?.getAttachments(id) ?: get(context).attachmentDatabase().getAttachment(
                 cursor
             )
             val contacts: List<Contact?> = getSharedContacts(cursor, attachments)
@@ -1299,8 +1308,8 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
                     .filterNot { o: DatabaseAttachment? -> o in contactAttachments }
                     .filterNot { o: DatabaseAttachment? -> o in previewAttachments }
             )
-            val quote = getQuote(cursor)
-            val reactions = get(context).reactionDatabase().getReactions(cursor)
+            val quote = getQuote(cursor, attachments)
+            val reactions = relations?.getReactions(MessageId(id, true)) ?: get(context).reactionDatabase().getReactions(cursor)
             return MediaMmsMessageRecord(
                 id, recipient, recipient,
                 addressDeviceId, dateSent, dateReceived, deliveryReceiptCount,
@@ -1348,7 +1357,7 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
             return SlideDeck(context, messageAttachments!!)
         }
 
-        private fun getQuote(cursor: Cursor): Quote? {
+        private fun getQuote(cursor: Cursor, attachments: List<DatabaseAttachment>): Quote? {
             val quoteId = cursor.getLong(cursor.getColumnIndexOrThrow(QUOTE_ID))
             val quoteAuthor = cursor.getString(cursor.getColumnIndexOrThrow(QUOTE_AUTHOR))
             if (quoteId == 0L || quoteAuthor.isNullOrBlank()) return null
@@ -1357,7 +1366,7 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
             val quoteMissing = retrievedQuote == null
             val quoteDeck = (
                 (retrievedQuote as? MmsMessageRecord)?.slideDeck ?:
-                Stream.of(get(context).attachmentDatabase().getAttachment(cursor))
+                Stream.of(attachments)
                     .filter { obj: DatabaseAttachment? -> obj!!.isQuote }
                     .toList()
                     .let { SlideDeck(context, it) }
@@ -1419,14 +1428,19 @@ class MmsDatabase(context: Context, databaseHelper: SQLCipherOpenHelper) : Messa
                     QUOTE_MISSING + " INTEGER DEFAULT 0, " + SHARED_CONTACTS + " TEXT, " + UNIDENTIFIED + " INTEGER DEFAULT 0, " +
                     LINK_PREVIEWS + " TEXT);"
 
+        const val CREATE_THREAD_DATE_SENT_INDEX = "CREATE INDEX IF NOT EXISTS mms_thread_date_sent_index ON $TABLE_NAME ($THREAD_ID, $DATE_SENT, $ADDRESS);"
+        const val CREATE_DATE_SENT_ADDRESS_INDEX = "CREATE INDEX IF NOT EXISTS mms_date_sent_address_index ON $TABLE_NAME ($DATE_SENT, $ADDRESS);"
+        const val DROP_DATE_SENT_INDEX = "DROP INDEX IF EXISTS mms_date_sent_index;"
+
         @JvmField
         val CREATE_INDEXS: Array<String> = arrayOf(
             "CREATE INDEX IF NOT EXISTS mms_thread_id_index ON $TABLE_NAME ($THREAD_ID);",
             "CREATE INDEX IF NOT EXISTS mms_read_index ON $TABLE_NAME ($READ);",
             "CREATE INDEX IF NOT EXISTS mms_read_and_notified_and_thread_id_index ON $TABLE_NAME($READ,$NOTIFIED,$THREAD_ID);",
             "CREATE INDEX IF NOT EXISTS mms_message_box_index ON $TABLE_NAME ($MESSAGE_BOX);",
-            "CREATE INDEX IF NOT EXISTS mms_date_sent_index ON $TABLE_NAME ($DATE_SENT);",
-            "CREATE INDEX IF NOT EXISTS mms_thread_date_index ON $TABLE_NAME ($THREAD_ID, $DATE_RECEIVED);"
+            CREATE_DATE_SENT_ADDRESS_INDEX,
+            "CREATE INDEX IF NOT EXISTS mms_thread_date_index ON $TABLE_NAME ($THREAD_ID, $DATE_RECEIVED);",
+            CREATE_THREAD_DATE_SENT_INDEX
         )
         private val MMS_PROJECTION: Array<String> = arrayOf(
             "$TABLE_NAME.$ID AS $ID",
@@ -20,9 +20,11 @@ import static org.thoughtcrime.securesms.database.MmsDatabase.MESSAGE_BOX;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import net.zetetic.database.sqlcipher.SQLiteDatabase;
 import net.zetetic.database.sqlcipher.SQLiteQueryBuilder;
@@ -30,13 +32,18 @@ import net.zetetic.database.sqlcipher.SQLiteQueryBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.session.libsession.utilities.Address;
 import org.session.libsession.utilities.Util;
+import org.session.libsession.utilities.recipients.Recipient;
 import org.thoughtcrime.securesms.database.MessagingDatabase.SyncMessageId;
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
+import org.thoughtcrime.securesms.database.model.MessageId;
+import org.thoughtcrime.securesms.database.model.MessageLookup;
 import org.thoughtcrime.securesms.database.model.MessageRecord;
 import org.thoughtcrime.securesms.dependencies.DatabaseComponent;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import kotlin.Pair;
@@ -84,6 +91,11 @@ public class MmsSmsDatabase extends Database {
                                               MmsSmsColumns.HAS_MENTION
   };
 
+  // Pages leave the attachments and reactions to MessageRelations
+  private static final String[] PAGE_PROJECTION = withoutRelations(PROJECTION);
+
+  private static final String OUTGOING_TYPES = joinTypes(MmsSmsColumns.Types.OUTGOING_MESSAGE_TYPES);
+
   public MmsSmsDatabase(Context context, SQLCipherOpenHelper databaseHelper) {
     super(context, databaseHelper);
   }
@@ -119,25 +131,80 @@ public class MmsSmsDatabase extends Database {
     return getMessageFor(timestamp, author.serialize());
   }
 
+  /**
+   * Same match as {@link #getMessageFor(long, String)}, but only reads the id, table and thread of
+   * the message through the (date_sent, address) indexes instead of building a {@link MessageRecord}.
+   * Our own messages store their recipient as the address, so those are matched on being outgoing.
+   */
+  public @Nullable MessageLookup getMessageLookupFor(long timestamp, String serializedAuthor) {
+    if (Util.isOwnNumber(context, serializedAuthor)) {
+      return findMessageLookup(buildLookupQuery(
+        "(" + SmsDatabase.TYPE + " & " + MmsSmsColumns.Types.BASE_TYPE_MASK + ") IN (" + OUTGOING_TYPES + ")",
+        "(" + MESSAGE_BOX + " & " + MmsSmsColumns.Types.BASE_TYPE_MASK + ") IN (" + OUTGOING_TYPES + ")"
+      ), String.valueOf(timestamp), String.valueOf(timestamp));
+    }
+
+    String clause = MmsSmsColumns.ADDRESS + " = ?";
+    return findMessageLookup(buildLookupQuery(clause, clause), String.valueOf(timestamp), serializedAuthor, String.valueOf(timestamp), serializedAuthor);
+  }
+
+  public @Nullable MessageLookup getMessageLookupFor(long timestamp, Address author) {
+    return getMessageLookupFor(timestamp, author.serialize());
+  }
+
+  /**
+   * Same as {@link #getMessageForTimestamp(long)}, without building a {@link MessageRecord}.
+   */
+  public @Nullable MessageLookup getMessageLookupForTimestamp(long timestamp) {
+    return findMessageLookup(buildLookupQuery(null, null), String.valueOf(timestamp), String.valueOf(timestamp));
+  }
+
+  private @Nullable MessageLookup findMessageLookup(String query, String... args) {
+    try (Cursor cursor = databaseHelper.getReadableDatabase().rawQuery(query, args)) {
+      if (cursor == null || !cursor.moveToFirst()) return null;
+      return new MessageLookup(cursor.getLong(0), cursor.getInt(1) != 0, cursor.getLong(2));
+    }
+  }
+
+  private static String joinTypes(long[] types) {
+    StringBuilder builder = new StringBuilder();
+    for (long type : types) {
+      if (builder.length() > 0) builder.append(", ");
+      builder.append(type);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Selects the id, whether it's an mms and the thread id of the messages with a given sent
+   * timestamp, optionally narrowed by a clause per table. The query takes the timestamp, followed
+   * by the clause's arguments, once for each table.
+   */
+  @VisibleForTesting
+  static String buildLookupQuery(@Nullable String smsClause, @Nullable String mmsClause) {
+    return "SELECT " + MmsSmsColumns.ID + ", 0, " + MmsSmsColumns.THREAD_ID + " FROM " + SmsDatabase.TABLE_NAME +
+           " WHERE " + SmsDatabase.DATE_SENT + " = ?" + (smsClause != null ? " AND " + smsClause : "") +
+           " UNION ALL SELECT " + MmsSmsColumns.ID + ", 1, " + MmsSmsColumns.THREAD_ID + " FROM " + MmsDatabase.TABLE_NAME +
+           " WHERE " + MmsDatabase.DATE_SENT + " = ?" + (mmsClause != null ? " AND " + mmsClause : "") +
+           " LIMIT 1";
+  }
+
   public long getPreviousPage(long threadId, long fromTime, int limit) {
-    String order = MmsSmsColumns.NORMALIZED_DATE_SENT+" ASC";
-    String selection = MmsSmsColumns.THREAD_ID+" = "+threadId
-            + " AND "+MmsSmsColumns.NORMALIZED_DATE_SENT+" > "+fromTime;
-    String limitStr = ""+limit;
-    long sent = -1;
-    Cursor cursor = queryTables(PROJECTION, selection, order, limitStr);
-    if (cursor == null) return sent;
-    Reader reader = readerFor(cursor);
-    if (!cursor.move(limit)) {
-      cursor.moveToLast();
+    String query = buildSentTimestampQuery(SmsDatabase.DATE_SENT + " > ?", MmsDatabase.DATE_SENT + " > ?", " ASC") + " LIMIT " + limit;
+    String[] args = new String[] { String.valueOf(threadId), String.valueOf(fromTime), String.valueOf(threadId), String.valueOf(fromTime) };
+
+    try (Cursor cursor = databaseHelper.getReadableDatabase().rawQuery(query, args)) {
+      if (cursor == null || !cursor.moveToLast()) return -1;
+      return cursor.getLong(0);
     }
-    MessageRecord record = reader.getCurrent();
-    sent = record.getDateSent();
-    reader.close();
-    return sent;
   }
 
-  public Cursor getConversationPage(long threadId, long fromTime, long toTime, int limit) {
+  /**
+   * Reads a page of a thread's messages. Attachments and reactions aren't aggregated into the
+   * message rows, they are loaded for the whole page with one batch query each instead, and so are
+   * the authors that aren't cached yet.
+   */
+  public Reader getConversationPage(long threadId, long fromTime, long toTime, int limit) {
     String order = MmsSmsColumns.NORMALIZED_DATE_SENT+" DESC";
     String selection = MmsSmsColumns.THREAD_ID + " = "+threadId
             + " AND "+MmsSmsColumns.NORMALIZED_DATE_SENT+" <= " + fromTime;
@@ -148,41 +215,95 @@ public class MmsSmsDatabase extends Database {
       limitStr = ""+limit;
     }
 
-    return queryTables(PROJECTION, selection, order, limitStr);
+    return readerFor(queryWithRelations(selection, order, limitStr));
   }
 
-  public boolean hasNextPage(long threadId, long toTime) {
-    String order = MmsSmsColumns.NORMALIZED_DATE_SENT+" DESC";
-    String selection = MmsSmsColumns.THREAD_ID + " = "+threadId
-            + " AND "+MmsSmsColumns.NORMALIZED_DATE_SENT+" < " + toTime; // check if there's at least one message before the `toTime`
-    Cursor cursor = queryTables(PROJECTION, selection, order, null);
-    boolean hasNext = false;
-    if (cursor != null) {
-      hasNext = cursor.getCount() > 0;
-      cursor.close();
+  /**
+   * Queries the message rows only and loads their attachments and reactions with one batch query
+   * each, along with the authors that aren't cached yet.
+   */
+  private MessageRelationsCursor queryWithRelations(String selection, String order, String limit) {
+    Cursor cursor = queryMessages(selection, order, limit);
+    return new MessageRelationsCursor(cursor, preloadRelations(cursor));
+  }
+
+  private MessageRelations preloadRelations(Cursor cursor) {
+    List<MessageId> messageIds      = new ArrayList<>(cursor.getCount());
+    Set<Address>    authors         = new HashSet<>();
+    int             idColumn        = cursor.getColumnIndexOrThrow(MmsSmsColumns.ID);
+    int             transportColumn = cursor.getColumnIndexOrThrow(TRANSPORT);
+    int             addressColumn   = cursor.getColumnIndexOrThrow(MmsSmsColumns.ADDRESS);
+
+    while (cursor.moveToNext()) {
+      messageIds.add(new MessageId(cursor.getLong(idColumn), MMS_TRANSPORT.equals(cursor.getString(transportColumn))));
+
+      String address = cursor.getString(addressColumn);
+      if (!TextUtils.isEmpty(address)) authors.add(Address.fromSerialized(address));
     }
-    return hasNext;
+    cursor.moveToPosition(-1);
+
+    Recipient.resolveAll(context, authors);
+
+    return MessageRelations.load(DatabaseComponent.get(context).attachmentDatabase(),
+                                 DatabaseComponent.get(context).reactionDatabase(),
+                                 messageIds);
+  }
+
+  public boolean hasNextPage(long threadId, long toTime) {
+    // check if there's at least one message before the `toTime`
+    return hasMessageMatching(threadId, " < ?", toTime);
   }
 
   public boolean hasPreviousPage(long threadId, long fromTime) {
-    String order = MmsSmsColumns.NORMALIZED_DATE_SENT+" DESC";
-    String selection = MmsSmsColumns.THREAD_ID + " = "+threadId
-            + " AND "+MmsSmsColumns.NORMALIZED_DATE_SENT+" > " + fromTime; // check if there's at least one message after the `fromTime`
-    Cursor cursor = queryTables(PROJECTION, selection, order, null);
-    boolean hasNext = false;
-    if (cursor != null) {
-      hasNext = cursor.getCount() > 0;
-      cursor.close();
+    // check if there's at least one message after the `fromTime`
+    return hasMessageMatching(threadId, " > ?", fromTime);
+  }
+
+  private boolean hasMessageMatching(long threadId, String sentTimestampComparison, long sentTimestamp) {
+    String   query = buildExistsQuery(SmsDatabase.DATE_SENT + sentTimestampComparison, MmsDatabase.DATE_SENT + sentTimestampComparison);
+    String[] args  = new String[] { String.valueOf(threadId), String.valueOf(sentTimestamp), String.valueOf(threadId), String.valueOf(sentTimestamp) };
+
+    try (Cursor cursor = databaseHelper.getReadableDatabase().rawQuery(query, args)) {
+      return cursor != null && cursor.moveToFirst() && cursor.getInt(0) != 0;
     }
-    return hasNext;
   }
 
+  /**
+   * Selects only the sent timestamps of a thread's messages matching a clause per table, which the
+   * (thread_id, date_sent) indexes can answer without touching the message rows. The query takes
+   * the thread id and the clause's arguments once for each table.
+   */
+  @VisibleForTesting
+  static String buildSentTimestampQuery(String smsClause, String mmsClause, String direction) {
+    String thread = MmsSmsColumns.THREAD_ID + " = ? AND ";
+    return "SELECT " + SmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + " FROM " + SmsDatabase.TABLE_NAME + " WHERE " + thread + smsClause +
+           " UNION ALL SELECT " + MmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + " FROM " + MmsDatabase.TABLE_NAME + " WHERE " + thread + mmsClause +
+           " ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_SENT + direction;
+  }
+
+  /**
+   * Selects whether a thread has any message matching a clause per table. The tables name their
+   * sent timestamp column differently, so each clause has to use its own table's. The query takes
+   * the thread id followed by the clause's arguments, once for each table.
+   */
+  @VisibleForTesting
+  static String buildExistsQuery(String smsClause, String mmsClause) {
+    String thread = MmsSmsColumns.THREAD_ID + " = ? AND ";
+    return "SELECT EXISTS(SELECT 1 FROM " + SmsDatabase.TABLE_NAME + " WHERE " + thread + smsClause + ")" +
+           " OR EXISTS(SELECT 1 FROM " + MmsDatabase.TABLE_NAME + " WHERE " + thread + mmsClause + ")";
+  }
+
+  /**
+   * Reads a thread's messages, with their attachments and reactions loaded like a page's by
+   * {@link #getConversationPage(long, long, long, int)}. The returned cursor carries them, so
+   * records read from it through {@link #readerFor(Cursor)} don't query them row by row.
+   */
   public Cursor getConversation(long threadId, boolean reverse, long offset, long limit) {
     String order     = MmsSmsColumns.NORMALIZED_DATE_SENT + (reverse ? " DESC" : " ASC");
     String selection = MmsSmsColumns.THREAD_ID + " = " + threadId;
     String limitStr  = limit > 0 || offset > 0 ? offset + ", " + limit : null;
 
-    Cursor cursor = queryTables(PROJECTION, selection, order, limitStr);
+    Cursor cursor = queryWithRelations(selection, order, limitStr);
     setNotifyConverationListeners(cursor, threadId);
 
     return cursor;
@@ -199,11 +320,44 @@ public class MmsSmsDatabase extends Database {
     return queryTables(PROJECTION, selection, order, null);
   }
 
+  /**
+   * Reads the latest message of a thread that isn't deleted, or null if there is none. The rows
+   * are scanned newest first without loading records, only the message found is read in full.
+   */
+  public @Nullable MessageRecord getLatestMessage(long threadId) {
+    String order     = MmsSmsColumns.NORMALIZED_DATE_SENT + " DESC";
+    String selection = MmsSmsColumns.THREAD_ID + " = " + threadId;
+
+    try (Cursor cursor = queryMessages(selection, order, null)) {
+      int idColumn        = cursor.getColumnIndexOrThrow(MmsSmsColumns.ID);
+      int transportColumn = cursor.getColumnIndexOrThrow(TRANSPORT);
+      int smsTypeColumn   = cursor.getColumnIndexOrThrow(SmsDatabase.TYPE);
+      int mmsBoxColumn    = cursor.getColumnIndexOrThrow(MESSAGE_BOX);
+
+      while (cursor.moveToNext()) {
+        boolean mms  = MMS_TRANSPORT.equals(cursor.getString(transportColumn));
+        long    type = cursor.getLong(mms ? mmsBoxColumn : smsTypeColumn);
+
+        if (MmsSmsColumns.Types.isDeletedMessage(type)) continue;
+
+        try {
+          long id = cursor.getLong(idColumn);
+          return mms ? DatabaseComponent.get(context).mmsDatabase().getMessageRecord(id)
+                     : DatabaseComponent.get(context).smsDatabase().getMessageRecord(id);
+        } catch (NoSuchMessageException e) {
+          // Deleted since the rows were read, the next one is the latest then
+        }
+      }
+
+      return null;
+    }
+  }
+
   public long getLastMessageID(long threadId) {
     String order     = MmsSmsColumns.NORMALIZED_DATE_SENT + " DESC";
     String selection = MmsSmsColumns.THREAD_ID + " = " + threadId;
 
-    try (Cursor cursor = queryTables(PROJECTION, selection, order, "1")) {
+    try (Cursor cursor = queryMessages(selection, order, "1")) {
       cursor.moveToFirst();
       return cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.ID));
     }
@@ -218,7 +372,7 @@ public class MmsSmsDatabase extends Database {
 
   public int getUnreadCount(long threadId) {
     String selection = MmsSmsColumns.READ + " = 0 AND " + MmsSmsColumns.NOTIFIED + " = 0 AND " + MmsSmsColumns.THREAD_ID + " = " + threadId;
-    Cursor cursor    = queryTables(PROJECTION, selection, null, null);
+    Cursor cursor    = queryMessages(selection, null, null);
 
     try {
       return cursor != null ? cursor.getCount() : 0;
@@ -245,46 +399,98 @@ public class MmsSmsDatabase extends Database {
   }
 
   public int getQuotedMessagePosition(long threadId, long quoteId, @NonNull Address address) {
-    String order     = MmsSmsColumns.NORMALIZED_DATE_SENT + " DESC";
-    String selection = MmsSmsColumns.THREAD_ID + " = " + threadId;
+    return getMessagePositionInConversation(threadId, quoteId, address, true);
+  }
 
-    try (Cursor cursor = queryTables(new String[]{ MmsSmsColumns.NORMALIZED_DATE_SENT, MmsSmsColumns.ADDRESS }, selection, order, null)) {
-      String  serializedAddress = address.serialize();
-      boolean isOwnNumber       = Util.isOwnNumber(context, address.serialize());
+  /**
+   * Returns the adapter position of the message with the given sent timestamp and author, or -1 if
+   * there is no such message in the thread. The position is computed by counting the messages that
+   * sort before the target, which only touches the (thread_id, date_sent) indexes rather than
+   * materializing the whole conversation.
+   */
+  public int getMessagePositionInConversation(long threadId, long sentTimestamp, @NonNull Address address, boolean reverse) {
+    SQLiteDatabase db                = databaseHelper.getReadableDatabase();
+    String         serializedAddress = address.serialize();
+    boolean        isOwnNumber       = Util.isOwnNumber(context, serializedAddress);
+    String         thread            = String.valueOf(threadId);
+    String         timestamp         = String.valueOf(sentTimestamp);
+
+    String   addressClause = isOwnNumber ? "" : " AND " + MmsSmsColumns.ADDRESS + " = ?";
+    String   existsQuery   = buildExistsQuery(SmsDatabase.DATE_SENT + " = ?" + addressClause, MmsDatabase.DATE_SENT + " = ?" + addressClause);
+    String[] existsArgs    = isOwnNumber ? new String[] { thread, timestamp, thread, timestamp }
+                                         : new String[] { thread, timestamp, serializedAddress, thread, timestamp, serializedAddress };
+
+    try (Cursor cursor = db.rawQuery(existsQuery, existsArgs)) {
+      if (cursor == null || !cursor.moveToFirst() || cursor.getInt(0) == 0) {
+        return -1;
+      }
+    }
 
-      while (cursor != null && cursor.moveToNext()) {
-        boolean quoteIdMatches = cursor.getLong(0) == quoteId;
-        boolean addressMatches = serializedAddress.equals(cursor.getString(1));
+    String comparison = reverse ? " > ?" : " < ?";
+    String countQuery = buildCountQuery(SmsDatabase.DATE_SENT + comparison, MmsDatabase.DATE_SENT + comparison);
 
-        if (quoteIdMatches && (addressMatches || isOwnNumber)) {
-          return cursor.getPosition();
-        }
+    try (Cursor cursor = db.rawQuery(countQuery, new String[] { thread, timestamp, thread, timestamp })) {
+      if (cursor != null && cursor.moveToFirst()) {
+        return cursor.getInt(0);
       }
     }
+
     return -1;
   }
 
-  public int getMessagePositionInConversation(long threadId, long sentTimestamp, @NonNull Address address, boolean reverse) {
-    String order     = MmsSmsColumns.NORMALIZED_DATE_SENT + (reverse ? " DESC" : " ASC");
-    String selection = MmsSmsColumns.THREAD_ID + " = " + threadId;
+  /**
+   * Counts a thread's messages matching a clause per table, taking its arguments the same way as
+   * {@link #buildExistsQuery(String, String)}.
+   */
+  @VisibleForTesting
+  static String buildCountQuery(String smsClause, String mmsClause) {
+    String thread = MmsSmsColumns.THREAD_ID + " = ? AND ";
+    return "SELECT (SELECT COUNT(*) FROM " + SmsDatabase.TABLE_NAME + " WHERE " + thread + smsClause + ")" +
+           " + (SELECT COUNT(*) FROM " + MmsDatabase.TABLE_NAME + " WHERE " + thread + mmsClause + ")";
+  }
 
-    try (Cursor cursor = queryTables(new String[]{ MmsSmsColumns.NORMALIZED_DATE_SENT, MmsSmsColumns.ADDRESS }, selection, order, null)) {
-      String  serializedAddress = address.serialize();
-      boolean isOwnNumber       = Util.isOwnNumber(context, address.serialize());
+  // Reads the message rows only, without grouping in their attachments and reactions
+  private Cursor queryMessages(String selection, String order, String limit) {
+    return databaseHelper.getReadableDatabase().rawQuery(buildQuery(PAGE_PROJECTION, selection, order, limit, false), null);
+  }
 
-      while (cursor != null && cursor.moveToNext()) {
-        boolean timestampMatches = cursor.getLong(0) == sentTimestamp;
-        boolean addressMatches   = serializedAddress.equals(cursor.getString(1));
+  private Cursor queryTables(String[] projection, String selection, String order, String limit) {
+    SQLiteDatabase db = databaseHelper.getReadableDatabase();
+    return db.rawQuery(buildQuery(projection, selection, order, limit), null);
+  }
 
-        if (timestampMatches && (addressMatches || isOwnNumber)) {
-          return cursor.getPosition();
-        }
+  @VisibleForTesting
+  static String buildConversationQuery(String selection, String order, String limit) {
+    return buildQuery(PROJECTION, selection, order, limit);
+  }
+
+  @VisibleForTesting
+  static String buildConversationPageQuery(String selection, String order, String limit) {
+    return buildQuery(PAGE_PROJECTION, selection, order, limit, false);
+  }
+
+  private static String buildQuery(String[] projection, String selection, String order, String limit) {
+    return buildQuery(projection, selection, order, limit, true);
+  }
+
+  private static String[] withoutRelations(String[] projection) {
+    List<String> columns = new ArrayList<>(projection.length);
+
+    for (String column : projection) {
+      if (!column.endsWith(AttachmentDatabase.ATTACHMENT_JSON_ALIAS) && !column.endsWith(ReactionDatabase.REACTION_JSON_ALIAS)) {
+        columns.add(column);
       }
     }
-    return -1;
+
+    return columns.toArray(new String[0]);
   }
 
-  private Cursor queryTables(String[] projection, String selection, String order, String limit) {
+  /**
+   * @param withRelations Whether to join in the attachments and reactions of each message and
+   *                      aggregate them into JSON columns, rather than selecting the messages only.
+   */
+  @SuppressWarnings("deprecation")
+  private static String buildQuery(String[] projection, String selection, String order, String limit, boolean withRelations) {
     String reactionsColumn = "json_group_array(json_object(" +
             "'" + ReactionDatabase.ROW_ID + "', " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.ROW_ID + ", " +
             "'" + ReactionDatabase.MESSAGE_ID + "', " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.MESSAGE_ID + ", " +
@@ -380,17 +586,24 @@ public class MmsSmsDatabase extends Database {
     SQLiteQueryBuilder mmsQueryBuilder = new SQLiteQueryBuilder();
     SQLiteQueryBuilder smsQueryBuilder = new SQLiteQueryBuilder();
 
-    mmsQueryBuilder.setDistinct(true);
-    smsQueryBuilder.setDistinct(true);
-
-    smsQueryBuilder.setTables(SmsDatabase.TABLE_NAME +
-                              " LEFT OUTER JOIN " + ReactionDatabase.TABLE_NAME +
-                              " ON " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.MESSAGE_ID + " = " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " AND " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.IS_MMS + " = 0");
-    mmsQueryBuilder.setTables(MmsDatabase.TABLE_NAME +
-                              " LEFT OUTER JOIN " + AttachmentDatabase.TABLE_NAME +
-                              " ON " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID +
-                              " LEFT OUTER JOIN " + ReactionDatabase.TABLE_NAME +
-                              " ON " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.MESSAGE_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " AND " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.IS_MMS + " = 1");
+    if (!withRelations) {
+      mmsProjection = withoutRelations(mmsProjection);
+      smsProjection = withoutRelations(smsProjection);
+      mmsQueryBuilder.setTables(MmsDatabase.TABLE_NAME);
+      smsQueryBuilder.setTables(SmsDatabase.TABLE_NAME);
+    } else {
+      mmsQueryBuilder.setDistinct(true);
+      smsQueryBuilder.setDistinct(true);
+
+      smsQueryBuilder.setTables(SmsDatabase.TABLE_NAME +
+                                " LEFT OUTER JOIN " + ReactionDatabase.TABLE_NAME +
+                                " ON " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.MESSAGE_ID + " = " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " AND " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.IS_MMS + " = 0");
+      mmsQueryBuilder.setTables(MmsDatabase.TABLE_NAME +
+                                " LEFT OUTER JOIN " + AttachmentDatabase.TABLE_NAME +
+                                " ON " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID +
+                                " LEFT OUTER JOIN " + ReactionDatabase.TABLE_NAME +
+                                " ON " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.MESSAGE_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " AND " + ReactionDatabase.TABLE_NAME + "." + ReactionDatabase.IS_MMS + " = 1");
+    }
 
 
     Set<String> mmsColumnsPresent = new HashSet<>();
@@ -496,9 +709,9 @@ public class MmsSmsDatabase extends Database {
     smsColumnsPresent.add(ReactionDatabase.REACTION_JSON_ALIAS);
 
     @SuppressWarnings("deprecation")
-    String mmsSubQuery = mmsQueryBuilder.buildUnionSubQuery(TRANSPORT, mmsProjection, mmsColumnsPresent, 5, MMS_TRANSPORT, selection, null, MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID, null);
+    String mmsSubQuery = mmsQueryBuilder.buildUnionSubQuery(TRANSPORT, mmsProjection, mmsColumnsPresent, 5, MMS_TRANSPORT, selection, null, withRelations ? MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID : null, null);
     @SuppressWarnings("deprecation")
-    String smsSubQuery = smsQueryBuilder.buildUnionSubQuery(TRANSPORT, smsProjection, smsColumnsPresent, 5, SMS_TRANSPORT, selection, null, SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID, null);
+    String smsSubQuery = smsQueryBuilder.buildUnionSubQuery(TRANSPORT, smsProjection, smsColumnsPresent, 5, SMS_TRANSPORT, selection, null, withRelations ? SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID : null, null);
 
     SQLiteQueryBuilder unionQueryBuilder = new SQLiteQueryBuilder();
     String unionQuery = unionQueryBuilder.buildUnionQuery(new String[] {smsSubQuery, mmsSubQuery}, order, limit);
@@ -506,11 +719,7 @@ public class MmsSmsDatabase extends Database {
     SQLiteQueryBuilder outerQueryBuilder = new SQLiteQueryBuilder();
     outerQueryBuilder.setTables("(" + unionQuery + ")");
 
-    @SuppressWarnings("deprecation")
-    String query      = outerQueryBuilder.buildQuery(projection, null, null, null, null, null, null);
-
-    SQLiteDatabase db = databaseHelper.getReadableDatabase();
-    return db.rawQuery(query, null);
+    return outerQueryBuilder.buildQuery(projection, null, null, null, null, null, null);
   }
 
   public Reader readerFor(@NonNull Cursor cursor) {
@@ -536,17 +745,23 @@ public class MmsSmsDatabase extends Database {
 
   public class Reader implements Closeable {
 
-    private final Cursor                 cursor;
-    private       SmsDatabase.Reader     smsReader;
-    private       MmsDatabase.Reader     mmsReader;
+    private final           Cursor                 cursor;
+    private final @Nullable MessageRelations       relations;
+    private                 SmsDatabase.Reader     smsReader;
+    private                 MmsDatabase.Reader     mmsReader;
 
     public Reader(Cursor cursor) {
-      this.cursor = cursor;
+      this(cursor, cursor instanceof MessageRelationsCursor ? ((MessageRelationsCursor) cursor).getRelations() : null);
+    }
+
+    public Reader(Cursor cursor, @Nullable MessageRelations relations) {
+      this.cursor    = cursor;
+      this.relations = relations;
     }
 
     private SmsDatabase.Reader getSmsReader() {
       if (smsReader == null) {
-        smsReader = DatabaseComponent.get(context).smsDatabase().readerFor(cursor);
+        smsReader = DatabaseComponent.get(context).smsDatabase().readerFor(cursor, relations);
       }
 
       return smsReader;
@@ -554,7 +769,7 @@ public class MmsSmsDatabase extends Database {
 
     private MmsDatabase.Reader getMmsReader() {
       if (mmsReader == null) {
-        mmsReader = DatabaseComponent.get(context).mmsDatabase().readerFor(cursor);
+        mmsReader = DatabaseComponent.get(context).mmsDatabase().readerFor(cursor, relations);
       }
 
       return mmsReader;
@@ -11,6 +11,7 @@ import org.thoughtcrime.securesms.database.model.MessageId
 import org.thoughtcrime.securesms.database.model.ReactionRecord
 import org.thoughtcrime.securesms.dependencies.DatabaseComponent
 import org.thoughtcrime.securesms.util.CursorUtil
+import org.thoughtcrime.securesms.util.SqlUtil
 
 /**
  * Store reactions on messages.
@@ -74,6 +75,7 @@ class ReactionDatabase(context: Context, helper: SQLCipherOpenHelper) : Database
 
     private fun readReaction(cursor: Cursor): ReactionRecord {
       return ReactionRecord(
+        id = CursorUtil.requireLong(cursor, ROW_ID),
         messageId = CursorUtil.requireLong(cursor, MESSAGE_ID),
         isMms = CursorUtil.requireInt(cursor, IS_MMS) == 1,
         emoji = CursorUtil.requireString(cursor, EMOJI),
@@ -102,6 +104,32 @@ class ReactionDatabase(context: Context, helper: SQLCipherOpenHelper) : Database
     return reactions
   }
 
+  /**
+   * Loads the reactions of a batch of messages through the (message_id, is_mms) index, sorted by
+   * the time they were sent, keyed by the message they are on.
+   */
+  fun getReactionsForMessages(messageIds: Collection<MessageId>): Map<MessageId, List<ReactionRecord>> {
+    val reactions = mutableMapOf<MessageId, MutableList<ReactionRecord>>()
+
+    messageIds.groupBy({ it.mms }, { it.id }).forEach { (mms, ids) ->
+      SqlUtil.buildCollectionQuery(MESSAGE_ID, ids).forEach { query ->
+        val where = "$IS_MMS = ? AND ${query.where}"
+        val args = arrayOf(if (mms) "1" else "0", *query.whereArgs)
+
+        readableDatabase.query(TABLE_NAME, null, where, args, null, null, null).use { cursor ->
+          while (cursor.moveToNext()) {
+            val reaction = readReaction(cursor)
+            reactions.getOrPut(MessageId(reaction.messageId, mms)) { mutableListOf() } += reaction
+          }
+        }
+      }
+    }
+
+    // Sorted here rather than by the query, the index only returns them grouped by message
+    reactions.values.forEach { it.sortBy(ReactionRecord::dateSent) }
+    return reactions
+  }
+
   fun addReaction(messageId: MessageId, reaction: ReactionRecord, notifyUnread: Boolean) {
 
     writableDatabase.beginTransaction()
@@ -24,11 +24,15 @@ import org.session.libsignal.utilities.Base64;
 import org.session.libsignal.utilities.Log;
 import org.session.libsignal.utilities.guava.Optional;
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
+import org.thoughtcrime.securesms.util.SqlUtil;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class RecipientDatabase extends Database {
 
@@ -177,6 +181,33 @@ public class RecipientDatabase extends Database {
     }
   }
 
+  /**
+   * Loads the settings of a batch of recipients through the address index, recipients without
+   * settings are left out.
+   */
+  public @NonNull Map<Address, RecipientSettings> getRecipientSettings(@NonNull Collection<Address> addresses) {
+    Map<Address, RecipientSettings> results = new HashMap<>();
+    if (addresses.isEmpty()) return results;
+
+    SQLiteDatabase database   = databaseHelper.getReadableDatabase();
+    List<String>   serialized = new ArrayList<>(addresses.size());
+
+    for (Address address : addresses) {
+      serialized.add(address.serialize());
+    }
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQuery(ADDRESS, serialized)) {
+      try (Cursor cursor = database.query(TABLE_NAME, null, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          Address address = Address.fromSerialized(cursor.getString(cursor.getColumnIndexOrThrow(ADDRESS)));
+          results.put(address, getRecipientSettings(cursor).get());
+        }
+      }
+    }
+
+    return results;
+  }
+
   Optional<RecipientSettings> getRecipientSettings(@NonNull Cursor cursor) {
     boolean blocked                = cursor.getInt(cursor.getColumnIndexOrThrow(BLOCK))                == 1;
     boolean approved               = cursor.getInt(cursor.getColumnIndexOrThrow(APPROVED))             == 1;
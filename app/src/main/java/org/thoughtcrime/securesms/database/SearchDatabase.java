@@ -4,6 +4,8 @@ import android.content.Context;
 import android.database.Cursor;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.annimon.stream.Stream;
 
@@ -12,6 +14,7 @@ import net.zetetic.database.sqlcipher.SQLiteDatabase;
 import org.session.libsession.utilities.Util;
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -28,6 +31,17 @@ public class SearchDatabase extends Database {
   public static final String SNIPPET              = "snippet";
   public static final String CONVERSATION_ADDRESS = "conversation_address";
   public static final String MESSAGE_ADDRESS      = "message_address";
+  public static final String RANK                 = "search_rank";
+  public static final String MESSAGE_ID           = "message_id";
+  public static final String IS_MMS               = "is_mms";
+
+  public static final String CONTACT_FTS_TABLE_NAME = "contact_fts";
+  public static final String GROUP_FTS_TABLE_NAME   = "group_fts";
+
+  // Matches are ranked by bm25, which is negative and lower for better matches. Dividing it by the
+  // age of the row in units of this many milliseconds pulls older matches towards zero, so among
+  // similarly relevant results the recent ones come first.
+  private static final long RECENCY_DECAY_MS = 30L * 24 * 60 * 60 * 1000;
 
   public static final String[] CREATE_TABLE = {
       "CREATE VIRTUAL TABLE " + SMS_FTS_TABLE_NAME + " USING fts5(" + BODY + ", " + THREAD_ID + " UNINDEXED, content=" + SmsDatabase.TABLE_NAME + ", content_rowid=" + SmsDatabase.ID + ");",
@@ -58,13 +72,86 @@ public class SearchDatabase extends Database {
           "END;"
   };
 
-  private static final String MESSAGES_QUERY =
+  /**
+   * Contacts and group names are indexed the same way as message bodies. The contact table has no
+   * integer primary key, so its index keeps its own copy of the rows under the same rowids.
+   */
+  public static final String[] CREATE_CONTACT_AND_GROUP_TABLES = {
+      "CREATE VIRTUAL TABLE IF NOT EXISTS " + CONTACT_FTS_TABLE_NAME + " USING fts5(" + SessionContactDatabase.sessionID + " UNINDEXED, " + SessionContactDatabase.name + ", " + SessionContactDatabase.nickname + ");",
+
+      "CREATE TRIGGER IF NOT EXISTS contact_ai AFTER INSERT ON " + SessionContactDatabase.sessionContactTable + " BEGIN\n" +
+          "  INSERT INTO " + CONTACT_FTS_TABLE_NAME + "(" + ID + ", " + SessionContactDatabase.sessionID + ", " + SessionContactDatabase.name + ", " + SessionContactDatabase.nickname + ") VALUES (new." + ID + ", new." + SessionContactDatabase.sessionID + ", new." + SessionContactDatabase.name + ", new." + SessionContactDatabase.nickname + ");\n" +
+          "END;\n",
+      "CREATE TRIGGER IF NOT EXISTS contact_ad AFTER DELETE ON " + SessionContactDatabase.sessionContactTable + " BEGIN\n" +
+          "  DELETE FROM " + CONTACT_FTS_TABLE_NAME + " WHERE " + ID + " = old." + ID + ";\n" +
+          "END;\n",
+      "CREATE TRIGGER IF NOT EXISTS contact_au AFTER UPDATE OF " + SessionContactDatabase.name + ", " + SessionContactDatabase.nickname + " ON " + SessionContactDatabase.sessionContactTable + " BEGIN\n" +
+          "  UPDATE " + CONTACT_FTS_TABLE_NAME + " SET " + SessionContactDatabase.name + " = new." + SessionContactDatabase.name + ", " + SessionContactDatabase.nickname + " = new." + SessionContactDatabase.nickname + " WHERE " + ID + " = new." + ID + ";\n" +
+          "END;",
+
+      "CREATE VIRTUAL TABLE IF NOT EXISTS " + GROUP_FTS_TABLE_NAME + " USING fts5(" + GroupDatabase.TITLE + ", content=" + GroupDatabase.TABLE_NAME + ", content_rowid=" + GroupDatabase.ID + ");",
+
+      "CREATE TRIGGER IF NOT EXISTS groups_ai AFTER INSERT ON " + GroupDatabase.TABLE_NAME + " BEGIN\n" +
+          "  INSERT INTO " + GROUP_FTS_TABLE_NAME + "(" + ID + ", " + GroupDatabase.TITLE + ") VALUES (new." + GroupDatabase.ID + ", new." + GroupDatabase.TITLE + ");\n" +
+          "END;\n",
+      "CREATE TRIGGER IF NOT EXISTS groups_ad AFTER DELETE ON " + GroupDatabase.TABLE_NAME + " BEGIN\n" +
+          "  INSERT INTO " + GROUP_FTS_TABLE_NAME + "(" + GROUP_FTS_TABLE_NAME + ", " + ID + ", " + GroupDatabase.TITLE + ") VALUES('delete', old." + GroupDatabase.ID + ", old." + GroupDatabase.TITLE + ");\n" +
+          "END;\n",
+      "CREATE TRIGGER IF NOT EXISTS groups_au AFTER UPDATE OF " + GroupDatabase.TITLE + " ON " + GroupDatabase.TABLE_NAME + " BEGIN\n" +
+          "  INSERT INTO " + GROUP_FTS_TABLE_NAME + "(" + GROUP_FTS_TABLE_NAME + ", " + ID + ", " + GroupDatabase.TITLE + ") VALUES('delete', old." + GroupDatabase.ID + ", old." + GroupDatabase.TITLE + ");\n" +
+          "  INSERT INTO " + GROUP_FTS_TABLE_NAME + "(" + ID + ", " + GroupDatabase.TITLE + ") VALUES (new." + GroupDatabase.ID + ", new." + GroupDatabase.TITLE + ");\n" +
+          "END;",
+
+      // Index whatever is already there
+      "INSERT INTO " + CONTACT_FTS_TABLE_NAME + "(" + ID + ", " + SessionContactDatabase.sessionID + ", " + SessionContactDatabase.name + ", " + SessionContactDatabase.nickname + ") " +
+          "SELECT " + ID + ", " + SessionContactDatabase.sessionID + ", " + SessionContactDatabase.name + ", " + SessionContactDatabase.nickname + " FROM " + SessionContactDatabase.sessionContactTable + ";",
+      "INSERT INTO " + GROUP_FTS_TABLE_NAME + "(" + GROUP_FTS_TABLE_NAME + ") VALUES('rebuild');"
+  };
+
+  private static String rank(@NonNull String ftsTable, @NonNull String dateColumn) {
+    return "bm25(" + ftsTable + ") / (1.0 + MAX(0, ? - " + dateColumn + ") / " + RECENCY_DECAY_MS + ".0) AS " + RANK;
+  }
+
+  /** Contacts with a conversation, the first argument is the current time. */
+  @VisibleForTesting
+  static final String CONTACTS_QUERY =
+      "SELECT " + SessionContactDatabase.sessionContactTable + ".*, " + rank(CONTACT_FTS_TABLE_NAME, ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.DATE) + " " +
+      "FROM " + CONTACT_FTS_TABLE_NAME + " " +
+      "INNER JOIN " + SessionContactDatabase.sessionContactTable + " ON " + SessionContactDatabase.sessionContactTable + "." + ID + " = " + CONTACT_FTS_TABLE_NAME + "." + ID + " " +
+      "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " = " + CONTACT_FTS_TABLE_NAME + "." + SessionContactDatabase.sessionID + " " +
+      "WHERE " + CONTACT_FTS_TABLE_NAME + " MATCH ? " +
+      "ORDER BY " + RANK + " " +
+      "LIMIT ?";
+
+  @VisibleForTesting
+  static final String CONTACT_IDS_QUERY =
+      "SELECT " + SessionContactDatabase.sessionID + " FROM " + CONTACT_FTS_TABLE_NAME + " " +
+      "WHERE " + CONTACT_FTS_TABLE_NAME + " MATCH ? " +
+      "ORDER BY rank " +
+      "LIMIT ?";
+
+  /** Groups with a conversation, the first argument is the current time. */
+  @VisibleForTesting
+  static final String GROUPS_QUERY =
+      "SELECT " + Util.join(GroupDatabase.TYPED_GROUP_PROJECTION, ", ") + ", " + rank(GROUP_FTS_TABLE_NAME, ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.DATE) + " " +
+      "FROM " + GROUP_FTS_TABLE_NAME + " " +
+      "INNER JOIN " + GroupDatabase.TABLE_NAME + " ON " + GroupDatabase.TABLE_NAME + "." + GroupDatabase.ID + " = " + GROUP_FTS_TABLE_NAME + "." + ID + " " +
+      "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " = " + GroupDatabase.TABLE_NAME + "." + GroupDatabase.GROUP_ID + " " +
+      "WHERE " + GROUP_FTS_TABLE_NAME + " MATCH ? " +
+      "ORDER BY " + RANK + " " +
+      "LIMIT ?";
+
+  // The messages across all conversations, the first and third arguments are the current time
+  private static final String MESSAGE_MATCHES =
       "SELECT " +
         ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " AS " + CONVERSATION_ADDRESS + ", " +
         MmsSmsColumns.ADDRESS + " AS " + MESSAGE_ADDRESS + ", " +
         "snippet(" + SMS_FTS_TABLE_NAME + ", -1, '', '', '...', 7) AS " + SNIPPET + ", " +
         SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
-        SMS_FTS_TABLE_NAME + "."  + THREAD_ID + " " +
+        SMS_FTS_TABLE_NAME + "."  + THREAD_ID + ", " +
+        SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " AS " + MESSAGE_ID + ", " +
+        "0 AS " + IS_MMS + ", " +
+        rank(SMS_FTS_TABLE_NAME, SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_SENT) + " " +
       "FROM " + SmsDatabase.TABLE_NAME + " " +
       "INNER JOIN " + SMS_FTS_TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + ID + " = " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " " +
       "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
@@ -75,15 +162,39 @@ public class SearchDatabase extends Database {
         MmsSmsColumns.ADDRESS + " AS " + MESSAGE_ADDRESS + ", " +
         "snippet(" + MMS_FTS_TABLE_NAME + ", -1, '', '', '...', 7) AS " + SNIPPET + ", " +
         MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
-        MMS_FTS_TABLE_NAME + "." + THREAD_ID + " " +
+        MMS_FTS_TABLE_NAME + "." + THREAD_ID + ", " +
+        MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " AS " + MESSAGE_ID + ", " +
+        "1 AS " + IS_MMS + ", " +
+        rank(MMS_FTS_TABLE_NAME, MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT) + " " +
       "FROM " + MmsDatabase.TABLE_NAME + " " +
       "INNER JOIN " + MMS_FTS_TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " " +
       "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
-      "WHERE " + MMS_FTS_TABLE_NAME + " MATCH ? " +
-      "ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_SENT + " DESC " +
+      "WHERE " + MMS_FTS_TABLE_NAME + " MATCH ? ";
+
+  // Ties are broken down to the message so that every result has its own place in the order
+  private static final String MESSAGE_ORDER =
+      "ORDER BY " + RANK + ", " + MmsSmsColumns.NORMALIZED_DATE_SENT + " DESC, " + IS_MMS + " DESC, " + MESSAGE_ID + " DESC " +
       "LIMIT ?";
 
-  private static final String MESSAGES_FOR_THREAD_QUERY =
+  /** The first page of messages across all conversations, the first and third arguments are the current time. */
+  @VisibleForTesting
+  static final String MESSAGES_QUERY = MESSAGE_MATCHES + MESSAGE_ORDER;
+
+  /**
+   * The page of messages across all conversations that follows a {@link MessagePageKey}. The first
+   * and third arguments are the current time, then come the rank, the sent timestamp twice and the
+   * type and id of the last message of the previous page.
+   */
+  @VisibleForTesting
+  static final String MESSAGES_AFTER_QUERY =
+      "SELECT * FROM (" + MESSAGE_MATCHES + ") " +
+      "WHERE " + RANK + " > ? OR (" + RANK + " = ? AND (" +
+        MmsSmsColumns.NORMALIZED_DATE_SENT + " < ? OR (" + MmsSmsColumns.NORMALIZED_DATE_SENT + " = ? AND " +
+        "(" + IS_MMS + ", " + MESSAGE_ID + ") < (?, ?)))) " +
+      MESSAGE_ORDER;
+
+  @VisibleForTesting
+  static final String MESSAGES_FOR_THREAD_QUERY =
       "SELECT " +
           ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " AS " + CONVERSATION_ADDRESS + ", " +
           MmsSmsColumns.ADDRESS + " AS " + MESSAGE_ADDRESS + ", " +
@@ -112,13 +223,51 @@ public class SearchDatabase extends Database {
     super(context, databaseHelper);
   }
 
-  public Cursor queryMessages(@NonNull String query) {
+  public Cursor queryContacts(@NonNull String query, int limit) {
+    SQLiteDatabase db  = databaseHelper.getReadableDatabase();
+    String         now = String.valueOf(System.currentTimeMillis());
+
+    return db.rawQuery(CONTACTS_QUERY, new String[] { now, adjustQuery(query), String.valueOf(limit) });
+  }
+
+  public @NonNull List<String> queryContactIds(@NonNull String query, int limit) {
+    SQLiteDatabase db     = databaseHelper.getReadableDatabase();
+    List<String>   result = new ArrayList<>();
+
+    try (Cursor cursor = db.rawQuery(CONTACT_IDS_QUERY, new String[] { adjustQuery(query), String.valueOf(limit) })) {
+      while (cursor.moveToNext()) {
+        result.add(cursor.getString(0));
+      }
+    }
+
+    return result;
+  }
+
+  public Cursor queryGroups(@NonNull String query, int limit) {
+    SQLiteDatabase db  = databaseHelper.getReadableDatabase();
+    String         now = String.valueOf(System.currentTimeMillis());
+
+    return db.rawQuery(GROUPS_QUERY, new String[] { now, adjustQuery(query), String.valueOf(limit) });
+  }
+
+  /**
+   * Reads a page of messages across all conversations, the first one when {@code after} is null
+   * and the one following it otherwise. Ranks are computed against the time of {@code now}, which
+   * has to stay the same for all pages of a search.
+   */
+  public Cursor queryMessages(@NonNull String query, long now, @Nullable MessagePageKey after, int limit) {
     SQLiteDatabase db          = databaseHelper.getReadableDatabase();
     String         prefixQuery = adjustQuery(query);
+    Cursor         cursor;
 
-    int queryLimit = Math.min(query.length()*50,500);
+    if (after == null) {
+      cursor = db.rawQuery(MESSAGES_QUERY, new Object[] { now, prefixQuery, now, prefixQuery, limit });
+    } else {
+      cursor = db.rawQuery(MESSAGES_AFTER_QUERY, new Object[] { now, prefixQuery, now, prefixQuery,
+                                                                after.rank, after.rank, after.sentTimestamp, after.sentTimestamp,
+                                                                after.mms ? 1 : 0, after.messageId, limit });
+    }
 
-    Cursor cursor = db.rawQuery(MESSAGES_QUERY, new String[] { prefixQuery, prefixQuery, String.valueOf(queryLimit) });
     setNotifyConverationListListeners(cursor);
     return cursor;
   }
@@ -141,5 +290,25 @@ public class SearchDatabase extends Database {
 
     return prefixQuery;
   }
-}
 
+  /**
+   * Where a message sorts in the results of a global search, later pages are read from after the
+   * last message of the previous one. The current time the ranks were computed against is kept
+   * with it so that every page ranks the same way.
+   */
+  public static final class MessagePageKey {
+    public final long    now;
+    public final double  rank;
+    public final long    sentTimestamp;
+    public final boolean mms;
+    public final long    messageId;
+
+    public MessagePageKey(long now, double rank, long sentTimestamp, boolean mms, long messageId) {
+      this.now           = now;
+      this.rank          = rank;
+      this.sentTimestamp = sentTimestamp;
+      this.mms           = mms;
+      this.messageId     = messageId;
+    }
+  }
+}
@@ -5,6 +5,7 @@ import android.content.Context
 import android.database.Cursor
 import androidx.core.database.getStringOrNull
 import org.session.libsession.messaging.contacts.Contact
+import org.session.libsession.messaging.mentions.MentionsManager
 import org.session.libsession.messaging.utilities.SessionId
 import org.session.libsignal.utilities.Base64
 import org.session.libsignal.utilities.IdPrefix
@@ -13,7 +14,7 @@ import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper
 class SessionContactDatabase(context: Context, helper: SQLCipherOpenHelper) : Database(context, helper) {
 
     companion object {
-        private const val sessionContactTable = "session_contact_database"
+        const val sessionContactTable = "session_contact_database"
         const val sessionID = "session_id"
         const val name = "name"
         const val nickname = "nickname"
@@ -41,6 +42,17 @@ class SessionContactDatabase(context: Context, helper: SQLCipherOpenHelper) : Da
         }
     }
 
+    fun getContactsWithSessionIDs(sessionIDs: Collection<String>): List<Contact> {
+        val database = databaseHelper.readableDatabase
+        // Stay below SQLite's limit on the number of bound arguments
+        return sessionIDs.distinct().chunked(900).flatMap { chunk ->
+            val query = "$sessionID IN (${chunk.joinToString(", ") { "?" }})"
+            database.getAll(sessionContactTable, query, chunk.toTypedArray()) { cursor ->
+                contactFromCursor(cursor)
+            }
+        }
+    }
+
     fun getAllContacts(): Set<Contact> {
         val database = databaseHelper.readableDatabase
         return database.getAll(sessionContactTable, null, null) { cursor ->
@@ -76,6 +88,7 @@ class SessionContactDatabase(context: Context, helper: SQLCipherOpenHelper) : Da
         contentValues.put(threadID, contact.threadID)
         contentValues.put(isTrusted, if (contact.isTrusted) 1 else 0)
         database.insertOrUpdate(sessionContactTable, contentValues, "$sessionID = ?", arrayOf( contact.sessionID ))
+        MentionsManager.contactChanged(contact)
         notifyConversationListListeners()
     }
 
@@ -93,14 +106,4 @@ class SessionContactDatabase(context: Context, helper: SQLCipherOpenHelper) : Da
         contact.isTrusted = cursor.getInt(cursor.getColumnIndexOrThrow(isTrusted)) != 0
         return contact
     }
-
-    fun queryContactsByName(constraint: String): Cursor {
-        return databaseHelper.readableDatabase.query(
-            sessionContactTable, null, " $name LIKE ? OR $nickname LIKE ?", arrayOf(
-                "%$constraint%",
-                "%$constraint%"
-            ),
-            null, null, null
-        )
-    }
 }
\ No newline at end of file
@@ -47,6 +47,7 @@ import org.session.libsignal.utilities.JsonUtil;
 import org.session.libsignal.utilities.Log;
 import org.session.libsignal.utilities.guava.Optional;
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
+import org.thoughtcrime.securesms.database.model.MessageId;
 import org.thoughtcrime.securesms.database.model.MessageRecord;
 import org.thoughtcrime.securesms.database.model.ReactionRecord;
 import org.thoughtcrime.securesms.database.model.SmsMessageRecord;
@@ -90,13 +91,22 @@ public class SmsDatabase extends MessagingDatabase {
     EXPIRES_IN + " INTEGER DEFAULT 0, " + EXPIRE_STARTED + " INTEGER DEFAULT 0, " + NOTIFIED + " DEFAULT 0, " +
     READ_RECEIPT_COUNT + " INTEGER DEFAULT 0, " + UNIDENTIFIED + " INTEGER DEFAULT 0);";
 
+  public static final String CREATE_THREAD_DATE_SENT_INDEX =
+    "CREATE INDEX IF NOT EXISTS sms_thread_date_sent_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_SENT + ", " + ADDRESS + ");";
+
+  public static final String CREATE_DATE_SENT_ADDRESS_INDEX =
+    "CREATE INDEX IF NOT EXISTS sms_date_sent_address_index ON " + TABLE_NAME + " (" + DATE_SENT + ", " + ADDRESS + ");";
+
+  public static final String DROP_DATE_SENT_INDEX = "DROP INDEX IF EXISTS sms_date_sent_index;";
+
   public static final String[] CREATE_INDEXS = {
     "CREATE INDEX IF NOT EXISTS sms_thread_id_index ON " + TABLE_NAME + " (" + THREAD_ID + ");",
     "CREATE INDEX IF NOT EXISTS sms_read_index ON " + TABLE_NAME + " (" + READ + ");",
     "CREATE INDEX IF NOT EXISTS sms_read_and_notified_and_thread_id_index ON " + TABLE_NAME + "(" + READ + "," + NOTIFIED + ","  + THREAD_ID + ");",
     "CREATE INDEX IF NOT EXISTS sms_type_index ON " + TABLE_NAME + " (" + TYPE + ");",
-    "CREATE INDEX IF NOT EXISTS sms_date_sent_index ON " + TABLE_NAME + " (" + DATE_SENT + ");",
-    "CREATE INDEX IF NOT EXISTS sms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");"
+    CREATE_DATE_SENT_ADDRESS_INDEX,
+    "CREATE INDEX IF NOT EXISTS sms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");",
+    CREATE_THREAD_DATE_SENT_INDEX
   };
 
   private static final String[] MESSAGE_PROJECTION = new String[] {
@@ -760,6 +770,10 @@ public class SmsDatabase extends MessagingDatabase {
     return new Reader(cursor);
   }
 
+  public Reader readerFor(Cursor cursor, @Nullable MessageRelations relations) {
+    return new Reader(cursor, relations);
+  }
+
   public OutgoingMessageReader readerFor(OutgoingTextMessage message, long threadId) {
     return new OutgoingMessageReader(message, threadId);
   }
@@ -789,10 +803,20 @@ public class SmsDatabase extends MessagingDatabase {
 
   public class Reader {
 
-    private final Cursor cursor;
+    private final           Cursor           cursor;
+    private final @Nullable MessageRelations relations;
 
     public Reader(Cursor cursor) {
-      this.cursor = cursor;
+      this(cursor, null);
+    }
+
+    /**
+     * Reads the reactions of each message from {@code relations} when given, and from the
+     * aggregated column of the cursor otherwise.
+     */
+    public Reader(Cursor cursor, @Nullable MessageRelations relations) {
+      this.cursor    = cursor;
+      this.relations = relations;
     }
 
     public SmsMessageRecord getNext() {
@@ -832,7 +856,8 @@ public class SmsDatabase extends MessagingDatabase {
 
       List<IdentityKeyMismatch> mismatches = getMismatches(mismatchDocument);
       Recipient                 recipient  = Recipient.from(context, address, true);
-      List<ReactionRecord>      reactions  = DatabaseComponent.get(context).reactionDatabase().getReactions(cursor);
+      List<ReactionRecord>      reactions  = relations != null ? relations.getReactions(new MessageId(messageId, false))
+                                                                   : DatabaseComponent.get(context).reactionDatabase().getReactions(cursor);
 
       return new SmsMessageRecord(messageId, body, recipient,
                                   recipient,
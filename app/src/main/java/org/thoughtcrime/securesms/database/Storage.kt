@@ -715,7 +715,7 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
     override fun getMessageIdInDatabase(timestamp: Long, author: String): Long? {
         val database = DatabaseComponent.get(context).mmsSmsDatabase()
         val address = fromSerialized(author)
-        return database.getMessageFor(timestamp, address)?.getId()
+        return database.getMessageLookupFor(timestamp, address)?.id
     }
 
     override fun updateSentTimestamp(
@@ -735,19 +735,19 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
 
     override fun markAsSent(timestamp: Long, author: String) {
         val database = DatabaseComponent.get(context).mmsSmsDatabase()
-        val messageRecord = database.getMessageFor(timestamp, author) ?: return
-        if (messageRecord.isMms) {
+        val message = database.getMessageLookupFor(timestamp, author) ?: return
+        if (message.isMms) {
             val mmsDatabase = DatabaseComponent.get(context).mmsDatabase()
-            mmsDatabase.markAsSent(messageRecord.getId(), true)
+            mmsDatabase.markAsSent(message.id, true)
         } else {
             val smsDatabase = DatabaseComponent.get(context).smsDatabase()
-            smsDatabase.markAsSent(messageRecord.getId(), true)
+            smsDatabase.markAsSent(message.id, true)
         }
     }
 
     override fun markAsSyncing(timestamp: Long, author: String) {
         DatabaseComponent.get(context).mmsSmsDatabase()
-            .getMessageFor(timestamp, author)
+            .getMessageLookupFor(timestamp, author)
             ?.run { getMmsDatabaseElseSms(isMms).markAsSyncing(id) }
     }
 
@@ -757,44 +757,43 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
 
     override fun markAsResyncing(timestamp: Long, author: String) {
         DatabaseComponent.get(context).mmsSmsDatabase()
-            .getMessageFor(timestamp, author)
+            .getMessageLookupFor(timestamp, author)
             ?.run { getMmsDatabaseElseSms(isMms).markAsResyncing(id) }
     }
 
     override fun markAsSending(timestamp: Long, author: String) {
         val database = DatabaseComponent.get(context).mmsSmsDatabase()
-        val messageRecord = database.getMessageFor(timestamp, author) ?: return
-        if (messageRecord.isMms) {
+        val message = database.getMessageLookupFor(timestamp, author) ?: return
+        if (message.isMms) {
             val mmsDatabase = DatabaseComponent.get(context).mmsDatabase()
-            mmsDatabase.markAsSending(messageRecord.getId())
+            mmsDatabase.markAsSending(message.id)
         } else {
             val smsDatabase = DatabaseComponent.get(context).smsDatabase()
-            smsDatabase.markAsSending(messageRecord.getId())
-            messageRecord.isPending
+            smsDatabase.markAsSending(message.id)
         }
     }
 
     override fun markUnidentified(timestamp: Long, author: String) {
         val database = DatabaseComponent.get(context).mmsSmsDatabase()
-        val messageRecord = database.getMessageFor(timestamp, author) ?: return
-        if (messageRecord.isMms) {
+        val message = database.getMessageLookupFor(timestamp, author) ?: return
+        if (message.isMms) {
             val mmsDatabase = DatabaseComponent.get(context).mmsDatabase()
-            mmsDatabase.markUnidentified(messageRecord.getId(), true)
+            mmsDatabase.markUnidentified(message.id, true)
         } else {
             val smsDatabase = DatabaseComponent.get(context).smsDatabase()
-            smsDatabase.markUnidentified(messageRecord.getId(), true)
+            smsDatabase.markUnidentified(message.id, true)
         }
     }
 
     override fun markAsSentFailed(timestamp: Long, author: String, error: Exception) {
         val database = DatabaseComponent.get(context).mmsSmsDatabase()
-        val messageRecord = database.getMessageFor(timestamp, author) ?: return
-        if (messageRecord.isMms) {
+        val lookup = database.getMessageLookupFor(timestamp, author) ?: return
+        if (lookup.isMms) {
             val mmsDatabase = DatabaseComponent.get(context).mmsDatabase()
-            mmsDatabase.markAsSentFailed(messageRecord.getId())
+            mmsDatabase.markAsSentFailed(lookup.id)
         } else {
             val smsDatabase = DatabaseComponent.get(context).smsDatabase()
-            smsDatabase.markAsSentFailed(messageRecord.getId())
+            smsDatabase.markAsSentFailed(lookup.id)
         }
         if (error.localizedMessage != null) {
             val message: String
@@ -803,18 +802,17 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
             } else {
                 message = error.localizedMessage!!
             }
-            DatabaseComponent.get(context).lokiMessageDatabase().setErrorMessage(messageRecord.getId(), message)
+            DatabaseComponent.get(context).lokiMessageDatabase().setErrorMessage(lookup.id, message)
         } else {
-            DatabaseComponent.get(context).lokiMessageDatabase().setErrorMessage(messageRecord.getId(), error.javaClass.simpleName)
+            DatabaseComponent.get(context).lokiMessageDatabase().setErrorMessage(lookup.id, error.javaClass.simpleName)
         }
     }
 
     override fun markAsSyncFailed(timestamp: Long, author: String, error: Exception) {
         val database = DatabaseComponent.get(context).mmsSmsDatabase()
-        val messageRecord = database.getMessageFor(timestamp, author) ?: return
+        val lookup = database.getMessageLookupFor(timestamp, author) ?: return
 
-        database.getMessageFor(timestamp, author)
-            ?.run { getMmsDatabaseElseSms(isMms).markAsSyncFailed(id) }
+        getMmsDatabaseElseSms(lookup.isMms).markAsSyncFailed(lookup.id)
 
         if (error.localizedMessage != null) {
             val message: String
@@ -823,9 +821,9 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
             } else {
                 message = error.localizedMessage!!
             }
-            DatabaseComponent.get(context).lokiMessageDatabase().setErrorMessage(messageRecord.getId(), message)
+            DatabaseComponent.get(context).lokiMessageDatabase().setErrorMessage(lookup.id, message)
         } else {
-            DatabaseComponent.get(context).lokiMessageDatabase().setErrorMessage(messageRecord.getId(), error.javaClass.simpleName)
+            DatabaseComponent.get(context).lokiMessageDatabase().setErrorMessage(lookup.id, error.javaClass.simpleName)
         }
     }
 
@@ -941,7 +939,7 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
         val infoMessage = OutgoingGroupMediaMessage(recipient, updateData, groupID, null, sentTimestamp, 0, true, null, listOf(), listOf())
         val mmsDB = DatabaseComponent.get(context).mmsDatabase()
         val mmsSmsDB = DatabaseComponent.get(context).mmsSmsDatabase()
-        if (mmsSmsDB.getMessageFor(sentTimestamp, userPublicKey) != null) return
+        if (mmsSmsDB.getMessageLookupFor(sentTimestamp, userPublicKey) != null) return
         val infoMessageID = mmsDB.insertMessageOutbox(infoMessage, threadID, false, null, runThreadUpdate = true)
         mmsDB.markAsSent(infoMessageID, true)
     }
@@ -1117,6 +1115,10 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
         return DatabaseComponent.get(context).sessionContactDatabase().getContactWithSessionID(sessionID)
     }
 
+    override fun getContactsWithSessionIDs(sessionIDs: Collection<String>): List<Contact> {
+        return DatabaseComponent.get(context).sessionContactDatabase().getContactsWithSessionIDs(sessionIDs)
+    }
+
     override fun getAllContacts(): Set<Contact> {
         return DatabaseComponent.get(context).sessionContactDatabase().getAllContacts()
     }
@@ -1139,6 +1141,10 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
         return if (recipientSettings.isPresent) { recipientSettings.get() } else null
     }
 
+    override fun getRecipientSettings(addresses: Collection<Address>): Map<Address, Recipient.RecipientSettings> {
+        return DatabaseComponent.get(context).recipientDatabase().getRecipientSettings(addresses)
+    }
+
     override fun addLibSessionContacts(contacts: List<LibSessionContact>) {
         val mappingDb = DatabaseComponent.get(context).blindedIdMappingDatabase()
         val moreContacts = contacts.filter { contact ->
@@ -1559,8 +1565,7 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
         val messageId = if (localId != null && localId > 0 && isMms != null) {
             MessageId(localId, isMms)
         } else if (timestamp != null && timestamp > 0) {
-            val messageRecord = DatabaseComponent.get(context).mmsSmsDatabase().getMessageForTimestamp(timestamp) ?: return
-            MessageId(messageRecord.id, messageRecord.isMms)
+            DatabaseComponent.get(context).mmsSmsDatabase().getMessageLookupForTimestamp(timestamp)?.messageId ?: return
         } else return
         DatabaseComponent.get(context).reactionDatabase().addReaction(
             messageId,
@@ -1580,8 +1585,7 @@ open class Storage(context: Context, helper: SQLCipherOpenHelper, private val co
     }
 
     override fun removeReaction(emoji: String, messageTimestamp: Long, author: String, notifyUnread: Boolean) {
-        val messageRecord = DatabaseComponent.get(context).mmsSmsDatabase().getMessageForTimestamp(messageTimestamp) ?: return
-        val messageId = MessageId(messageRecord.id, messageRecord.isMms)
+        val messageId = DatabaseComponent.get(context).mmsSmsDatabase().getMessageLookupForTimestamp(messageTimestamp)?.messageId ?: return
         DatabaseComponent.get(context).reactionDatabase().deleteReaction(emoji, messageId, author, notifyUnread)
     }
 
@@ -26,9 +26,11 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.MergeCursor;
 import android.net.Uri;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.annimon.stream.Stream;
 
@@ -66,6 +68,7 @@ import org.thoughtcrime.securesms.util.SessionMetaProtocol;
 import java.io.Closeable;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -121,6 +124,80 @@ public class ThreadDatabase extends Database {
     "CREATE INDEX IF NOT EXISTS archived_count_index ON " + TABLE_NAME + " (" + ARCHIVED + ", " + MESSAGE_COUNT + ");",
   };
 
+  /**
+   * Keeps each thread's message count and unread counts up to date as its messages are inserted,
+   * deleted, moved or have their read state changed, rather than recounting them on every change.
+   * A message counts as unread the same way as in {@link #setLastSeen(long, long)}, which recounts
+   * them whenever the last seen time moves.
+   */
+  public static final String[] CREATE_SUMMARY_TRIGGERS = {
+    createSummaryInsertTrigger(SmsDatabase.TABLE_NAME, SmsDatabase.DATE_SENT),
+    createSummaryDeleteTrigger(SmsDatabase.TABLE_NAME, SmsDatabase.DATE_SENT),
+    createSummaryUpdateTrigger(SmsDatabase.TABLE_NAME, SmsDatabase.DATE_SENT),
+    createSummaryInsertTrigger(MmsDatabase.TABLE_NAME, MmsDatabase.DATE_SENT),
+    createSummaryDeleteTrigger(MmsDatabase.TABLE_NAME, MmsDatabase.DATE_SENT),
+    createSummaryUpdateTrigger(MmsDatabase.TABLE_NAME, MmsDatabase.DATE_SENT)
+  };
+
+  /**
+   * Recounts what {@link #CREATE_SUMMARY_TRIGGERS} keep up to date from there on, the message count
+   * and unread counts of every thread, counting messages the same way as the triggers do.
+   */
+  public static final String RECOUNT_MESSAGES_COMMAND = "UPDATE " + TABLE_NAME + " SET " +
+    MESSAGE_COUNT + " = " + sumOverMessages("1", "1") + ", " +
+    UNREAD_COUNT + " = " + sumOverMessages(unreadCount("s", SmsDatabase.DATE_SENT), unreadCount("m", MmsDatabase.DATE_SENT)) + ", " +
+    UNREAD_MENTION_COUNT + " = " + sumOverMessages(unreadMentionCount("s", SmsDatabase.DATE_SENT), unreadMentionCount("m", MmsDatabase.DATE_SENT)) + ";";
+
+  private static String sumOverMessages(String smsValue, String mmsValue) {
+    return "(SELECT COALESCE(SUM(" + smsValue + "), 0) FROM " + SmsDatabase.TABLE_NAME + " AS s WHERE s." + SmsDatabase.THREAD_ID + " = " + TABLE_NAME + "." + ID + ") + " +
+           "(SELECT COALESCE(SUM(" + mmsValue + "), 0) FROM " + MmsDatabase.TABLE_NAME + " AS m WHERE m." + MmsDatabase.THREAD_ID + " = " + TABLE_NAME + "." + ID + ")";
+  }
+
+  private static String createSummaryInsertTrigger(String table, String dateSent) {
+    return "CREATE TRIGGER IF NOT EXISTS " + table + "_thread_summary_insert AFTER INSERT ON " + table + " " +
+           "BEGIN " + addToSummary("new", dateSent) + " END";
+  }
+
+  private static String createSummaryDeleteTrigger(String table, String dateSent) {
+    return "CREATE TRIGGER IF NOT EXISTS " + table + "_thread_summary_delete AFTER DELETE ON " + table + " " +
+           "BEGIN " + removeFromSummary("old", dateSent) + " END";
+  }
+
+  private static String createSummaryUpdateTrigger(String table, String dateSent) {
+    return "CREATE TRIGGER IF NOT EXISTS " + table + "_thread_summary_update " +
+           "AFTER UPDATE OF " + MmsSmsColumns.THREAD_ID + ", " + dateSent + ", " + MmsSmsColumns.READ + ", " +
+           MmsSmsColumns.REACTIONS_UNREAD + ", " + MmsSmsColumns.HAS_MENTION + " ON " + table + " " +
+           "BEGIN " + removeFromSummary("old", dateSent) + " " + addToSummary("new", dateSent) + " END";
+  }
+
+  private static String addToSummary(String row, String dateSent) {
+    return "UPDATE " + TABLE_NAME + " SET " +
+           MESSAGE_COUNT + " = " + MESSAGE_COUNT + " + 1, " +
+           UNREAD_COUNT + " = " + UNREAD_COUNT + " + " + unreadCount(row, dateSent) + ", " +
+           UNREAD_MENTION_COUNT + " = " + UNREAD_MENTION_COUNT + " + " + unreadMentionCount(row, dateSent) + " " +
+           "WHERE " + ID + " = " + row + "." + MmsSmsColumns.THREAD_ID + ";";
+  }
+
+  private static String removeFromSummary(String row, String dateSent) {
+    return "UPDATE " + TABLE_NAME + " SET " +
+           MESSAGE_COUNT + " = MAX(" + MESSAGE_COUNT + " - 1, 0), " +
+           UNREAD_COUNT + " = MAX(" + UNREAD_COUNT + " - " + unreadCount(row, dateSent) + ", 0), " +
+           UNREAD_MENTION_COUNT + " = MAX(" + UNREAD_MENTION_COUNT + " - " + unreadMentionCount(row, dateSent) + ", 0) " +
+           "WHERE " + ID + " = " + row + "." + MmsSmsColumns.THREAD_ID + ";";
+  }
+
+  private static String unreadCount(String row, String dateSent) {
+    return "(CASE WHEN " + row + "." + dateSent + " > " + LAST_SEEN + " THEN " +
+           "(" + row + "." + MmsSmsColumns.READ + " IS 0) + (" + row + "." + MmsSmsColumns.REACTIONS_UNREAD + " IS 1) " +
+           "ELSE 0 END)";
+  }
+
+  private static String unreadMentionCount(String row, String dateSent) {
+    return "(CASE WHEN " + row + "." + dateSent + " > " + LAST_SEEN + " AND " +
+           row + "." + MmsSmsColumns.READ + " IS 0 AND " + row + "." + MmsSmsColumns.HAS_MENTION + " IS 1 " +
+           "THEN 1 ELSE 0 END)";
+  }
+
   private static final String[] THREAD_PROJECTION = {
       ID, DATE, MESSAGE_COUNT, ADDRESS, SNIPPET, SNIPPET_CHARSET, READ, UNREAD_COUNT, UNREAD_MENTION_COUNT, TYPE, ERROR, SNIPPET_TYPE,
       SNIPPET_URI, ARCHIVED, STATUS, DELIVERY_RECEIPT_COUNT, EXPIRES_IN, LAST_SEEN, READ_RECEIPT_COUNT, IS_PINNED
@@ -171,13 +248,12 @@ public class ThreadDatabase extends Database {
     return db.insert(TABLE_NAME, null, contentValues);
   }
 
-  private void updateThread(long threadId, long count, String body, @Nullable Uri attachment,
+  private void updateThread(long threadId, String body, @Nullable Uri attachment,
                             long date, int status, int deliveryReceiptCount, long type, boolean unarchive,
                             long expiresIn, int readReceiptCount)
   {
     ContentValues contentValues = new ContentValues(7);
     contentValues.put(DATE, date - date % 1000);
-    contentValues.put(MESSAGE_COUNT, count);
     if (!body.isEmpty()) {
       contentValues.put(SNIPPET, body);
     }
@@ -527,11 +603,33 @@ public class ThreadDatabase extends Database {
     String         query  = createQuery(where, 0);
     Cursor         cursor = db.rawQuery(query, null);
 
+    resolveRecipients(cursor);
     setNotifyConverationListListeners(cursor);
 
     return cursor;
   }
 
+  /**
+   * Resolves the thread recipients and group members of the conversation list that aren't cached
+   * yet with one query, rather than one per row as the list binds.
+   */
+  private void resolveRecipients(Cursor cursor) {
+    Set<Address> addresses     = new HashSet<>();
+    int          addressColumn = cursor.getColumnIndexOrThrow(ADDRESS);
+    int          membersColumn = cursor.getColumnIndexOrThrow(GroupDatabase.MEMBERS);
+
+    while (cursor.moveToNext()) {
+      String address = cursor.getString(addressColumn);
+      if (!TextUtils.isEmpty(address)) addresses.add(Address.fromSerialized(address));
+
+      String members = cursor.getString(membersColumn);
+      if (!TextUtils.isEmpty(members)) addresses.addAll(Address.fromSerializedList(members, ','));
+    }
+    cursor.moveToPosition(-1);
+
+    Recipient.resolveAll(context, addresses);
+  }
+
   public Cursor getDirectShareList() {
     SQLiteDatabase db    = databaseHelper.getReadableDatabase();
     String         query = createQuery(MESSAGE_COUNT + " != 0", 0);
@@ -546,9 +644,8 @@ public class ThreadDatabase extends Database {
    */
   public boolean setLastSeen(long threadId, long timestamp) {
     // edge case where we set the last seen time for a conversation before it loads messages (joining community for example)
-    MmsSmsDatabase mmsSmsDatabase = DatabaseComponent.get(context).mmsSmsDatabase();
     Recipient forThreadId = getRecipientForThreadId(threadId);
-    if (mmsSmsDatabase.getConversationCount(threadId) <= 0 && forThreadId != null && forThreadId.isOpenGroupRecipient()) return false;
+    if (getMessageCount(threadId) <= 0 && forThreadId != null && forThreadId.isOpenGroupRecipient()) return false;
 
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
 
@@ -568,7 +665,13 @@ public class ThreadDatabase extends Database {
     String allUnread = "(("+allSmsUnread+") + ("+allMmsUnread+"))";
     String allUnreadMention = "(("+smsMentionCountSubQuery+") + ("+mmsMentionCountSubQuery+"))";
 
-    String reflectUpdates = "UPDATE "+TABLE_NAME+" AS t SET "+UNREAD_COUNT+" = "+allUnread+", "+UNREAD_MENTION_COUNT+" = "+allUnreadMention+" WHERE "+ID+" = ?";
+    String smsMessageCountSubQuery = "SELECT COUNT(*) FROM "+SmsDatabase.TABLE_NAME+" AS s WHERE t."+ID+" = s."+SmsDatabase.THREAD_ID;
+    String mmsMessageCountSubQuery = "SELECT COUNT(*) FROM "+MmsDatabase.TABLE_NAME+" AS m WHERE t."+ID+" = m."+MmsDatabase.THREAD_ID;
+    String allMessages = "(("+smsMessageCountSubQuery+") + ("+mmsMessageCountSubQuery+"))";
+
+    // The counts are kept up to date by CREATE_SUMMARY_TRIGGERS, recounting the messages here as
+    // well repairs them if they ever drift
+    String reflectUpdates = "UPDATE "+TABLE_NAME+" AS t SET "+MESSAGE_COUNT+" = "+allMessages+", "+UNREAD_COUNT+" = "+allUnread+", "+UNREAD_MENTION_COUNT+" = "+allUnreadMention+" WHERE "+ID+" = ?";
     db.execSQL(reflectUpdates, new Object[]{threadId});
     db.setTransactionSuccessful();
     db.endTransaction();
@@ -739,9 +842,16 @@ public class ThreadDatabase extends Database {
     notifyConversationListListeners();
   }
 
+  /**
+   * Updates the thread's snippet from its latest message. The message and unread counts aren't
+   * recounted here, {@link #CREATE_SUMMARY_TRIGGERS} keep them up to date, so the cost of this
+   * doesn't grow with the size of the thread.
+   *
+   * @return true if the thread was deleted for being empty
+   */
   public boolean update(long threadId, boolean unarchive, boolean shouldDeleteOnEmpty) {
     MmsSmsDatabase mmsSmsDatabase = DatabaseComponent.get(context).mmsSmsDatabase();
-    long count                    = mmsSmsDatabase.getConversationCount(threadId);
+    long count                    = getMessageCount(threadId);
 
     boolean shouldDeleteEmptyThread = shouldDeleteOnEmpty && deleteThreadOnEmpty(threadId);
 
@@ -751,19 +861,11 @@ public class ThreadDatabase extends Database {
       return true;
     }
 
-    MmsSmsDatabase.Reader reader = null;
-
     try {
-      reader = mmsSmsDatabase.readerFor(mmsSmsDatabase.getConversationSnippet(threadId));
-      MessageRecord record = null;
-      if (reader != null) {
-        record = reader.getNext();
-        while (record != null && record.isDeleted()) {
-          record = reader.getNext();
-        }
-      }
-      if (record != null && !record.isDeleted()) {
-        updateThread(threadId, count, getFormattedBodyFor(record), getAttachmentUriFor(record),
+      MessageRecord record = mmsSmsDatabase.getLatestMessage(threadId);
+
+      if (record != null) {
+        updateThread(threadId, getFormattedBodyFor(record), getAttachmentUriFor(record),
                      record.getTimestamp(), record.getDeliveryStatus(), record.getDeliveryReceiptCount(),
                      record.getType(), unarchive, record.getExpiresIn(), record.getReadReceiptCount());
         return false;
@@ -775,8 +877,6 @@ public class ThreadDatabase extends Database {
         return false;
       }
     } finally {
-      if (reader != null)
-        reader.close();
       notifyConversationListListeners();
       notifyConversationListeners(threadId);
     }
@@ -813,8 +913,7 @@ public class ThreadDatabase extends Database {
    * @return true if we have set the last seen for the thread, false if there were no messages in the thread
    */
   public boolean markAllAsRead(long threadId, boolean isGroupRecipient, long lastSeenTime, boolean force) {
-    MmsSmsDatabase mmsSmsDatabase = DatabaseComponent.get(context).mmsSmsDatabase();
-    if (mmsSmsDatabase.getConversationCount(threadId) <= 0 && !force) return false;
+    if (getMessageCount(threadId) <= 0 && !force) return false;
     List<MarkedMessageInfo> messages = setRead(threadId, lastSeenTime);
     if (isGroupRecipient) {
       for (MarkedMessageInfo message: messages) {
@@ -863,7 +962,8 @@ public class ThreadDatabase extends Database {
     return null;
   }
 
-  private @NonNull String createQuery(@NonNull String where, int limit) {
+  @VisibleForTesting
+  @NonNull String createQuery(@NonNull String where, int limit) {
     String projection = Util.join(COMBINED_THREAD_RECIPIENT_GROUP_PROJECTION, ",");
     String query =
     "SELECT " + projection + " FROM " + TABLE_NAME +
@@ -4,6 +4,7 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.database.Cursor;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
@@ -42,6 +43,7 @@ import org.thoughtcrime.securesms.notifications.NotificationChannels;
 import org.thoughtcrime.securesms.util.ConfigurationMessageUtilities;
 
 import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
 
 import network.loki.messenger.R;
 
@@ -91,13 +93,23 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
   private static final int lokiV43                          = 64;
 
   private static final int lokiV44                          = 65;
+  private static final int lokiV45                          = 66;
+  private static final int lokiV46                          = 67;
+  private static final int lokiV47                          = 68;
+  private static final int lokiV48                          = 69;
+  private static final int lokiV49                          = 70;
+  private static final int lokiV50                          = 71;
+  private static final int lokiV51                          = 72;
 
   // Loki - onUpgrade(...) must be updated to use Loki version numbers if Signal makes any database changes
-  private static final int    DATABASE_VERSION         = lokiV44;
+  private static final int    DATABASE_VERSION         = lokiV51;
   private static final int    MIN_DATABASE_VERSION     = lokiV7;
   private static final String CIPHER3_DATABASE_NAME    = "signal.db";
   public static final String  DATABASE_NAME            = "signal_v4.db";
 
+  // Instrumentation for UI code that is expected to stay off the database, see getMainThreadAccessCount()
+  private static final AtomicLong mainThreadAccessCount = new AtomicLong();
+
   private final Context        context;
   private final DatabaseSecret databaseSecret;
 
@@ -340,6 +352,7 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     db.execSQL(LokiAPIDatabase.DROP_LEGACY_RECEIVED_HASHES);
     db.execSQL(BlindedIdMappingDatabase.CREATE_BLINDED_ID_MAPPING_TABLE_COMMAND);
     db.execSQL(GroupMemberDatabase.CREATE_GROUP_MEMBER_TABLE_COMMAND);
+    db.execSQL(GroupMemberDatabase.CREATE_PROFILE_INDEX_COMMAND);
     db.execSQL(LokiAPIDatabase.RESET_SEQ_NO); // probably not needed but consistent with all migrations
     db.execSQL(EmojiSearchDatabase.CREATE_EMOJI_SEARCH_TABLE_COMMAND);
     db.execSQL(ReactionDatabase.CREATE_REACTION_TABLE_COMMAND);
@@ -347,6 +360,9 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     db.execSQL(SmsDatabase.CREATE_HAS_MENTION_COMMAND);
     db.execSQL(MmsDatabase.CREATE_HAS_MENTION_COMMAND);
     db.execSQL(ConfigDatabase.CREATE_CONFIG_TABLE_COMMAND);
+    db.execSQL(AttachmentDatabase.ADD_DATA_HASH_COMMAND);
+    db.execSQL(AttachmentDatabase.CREATE_DATA_HASH_INDEX);
+    executeStatements(db, SearchDatabase.CREATE_CONTACT_AND_GROUP_TABLES);
 
     executeStatements(db, SmsDatabase.CREATE_INDEXS);
     executeStatements(db, MmsDatabase.CREATE_INDEXS);
@@ -358,6 +374,7 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     executeStatements(db, ReactionDatabase.CREATE_INDEXS);
 
     executeStatements(db, ReactionDatabase.CREATE_REACTION_TRIGGERS);
+    executeStatements(db, ThreadDatabase.CREATE_SUMMARY_TRIGGERS);
     db.execSQL(RecipientDatabase.getAddWrapperHash());
     db.execSQL(RecipientDatabase.getAddBlocksCommunityMessageRequests());
   }
@@ -610,6 +627,51 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
         db.execSQL(SessionJobDatabase.dropAttachmentDownloadJobs);
       }
 
+      if (oldVersion < lokiV45) {
+        // Paging and position lookups filter on (thread_id, date_sent) and only need the address
+        // column besides, so the indexes cover it
+        db.execSQL(SmsDatabase.CREATE_THREAD_DATE_SENT_INDEX);
+        db.execSQL(MmsDatabase.CREATE_THREAD_DATE_SENT_INDEX);
+      }
+
+      if (oldVersion < lokiV46) {
+        // Receipt, reaction and unsend lookups probe by (date_sent, address), the new indexes have
+        // date_sent as their prefix so they replace the single column ones
+        db.execSQL(SmsDatabase.DROP_DATE_SENT_INDEX);
+        db.execSQL(MmsDatabase.DROP_DATE_SENT_INDEX);
+        db.execSQL(SmsDatabase.CREATE_DATE_SENT_ADDRESS_INDEX);
+        db.execSQL(MmsDatabase.CREATE_DATE_SENT_ADDRESS_INDEX);
+      }
+
+      if (oldVersion < lokiV47) {
+        // Existing rows keep a null hash, they are never deduplicated against and their files are
+        // deleted with them as before
+        db.execSQL(AttachmentDatabase.ADD_DATA_HASH_COMMAND);
+        db.execSQL(AttachmentDatabase.CREATE_DATA_HASH_INDEX);
+      }
+
+      if (oldVersion < lokiV48) {
+        executeStatements(db, SearchDatabase.CREATE_CONTACT_AND_GROUP_TABLES);
+      }
+
+      if (oldVersion < lokiV49) {
+        // The members, zombie_members and admins columns of the groups table are left behind but
+        // no longer read or written
+        executeStatements(db, GroupMemberDatabase.MIGRATE_TO_ROLE_KEY_COMMANDS);
+      }
+
+      if (oldVersion < lokiV50) {
+        // Recreated with prefix indexes, the index is reloaded from the assets on the next launch
+        db.execSQL(EmojiSearchDatabase.DROP_EMOJI_SEARCH_TABLE_COMMAND);
+        db.execSQL(EmojiSearchDatabase.CREATE_EMOJI_SEARCH_TABLE_COMMAND);
+      }
+
+      if (oldVersion < lokiV51) {
+        // The triggers only keep the counts up to date, so they start from a full recount
+        executeStatements(db, ThreadDatabase.CREATE_SUMMARY_TRIGGERS);
+        db.execSQL(ThreadDatabase.RECOUNT_MESSAGES_COMMAND);
+      }
+
       db.setTransactionSuccessful();
     } finally {
       db.endTransaction();
@@ -625,6 +687,32 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     db.enableWriteAheadLogging();
   }
 
+  @Override
+  public SQLiteDatabase getReadableDatabase() {
+    countMainThreadAccess();
+    return super.getReadableDatabase();
+  }
+
+  @Override
+  public SQLiteDatabase getWritableDatabase() {
+    countMainThreadAccess();
+    return super.getWritableDatabase();
+  }
+
+  /**
+   * The number of times the database was accessed from the main thread since the process started,
+   * used to check that paths like binding conversation rows don't query the database.
+   */
+  public static long getMainThreadAccessCount() {
+    return mainThreadAccessCount.get();
+  }
+
+  private static void countMainThreadAccess() {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      mainThreadAccessCount.incrementAndGet();
+    }
+  }
+
   public void markCurrent(SQLiteDatabase db) {
     db.setVersion(DATABASE_VERSION);
   }
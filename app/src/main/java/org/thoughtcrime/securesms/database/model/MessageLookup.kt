@@ -0,0 +1,13 @@
+package org.thoughtcrime.securesms.database.model
+
+/**
+ * Where a message found by its sent timestamp lives, for callers that only need to update or
+ * reference it and so don't need a full [MessageRecord].
+ */
+data class MessageLookup(
+  val id: Long,
+  val isMms: Boolean,
+  val threadId: Long
+) {
+  val messageId: MessageId get() = MessageId(id, isMms)
+}
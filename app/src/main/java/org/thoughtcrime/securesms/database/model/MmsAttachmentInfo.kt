@@ -2,7 +2,12 @@ package org.thoughtcrime.securesms.database.model
 
 import org.thoughtcrime.securesms.util.MediaUtil
 
-data class MmsAttachmentInfo(val dataFile: String?, val thumbnailFile: String?, val contentType: String?) {
+data class MmsAttachmentInfo(
+    val dataFile: String?,
+    val thumbnailFile: String?,
+    val contentType: String?,
+    val dataHash: String?
+) {
     companion object {
         @JvmStatic
         fun List<MmsAttachmentInfo>.anyImages() = any {
@@ -0,0 +1,122 @@
+package org.thoughtcrime.securesms.dependencies
+
+import org.session.libsignal.utilities.Log
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Write-behind for config dumps. [markDirty] only records that a config changed, dumping it and
+ * writing the dump happen once per config on [flush], which runs on [executor] at the latest
+ * [maxStalenessMs] after the first change that wasn't written yet. A burst of changes to the same
+ * config therefore costs a single dump and write.
+ *
+ * Callers that need the dumps on disk right away, like before pushing configs, call [flush]
+ * directly.
+ */
+class ConfigDumpWriter(
+    private val executor: ScheduledExecutorService,
+    private val maxStalenessMs: Long,
+    private val store: (variant: String, publicKey: String, data: ByteArray, timestamp: Long) -> Unit
+) {
+
+    /**
+     * Dumps a config under its lock, returning the public key it belongs to and the dump, or null
+     * if there is nothing to dump.
+     */
+    fun interface Dumper {
+        fun dump(): Pair<String, ByteArray>?
+    }
+
+    data class Stats(val persistRequests: Long, val dumps: Long, val writes: Long, val bytesWritten: Long)
+
+    private class Pending(val timestamp: Long, val dumper: Dumper)
+
+    private val lock = Any()
+    private val flushLock = Any()
+
+    // Changes that weren't written yet, and the ones being written by the current flush
+    private val pending = LinkedHashMap<String, Pending>()
+    private val writing = HashMap<String, Pending>()
+    private var flushScheduled = false
+
+    private val persistRequests = AtomicLong()
+    private val dumps = AtomicLong()
+    private val writes = AtomicLong()
+    private val bytesWritten = AtomicLong()
+
+    val stats: Stats
+        get() = Stats(persistRequests.get(), dumps.get(), writes.get(), bytesWritten.get())
+
+    /**
+     * Records that the config stored as [variant] changed and should be written with [timestamp],
+     * replacing any change that wasn't written yet.
+     */
+    fun markDirty(variant: String, timestamp: Long, dumper: Dumper) {
+        persistRequests.incrementAndGet()
+        synchronized(lock) {
+            pending[variant] = Pending(timestamp, dumper)
+            if (!flushScheduled) {
+                flushScheduled = true
+                executor.schedule(Runnable { scheduledFlush() }, maxStalenessMs, TimeUnit.MILLISECONDS)
+            }
+        }
+    }
+
+    /**
+     * The timestamp [variant] will be written with if it has changes that aren't on disk yet.
+     */
+    fun pendingTimestamp(variant: String): Long? = synchronized(lock) {
+        (pending[variant] ?: writing[variant])?.timestamp
+    }
+
+    /**
+     * Dumps and writes every config with changes, on the calling thread.
+     */
+    fun flush() = synchronized(flushLock) {
+        val toWrite = synchronized(lock) {
+            writing.putAll(pending)
+            pending.clear()
+            writing.toMap()
+        }
+        try {
+            toWrite.forEach { (variant, change) ->
+                try {
+                    val (publicKey, data) = change.dumper.dump() ?: return@forEach
+                    dumps.incrementAndGet()
+                    store(variant, publicKey, data, change.timestamp)
+                    writes.incrementAndGet()
+                    bytesWritten.addAndGet(data.size.toLong())
+                } catch (e: Exception) {
+                    Log.e(TAG, "Failed to persist $variant", e)
+                }
+            }
+        } finally {
+            synchronized(lock) { writing.clear() }
+        }
+    }
+
+    /**
+     * Flushes on [executor] as soon as possible, when the app is about to be backgrounded for
+     * instance.
+     */
+    fun flushSoon() {
+        executor.execute { flush() }
+    }
+
+    /**
+     * Drops the changes that weren't written yet.
+     */
+    fun clear() = synchronized(lock) {
+        pending.clear()
+    }
+
+    private fun scheduledFlush() {
+        synchronized(lock) { flushScheduled = false }
+        flush()
+    }
+
+    companion object {
+        private const val TAG = "ConfigDumpWriter"
+    }
+}
@@ -17,6 +17,7 @@ import org.thoughtcrime.securesms.database.ConfigDatabase
 import org.thoughtcrime.securesms.dependencies.DatabaseComponent.Companion.get
 import org.thoughtcrime.securesms.groups.GroupManager
 import org.thoughtcrime.securesms.util.ConfigurationMessageUtilities
+import java.util.concurrent.Executors
 
 class ConfigFactory(
     private val context: Context,
@@ -30,9 +31,19 @@ class ConfigFactory(
         // before `lastConfigMessage.timestamp - configChangeBufferPeriod` will not  actually have
         // it's changes applied (control text will still be added though)
         val configChangeBufferPeriod: Long = (2 * 60 * 1000)
+
+        // How long config changes can stay in memory before they are written
+        private const val MAX_DUMP_STALENESS_MS = 1000L
     }
 
+    private val dumpWriter = ConfigDumpWriter(
+        Executors.newSingleThreadScheduledExecutor { runnable -> Thread(runnable, "ConfigDumpWriter") },
+        MAX_DUMP_STALENESS_MS,
+        configDatabase::storeConfig
+    )
+
     fun keyPairChanged() { // this should only happen restoring or clearing data
+        dumpWriter.clear()
         _userConfig?.free()
         _contacts?.free()
         _convoVolatileConfig?.free()
@@ -155,45 +166,44 @@ class ConfigFactory(
         listOfNotNull(user, contacts, convoVolatile, userGroups)
 
 
-    private fun persistUserConfigDump(timestamp: Long) = synchronized(userLock) {
-        val dumped = user?.dump() ?: return
-        val (_, publicKey) = maybeGetUserInfo() ?: return
-        configDatabase.storeConfig(SharedConfigMessage.Kind.USER_PROFILE.name, publicKey, dumped, timestamp)
+    private fun dumpUserConfig(): Pair<String, ByteArray>? = synchronized(userLock) {
+        val dumped = user?.dump() ?: return null
+        val (_, publicKey) = maybeGetUserInfo() ?: return null
+        publicKey to dumped
     }
 
-    private fun persistContactsConfigDump(timestamp: Long) = synchronized(contactsLock) {
-        val dumped = contacts?.dump() ?: return
-        val (_, publicKey) = maybeGetUserInfo() ?: return
-        configDatabase.storeConfig(SharedConfigMessage.Kind.CONTACTS.name, publicKey, dumped, timestamp)
+    private fun dumpContactsConfig(): Pair<String, ByteArray>? = synchronized(contactsLock) {
+        val dumped = contacts?.dump() ?: return null
+        val (_, publicKey) = maybeGetUserInfo() ?: return null
+        publicKey to dumped
     }
 
-    private fun persistConvoVolatileConfigDump(timestamp: Long) = synchronized(convoVolatileLock) {
-        val dumped = convoVolatile?.dump() ?: return
-        val (_, publicKey) = maybeGetUserInfo() ?: return
-        configDatabase.storeConfig(
-            SharedConfigMessage.Kind.CONVO_INFO_VOLATILE.name,
-            publicKey,
-            dumped,
-            timestamp
-        )
+    private fun dumpConvoVolatileConfig(): Pair<String, ByteArray>? = synchronized(convoVolatileLock) {
+        val dumped = convoVolatile?.dump() ?: return null
+        val (_, publicKey) = maybeGetUserInfo() ?: return null
+        publicKey to dumped
     }
 
-    private fun persistUserGroupsConfigDump(timestamp: Long) = synchronized(userGroupsLock) {
-        val dumped = userGroups?.dump() ?: return
-        val (_, publicKey) = maybeGetUserInfo() ?: return
-        configDatabase.storeConfig(SharedConfigMessage.Kind.GROUPS.name, publicKey, dumped, timestamp)
+    private fun dumpUserGroupsConfig(): Pair<String, ByteArray>? = synchronized(userGroupsLock) {
+        val dumped = userGroups?.dump() ?: return null
+        val (_, publicKey) = maybeGetUserInfo() ?: return null
+        publicKey to dumped
     }
 
+    /**
+     * Configs are dumped and written by [dumpWriter] once a burst of changes is over rather than on
+     * every change, see [flushPendingDumps] for when they need to be on disk right away.
+     */
     override fun persist(forConfigObject: ConfigBase, timestamp: Long) {
         try {
             listeners.forEach { listener ->
                 listener.notifyUpdates(forConfigObject)
             }
             when (forConfigObject) {
-                is UserProfile -> persistUserConfigDump(timestamp)
-                is Contacts -> persistContactsConfigDump(timestamp)
-                is ConversationVolatileConfig -> persistConvoVolatileConfigDump(timestamp)
-                is UserGroupsConfig -> persistUserGroupsConfigDump(timestamp)
+                is UserProfile -> dumpWriter.markDirty(SharedConfigMessage.Kind.USER_PROFILE.name, timestamp, ::dumpUserConfig)
+                is Contacts -> dumpWriter.markDirty(SharedConfigMessage.Kind.CONTACTS.name, timestamp, ::dumpContactsConfig)
+                is ConversationVolatileConfig -> dumpWriter.markDirty(SharedConfigMessage.Kind.CONVO_INFO_VOLATILE.name, timestamp, ::dumpConvoVolatileConfig)
+                is UserGroupsConfig -> dumpWriter.markDirty(SharedConfigMessage.Kind.GROUPS.name, timestamp, ::dumpUserGroupsConfig)
                 else -> throw UnsupportedOperationException("Can't support type of ${forConfigObject::class.simpleName} yet")
             }
         } catch (e: Exception) {
@@ -201,6 +211,22 @@ class ConfigFactory(
         }
     }
 
+    override fun flushPendingDumps() {
+        dumpWriter.flush()
+    }
+
+    /**
+     * Writes the pending dumps in the background, without waiting for them to go stale.
+     */
+    fun flushPendingDumpsSoon() {
+        dumpWriter.flushSoon()
+    }
+
+    /**
+     * How many times configs were persisted, dumped and written, and how much was written.
+     */
+    val dumpStats: ConfigDumpWriter.Stats get() = dumpWriter.stats
+
     override fun conversationInConfig(
         publicKey: String?,
         groupPublicKey: String?,
@@ -243,7 +269,9 @@ class ConfigFactory(
     override fun canPerformChange(variant: String, publicKey: String, changeTimestampMs: Long): Boolean {
         if (!ConfigBase.isNewConfigEnabled(isConfigForcedOn, SnodeAPI.nowWithOffset)) return true
 
-        val lastUpdateTimestampMs = configDatabase.retrieveConfigLastUpdateTimestamp(variant, publicKey)
+        // Changes that weren't written yet are the latest ones
+        val pendingTimestampMs = dumpWriter.pendingTimestamp(variant)?.takeIf { publicKey == maybeGetUserInfo()?.second }
+        val lastUpdateTimestampMs = pendingTimestampMs ?: configDatabase.retrieveConfigLastUpdateTimestamp(variant, publicKey)
 
         // Ensure the change occurred after the last config message was handled (minus the buffer period)
         return (changeTimestampMs >= (lastUpdateTimestampMs - ConfigFactory.configChangeBufferPeriod))
@@ -1,7 +1,7 @@
 package org.thoughtcrime.securesms.glide
 
 import android.content.Context
-import android.graphics.drawable.BitmapDrawable
+import android.graphics.Bitmap
 import com.bumptech.glide.Priority
 import com.bumptech.glide.load.DataSource
 import com.bumptech.glide.load.data.DataFetcher
@@ -10,11 +10,12 @@ import org.session.libsignal.utilities.Log
 import org.thoughtcrime.securesms.util.AvatarPlaceholderGenerator
 
 class PlaceholderAvatarFetcher(private val context: Context,
-                               private val photo: PlaceholderAvatarPhoto): DataFetcher<BitmapDrawable> {
+                               private val photo: PlaceholderAvatarPhoto,
+                               private val pixelSize: Int): DataFetcher<Bitmap> {
 
-    override fun loadData(priority: Priority,callback: DataFetcher.DataCallback<in BitmapDrawable>) {
+    override fun loadData(priority: Priority,callback: DataFetcher.DataCallback<in Bitmap>) {
         try {
-            val avatar = AvatarPlaceholderGenerator.generate(context, 128, photo.hashString, photo.displayName)
+            val avatar = AvatarPlaceholderGenerator.generateBitmap(context, pixelSize, photo.hashString, photo.displayName)
             callback.onDataReady(avatar)
         } catch (e: Exception) {
             Log.e("Loki", "Error in fetching avatar")
@@ -26,9 +27,9 @@ class PlaceholderAvatarFetcher(private val context: Context,
 
     override fun cancel() {}
 
-    override fun getDataClass(): Class<BitmapDrawable> {
-        return BitmapDrawable::class.java
+    override fun getDataClass(): Class<Bitmap> {
+        return Bitmap::class.java
     }
 
     override fun getDataSource(): DataSource = DataSource.LOCAL
-}
\ No newline at end of file
+}
@@ -1,30 +1,37 @@
 package org.thoughtcrime.securesms.glide
 
-import android.graphics.drawable.BitmapDrawable
+import android.graphics.Bitmap
 import com.bumptech.glide.load.Options
 import com.bumptech.glide.load.model.ModelLoader
 import com.bumptech.glide.load.model.ModelLoader.LoadData
 import com.bumptech.glide.load.model.ModelLoaderFactory
 import com.bumptech.glide.load.model.MultiModelLoaderFactory
+import com.bumptech.glide.request.target.Target
 import org.session.libsession.avatars.PlaceholderAvatarPhoto
 
-class PlaceholderAvatarLoader(): ModelLoader<PlaceholderAvatarPhoto, BitmapDrawable> {
+class PlaceholderAvatarLoader(): ModelLoader<PlaceholderAvatarPhoto, Bitmap> {
 
     override fun buildLoadData(
         model: PlaceholderAvatarPhoto,
         width: Int,
         height: Int,
         options: Options
-    ): LoadData<BitmapDrawable> {
-        return LoadData(model, PlaceholderAvatarFetcher(model.context, model))
+    ): LoadData<Bitmap> {
+        // Render at the requested size, so the cached resource needs no scaling
+        val pixelSize = if (width == Target.SIZE_ORIGINAL || width <= 0) DEFAULT_PIXEL_SIZE else width
+        return LoadData(model, PlaceholderAvatarFetcher(model.context, model, pixelSize))
     }
 
     override fun handles(model: PlaceholderAvatarPhoto): Boolean = true
 
-    class Factory() : ModelLoaderFactory<PlaceholderAvatarPhoto, BitmapDrawable> {
-        override fun build(multiFactory: MultiModelLoaderFactory): ModelLoader<PlaceholderAvatarPhoto, BitmapDrawable> {
+    class Factory() : ModelLoaderFactory<PlaceholderAvatarPhoto, Bitmap> {
+        override fun build(multiFactory: MultiModelLoaderFactory): ModelLoader<PlaceholderAvatarPhoto, Bitmap> {
             return PlaceholderAvatarLoader()
         }
         override fun teardown() {}
     }
-}
\ No newline at end of file
+
+    companion object {
+        private const val DEFAULT_PIXEL_SIZE = 128
+    }
+}
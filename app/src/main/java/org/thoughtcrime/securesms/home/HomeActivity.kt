@@ -94,6 +94,9 @@ class HomeActivity : PassphraseRequiredActionBarActivity(),
 
     companion object {
         const val FROM_ONBOARDING = "HomeActivity_FROM_ONBOARDING"
+
+        // Load the next page of search results once the user scrolls within this many rows of the end
+        private const val SEARCH_PREFETCH_DISTANCE = 20
     }
 
 
@@ -196,6 +199,14 @@ class HomeActivity : PassphraseRequiredActionBarActivity(),
         homeAdapter.glide = glide
         binding.recyclerView.adapter = homeAdapter
         binding.globalSearchRecycler.adapter = globalSearchAdapter
+        binding.globalSearchRecycler.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                val layoutManager = recyclerView.layoutManager as LinearLayoutManager
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= globalSearchAdapter.itemCount - SEARCH_PREFETCH_DISTANCE) {
+                    globalSearchViewModel.loadMoreMessages()
+                }
+            }
+        })
 
         binding.configOutdatedView.setOnClickListener {
             textSecurePreferences.setHasLegacyConfig(false)
@@ -10,7 +10,8 @@ data class GlobalSearchResult(
         val query: String,
         val contacts: List<Contact>,
         val threads: List<GroupRecord>,
-        val messages: List<MessageResult>
+        val messages: List<MessageResult>,
+        val hasMoreMessages: Boolean = false
 ) {
 
     val isEmpty: Boolean
@@ -26,8 +27,9 @@ data class GlobalSearchResult(
             val contactList = searchResult.contacts.toList()
             val threads = searchResult.conversations.toList()
             val messages = searchResult.messages.toList()
+            val hasMoreMessages = searchResult.hasMoreMessages()
             searchResult.close()
-            return GlobalSearchResult(query, contactList, threads, messages)
+            return GlobalSearchResult(query, contactList, threads, messages, hasMoreMessages)
         }
 
     }
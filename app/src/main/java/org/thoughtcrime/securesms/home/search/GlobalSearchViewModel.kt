@@ -12,11 +12,13 @@ import kotlinx.coroutines.flow.buffer
 import kotlinx.coroutines.flow.launchIn
 import kotlinx.coroutines.flow.mapLatest
 import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.plus
 import org.session.libsignal.utilities.SettableFuture
 import org.thoughtcrime.securesms.search.SearchRepository
 import org.thoughtcrime.securesms.search.model.SearchResult
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 import javax.inject.Inject
 
 @HiltViewModel
@@ -31,11 +33,44 @@ class GlobalSearchViewModel @Inject constructor(private val searchRepository: Se
 
     private val _queryText: MutableStateFlow<CharSequence> = MutableStateFlow("")
 
+    private val loadingMoreMessages = AtomicBoolean(false)
+
     fun postQuery(charSequence: CharSequence?) {
         charSequence ?: return
         _queryText.value = charSequence
     }
 
+    /**
+     * Appends the next page of messages to the current result, if there is one.
+     */
+    fun loadMoreMessages() {
+        val current = _result.value
+        val after = current.messages.lastOrNull()?.pageKey ?: return
+        if (!current.hasMoreMessages || !loadingMoreMessages.compareAndSet(false, true)) return
+
+        try {
+            searchRepository.queryMessages(current.query, after) { page ->
+                try {
+                    val messages = page.toList()
+                    page.close()
+                    _result.update { result ->
+                        // Drop the page if the query changed while it was loading
+                        if (result.query != current.query || result.messages.lastOrNull()?.pageKey !== after) result
+                        else result.copy(
+                            messages = result.messages + messages,
+                            hasMoreMessages = messages.size >= SearchRepository.MESSAGE_PAGE_SIZE
+                        )
+                    }
+                } finally {
+                    loadingMoreMessages.set(false)
+                }
+            }
+        } catch (e: Exception) {
+            loadingMoreMessages.set(false)
+            throw e
+        }
+    }
+
     init {
         //
         _queryText
@@ -0,0 +1,329 @@
+package org.thoughtcrime.securesms.linkpreview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewUtil.HtmlDecoder;
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewUtil.OpenGraph;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the Open Graph tags, the title and the favicon from the head of an HTML document in a
+ * single pass over a {@link Reader}, without buffering the document or backtracking. Parsing stops
+ * at the end of the head, or where the body starts for documents that don't close it.
+ */
+final class HtmlHeadParser {
+
+  private static final int MAX_TITLE_LENGTH = 4096;
+
+  private static final String OPEN_GRAPH_PREFIX = "og:";
+  private static final String ARTICLE_PREFIX    = "article:";
+
+  private final Reader      reader;
+  private final HtmlDecoder htmlDecoder;
+  private final char[]      buffer = new char[4096];
+
+  private int position;
+  private int limit;
+
+  private final Map<String, String> openGraphTags = new HashMap<>();
+
+  private @Nullable String htmlTitle;
+  private @Nullable String faviconUrl;
+
+  private HtmlHeadParser(@NonNull Reader reader, @NonNull HtmlDecoder htmlDecoder) {
+    this.reader      = reader;
+    this.htmlDecoder = htmlDecoder;
+  }
+
+  static @NonNull OpenGraph parse(@NonNull Reader reader, @NonNull HtmlDecoder htmlDecoder) throws IOException {
+    return new HtmlHeadParser(reader, htmlDecoder).parse();
+  }
+
+  private @NonNull OpenGraph parse() throws IOException {
+    int c;
+    while ((c = read()) != -1) {
+      if (c == '<' && !readMarkup()) break;
+    }
+
+    return new OpenGraph(openGraphTags,
+                         htmlTitle != null ? htmlTitle : "",
+                         faviconUrl != null ? faviconUrl : "");
+  }
+
+  /**
+   * Reads the markup following a '<'.
+   *
+   * @return False once the head is over.
+   */
+  private boolean readMarkup() throws IOException {
+    int next = peek();
+
+    if (next == '!') {
+      read();
+      skipPast(lookingAt("--") ? "-->" : ">");
+      return true;
+    } else if (next == '?') {
+      skipPast(">");
+      return true;
+    }
+
+    boolean closing = next == '/';
+    if (closing) read();
+
+    String name = readTagName();
+
+    if (name.isEmpty()) {
+      // A lone '<' in the text
+      return true;
+    } else if (closing) {
+      skipPast(">");
+      return !name.equals("head");
+    }
+
+    Map<String, String> attributes = readAttributes();
+
+    switch (name) {
+      case "body":
+        return false;
+      case "meta":
+        onMeta(attributes);
+        break;
+      case "link":
+        onLink(attributes);
+        break;
+      case "title":
+        onTitle();
+        break;
+      case "script":
+      case "style":
+        readRawText(name, null);
+        break;
+    }
+
+    return true;
+  }
+
+  private void onMeta(@NonNull Map<String, String> attributes) {
+    String property = attributes.get("property");
+    String content  = attributes.get("content");
+
+    if (property == null || content == null) return;
+
+    property = property.trim().toLowerCase(Locale.US);
+
+    if (property.startsWith(OPEN_GRAPH_PREFIX)) {
+      property = property.substring(OPEN_GRAPH_PREFIX.length());
+    } else if (property.startsWith(ARTICLE_PREFIX)) {
+      property = property.substring(ARTICLE_PREFIX.length());
+    } else {
+      return;
+    }
+
+    if (!property.isEmpty()) {
+      openGraphTags.put(property, htmlDecoder.fromEncoded(content));
+    }
+  }
+
+  private void onLink(@NonNull Map<String, String> attributes) {
+    if (faviconUrl != null) return;
+
+    String rel  = attributes.get("rel");
+    String href = attributes.get("href");
+
+    if (rel != null && href != null && rel.toLowerCase(Locale.US).contains("icon")) {
+      faviconUrl = href;
+    }
+  }
+
+  private void onTitle() throws IOException {
+    if (htmlTitle != null) {
+      readRawText("title", null);
+      return;
+    }
+
+    StringBuilder title = new StringBuilder();
+
+    // A title that never closes is most likely not text
+    if (readRawText("title", title)) {
+      htmlTitle = htmlDecoder.fromEncoded(title.toString());
+    }
+  }
+
+  /**
+   * Reads the text of a raw text element up to its closing tag, appending at most
+   * {@link #MAX_TITLE_LENGTH} characters of it to {@code text} if one is provided.
+   *
+   * @return False if the document ended before the closing tag.
+   */
+  private boolean readRawText(@NonNull String name, @Nullable StringBuilder text) throws IOException {
+    String closingTag = "</" + name;
+
+    while (true) {
+      if (lookingAt(closingTag)) {
+        position += closingTag.length();
+        skipPast(">");
+        return true;
+      }
+
+      int c = read();
+      if (c == -1) return false;
+
+      if (text != null && text.length() < MAX_TITLE_LENGTH) {
+        text.append((char) c);
+      }
+    }
+  }
+
+  private @NonNull String readTagName() throws IOException {
+    StringBuilder name = new StringBuilder();
+    int           c    = peek();
+
+    if (!isAsciiLetter(c)) return "";
+
+    while (isAsciiLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == ':') {
+      name.append(Character.toLowerCase((char) read()));
+      c = peek();
+    }
+
+    return name.toString();
+  }
+
+  /**
+   * Reads the attributes of a start tag, up to and including its closing '>'. Names are lowercased
+   * and only the first occurrence of an attribute is kept.
+   */
+  private @NonNull Map<String, String> readAttributes() throws IOException {
+    Map<String, String> attributes = new HashMap<>();
+
+    while (true) {
+      int c = peek();
+
+      while (isWhitespace(c) || c == '/') {
+        read();
+        c = peek();
+      }
+
+      if (c == -1) {
+        return attributes;
+      } else if (c == '>') {
+        read();
+        return attributes;
+      }
+
+      StringBuilder name = new StringBuilder();
+
+      while (c != -1 && c != '=' && c != '>' && c != '/' && !isWhitespace(c)) {
+        name.append(Character.toLowerCase((char) read()));
+        c = peek();
+      }
+
+      if (name.length() == 0) {
+        // Stray '=', drop it to make progress
+        read();
+        continue;
+      }
+
+      skipWhitespace();
+
+      String value = "";
+
+      if (peek() == '=') {
+        read();
+        skipWhitespace();
+        value = readAttributeValue();
+      }
+
+      String key = name.toString();
+      if (!attributes.containsKey(key)) {
+        attributes.put(key, value);
+      }
+    }
+  }
+
+  private @NonNull String readAttributeValue() throws IOException {
+    StringBuilder value = new StringBuilder();
+    int           c     = peek();
+
+    if (c == '"' || c == '\'') {
+      int quote = read();
+
+      while ((c = read()) != -1 && c != quote) {
+        value.append((char) c);
+      }
+    } else {
+      while (c != -1 && c != '>' && !isWhitespace(c)) {
+        value.append((char) read());
+        c = peek();
+      }
+    }
+
+    return value.toString();
+  }
+
+  private void skipWhitespace() throws IOException {
+    while (isWhitespace(peek())) read();
+  }
+
+  private void skipPast(@NonNull String end) throws IOException {
+    while (!lookingAt(end)) {
+      if (read() == -1) return;
+    }
+    position += end.length();
+  }
+
+  /**
+   * @return True if the next characters are {@code text}, ignoring case. Nothing is consumed.
+   */
+  private boolean lookingAt(@NonNull String text) throws IOException {
+    if (!fill(text.length())) return false;
+
+    for (int i = 0; i < text.length(); i++) {
+      if (Character.toLowerCase(buffer[position + i]) != text.charAt(i)) return false;
+    }
+
+    return true;
+  }
+
+  private int read() throws IOException {
+    return fill(1) ? buffer[position++] : -1;
+  }
+
+  private int peek() throws IOException {
+    return fill(1) ? buffer[position] : -1;
+  }
+
+  /**
+   * Makes sure at least {@code count} characters are buffered after the current position.
+   *
+   * @return False if the document ends before that.
+   */
+  private boolean fill(int count) throws IOException {
+    if (limit - position >= count) return true;
+
+    System.arraycopy(buffer, position, buffer, 0, limit - position);
+    limit   -= position;
+    position = 0;
+
+    while (limit < count) {
+      int read = reader.read(buffer, limit, buffer.length - limit);
+      if (read == -1) return false;
+      limit += read;
+    }
+
+    return true;
+  }
+
+  private static boolean isAsciiLetter(int c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+  }
+}
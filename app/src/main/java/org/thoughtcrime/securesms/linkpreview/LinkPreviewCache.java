@@ -0,0 +1,294 @@
+package org.thoughtcrime.securesms.linkpreview;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.session.libsession.messaging.sending_receiving.attachments.Attachment;
+import org.session.libsession.messaging.sending_receiving.attachments.AttachmentTransferProgress;
+import org.session.libsession.messaging.sending_receiving.attachments.UriAttachment;
+import org.session.libsession.messaging.sending_receiving.link_preview.LinkPreview;
+import org.session.libsession.utilities.MediaTypes;
+import org.session.libsignal.utilities.Hex;
+import org.session.libsignal.utilities.Log;
+import org.session.libsignal.utilities.guava.Optional;
+import org.thoughtcrime.securesms.crypto.AttachmentSecret;
+import org.thoughtcrime.securesms.crypto.AttachmentSecretProvider;
+import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
+import org.thoughtcrime.securesms.crypto.ModernEncryptingPartOutputStream;
+import org.thoughtcrime.securesms.providers.BlobProvider;
+import org.thoughtcrime.securesms.util.LRUCache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Link previews that were fetched recently, by URL, so that typing or pasting the same link again
+ * doesn't fetch it again. Previews are kept in memory and in an encrypted file per URL in the
+ * cache directory, links that didn't have a preview are only remembered in memory and for a
+ * shorter time. Failed fetches aren't cached at all.
+ */
+final class LinkPreviewCache {
+
+  private static final String TAG = LinkPreviewCache.class.getSimpleName();
+
+  private static final String DIRECTORY      = "link_previews";
+  private static final int    FORMAT_VERSION = 1;
+
+  private static final int  MAX_MEMORY_ENTRIES = 64;
+  private static final int  MAX_DISK_ENTRIES   = 100;
+  private static final long TTL                = TimeUnit.DAYS.toMillis(1);
+  private static final long INCOMPLETE_TTL     = TimeUnit.MINUTES.toMillis(5);
+
+  private static final LinkPreviewCache INSTANCE = new LinkPreviewCache();
+
+  private final LRUCache<String, MemoryEntry> memory = new LRUCache<>(MAX_MEMORY_ENTRIES);
+
+  static LinkPreviewCache getInstance() {
+    return INSTANCE;
+  }
+
+  private LinkPreviewCache() {}
+
+  /**
+   * @return The cached preview of {@code url}, or null if there is none that is still fresh.
+   */
+  @WorkerThread
+  @Nullable Entry get(@NonNull Context context, @NonNull String url) {
+    long now = System.currentTimeMillis();
+
+    synchronized (memory) {
+      MemoryEntry cached = memory.get(url);
+
+      if (cached != null && cached.expiresAt > now) {
+        return cached.entry;
+      } else if (cached != null) {
+        memory.remove(url);
+      }
+    }
+
+    Entry entry = readFromDisk(context, url, now);
+
+    if (entry != null) {
+      synchronized (memory) {
+        memory.put(url, new MemoryEntry(entry, entry.fetchedAt + TTL));
+      }
+    }
+
+    return entry;
+  }
+
+  /**
+   * Caches the preview of {@code url}. Only previews that have a title are written to disk.
+   */
+  @WorkerThread
+  void put(@NonNull Context context, @NonNull String url, @NonNull Entry entry) {
+    boolean persist = entry.title != null;
+
+    synchronized (memory) {
+      memory.put(url, new MemoryEntry(entry, entry.fetchedAt + (persist ? TTL : INCOMPLETE_TTL)));
+    }
+
+    if (persist) {
+      writeToDisk(context, url, entry);
+    }
+  }
+
+  private @Nullable Entry readFromDisk(@NonNull Context context, @NonNull String url, long now) {
+    File file = getFile(context, url);
+
+    if (!file.exists()) return null;
+
+    try (DataInputStream in = new DataInputStream(ModernDecryptingPartInputStream.createFor(getSecret(context), file, 0))) {
+      if (in.readInt() != FORMAT_VERSION || !url.equals(readString(in))) {
+        return null;
+      }
+
+      long   fetchedAt       = in.readLong();
+      String title           = readString(in);
+      int    width           = in.readInt();
+      int    height          = in.readInt();
+      int    thumbnailLength = in.readInt();
+      byte[] thumbnail       = null;
+
+      if (thumbnailLength >= 0) {
+        thumbnail = new byte[thumbnailLength];
+        in.readFully(thumbnail);
+      }
+
+      if (fetchedAt + TTL <= now || fetchedAt > now) {
+        file.delete();
+        return null;
+      }
+
+      return new Entry(title, thumbnail, width, height, fetchedAt);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read cached link preview.", e);
+      file.delete();
+      return null;
+    }
+  }
+
+  private void writeToDisk(@NonNull Context context, @NonNull String url, @NonNull Entry entry) {
+    File file = getFile(context, url);
+
+    try (DataOutputStream out = new DataOutputStream(ModernEncryptingPartOutputStream.createFor(getSecret(context), file, true).second)) {
+      out.writeInt(FORMAT_VERSION);
+      writeString(out, url);
+      out.writeLong(entry.fetchedAt);
+      writeString(out, entry.title);
+      out.writeInt(entry.width);
+      out.writeInt(entry.height);
+
+      if (entry.thumbnail != null) {
+        out.writeInt(entry.thumbnail.length);
+        out.write(entry.thumbnail);
+      } else {
+        out.writeInt(-1);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to cache link preview.", e);
+      file.delete();
+      return;
+    }
+
+    trimDisk(file.getParentFile());
+  }
+
+  private static void trimDisk(@NonNull File directory) {
+    File[] files = directory.listFiles();
+
+    if (files == null || files.length <= MAX_DISK_ENTRIES) return;
+
+    Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+
+    for (int i = MAX_DISK_ENTRIES; i < files.length; i++) {
+      files[i].delete();
+    }
+  }
+
+  private static @NonNull File getFile(@NonNull Context context, @NonNull String url) {
+    File directory = new File(context.getCacheDir(), DIRECTORY);
+
+    if (!directory.exists()) {
+      directory.mkdir();
+    }
+
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+      return new File(directory, Hex.toStringCondensed(digest));
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static @NonNull AttachmentSecret getSecret(@NonNull Context context) {
+    return AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret();
+  }
+
+  private static void writeString(@NonNull DataOutputStream out, @Nullable String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static @Nullable String readString(@NonNull DataInputStream in) throws IOException {
+    int length = in.readInt();
+
+    if (length < 0) return null;
+
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static final class MemoryEntry {
+    private final Entry entry;
+    private final long  expiresAt;
+
+    private MemoryEntry(@NonNull Entry entry, long expiresAt) {
+      this.entry     = entry;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * A fetched preview, or the lack of one if it has no title. The thumbnail is kept as the
+   * compressed bytes that are attached to the preview when it is sent.
+   */
+  static final class Entry {
+    private final @Nullable String title;
+    private final @Nullable byte[] thumbnail;
+    private final           int    width;
+    private final           int    height;
+    private final           long   fetchedAt;
+
+    Entry(@Nullable String title) {
+      this(title, null, 0, 0);
+    }
+
+    Entry(@Nullable String title, @Nullable byte[] thumbnail, int width, int height) {
+      this(title, thumbnail, width, height, System.currentTimeMillis());
+    }
+
+    private Entry(@Nullable String title, @Nullable byte[] thumbnail, int width, int height, long fetchedAt) {
+      this.title     = title;
+      this.thumbnail = thumbnail;
+      this.width     = width;
+      this.height    = height;
+      this.fetchedAt = fetchedAt;
+    }
+
+    static Entry empty() {
+      return new Entry(null);
+    }
+
+    /**
+     * @return The preview of {@code url}, with its thumbnail in a new blob as the previous ones
+     *         may have been deleted once sent.
+     */
+    @NonNull Optional<LinkPreview> toLinkPreview(@NonNull String url) {
+      if (title == null) {
+        return Optional.absent();
+      }
+
+      return Optional.of(new LinkPreview(url, title, toAttachment()));
+    }
+
+    private @NonNull Optional<Attachment> toAttachment() {
+      if (thumbnail == null) {
+        return Optional.absent();
+      }
+
+      Uri uri = BlobProvider.getInstance().forData(thumbnail).createForSingleSessionInMemory();
+
+      return Optional.of(new UriAttachment(uri,
+                                           uri,
+                                           MediaTypes.IMAGE_JPEG,
+                                           AttachmentTransferProgress.TRANSFER_PROGRESS_STARTED,
+                                           thumbnail.length,
+                                           width,
+                                           height,
+                                           null,
+                                           null,
+                                           false,
+                                           false,
+                                           null));
+    }
+  }
+}
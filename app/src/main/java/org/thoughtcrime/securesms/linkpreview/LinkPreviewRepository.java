@@ -5,16 +5,11 @@ import static org.session.libsession.utilities.Util.readFully;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.net.Uri;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import org.session.libsession.messaging.sending_receiving.attachments.Attachment;
-import org.session.libsession.messaging.sending_receiving.attachments.AttachmentTransferProgress;
-import org.session.libsession.messaging.sending_receiving.attachments.UriAttachment;
 import org.session.libsession.messaging.sending_receiving.link_preview.LinkPreview;
-import org.session.libsession.utilities.MediaTypes;
 import org.session.libsession.utilities.concurrent.SignalExecutors;
 import org.session.libsignal.utilities.Log;
 import org.session.libsignal.utilities.guava.Optional;
@@ -23,17 +18,21 @@ import org.thoughtcrime.securesms.net.CallRequestController;
 import org.thoughtcrime.securesms.net.CompositeRequestController;
 import org.thoughtcrime.securesms.net.ContentProxySafetyInterceptor;
 import org.thoughtcrime.securesms.net.RequestController;
-import org.thoughtcrime.securesms.providers.BlobProvider;
+import org.thoughtcrime.securesms.util.LimitedInputStream;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import okhttp3.CacheControl;
 import okhttp3.Call;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 public class LinkPreviewRepository {
 
@@ -41,13 +40,18 @@ public class LinkPreviewRepository {
 
   private static final CacheControl NO_CACHE = new CacheControl.Builder().noCache().build();
 
-  private final OkHttpClient client;
+  private static final int MAX_IMAGE_SIZE      = 2 * 1024 * 1024;
+  private static final int THUMBNAIL_DIMENSION = 1024;
+
+  private final OkHttpClient     client;
+  private final LinkPreviewCache cache;
 
   public LinkPreviewRepository() {
     this.client = new OkHttpClient.Builder()
                                   .addNetworkInterceptor(new ContentProxySafetyInterceptor())
                                   .cache(null)
                                   .build();
+    this.cache  = LinkPreviewCache.getInstance();
   }
 
   RequestController getLinkPreview(@NonNull Context context, @NonNull String url, @NonNull Callback<Optional<LinkPreview>> callback) {
@@ -59,24 +63,61 @@ public class LinkPreviewRepository {
       return compositeController;
     }
 
+    SignalExecutors.BOUNDED.execute(() -> {
+      if (compositeController.isCanceled()) return;
+
+      LinkPreviewCache.Entry cached = cache.get(context, url);
+
+      // The lookup may have hit the disk, the request can be canceled in the meantime
+      if (compositeController.isCanceled()) return;
+
+      if (cached != null) {
+        callback.onComplete(cached.toLinkPreview(url));
+      } else {
+        fetchLinkPreview(context, url, compositeController, callback);
+      }
+    });
+
+    return compositeController;
+  }
+
+  private void fetchLinkPreview(@NonNull Context context,
+                                @NonNull String url,
+                                @NonNull CompositeRequestController compositeController,
+                                @NonNull Callback<Optional<LinkPreview>> callback)
+  {
     RequestController metadataController;
 
     metadataController = fetchMetadata(url, metadata -> {
+      if (metadata.isFailed()) {
+        complete(context, url, LinkPreviewCache.Entry.empty(), false, compositeController, callback);
+        return;
+      }
+
       if (metadata.isEmpty()) {
-        callback.onComplete(Optional.absent());
+        complete(context, url, LinkPreviewCache.Entry.empty(), true, compositeController, callback);
         return;
       }
 
       if (!metadata.getImageUrl().isPresent()) {
-        callback.onComplete(Optional.of(new LinkPreview(url, metadata.getTitle().get(), Optional.absent())));
+        complete(context, url, new LinkPreviewCache.Entry(metadata.getTitle().get()), true, compositeController, callback);
         return;
       }
 
-      RequestController imageController = fetchThumbnail(context, metadata.getImageUrl().get(), attachment -> {
-        if (!metadata.getTitle().isPresent() && !attachment.isPresent()) {
-          callback.onComplete(Optional.absent());
+      RequestController imageController = fetchThumbnail(metadata.getImageUrl().get(), thumbnail -> {
+        // A thumbnail that failed to load may load next time, only its absence is remembered
+        boolean cacheable = !thumbnail.isFailed();
+
+        if (!metadata.getTitle().isPresent() && !thumbnail.getBitmap().isPresent()) {
+          complete(context, url, LinkPreviewCache.Entry.empty(), cacheable, compositeController, callback);
+        } else if (thumbnail.getBitmap().isPresent()) {
+          Bitmap bitmap = thumbnail.getBitmap().get();
+          byte[] data   = compress(bitmap);
+
+          complete(context, url, new LinkPreviewCache.Entry(metadata.getTitle().or(""), data, bitmap.getWidth(), bitmap.getHeight()), true, compositeController, callback);
+          bitmap.recycle();
         } else {
-          callback.onComplete(Optional.of(new LinkPreview(url, metadata.getTitle().or(""), attachment)));
+          complete(context, url, new LinkPreviewCache.Entry(metadata.getTitle().get()), cacheable, compositeController, callback);
         }
       });
 
@@ -84,7 +125,24 @@ public class LinkPreviewRepository {
     });
 
     compositeController.addController(metadataController);
-    return compositeController;
+  }
+
+  /**
+   * @param cacheable whether {@code entry} is what the link itself has to show, rather than the
+   *                  result of a network or HTTP failure
+   */
+  private void complete(@NonNull Context context,
+                        @NonNull String url,
+                        @NonNull LinkPreviewCache.Entry entry,
+                        boolean cacheable,
+                        @NonNull CompositeRequestController compositeController,
+                        @NonNull Callback<Optional<LinkPreview>> callback)
+  {
+    // A canceled request says nothing about the link
+    if (cacheable && !compositeController.isCanceled()) {
+      cache.put(context, url, entry);
+    }
+    callback.onComplete(entry.toLinkPreview(url));
   }
 
   private @NonNull RequestController fetchMetadata(@NonNull String url, Callback<Metadata> callback) {
@@ -95,25 +153,37 @@ public class LinkPreviewRepository {
       @Override
       public void onFailure(@NonNull Call call, @NonNull IOException e) {
         Log.w(TAG, "Request failed.", e);
-        callback.onComplete(Metadata.empty());
+        callback.onComplete(Metadata.failed());
       }
 
       @Override
       public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
         if (!response.isSuccessful()) {
           Log.w(TAG, "Non-successful response. Code: " + response.code());
-          callback.onComplete(Metadata.empty());
+          response.close();
+          callback.onComplete(Metadata.failed());
           return;
         } else if (response.body() == null) {
           Log.w(TAG, "No response body.");
-          callback.onComplete(Metadata.empty());
+          callback.onComplete(Metadata.failed());
           return;
         }
 
-        String            body     = response.body().string();
-        OpenGraph        openGraph   = LinkPreviewUtil.parseOpenGraphFields(body);
-        Optional<String> title       = openGraph.getTitle();
-        Optional<String> imageUrl    = openGraph.getImageUrl();
+        OpenGraph openGraph;
+
+        try (ResponseBody body = response.body()) {
+          MediaType contentType = body.contentType();
+          Charset   charset     = contentType != null ? contentType.charset(StandardCharsets.UTF_8) : StandardCharsets.UTF_8;
+
+          openGraph = LinkPreviewUtil.parseOpenGraphFields(body.byteStream(), charset);
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to read the response body.", e);
+          callback.onComplete(Metadata.failed());
+          return;
+        }
+
+        Optional<String> title    = openGraph.getTitle();
+        Optional<String> imageUrl = openGraph.getImageUrl();
 
         if (imageUrl.isPresent() && !LinkPreviewUtil.isValidMediaUrl(imageUrl.get())) {
           Log.i(TAG, "Image URL was invalid or for a non-whitelisted domain. Skipping.");
@@ -125,88 +195,108 @@ public class LinkPreviewRepository {
           imageUrl = Optional.absent();
         }
 
-        callback.onComplete(new Metadata(title, imageUrl));
+        callback.onComplete(new Metadata(title, imageUrl, false));
       }
     });
 
     return new CallRequestController(call);
   }
 
-  private @NonNull RequestController fetchThumbnail(@NonNull Context context, @NonNull String imageUrl, @NonNull Callback<Optional<Attachment>> callback) {
+  /**
+   * Fetches the image at {@code imageUrl}, decoding it no larger than needed for a thumbnail.
+   * Images over {@link #MAX_IMAGE_SIZE} are skipped.
+   */
+  private @NonNull RequestController fetchThumbnail(@NonNull String imageUrl, @NonNull Callback<Thumbnail> callback) {
     Call                  call       = client.newCall(new Request.Builder().url(imageUrl).build());
     CallRequestController controller = new CallRequestController(call);
 
     SignalExecutors.UNBOUNDED.execute(() -> {
-      try {
-        Response response = call.execute();
-        if (!response.isSuccessful() || response.body() == null) {
+      try (Response response = call.execute()) {
+        ResponseBody body = response.body();
+
+        if (!response.isSuccessful() || body == null) {
+          Log.w(TAG, "Non-successful link preview image response. Code: " + response.code());
           controller.cancel();
-          callback.onComplete(Optional.absent());
+          callback.onComplete(Thumbnail.failed());
           return;
         }
 
-        InputStream bodyStream = response.body().byteStream();
+        if (body.contentLength() > MAX_IMAGE_SIZE) {
+          Log.i(TAG, "Link preview image is too large. Skipping.");
+          controller.cancel();
+          callback.onComplete(Thumbnail.absent());
+          return;
+        }
+
+        InputStream bodyStream = body.byteStream();
         controller.setStream(bodyStream);
 
-        byte[]               data      = readFully(bodyStream);
-        Bitmap               bitmap    = BitmapFactory.decodeByteArray(data, 0, data.length);
-        Optional<Attachment> thumbnail = bitmapToAttachment(bitmap, Bitmap.CompressFormat.JPEG, MediaTypes.IMAGE_JPEG);
+        byte[] data = readFully(new LimitedInputStream(bodyStream, MAX_IMAGE_SIZE + 1));
 
-        if (bitmap != null) bitmap.recycle();
+        if (data.length > MAX_IMAGE_SIZE) {
+          Log.i(TAG, "Link preview image is too large. Skipping.");
+          controller.cancel();
+          callback.onComplete(Thumbnail.absent());
+          return;
+        }
 
-        callback.onComplete(thumbnail);
+        callback.onComplete(new Thumbnail(Optional.fromNullable(decodeThumbnail(data)), false));
       } catch (IOException e) {
         Log.w(TAG, "Exception during link preview image retrieval.", e);
         controller.cancel();
-        callback.onComplete(Optional.absent());
+        callback.onComplete(Thumbnail.failed());
       }
     });
 
     return controller;
   }
 
-  private static Optional<Attachment> bitmapToAttachment(@Nullable Bitmap bitmap,
-                                                         @NonNull Bitmap.CompressFormat format,
-                                                         @NonNull String contentType)
-  {
-    if (bitmap == null) {
-      return Optional.absent();
+  /**
+   * Decodes {@code data} subsampled by the largest power of two that keeps it at least
+   * {@link #THUMBNAIL_DIMENSION} pixels on its longest side, after reading only its bounds.
+   */
+  private static @Nullable Bitmap decodeThumbnail(@NonNull byte[] data) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      return null;
     }
 
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-    bitmap.compress(format, 80, baos);
+    int longestSide  = Math.max(options.outWidth, options.outHeight);
+    int inSampleSize = 1;
 
-    byte[] bytes = baos.toByteArray();
-    Uri    uri   = BlobProvider.getInstance().forData(bytes).createForSingleSessionInMemory();
+    while (longestSide / (inSampleSize * 2) >= THUMBNAIL_DIMENSION) {
+      inSampleSize *= 2;
+    }
 
-    return Optional.of(new UriAttachment(uri,
-           uri,
-           contentType,
-           AttachmentTransferProgress.TRANSFER_PROGRESS_STARTED,
-           bytes.length,
-           bitmap.getWidth(),
-           bitmap.getHeight(),
-           null,
-           null,
-           false,
-           false,
-           null));
+    options.inJustDecodeBounds = false;
+    options.inSampleSize       = inSampleSize;
 
+    return BitmapFactory.decodeByteArray(data, 0, data.length, options);
   }
 
+  private static @NonNull byte[] compress(@NonNull Bitmap bitmap) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    bitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos);
+    return baos.toByteArray();
+  }
 
   private static class Metadata {
     private final Optional<String> title;
     private final Optional<String> imageUrl;
+    private final boolean          failed;
 
-    Metadata(Optional<String> title, Optional<String> imageUrl) {
+    Metadata(Optional<String> title, Optional<String> imageUrl, boolean failed) {
       this.title    = title;
       this.imageUrl = imageUrl;
+      this.failed   = failed;
     }
 
-    static Metadata empty() {
-      return new Metadata(Optional.absent(), Optional.absent());
+    /** The page couldn't be loaded, which says nothing about its metadata. */
+    static Metadata failed() {
+      return new Metadata(Optional.absent(), Optional.absent(), true);
     }
 
     Optional<String> getTitle() {
@@ -220,6 +310,38 @@ public class LinkPreviewRepository {
     boolean isEmpty() {
       return !title.isPresent() && !imageUrl.isPresent();
     }
+
+    boolean isFailed() {
+      return failed;
+    }
+  }
+
+  private static class Thumbnail {
+    private final Optional<Bitmap> bitmap;
+    private final boolean          failed;
+
+    Thumbnail(Optional<Bitmap> bitmap, boolean failed) {
+      this.bitmap = bitmap;
+      this.failed = failed;
+    }
+
+    /** The image is too large to be a thumbnail. */
+    static Thumbnail absent() {
+      return new Thumbnail(Optional.absent(), false);
+    }
+
+    /** The image couldn't be loaded, which says nothing about whether it could be a thumbnail. */
+    static Thumbnail failed() {
+      return new Thumbnail(Optional.absent(), true);
+    }
+
+    Optional<Bitmap> getBitmap() {
+      return bitmap;
+    }
+
+    boolean isFailed() {
+      return failed;
+    }
   }
 
   interface Callback<T> {
@@ -13,12 +13,18 @@ import android.text.util.Linkify;
 import com.annimon.stream.Stream;
 
 import org.thoughtcrime.securesms.util.DateUtils;
+import org.thoughtcrime.securesms.util.LimitedInputStream;
 import org.session.libsignal.utilities.guava.Optional;
 
 import org.session.libsession.utilities.Util;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -28,15 +34,14 @@ import okhttp3.HttpUrl;
 
 public final class LinkPreviewUtil {
 
-  private static final Pattern DOMAIN_PATTERN             = Pattern.compile("^(https?://)?([^/]+).*$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern ALL_ASCII_PATTERN          = Pattern.compile("^[\\x00-\\x7F]*$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern ALL_NON_ASCII_PATTERN      = Pattern.compile("^[^\\x00-\\x7F]*$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPEN_GRAPH_TAG_PATTERN     = Pattern.compile("<\\s*meta[^>]*property\\s*=\\s*\"\\s*og:([^\"]+)\"[^>]*/?\\s*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern ARTICLE_TAG_PATTERN        = Pattern.compile("<\\s*meta[^>]*property\\s*=\\s*\"\\s*article:([^\"]+)\"[^>]*/?\\s*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPEN_GRAPH_CONTENT_PATTERN = Pattern.compile("content\\s*=\\s*\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
-  private static final Pattern TITLE_PATTERN              = Pattern.compile("<\\s*title[^>]*>(.*)<\\s*/title[^>]*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern FAVICON_PATTERN            = Pattern.compile("<\\s*link[^>]*rel\\s*=\\s*\".*icon.*\"[^>]*>", Pattern.CASE_INSENSITIVE);
-  private static final Pattern FAVICON_HREF_PATTERN       = Pattern.compile("href\\s*=\\s*\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
+  /** Pages are only read this far looking for the end of their head. */
+  static final int MAX_HEAD_SIZE = 256 * 1024;
+
+  private static final HtmlDecoder HTML_DECODER = text -> Html.fromHtml(text).toString();
+
+  private static final Pattern DOMAIN_PATTERN        = Pattern.compile("^(https?://)?([^/]+).*$", Pattern.CASE_INSENSITIVE);
+  private static final Pattern ALL_ASCII_PATTERN     = Pattern.compile("^[\\x00-\\x7F]*$", Pattern.CASE_INSENSITIVE);
+  private static final Pattern ALL_NON_ASCII_PATTERN = Pattern.compile("^[^\\x00-\\x7F]*$", Pattern.CASE_INSENSITIVE);
 
   /**
    * @return All whitelisted URLs in the source text.
@@ -109,7 +114,7 @@ public final class LinkPreviewUtil {
   }
 
   public static @NonNull OpenGraph parseOpenGraphFields(@Nullable String html) {
-    return parseOpenGraphFields(html, text -> Html.fromHtml(text).toString());
+    return parseOpenGraphFields(html, HTML_DECODER);
   }
 
   static @NonNull OpenGraph parseOpenGraphFields(@Nullable String html, @NonNull HtmlDecoder htmlDecoder) {
@@ -117,54 +122,24 @@ public final class LinkPreviewUtil {
       return new OpenGraph(Collections.emptyMap(), null, null);
     }
 
-    Map<String, String> openGraphTags    = new HashMap<>();
-    Matcher             openGraphMatcher = OPEN_GRAPH_TAG_PATTERN.matcher(html);
-
-    while (openGraphMatcher.find()) {
-      String tag      = openGraphMatcher.group();
-      String property = openGraphMatcher.groupCount() > 0 ? openGraphMatcher.group(1) : null;
-
-      if (property != null) {
-        Matcher contentMatcher = OPEN_GRAPH_CONTENT_PATTERN.matcher(tag);
-        if (contentMatcher.find() && contentMatcher.groupCount() > 0) {
-          String content = htmlDecoder.fromEncoded(contentMatcher.group(1));
-          openGraphTags.put(property.toLowerCase(), content);
-        }
-      }
-    }
-
-    Matcher articleMatcher = ARTICLE_TAG_PATTERN.matcher(html);
-
-    while (articleMatcher.find()) {
-      String tag      = articleMatcher.group();
-      String property = articleMatcher.groupCount() > 0 ? articleMatcher.group(1) : null;
-
-      if (property != null) {
-        Matcher contentMatcher = OPEN_GRAPH_CONTENT_PATTERN.matcher(tag);
-        if (contentMatcher.find() && contentMatcher.groupCount() > 0) {
-          String content = htmlDecoder.fromEncoded(contentMatcher.group(1));
-          openGraphTags.put(property.toLowerCase(), content);
-        }
-      }
-    }
-
-    String htmlTitle  = "";
-    String faviconUrl = "";
-
-    Matcher titleMatcher = TITLE_PATTERN.matcher(html);
-    if (titleMatcher.find() && titleMatcher.groupCount() > 0) {
-      htmlTitle = htmlDecoder.fromEncoded(titleMatcher.group(1));
+    try {
+      return HtmlHeadParser.parse(new StringReader(html), htmlDecoder);
+    } catch (IOException e) {
+      throw new AssertionError(e);
     }
+  }
 
-    Matcher faviconMatcher = FAVICON_PATTERN.matcher(html);
-    if (faviconMatcher.find()) {
-      Matcher faviconHrefMatcher = FAVICON_HREF_PATTERN.matcher(faviconMatcher.group());
-      if (faviconHrefMatcher.find() && faviconHrefMatcher.groupCount() > 0) {
-        faviconUrl = faviconHrefMatcher.group(1);
-      }
-    }
+  /**
+   * Parses the head of the document read from {@code html}, reading at most
+   * {@link #MAX_HEAD_SIZE} bytes of it.
+   */
+  public static @NonNull OpenGraph parseOpenGraphFields(@NonNull InputStream html, @NonNull Charset charset) throws IOException {
+    return parseOpenGraphFields(html, charset, HTML_DECODER);
+  }
 
-    return new OpenGraph(openGraphTags, htmlTitle, faviconUrl);
+  static @NonNull OpenGraph parseOpenGraphFields(@NonNull InputStream html, @NonNull Charset charset, @NonNull HtmlDecoder htmlDecoder) throws IOException {
+    Reader reader = new InputStreamReader(new LimitedInputStream(html, MAX_HEAD_SIZE), charset);
+    return HtmlHeadParser.parse(reader, htmlDecoder);
   }
 
   public static final class OpenGraph {
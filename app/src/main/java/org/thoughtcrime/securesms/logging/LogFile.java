@@ -1,7 +1,5 @@
 package org.thoughtcrime.securesms.logging;
 
-import static org.session.libsignal.crypto.CipherUtil.CIPHER_LOCK;
-
 import androidx.annotation.NonNull;
 
 import org.session.libsession.utilities.Conversions;
@@ -41,19 +39,38 @@ class LogFile {
     }
   }
 
+  /**
+   * Set on the length field of a record whose plaintext is a frame of length-prefixed entries
+   * rather than a single entry. Files written before framing only contain single-entry records.
+   */
+  private static final int FRAME_FLAG = 0x80000000;
+
   public static class Writer {
 
+    static final int DEFAULT_FRAME_SIZE = 16 * 1024;
+
     private final byte[]        ivBuffer         = new byte[16];
     private final GrowingBuffer ciphertextBuffer = new GrowingBuffer();
+    private final SecureRandom  secureRandom     = new SecureRandom();
 
-    private final byte[]               secret;
+    private final SecretKeySpec        key;
     private final File                 file;
     private final Cipher               cipher;
     private final BufferedOutputStream outputStream;
+    private final int                  frameSize;
+
+    private byte[] frameBuffer;
+    private int    frameLength;
 
     Writer(@NonNull byte[] secret, @NonNull File file) throws IOException {
-      this.secret       = secret;
+      this(secret, file, DEFAULT_FRAME_SIZE);
+    }
+
+    Writer(@NonNull byte[] secret, @NonNull File file, int frameSize) throws IOException {
+      this.key          = new SecretKeySpec(secret, "AES");
       this.file         = file;
+      this.frameSize    = frameSize;
+      this.frameBuffer  = new byte[frameSize + 1024];
       this.outputStream = new BufferedOutputStream(new FileOutputStream(file, true));
 
       try {
@@ -63,31 +80,60 @@ class LogFile {
       }
     }
 
+    /**
+     * Appends an entry to the current frame, encrypting and writing the frame out once it reaches
+     * the frame size. The writer is confined to a single thread, so no cipher lock is taken.
+     */
     void writeEntry(@NonNull String entry) throws IOException {
-      new SecureRandom().nextBytes(ivBuffer);
-
       byte[] plaintext = entry.getBytes();
-      try {
-        synchronized (CIPHER_LOCK) {
-          cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(secret, "AES"), new IvParameterSpec(ivBuffer));
+      int    required  = frameLength + 4 + plaintext.length;
 
-          int cipherLength = cipher.getOutputSize(plaintext.length);
-          byte[] ciphertext = ciphertextBuffer.get(cipherLength);
-          cipherLength = cipher.doFinal(plaintext, 0, plaintext.length, ciphertext);
+      if (required > frameBuffer.length) {
+        byte[] grown = new byte[Math.max(required, frameBuffer.length * 2)];
+        System.arraycopy(frameBuffer, 0, grown, 0, frameLength);
+        frameBuffer = grown;
+      }
 
-          outputStream.write(ivBuffer);
-          outputStream.write(Conversions.intToByteArray(cipherLength));
-          outputStream.write(ciphertext, 0, cipherLength);
-        }
+      frameLength += Conversions.intToByteArray(frameBuffer, frameLength, plaintext.length);
+      System.arraycopy(plaintext, 0, frameBuffer, frameLength, plaintext.length);
+      frameLength += plaintext.length;
+
+      if (frameLength >= frameSize) {
+        flush();
+      }
+    }
+
+    boolean hasPendingEntries() {
+      return frameLength > 0;
+    }
+
+    void flush() throws IOException {
+      if (frameLength == 0) {
+        return;
+      }
+
+      secureRandom.nextBytes(ivBuffer);
+
+      try {
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(ivBuffer));
+
+        int cipherLength = cipher.getOutputSize(frameLength);
+        byte[] ciphertext = ciphertextBuffer.get(cipherLength);
+        cipherLength = cipher.doFinal(frameBuffer, 0, frameLength, ciphertext);
 
+        outputStream.write(ivBuffer);
+        outputStream.write(Conversions.intToByteArray(cipherLength | FRAME_FLAG));
+        outputStream.write(ciphertext, 0, cipherLength);
         outputStream.flush();
       } catch (ShortBufferException | InvalidAlgorithmParameterException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException e) {
         throw new AssertionError(e);
+      } finally {
+        frameLength = 0;
       }
     }
 
     long getLogSize() {
-      return file.length();
+      return file.length() + frameLength;
     }
 
     void close() {
@@ -101,12 +147,15 @@ class LogFile {
     private final byte[]        intBuffer        = new byte[4];
     private final GrowingBuffer ciphertextBuffer = new GrowingBuffer();
 
-    private final byte[]              secret;
+    private final SecretKeySpec       key;
     private final Cipher              cipher;
     private final BufferedInputStream inputStream;
 
+    private byte[] frame;
+    private int    frameOffset;
+
     Reader(@NonNull byte[] secret, @NonNull File file) throws IOException {
-      this.secret      = secret;
+      this.key         = new SecretKeySpec(secret, "AES");
       this.inputStream = new BufferedInputStream(new FileInputStream(file));
 
       try {
@@ -128,27 +177,59 @@ class LogFile {
     }
 
     String readEntry() throws IOException {
-      try {
-        Util.readFully(inputStream, ivBuffer);
-        Util.readFully(inputStream, intBuffer);
+      while (frame == null || frameOffset >= frame.length) {
+        frame = null;
+
+        boolean framed;
+        int     length;
+        byte[]  ciphertext;
 
-        int    length     = Conversions.byteArrayToInt(intBuffer);
-        byte[] ciphertext = ciphertextBuffer.get(length);
+        try {
+          Util.readFully(inputStream, ivBuffer);
+          Util.readFully(inputStream, intBuffer);
+
+          int header = Conversions.byteArrayToInt(intBuffer);
 
-        Util.readFully(inputStream, ciphertext, length);
+          framed     = (header & FRAME_FLAG) != 0;
+          length     = header & ~FRAME_FLAG;
+          ciphertext = ciphertextBuffer.get(length);
 
+          Util.readFully(inputStream, ciphertext, length);
+        } catch (EOFException e) {
+          return null;
+        }
+
+        byte[] plaintext;
         try {
-          synchronized (CIPHER_LOCK) {
-            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(secret, "AES"), new IvParameterSpec(ivBuffer));
-            byte[] plaintext = cipher.doFinal(ciphertext, 0, length);
-            return new String(plaintext);
-          }
+          cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(ivBuffer));
+          plaintext = cipher.doFinal(ciphertext, 0, length);
         } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
           throw new AssertionError(e);
         }
-      } catch (EOFException e) {
-        return null;
+
+        if (!framed) {
+          return new String(plaintext);
+        }
+
+        frame       = plaintext;
+        frameOffset = 0;
       }
+
+      if (frameOffset + 4 > frame.length) {
+        throw new IOException("Truncated entry length in log frame");
+      }
+
+      int length = Conversions.byteArrayToInt(frame, frameOffset);
+      frameOffset += 4;
+
+      if (length < 0 || frameOffset + length > frame.length) {
+        throw new IOException("Invalid entry length in log frame: " + length);
+      }
+
+      String entry = new String(frame, frameOffset, length);
+      frameOffset += length;
+
+      return entry;
     }
   }
 }
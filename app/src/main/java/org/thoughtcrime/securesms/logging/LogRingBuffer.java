@@ -0,0 +1,62 @@
+package org.thoughtcrime.securesms.logging;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+
+/**
+ * A fixed-capacity queue of log entries shared by the logging threads and the writer.
+ *
+ * When it is full, offering an entry drops the oldest one, so a burst of logging holds a bounded
+ * amount of memory and the entries closest to a crash are the ones kept. Dropped entries are
+ * counted until the next {@link #drainTo(Collection)}.
+ */
+final class LogRingBuffer<T> {
+
+  private final Object[] entries;
+
+  private int head;
+  private int size;
+  private int dropped;
+
+  LogRingBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+
+    this.entries = new Object[capacity];
+  }
+
+  synchronized void offer(@NonNull T entry) {
+    entries[(head + size) % entries.length] = entry;
+
+    if (size == entries.length) {
+      head = (head + 1) % entries.length;
+      dropped++;
+    } else {
+      size++;
+    }
+  }
+
+  /**
+   * Moves the buffered entries to {@code target} from oldest to newest.
+   *
+   * @return The number of entries dropped since the previous drain.
+   */
+  @SuppressWarnings("unchecked")
+  synchronized int drainTo(@NonNull Collection<? super T> target) {
+    for (int i = 0; i < size; i++) {
+      int index = (head + i) % entries.length;
+      target.add((T) entries[index]);
+      entries[index] = null;
+    }
+
+    int result = dropped;
+
+    head    = 0;
+    size    = 0;
+    dropped = 0;
+
+    return result;
+  }
+}
@@ -15,13 +15,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class PersistentLogger extends Log.Logger {
 
@@ -39,18 +42,26 @@ public class PersistentLogger extends Log.Logger {
   private static final int              MAX_LOG_FILES   = 5;
   private static final int              MAX_LOG_SIZE    = 300 * 1024;
   private static final int              MAX_LOG_EXPORT  = 10_000;
+  private static final long             FLUSH_DELAY_MS  = 500;
+  private static final int              MAX_PENDING     = 2_048;
   private static final SimpleDateFormat DATE_FORMAT     = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS zzz");
 
-  private final Context  context;
-  private final Executor executor;
-  private final byte[]   secret;
+  private final Context                  context;
+  private final ScheduledExecutorService executor;
+  private final byte[]                   secret;
+
+  // Producers only enqueue and schedule at most one drain, the writer is confined to the executor.
+  // If the writer falls behind, the oldest pending entries are dropped rather than growing the queue.
+  private final LogRingBuffer<PendingEntry> pendingEntries = new LogRingBuffer<>(MAX_PENDING);
+  private final AtomicBoolean               drainScheduled = new AtomicBoolean(false);
 
   private LogFile.Writer writer;
+  private boolean        flushScheduled;
 
   public PersistentLogger(Context context) {
     this.context  = context.getApplicationContext();
     this.secret   = LogSecretProvider.getOrCreateAttachmentSecret(context);
-    this.executor = Executors.newSingleThreadExecutor(r -> {
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
       Thread thread = new Thread(r, "PersistentLogger");
       thread.setPriority(Thread.MIN_PRIORITY);
       return thread;
@@ -93,7 +104,11 @@ public class PersistentLogger extends Log.Logger {
   public void blockUntilAllWritesFinished() {
     CountDownLatch latch = new CountDownLatch(1);
 
-    executor.execute(latch::countDown);
+    executor.execute(() -> {
+      drainPendingEntries();
+      flushWriter();
+      latch.countDown();
+    });
 
     try {
       latch.await();
@@ -107,6 +122,9 @@ public class PersistentLogger extends Log.Logger {
     final SettableFuture<String> future = new SettableFuture<>();
 
     executor.execute(() -> {
+      drainPendingEntries();
+      flushWriter();
+
       StringBuilder builder = new StringBuilder();
       long entriesWritten = 0;
 
@@ -146,30 +164,71 @@ public class PersistentLogger extends Log.Logger {
 
   @AnyThread
   private void write(String level, String tag, String message, Throwable t) {
-    executor.execute(() -> {
-      try {
-        if (writer == null) {
-          return;
-        }
+    pendingEntries.offer(new PendingEntry(level, tag, message, t, new Date()));
 
-        if (writer.getLogSize() >= MAX_LOG_SIZE) {
-          writer.close();
-          writer = new LogFile.Writer(secret, createNewLogFile());
-          trimLogFilesOverMax();
-        }
+    if (drainScheduled.compareAndSet(false, true)) {
+      executor.execute(this::drainPendingEntries);
+    }
+  }
+
+  @WorkerThread
+  private void drainPendingEntries() {
+    drainScheduled.set(false);
+
+    List<PendingEntry> pending = new ArrayList<>();
+    int                dropped = pendingEntries.drainTo(pending);
+
+    try {
+      if (writer == null) {
+        return;
+      }
+
+      if (writer.getLogSize() >= MAX_LOG_SIZE) {
+        writer.flush();
+        writer.close();
+        writer = new LogFile.Writer(secret, createNewLogFile());
+        trimLogFilesOverMax();
+      }
 
-        for (String entry : buildLogEntries(level, tag, message, t)) {
-          writer.writeEntry(entry);
+      // Entries are only dropped from a full buffer, so there is always a first kept entry to date this by
+      if (dropped > 0) {
+        writer.writeEntry(buildEntry(LOG_W, TAG, "Dropped " + dropped + " log entries, the writer fell behind.", pending.get(0).date));
+      }
+
+      for (PendingEntry entry : pending) {
+        for (String line : buildLogEntries(entry.level, entry.tag, entry.message, entry.throwable, entry.date)) {
+          writer.writeEntry(line);
         }
+      }
 
-      } catch (NoExternalStorageException e) {
-        android.util.Log.w(TAG, "Cannot persist logs.", e);
-      } catch (IOException e) {
-        android.util.Log.w(TAG, "Failed to write line. Deleting all logs and starting over.");
-        deleteAllLogs();
-        initializeWriter();
+      if (writer.hasPendingEntries() && !flushScheduled) {
+        flushScheduled = true;
+        executor.schedule(this::flushWriter, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
       }
-    });
+    } catch (NoExternalStorageException e) {
+      android.util.Log.w(TAG, "Cannot persist logs.", e);
+    } catch (IOException e) {
+      android.util.Log.w(TAG, "Failed to write line. Deleting all logs and starting over.");
+      deleteAllLogs();
+      initializeWriter();
+    }
+  }
+
+  @WorkerThread
+  private void flushWriter() {
+    flushScheduled = false;
+
+    if (writer == null) {
+      return;
+    }
+
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      android.util.Log.w(TAG, "Failed to flush lines. Deleting all logs and starting over.");
+      deleteAllLogs();
+      initializeWriter();
+    }
   }
 
   private void trimLogFilesOverMax() throws NoExternalStorageException {
@@ -223,9 +282,8 @@ public class PersistentLogger extends Log.Logger {
     return logDir;
   }
 
-  private List<String> buildLogEntries(String level, String tag, String message, Throwable t) {
+  private List<String> buildLogEntries(String level, String tag, String message, Throwable t, Date date) {
     List<String> entries = new LinkedList<>();
-    Date         date    = new Date();
 
     entries.add(buildEntry(level, tag, message, date));
 
@@ -247,4 +305,20 @@ public class PersistentLogger extends Log.Logger {
   private String buildEntry(String level, String tag, String message, Date date) {
     return DATE_FORMAT.format(date) + ' ' + level + ' ' + tag + ": " + message;
   }
+
+  private static class PendingEntry {
+    private final String    level;
+    private final String    tag;
+    private final String    message;
+    private final Throwable throwable;
+    private final Date      date;
+
+    private PendingEntry(String level, String tag, String message, Throwable throwable, Date date) {
+      this.level     = level;
+      this.tag       = tag;
+      this.message   = message;
+      this.throwable = throwable;
+      this.date      = date;
+    }
+  }
 }
@@ -70,6 +70,15 @@ public class MediaPickerItemAdapter extends RecyclerView.Adapter<MediaPickerItem
   }
 
   void setMedia(@NonNull List<Media> media) {
+    int oldSize = this.media.size();
+
+    // Media is loaded a page at a time, only the new page needs binding when one is appended
+    if (oldSize > 0 && media.size() > oldSize && media.subList(0, oldSize).equals(this.media)) {
+      this.media.addAll(media.subList(oldSize, media.size()));
+      notifyItemRangeInserted(oldSize, media.size() - oldSize);
+      return;
+    }
+
     this.media.clear();
     this.media.addAll(media);
     notifyDataSetChanged();
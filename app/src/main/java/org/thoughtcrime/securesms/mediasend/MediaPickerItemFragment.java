@@ -38,6 +38,9 @@ public class MediaPickerItemFragment extends Fragment implements MediaPickerItem
   private static final String KEY_FOLDER_TITLE  = "folder_title";
   private static final String KEY_MAX_SELECTION = "max_selection";
 
+  // How close to the end of the loaded media scrolling gets before the next page is loaded
+  private static final int LOAD_MORE_THRESHOLD = 40;
+
   private String                 bucketId;
   private String                 folderTitle;
   private int                    maxSelection;
@@ -96,6 +99,14 @@ public class MediaPickerItemFragment extends Fragment implements MediaPickerItem
 
     imageList.setLayoutManager(layoutManager);
     imageList.setAdapter(adapter);
+    imageList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+      @Override
+      public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - LOAD_MORE_THRESHOLD) {
+          viewModel.onMediaScrolledNearEnd();
+        }
+      }
+    });
 
     initToolbar(view.findViewById(R.id.mediapicker_toolbar));
     onScreenWidthChanged(getScreenWidth());
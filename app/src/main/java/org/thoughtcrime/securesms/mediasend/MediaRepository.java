@@ -1,6 +1,5 @@
 package org.thoughtcrime.securesms.mediasend;
 
-import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
@@ -16,18 +15,14 @@ import androidx.annotation.WorkerThread;
 
 import com.annimon.stream.Stream;
 
-import org.session.libsession.utilities.Util;
 import org.session.libsignal.utilities.guava.Optional;
 import org.thoughtcrime.securesms.mms.PartAuthority;
 import org.thoughtcrime.securesms.util.MediaUtil;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -46,10 +41,18 @@ class MediaRepository {
   }
 
   /**
-   * Retrieves a list of media items (images and videos) that are present int he specified bucket.
+   * Opens a source of the media items (images and videos) that are present in the specified
+   * bucket, which are read a page at a time with {@link #getMediaPage(MediaSource, int, Callback)}.
    */
-  void getMediaInBucket(@NonNull Context context, @NonNull String bucketId, @NonNull Callback<List<Media>> callback) {
-    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> callback.onComplete(getMediaInBucket(context, bucketId)));
+  @NonNull MediaSource getMediaInBucket(@NonNull Context context, @NonNull String bucketId) {
+    return new MediaSource(context.getContentResolver(), bucketId);
+  }
+
+  /**
+   * Retrieves the next page of media items from the source, newest first.
+   */
+  void getMediaPage(@NonNull MediaSource source, int pageSize, @NonNull Callback<List<Media>> callback) {
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> callback.onComplete(source.loadPage(pageSize)));
   }
 
   /**
@@ -112,19 +115,29 @@ class MediaRepository {
     String   sortBy     = Images.Media.BUCKET_DISPLAY_NAME + " COLLATE NOCASE ASC, " + Images.Media.DATE_TAKEN + " DESC";
 
     try (Cursor cursor = context.getContentResolver().query(contentUri, projection, selection, null, sortBy)) {
-      while (cursor != null && cursor.moveToNext()) {
-        String     path      = cursor.getString(cursor.getColumnIndexOrThrow(projection[0]));
-        Uri        thumbnail = Uri.fromFile(new File(path));
-        String     bucketId  = cursor.getString(cursor.getColumnIndexOrThrow(projection[1]));
-        String     title     = cursor.getString(cursor.getColumnIndexOrThrow(projection[2]));
-        long       timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(projection[3]));
-        FolderData folder    = Util.getOrDefault(folders, bucketId, new FolderData(thumbnail, title, bucketId));
+      if (cursor == null) return new FolderResult(null, 0, folders);
+
+      int pathColumn      = cursor.getColumnIndexOrThrow(projection[0]);
+      int bucketIdColumn  = cursor.getColumnIndexOrThrow(projection[1]);
+      int titleColumn     = cursor.getColumnIndexOrThrow(projection[2]);
+      int timestampColumn = cursor.getColumnIndexOrThrow(projection[3]);
+
+      // Rows are sorted newest first within each bucket, so only the first row of a bucket and the
+      // newest row overall need a thumbnail, the rest are only counted
+      while (cursor.moveToNext()) {
+        String     bucketId  = cursor.getString(bucketIdColumn);
+        long       timestamp = cursor.getLong(timestampColumn);
+        FolderData folder    = folders.get(bucketId);
+
+        if (folder == null) {
+          folder = new FolderData(Uri.fromFile(new File(cursor.getString(pathColumn))), cursor.getString(titleColumn), bucketId);
+          folders.put(bucketId, folder);
+        }
 
         folder.incrementCount();
-        folders.put(bucketId, folder);
 
         if (timestamp > thumbnailTimestamp) {
-          globalThumbnail    = thumbnail;
+          globalThumbnail    = folder.getThumbnail();
           thumbnailTimestamp = timestamp;
         }
       }
@@ -133,56 +146,6 @@ class MediaRepository {
     return new FolderResult(globalThumbnail, thumbnailTimestamp, folders);
   }
 
-  @WorkerThread
-  private @NonNull List<Media> getMediaInBucket(@NonNull Context context, @NonNull String bucketId) {
-    List<Media> images = getMediaInBucket(context, bucketId, Images.Media.EXTERNAL_CONTENT_URI, true);
-    List<Media> videos = getMediaInBucket(context, bucketId, Video.Media.EXTERNAL_CONTENT_URI, false);
-    List<Media> media  = new ArrayList<>(images.size() + videos.size());
-
-    media.addAll(images);
-    media.addAll(videos);
-    Collections.sort(media, (o1, o2) -> Long.compare(o2.getDate(), o1.getDate()));
-
-    return media;
-  }
-
-  @WorkerThread
-  private @NonNull List<Media> getMediaInBucket(@NonNull Context context, @NonNull String bucketId, @NonNull Uri contentUri, boolean hasOrientation) {
-    List<Media> media         = new LinkedList<>();
-    String      selection     = Images.Media.BUCKET_ID + " = ? AND " + Images.Media.DATA + " NOT NULL";
-    String[]    selectionArgs = new String[] { bucketId };
-    String      sortBy        = Images.Media.DATE_TAKEN + " DESC";
-
-    String[] projection;
-
-    if (hasOrientation) {
-      projection = new String[]{Images.Media._ID, Images.Media.MIME_TYPE, Images.Media.DATE_TAKEN, Images.Media.ORIENTATION, Images.Media.WIDTH, Images.Media.HEIGHT, Images.Media.SIZE};
-    } else {
-      projection = new String[]{Images.Media._ID, Images.Media.MIME_TYPE, Images.Media.DATE_TAKEN, Images.Media.WIDTH, Images.Media.HEIGHT, Images.Media.SIZE};
-    }
-
-    if (Media.ALL_MEDIA_BUCKET_ID.equals(bucketId)) {
-      selection     = Images.Media.DATA + " NOT NULL";
-      selectionArgs = null;
-    }
-
-    try (Cursor cursor = context.getContentResolver().query(contentUri, projection, selection, selectionArgs, sortBy)) {
-      while (cursor != null && cursor.moveToNext()) {
-        Uri    uri         = Uri.withAppendedPath(contentUri, cursor.getString(cursor.getColumnIndexOrThrow(Images.Media._ID)));
-        String mimetype    = cursor.getString(cursor.getColumnIndexOrThrow(Images.Media.MIME_TYPE));
-        long   dateTaken   = cursor.getLong(cursor.getColumnIndexOrThrow(Images.Media.DATE_TAKEN));
-        int    orientation = hasOrientation ? cursor.getInt(cursor.getColumnIndexOrThrow(Images.Media.ORIENTATION)) : 0;
-        int    width       = cursor.getInt(cursor.getColumnIndexOrThrow(getWidthColumn(orientation)));
-        int    height      = cursor.getInt(cursor.getColumnIndexOrThrow(getHeightColumn(orientation)));
-        long   size        = cursor.getLong(cursor.getColumnIndexOrThrow(Images.Media.SIZE));
-
-        media.add(new Media(uri, mimetype, dateTaken, width, height, size, Optional.of(bucketId), Optional.absent()));
-      }
-    }
-
-    return media;
-  }
-
   @WorkerThread
   private List<Media> getPopulatedMedia(@NonNull Context context, @NonNull List<Media> media) {
     return Stream.of(media).map(m -> {
@@ -200,20 +163,6 @@ class MediaRepository {
     }).toList();
   }
 
-  @TargetApi(16)
-  @SuppressWarnings("SuspiciousNameCombination")
-  private String getWidthColumn(int orientation) {
-    if (orientation == 0 || orientation == 180) return Images.Media.WIDTH;
-    else                                        return Images.Media.HEIGHT;
-  }
-
-  @TargetApi(16)
-  @SuppressWarnings("SuspiciousNameCombination")
-  private String getHeightColumn(int orientation) {
-    if (orientation == 0 || orientation == 180) return Images.Media.HEIGHT;
-    else                                        return Images.Media.WIDTH;
-  }
-
   private boolean isPopulated(@NonNull Media media) {
     return media.getWidth() > 0 && media.getHeight() > 0 && media.getSize() > 0;
   }
@@ -7,6 +7,7 @@ import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
 import android.content.Context;
 import android.net.Uri;
+import android.os.AsyncTask;
 import androidx.annotation.NonNull;
 import android.text.TextUtils;
 
@@ -20,6 +21,7 @@ import org.thoughtcrime.securesms.util.SingleLiveEvent;
 import org.session.libsession.utilities.Util;
 import org.session.libsignal.utilities.guava.Optional;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -35,6 +37,9 @@ class MediaSendViewModel extends ViewModel {
 
   private static final int MAX_SELECTION = 32;
 
+  // A few screens of the picker grid
+  private static final int MEDIA_PAGE_SIZE = 120;
+
   private final Application                        application;
   private final MediaRepository                    repository;
   private final MutableLiveData<List<Media>>       selectedMedia;
@@ -53,6 +58,8 @@ class MediaSendViewModel extends ViewModel {
   private CountButtonState.Visibility countButtonVisibility;
   private boolean                     sentMedia;
   private Optional<Media>             lastImageCapture;
+  private MediaSource                 mediaSource;
+  private boolean                     loadingMedia;
 
   private MediaSendViewModel(@NonNull Application application, @NonNull MediaRepository repository) {
     this.application            = application;
@@ -255,11 +262,54 @@ class MediaSendViewModel extends ViewModel {
     return selectedMedia;
   }
 
+  /**
+   * Starts loading the media in the bucket, only the first page is loaded until
+   * {@link #onMediaScrolledNearEnd()} asks for more.
+   */
   @NonNull LiveData<List<Media>> getMediaInBucket(@NonNull Context context, @NonNull String bucketId) {
-    repository.getMediaInBucket(context, bucketId, bucketMedia::postValue);
+    closeMediaSource();
+    mediaSource = repository.getMediaInBucket(context, bucketId);
+    bucketMedia.setValue(Collections.emptyList());
+    loadMediaPage();
     return bucketMedia;
   }
 
+  void onMediaScrolledNearEnd() {
+    loadMediaPage();
+  }
+
+  private void loadMediaPage() {
+    MediaSource source = mediaSource;
+
+    if (source == null || loadingMedia || source.isExhausted()) return;
+
+    loadingMedia = true;
+    repository.getMediaPage(source, MEDIA_PAGE_SIZE, page -> {
+      Util.runOnMain(() -> {
+        if (source != mediaSource) return;
+
+        loadingMedia = false;
+
+        if (page.isEmpty()) return;
+
+        List<Media> media = new ArrayList<>(getBucketMediaOrDefault().size() + page.size());
+        media.addAll(getBucketMediaOrDefault());
+        media.addAll(page);
+        bucketMedia.setValue(media);
+      });
+    });
+  }
+
+  private void closeMediaSource() {
+    if (mediaSource != null) {
+      MediaSource source = mediaSource;
+      AsyncTask.THREAD_POOL_EXECUTOR.execute(source::close);
+    }
+
+    mediaSource  = null;
+    loadingMedia = false;
+  }
+
   @NonNull LiveData<List<MediaFolder>> getFolders(@NonNull Context context) {
     repository.getFolders(context, folders::postValue);
     return folders;
@@ -293,6 +343,11 @@ class MediaSendViewModel extends ViewModel {
     return MAX_SELECTION;
   }
 
+  private @NonNull List<Media> getBucketMediaOrDefault() {
+    return bucketMedia.getValue() == null ? Collections.emptyList()
+                                          : bucketMedia.getValue();
+  }
+
   private @NonNull List<Media> getSelectedMediaOrDefault() {
     return selectedMedia.getValue() == null ? Collections.emptyList()
                                             : selectedMedia.getValue();
@@ -312,6 +367,8 @@ class MediaSendViewModel extends ViewModel {
 
   @Override
   protected void onCleared() {
+    closeMediaSource();
+
     if (!sentMedia) {
       Stream.of(getSelectedMediaOrDefault())
             .map(Media::getUri)
@@ -0,0 +1,209 @@
+package org.thoughtcrime.securesms.mediasend;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore.Images;
+import android.provider.MediaStore.Video;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import org.session.libsignal.utilities.Log;
+import org.session.libsignal.utilities.guava.Optional;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the media (images and videos) in a bucket newest first, a page at a time. The image and
+ * video cursors are each sorted by date taken and merged as pages are read, so the first page is
+ * ready without reading and sorting the rest of the bucket.
+ */
+final class MediaSource implements Closeable {
+
+  private static final String TAG = MediaSource.class.getSimpleName();
+
+  private final ContentResolver contentResolver;
+  private final String          bucketId;
+
+  private List<MediaCursor> cursors;
+  private boolean           closed;
+  private int               itemsRead;
+  private long              timeToFirstPageMs = -1;
+
+  private volatile boolean exhausted;
+
+  MediaSource(@NonNull ContentResolver contentResolver, @NonNull String bucketId) {
+    this.contentResolver = contentResolver;
+    this.bucketId        = bucketId;
+  }
+
+  /**
+   * Reads up to {@code pageSize} more items, empty once the bucket has been read to the end.
+   */
+  @WorkerThread
+  synchronized @NonNull List<Media> loadPage(int pageSize) {
+    if (closed || exhausted) return Collections.emptyList();
+
+    long start = System.nanoTime();
+
+    if (cursors == null) {
+      cursors = new ArrayList<>(2);
+      addCursor(Images.Media.EXTERNAL_CONTENT_URI, true);
+      addCursor(Video.Media.EXTERNAL_CONTENT_URI, false);
+    }
+
+    List<Media> page = new ArrayList<>(pageSize);
+
+    while (page.size() < pageSize) {
+      MediaCursor newest = null;
+
+      for (MediaCursor cursor : cursors) {
+        if (cursor.hasCurrent() && (newest == null || cursor.getDateTaken() > newest.getDateTaken())) {
+          newest = cursor;
+        }
+      }
+
+      if (newest == null) {
+        exhausted = true;
+        break;
+      }
+
+      page.add(newest.next());
+    }
+
+    if (itemsRead == 0) {
+      timeToFirstPageMs = (System.nanoTime() - start) / 1_000_000;
+      Log.i(TAG, "First page of " + page.size() + " items in " + timeToFirstPageMs + " ms");
+    }
+
+    itemsRead += page.size();
+
+    if (exhausted) close();
+
+    return page;
+  }
+
+  boolean isExhausted() {
+    return exhausted;
+  }
+
+  synchronized int getItemsRead() {
+    return itemsRead;
+  }
+
+  /**
+   * @return How long reading the first page took, including the queries, or -1 if it hasn't been read.
+   */
+  synchronized long getTimeToFirstPageMs() {
+    return timeToFirstPageMs;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) return;
+    closed = true;
+
+    if (cursors != null) {
+      for (MediaCursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+  }
+
+  private void addCursor(@NonNull Uri contentUri, boolean hasOrientation) {
+    String   selection     = Images.Media.BUCKET_ID + " = ? AND " + Images.Media.DATA + " NOT NULL";
+    String[] selectionArgs = new String[] { bucketId };
+    String   sortBy        = Images.Media.DATE_TAKEN + " DESC";
+
+    String[] projection;
+
+    if (hasOrientation) {
+      projection = new String[]{Images.Media._ID, Images.Media.MIME_TYPE, Images.Media.DATE_TAKEN, Images.Media.ORIENTATION, Images.Media.WIDTH, Images.Media.HEIGHT, Images.Media.SIZE};
+    } else {
+      projection = new String[]{Images.Media._ID, Images.Media.MIME_TYPE, Images.Media.DATE_TAKEN, Images.Media.WIDTH, Images.Media.HEIGHT, Images.Media.SIZE};
+    }
+
+    if (Media.ALL_MEDIA_BUCKET_ID.equals(bucketId)) {
+      selection     = Images.Media.DATA + " NOT NULL";
+      selectionArgs = null;
+    }
+
+    Cursor cursor = contentResolver.query(contentUri, projection, selection, selectionArgs, sortBy);
+
+    if (cursor != null) {
+      cursors.add(new MediaCursor(cursor, contentUri, bucketId, hasOrientation));
+    }
+  }
+
+  /**
+   * A cursor positioned on the next item to read, with its column indexes looked up once.
+   */
+  private static final class MediaCursor implements Closeable {
+
+    private final Cursor           cursor;
+    private final Uri              contentUri;
+    private final Optional<String> bucketId;
+
+    private final int idColumn;
+    private final int mimeTypeColumn;
+    private final int dateTakenColumn;
+    private final int orientationColumn;
+    private final int widthColumn;
+    private final int heightColumn;
+    private final int sizeColumn;
+
+    private boolean hasCurrent;
+
+    MediaCursor(@NonNull Cursor cursor, @NonNull Uri contentUri, @NonNull String bucketId, boolean hasOrientation) {
+      this.cursor            = cursor;
+      this.contentUri        = contentUri;
+      this.bucketId          = Optional.of(bucketId);
+      this.idColumn          = cursor.getColumnIndexOrThrow(Images.Media._ID);
+      this.mimeTypeColumn    = cursor.getColumnIndexOrThrow(Images.Media.MIME_TYPE);
+      this.dateTakenColumn   = cursor.getColumnIndexOrThrow(Images.Media.DATE_TAKEN);
+      this.orientationColumn = hasOrientation ? cursor.getColumnIndexOrThrow(Images.Media.ORIENTATION) : -1;
+      this.widthColumn       = cursor.getColumnIndexOrThrow(Images.Media.WIDTH);
+      this.heightColumn      = cursor.getColumnIndexOrThrow(Images.Media.HEIGHT);
+      this.sizeColumn        = cursor.getColumnIndexOrThrow(Images.Media.SIZE);
+      this.hasCurrent        = cursor.moveToFirst();
+    }
+
+    boolean hasCurrent() {
+      return hasCurrent;
+    }
+
+    long getDateTaken() {
+      return cursor.getLong(dateTakenColumn);
+    }
+
+    /**
+     * Reads the current item and moves on to the next one.
+     */
+    @NonNull Media next() {
+      Uri    uri         = Uri.withAppendedPath(contentUri, cursor.getString(idColumn));
+      String mimetype    = cursor.getString(mimeTypeColumn);
+      long   dateTaken   = cursor.getLong(dateTakenColumn);
+      int    orientation = orientationColumn != -1 ? cursor.getInt(orientationColumn) : 0;
+      int    width       = cursor.getInt(isRotated(orientation) ? heightColumn : widthColumn);
+      int    height      = cursor.getInt(isRotated(orientation) ? widthColumn : heightColumn);
+      long   size        = cursor.getLong(sizeColumn);
+
+      hasCurrent = cursor.moveToNext();
+
+      return new Media(uri, mimetype, dateTaken, width, height, size, bucketId, Optional.absent());
+    }
+
+    @Override
+    public void close() {
+      cursor.close();
+    }
+
+    private static boolean isRotated(int orientation) {
+      return orientation != 0 && orientation != 180;
+    }
+  }
+}
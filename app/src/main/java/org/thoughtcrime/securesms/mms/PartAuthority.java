@@ -58,6 +58,41 @@ public class PartAuthority {
     }
   }
 
+  /**
+   * Opens the stream at {@code offset}. Attachment parts seek straight to it, other uris are read
+   * up to it.
+   */
+  public static InputStream getAttachmentStream(@NonNull Context context, @NonNull Uri uri, long offset)
+      throws IOException
+  {
+    if (uriMatcher.match(uri) == PART_ROW) {
+      try {
+        return DatabaseComponent.get(context).attachmentDatabase().getAttachmentStream(new PartUriParser(uri).getPartId(), offset);
+      } catch (SecurityException se) {
+        throw new IOException(se);
+      }
+    }
+
+    InputStream stream    = getAttachmentStream(context, uri);
+    long        remaining = offset;
+
+    while (remaining > 0) {
+      long skipped = stream.skip(remaining);
+
+      if (skipped <= 0) {
+        if (stream.read() == -1) {
+          stream.close();
+          throw new IOException("Offset " + offset + " is past the end of " + uri);
+        }
+        skipped = 1;
+      }
+
+      remaining -= skipped;
+    }
+
+    return stream;
+  }
+
   public static @Nullable String getAttachmentFileName(@NonNull Context context, @NonNull Uri uri) {
     int match = uriMatcher.match(uri);
 
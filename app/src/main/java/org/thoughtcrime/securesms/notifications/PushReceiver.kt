@@ -81,17 +81,19 @@ class PushReceiver @Inject constructor(@ApplicationContext val context: Context)
         Log.d(TAG, "decrypt() called")
 
         val encKey = getOrCreateNotificationKey()
-        val nonce = encPayload.take(AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES).toByteArray()
-        val payload = encPayload.drop(AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES).toByteArray()
+        val nonce = encPayload.copyOfRange(0, AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES)
+        val payload = encPayload.copyOfRange(AEAD.XCHACHA20POLY1305_IETF_NPUBBYTES, encPayload.size)
         val padded = SodiumUtilities.decrypt(payload, encKey.asBytes, nonce)
             ?: error("Failed to decrypt push notification")
-        val decrypted = padded.dropLastWhile { it.toInt() == 0 }.toByteArray()
-        val bencoded = Bencode.Decoder(decrypted)
+        // Decode in place, without the zero padding
+        var decryptedLength = padded.size
+        while (decryptedLength > 0 && padded[decryptedLength - 1].toInt() == 0) decryptedLength--
+        val bencoded = Bencode.Decoder(padded, 0, decryptedLength)
         val expectedList = (bencoded.decode() as? BencodeList)?.values
             ?: error("Failed to decode bencoded list from payload")
 
-        val metadataJson = (expectedList[0] as? BencodeString)?.value ?: error("no metadata")
-        val metadata: PushNotificationMetadata = json.decodeFromString(String(metadataJson))
+        val metadataJson = (expectedList[0] as? BencodeString)?.asString() ?: error("no metadata")
+        val metadata: PushNotificationMetadata = json.decodeFromString(metadataJson)
 
         return (expectedList.getOrNull(1) as? BencodeString)?.value.also {
             // null content is valid only if we got a "data_too_long" flag
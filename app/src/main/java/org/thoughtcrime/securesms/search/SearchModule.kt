@@ -10,7 +10,6 @@ import dagger.hilt.android.qualifiers.ApplicationContext
 import dagger.hilt.android.scopes.ActivityScoped
 import dagger.hilt.android.scopes.ViewModelScoped
 import org.session.libsession.utilities.concurrent.SignalExecutors
-import org.thoughtcrime.securesms.contacts.ContactAccessor
 import org.thoughtcrime.securesms.database.GroupDatabase
 import org.thoughtcrime.securesms.database.SearchDatabase
 import org.thoughtcrime.securesms.database.SessionContactDatabase
@@ -27,7 +26,7 @@ object SearchModule {
                                 threadDatabase: ThreadDatabase,
                                 groupDatabase: GroupDatabase,
                                 contactDatabase: SessionContactDatabase) =
-            SearchRepository(context, searchDatabase, threadDatabase, groupDatabase, contactDatabase, ContactAccessor.getInstance(), SignalExecutors.SERIAL)
+            SearchRepository(context, searchDatabase, threadDatabase, groupDatabase, contactDatabase, SignalExecutors.SERIAL, SignalExecutors.BOUNDED)
 
 
 }
\ No newline at end of file
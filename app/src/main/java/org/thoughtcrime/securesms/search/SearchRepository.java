@@ -3,12 +3,10 @@ package org.thoughtcrime.securesms.search;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
-import android.database.MergeCursor;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
-
-import com.annimon.stream.Stream;
+import androidx.annotation.Nullable;
 
 import org.session.libsession.messaging.contacts.Contact;
 import org.session.libsession.utilities.Address;
@@ -16,11 +14,11 @@ import org.session.libsession.utilities.GroupRecord;
 import org.session.libsession.utilities.TextSecurePreferences;
 import org.session.libsession.utilities.recipients.Recipient;
 import org.session.libsignal.utilities.Log;
-import org.thoughtcrime.securesms.contacts.ContactAccessor;
 import org.thoughtcrime.securesms.database.CursorList;
 import org.thoughtcrime.securesms.database.GroupDatabase;
 import org.thoughtcrime.securesms.database.MmsSmsColumns;
 import org.thoughtcrime.securesms.database.SearchDatabase;
+import org.thoughtcrime.securesms.database.SearchDatabase.MessagePageKey;
 import org.thoughtcrime.securesms.database.SessionContactDatabase;
 import org.thoughtcrime.securesms.database.ThreadDatabase;
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
@@ -29,12 +27,15 @@ import org.thoughtcrime.securesms.search.model.SearchResult;
 import org.thoughtcrime.securesms.util.Stopwatch;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-
-import kotlin.Pair;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Manages data retrieval for search.
@@ -60,31 +61,46 @@ public class SearchRepository {
     }
   }
 
+  // Global search shows the best messages first and loads the rest on demand
+  public static final int MESSAGE_PAGE_SIZE = 100;
+
+  private static final int CONTACT_LIMIT      = 100;
+  private static final int GROUP_LIMIT        = 100;
+  private static final int MEMBER_MATCH_LIMIT = 50;
+
   private final Context                context;
   private final SearchDatabase         searchDatabase;
   private final ThreadDatabase         threadDatabase;
   private final GroupDatabase          groupDatabase;
   private final SessionContactDatabase contactDatabase;
-  private final ContactAccessor        contactAccessor;
   private final Executor               executor;
+  private final ExecutorService        sourceExecutor;
 
+  /**
+   * @param executor       runs one search at a time, in submission order
+   * @param sourceExecutor runs the contact, conversation and message lookups of a search in parallel
+   */
   public SearchRepository(@NonNull Context context,
                           @NonNull SearchDatabase searchDatabase,
                           @NonNull ThreadDatabase threadDatabase,
                           @NonNull GroupDatabase groupDatabase,
                           @NonNull SessionContactDatabase contactDatabase,
-                          @NonNull ContactAccessor contactAccessor,
-                          @NonNull Executor executor)
+                          @NonNull Executor executor,
+                          @NonNull ExecutorService sourceExecutor)
   {
     this.context          = context.getApplicationContext();
     this.searchDatabase   = searchDatabase;
     this.threadDatabase   = threadDatabase;
     this.groupDatabase    = groupDatabase;
     this.contactDatabase  = contactDatabase;
-    this.contactAccessor  = contactAccessor;
     this.executor         = executor;
+    this.sourceExecutor   = sourceExecutor;
   }
 
+  /**
+   * Searches contacts, conversations and the first {@link #MESSAGE_PAGE_SIZE} messages, further
+   * messages are loaded with {@link #queryMessages(String, MessagePageKey, Callback)}.
+   */
   public void query(@NonNull String query, @NonNull Callback<SearchResult> callback) {
     if (TextUtils.isEmpty(query)) {
       callback.onResult(SearchResult.EMPTY);
@@ -95,20 +111,49 @@ public class SearchRepository {
       Stopwatch timer = new Stopwatch("FtsQuery");
 
       String cleanQuery = sanitizeQuery(query);
+      long   now        = System.currentTimeMillis();
       timer.split("clean");
 
-      Pair<CursorList<Contact>, List<String>> contacts = queryContacts(cleanQuery);
-      timer.split("contacts");
+      Future<List<Contact>>             contacts      = sourceExecutor.submit(() -> timed("contacts", () -> queryContacts(cleanQuery)));
+      Future<List<GroupRecord>>         conversations = sourceExecutor.submit(() -> timed("conversations", () -> queryConversations(cleanQuery)));
+      Future<CursorList<MessageResult>> messages      = sourceExecutor.submit(() -> timed("messages", () -> queryMessagePage(cleanQuery, now, null)));
+
+      SearchResult result = new SearchResult(cleanQuery,
+                                             await(contacts, Collections.emptyList()),
+                                             await(conversations, Collections.emptyList()),
+                                             await(messages, CursorList.emptyList()));
+      timer.split("sources");
+      timer.stop(TAG);
 
-      CursorList<GroupRecord> conversations = queryConversations(cleanQuery, contacts.getSecond());
-      timer.split("conversations");
+      callback.onResult(result);
+    });
+  }
 
-      CursorList<MessageResult> messages = queryMessages(cleanQuery);
-      timer.split("messages");
+  /**
+   * Loads the page of global search messages that follows the message with the {@code after} key,
+   * ranked against the same time as the first page. A failed page is reported as an empty one.
+   */
+  public void queryMessages(@NonNull String query, @NonNull MessagePageKey after, @NonNull Callback<CursorList<MessageResult>> callback) {
+    if (TextUtils.isEmpty(query)) {
+      callback.onResult(CursorList.emptyList());
+      return;
+    }
+
+    executor.execute(() -> {
+      Stopwatch                 timer = new Stopwatch("FtsQuery:messages");
+      CursorList<MessageResult> messages;
+
+      try {
+        messages = queryMessagePage(sanitizeQuery(query), after.now, after);
+      } catch (Exception e) {
+        Log.w(TAG, "Failed to load more messages", e);
+        messages = CursorList.emptyList();
+      }
 
+      timer.split("page");
       timer.stop(TAG);
 
-      callback.onResult(new SearchResult(cleanQuery, contacts.getFirst(), conversations, messages));
+      callback.onResult(messages);
     });
   }
 
@@ -127,73 +172,124 @@ public class SearchRepository {
     });
   }
 
-  private Pair<CursorList<Contact>, List<String>> queryContacts(String query) {
+  private <T> T timed(@NonNull String source, @NonNull Callable<T> callable) throws Exception {
+    Stopwatch timer  = new Stopwatch("FtsQuery:" + source);
+    T         result = callable.call();
 
-    Cursor contacts = contactDatabase.queryContactsByName(query);
-    List<Address> contactList = new ArrayList<>();
-    List<String> contactStrings = new ArrayList<>();
+    timer.split(source);
+    timer.stop(TAG);
 
-    while (contacts.moveToNext()) {
-      try {
-        Contact contact = contactDatabase.contactFromCursor(contacts);
-        String contactSessionId = contact.getSessionID();
-        Address address = Address.fromSerialized(contactSessionId);
-        contactList.add(address);
-        contactStrings.add(contactSessionId);
-      } catch (Exception e) {
-        Log.e("Loki", "Error building Contact from cursor in query", e);
-      }
+    return result;
+  }
+
+  private <T> T await(@NonNull Future<T> future, @NonNull T fallback) {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Log.w(TAG, "Search source failed", e);
+      return fallback;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return fallback;
     }
+  }
 
-    contacts.close();
+  private List<Contact> queryContacts(String query) {
+    List<Contact> result  = new ArrayList<>();
+    Set<String>   seenIds = new HashSet<>();
+
+    try (Cursor contacts = searchDatabase.queryContacts(query, CONTACT_LIMIT)) {
+      while (contacts.moveToNext()) {
+        try {
+          Contact contact = contactDatabase.contactFromCursor(contacts);
+          if (seenIds.add(contact.getSessionID())) {
+            result.add(contact);
+          }
+        } catch (Exception e) {
+          Log.e("Loki", "Error building Contact from cursor in query", e);
+        }
+      }
+    }
 
+    // Conversations can also be found by typing the start of their session id
     Cursor addressThreads = threadDatabase.searchConversationAddresses(query);
-    Cursor individualRecipients = threadDatabase.getFilteredConversationList(contactList);
-    if (individualRecipients == null && addressThreads == null) {
-      return new Pair<>(CursorList.emptyList(),contactStrings);
+    if (addressThreads != null) {
+      try {
+        ContactModelBuilder builder = new ContactModelBuilder(contactDatabase, threadDatabase);
+        while (addressThreads.moveToNext()) {
+          Contact contact = builder.build(addressThreads);
+          if (seenIds.add(contact.getSessionID())) {
+            result.add(contact);
+          }
+        }
+      } finally {
+        addressThreads.close();
+      }
     }
-    MergeCursor merged = new MergeCursor(new Cursor[]{addressThreads, individualRecipients});
-
-    return new Pair<>(new CursorList<>(merged, new ContactModelBuilder(contactDatabase, threadDatabase)), contactStrings);
 
+    return result;
   }
 
-  private CursorList<GroupRecord> queryConversations(@NonNull String query, List<String> matchingAddresses) {
-    List<String>  numbers   = contactAccessor.getNumbersForThreadSearchFilter(context, query);
-    String localUserNumber = TextSecurePreferences.getLocalNumber(context);
+  private List<GroupRecord> queryConversations(@NonNull String query) {
+    List<GroupRecord> result  = new ArrayList<>();
+    Set<String>       seenIds = new HashSet<>();
+
+    try (GroupDatabase.Reader reader = new GroupDatabase.Reader(searchDatabase.queryGroups(query, GROUP_LIMIT))) {
+      GroupRecord record;
+      while ((record = reader.getNext()) != null) {
+        if (seenIds.add(record.getEncodedId())) {
+          result.add(record);
+        }
+      }
+    }
+
+    // Then the groups that a matching contact is a member of, most recently active first
+    List<String> matchingMembers = searchDatabase.queryContactIds(query, MEMBER_MATCH_LIMIT);
+    String       localUserNumber = TextSecurePreferences.getLocalNumber(context);
     if (localUserNumber != null) {
-      matchingAddresses.remove(localUserNumber);
+      matchingMembers.remove(localUserNumber);
     }
-    Set<Address> addresses = new HashSet<>(Stream.of(numbers).map(number -> Address.fromExternal(context, number)).toList());
 
-    Cursor membersGroupList = groupDatabase.getGroupsFilteredByMembers(matchingAddresses);
+    Set<Address> memberGroups     = new HashSet<>();
+    Cursor       membersGroupList = groupDatabase.getGroupsFilteredByMembers(matchingMembers);
     if (membersGroupList != null) {
       GroupDatabase.Reader reader = new GroupDatabase.Reader(membersGroupList);
       while (membersGroupList.moveToNext()) {
         GroupRecord record = reader.getCurrent();
-        if (record == null) continue;
+        if (record == null || seenIds.contains(record.getEncodedId())) continue;
 
-        addresses.add(Address.fromSerialized(record.getEncodedId()));
+        memberGroups.add(Address.fromSerialized(record.getEncodedId()));
       }
       membersGroupList.close();
     }
 
+    Cursor conversations = threadDatabase.getFilteredConversationList(new ArrayList<>(memberGroups));
+    if (conversations != null) {
+      try {
+        GroupModelBuilder builder = new GroupModelBuilder(threadDatabase, groupDatabase);
+        while (conversations.moveToNext()) {
+          GroupRecord record = builder.build(conversations);
+          if (seenIds.add(record.getEncodedId())) {
+            result.add(record);
+          }
+        }
+      } finally {
+        conversations.close();
+      }
+    }
 
-    Cursor conversations = threadDatabase.getFilteredConversationList(new ArrayList<>(addresses));
-
-    return conversations != null ? new CursorList<>(conversations, new GroupModelBuilder(threadDatabase, groupDatabase))
-            : CursorList.emptyList();
+    return result;
   }
 
-  private CursorList<MessageResult> queryMessages(@NonNull String query) {
-    Cursor messages = searchDatabase.queryMessages(query);
-    return messages != null ? new CursorList<>(messages, new MessageModelBuilder(context))
+  private CursorList<MessageResult> queryMessagePage(@NonNull String query, long now, @Nullable MessagePageKey after) {
+    Cursor messages = searchDatabase.queryMessages(query, now, after, MESSAGE_PAGE_SIZE);
+    return messages != null ? new CursorList<>(messages, new MessageModelBuilder(context, now))
                             : CursorList.emptyList();
   }
 
   private CursorList<MessageResult> queryMessages(@NonNull String query, long threadId) {
     Cursor messages = searchDatabase.queryMessages(query, threadId);
-    return messages != null ? new CursorList<>(messages, new MessageModelBuilder(context))
+    return messages != null ? new CursorList<>(messages, new MessageModelBuilder(context, null))
                             : CursorList.emptyList();
   }
 
@@ -289,9 +385,15 @@ public class SearchRepository {
   private static class MessageModelBuilder implements CursorList.ModelBuilder<MessageResult> {
 
     private final Context context;
+    private final Long    now;
 
-    MessageModelBuilder(@NonNull Context context) {
+    /**
+     * @param now the time global search results were ranked against, or null for results without
+     *            a rank
+     */
+    MessageModelBuilder(@NonNull Context context, @Nullable Long now) {
       this.context = context;
+      this.now     = now;
     }
 
     @Override
@@ -304,7 +406,16 @@ public class SearchRepository {
       long      sentMs                = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.NORMALIZED_DATE_SENT));
       long      threadId              = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.THREAD_ID));
 
-      return new MessageResult(conversationRecipient, messageRecipient, body, threadId, sentMs);
+      MessagePageKey pageKey = null;
+      if (now != null) {
+        pageKey = new MessagePageKey(now,
+                                     cursor.getDouble(cursor.getColumnIndexOrThrow(SearchDatabase.RANK)),
+                                     sentMs,
+                                     cursor.getInt(cursor.getColumnIndexOrThrow(SearchDatabase.IS_MMS)) == 1,
+                                     cursor.getLong(cursor.getColumnIndexOrThrow(SearchDatabase.MESSAGE_ID)));
+      }
+
+      return new MessageResult(conversationRecipient, messageRecipient, body, threadId, sentMs, pageKey);
     }
   }
 
@@ -1,8 +1,10 @@
 package org.thoughtcrime.securesms.search.model;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.session.libsession.utilities.recipients.Recipient;
+import org.thoughtcrime.securesms.database.SearchDatabase.MessagePageKey;
 
 /**
  * Represents a search result for a message.
@@ -15,16 +17,22 @@ public class MessageResult {
   public final long      threadId;
   public final long      sentTimestampMs;
 
+  /** Where the message sorts in a global search, null for the results of a single conversation. */
+  @Nullable
+  public final MessagePageKey pageKey;
+
   public MessageResult(@NonNull Recipient conversationRecipient,
                        @NonNull Recipient messageRecipient,
                        @NonNull String bodySnippet,
                        long threadId,
-                       long sentTimestampMs)
+                       long sentTimestampMs,
+                       @Nullable MessagePageKey pageKey)
   {
     this.conversationRecipient = conversationRecipient;
     this.messageRecipient      = messageRecipient;
     this.bodySnippet           = bodySnippet;
     this.threadId              = threadId;
     this.sentTimestampMs       = sentTimestampMs;
+    this.pageKey               = pageKey;
   }
 }
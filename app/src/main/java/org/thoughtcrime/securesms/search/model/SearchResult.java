@@ -7,8 +7,9 @@ import androidx.annotation.NonNull;
 import org.session.libsession.messaging.contacts.Contact;
 import org.session.libsession.utilities.GroupRecord;
 import org.thoughtcrime.securesms.database.CursorList;
-import org.thoughtcrime.securesms.database.model.ThreadRecord;
+import org.thoughtcrime.securesms.search.SearchRepository;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -17,16 +18,21 @@ import java.util.List;
  */
 public class SearchResult {
 
-  public static final SearchResult EMPTY = new SearchResult("", CursorList.emptyList(), CursorList.emptyList(), CursorList.emptyList());
+  public static final SearchResult EMPTY = new SearchResult("", Collections.emptyList(), Collections.emptyList(), CursorList.emptyList());
 
   private final String                    query;
-  private final CursorList<Contact>     contacts;
-  private final CursorList<GroupRecord>  conversations;
+  private final List<Contact>             contacts;
+  private final List<GroupRecord>         conversations;
   private final CursorList<MessageResult> messages;
 
+  /**
+   * @param contacts      ranked contacts, already read from the database
+   * @param conversations ranked groups, already read from the database
+   * @param messages      the first page of ranked messages
+   */
   public SearchResult(@NonNull String                    query,
-                      @NonNull CursorList<Contact>     contacts,
-                      @NonNull CursorList<GroupRecord>  conversations,
+                      @NonNull List<Contact>             contacts,
+                      @NonNull List<GroupRecord>         conversations,
                       @NonNull CursorList<MessageResult> messages)
   {
     this.query         = query;
@@ -59,21 +65,19 @@ public class SearchResult {
     return size() == 0;
   }
 
+  public boolean hasMoreMessages() {
+    return messages.size() >= SearchRepository.MESSAGE_PAGE_SIZE;
+  }
+
   public void registerContentObserver(@NonNull ContentObserver observer) {
-    contacts.registerContentObserver(observer);
-    conversations.registerContentObserver(observer);
     messages.registerContentObserver(observer);
   }
 
   public void unregisterContentObserver(@NonNull ContentObserver observer) {
-    contacts.unregisterContentObserver(observer);
-    conversations.unregisterContentObserver(observer);
     messages.unregisterContentObserver(observer);
   }
 
   public void close() {
-    contacts.close();
-    conversations.close();
     messages.close();
   }
 }
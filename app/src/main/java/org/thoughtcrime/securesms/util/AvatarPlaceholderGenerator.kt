@@ -23,6 +23,11 @@ object AvatarPlaceholderGenerator {
 
     @JvmStatic
     fun generate(context: Context, pixelSize: Int, hashString: String, displayName: String?): BitmapDrawable {
+        return BitmapDrawable(context.resources, generateBitmap(context, pixelSize, hashString, displayName))
+    }
+
+    @JvmStatic
+    fun generateBitmap(context: Context, pixelSize: Int, hashString: String, displayName: String?): Bitmap {
         val hash: Long
         if (hashString.length >= 12 && hashString.matches(Regex("^[0-9A-Fa-f]+\$"))) {
             hash = getSha512(hashString).substring(0 until 12).toLong(16)
@@ -61,7 +66,7 @@ object AvatarPlaceholderGenerator {
         textBounds.top += (areaRect.height() - textBounds.bottom) * 0.5f
         canvas.drawText(labelText, textBounds.left, textBounds.top - textPaint.ascent(), textPaint)
 
-        return BitmapDrawable(context.resources, bitmap)
+        return bitmap
     }
 
     fun extractLabel(content: String): String {
@@ -43,12 +43,6 @@ public class BitmapUtil {
 
   private static final String TAG = BitmapUtil.class.getSimpleName();
 
-  private static final int MAX_COMPRESSION_QUALITY          = 95;
-  private static final int MIN_COMPRESSION_QUALITY          = 45;
-  private static final int MAX_COMPRESSION_ATTEMPTS         = 5;
-  private static final int MIN_COMPRESSION_QUALITY_DECREASE = 5;
-  private static final int MAX_IMAGE_HALF_SCALES            = 3;
-
   @WorkerThread
   public static <T> ScaleResult createScaledBytes(@NonNull Context context, @NonNull T model, @NonNull MediaConstraints constraints)
       throws BitmapDecodingException
@@ -79,83 +73,87 @@ public class BitmapUtil {
                                                   @NonNull CompressFormat format)
       throws BitmapDecodingException
   {
-    return createScaledBytes(context, model, maxImageWidth, maxImageHeight, maxImageSize, format, 1, 0);
-  }
+    Bitmap bitmap;
 
-  @WorkerThread
-  private static <T> ScaleResult createScaledBytes(@NonNull Context context,
-                                                   @NonNull T model,
-                                                   final int maxImageWidth,
-                                                   final int maxImageHeight,
-                                                   final int maxImageSize,
-                                                   @NonNull CompressFormat format,
-                                                   final int sizeAttempt,
-                                                   int totalAttempts)
-      throws BitmapDecodingException
-  {
     try {
-      int    quality  = MAX_COMPRESSION_QUALITY;
-      int    attempts = 0;
-      byte[] bytes;
-
-      Bitmap scaledBitmap = GlideApp.with(context.getApplicationContext())
-                                    .asBitmap()
-                                    .load(model)
-                                    .skipMemoryCache(true)
-                                    .diskCacheStrategy(DiskCacheStrategy.NONE)
-                                    .centerInside()
-                                    .submit(maxImageWidth, maxImageHeight)
-                                    .get();
-
-      if (scaledBitmap == null) {
-        throw new BitmapDecodingException("Unable to decode image");
-      }
+      bitmap = GlideApp.with(context.getApplicationContext())
+                       .asBitmap()
+                       .load(model)
+                       .skipMemoryCache(true)
+                       .diskCacheStrategy(DiskCacheStrategy.NONE)
+                       .centerInside()
+                       .submit(maxImageWidth, maxImageHeight)
+                       .get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new BitmapDecodingException(e);
+    }
 
-      Log.i(TAG, String.format(Locale.US,"Initial scaled bitmap has size of %d bytes.", scaledBitmap.getByteCount()));
-      Log.i(TAG, String.format(Locale.US, "Max dimensions %d x %d, %d bytes", maxImageWidth, maxImageHeight, maxImageSize));
+    if (bitmap == null) {
+      throw new BitmapDecodingException("Unable to decode image");
+    }
 
-      try {
-        do {
-          totalAttempts++;
-          ByteArrayOutputStream baos = new ByteArrayOutputStream();
-          scaledBitmap.compress(format, quality, baos);
-          bytes = baos.toByteArray();
+    Log.i(TAG, String.format(Locale.US, "Initial scaled bitmap has size of %d bytes.", bitmap.getByteCount()));
+    Log.i(TAG, String.format(Locale.US, "Max dimensions %d x %d, %d bytes", maxImageWidth, maxImageHeight, maxImageSize));
 
-          Log.d(TAG, "iteration with quality " + quality + " size " + bytes.length + " bytes.");
-          if (quality == MIN_COMPRESSION_QUALITY) break;
+    try (BitmapImage image = new BitmapImage(bitmap, format)) {
+      ImageCompressionPlanner.Result result = ImageCompressionPlanner.compress(image, maxImageSize);
 
-          int nextQuality = (int)Math.floor(quality * Math.sqrt((double)maxImageSize / bytes.length));
-          if (quality - nextQuality < MIN_COMPRESSION_QUALITY_DECREASE) {
-            nextQuality = quality - MIN_COMPRESSION_QUALITY_DECREASE;
-          }
-          quality = Math.max(nextQuality, MIN_COMPRESSION_QUALITY);
-        }
-        while (bytes.length > maxImageSize && attempts++ < MAX_COMPRESSION_ATTEMPTS);
+      Log.i(TAG, String.format(Locale.US, "createScaledBytes(%s) -> %s", model.getClass().getName(), result));
 
-        if (bytes.length > maxImageSize) {
-          if (sizeAttempt <= MAX_IMAGE_HALF_SCALES) {
-            scaledBitmap.recycle();
-            scaledBitmap = null;
+      return new ScaleResult(result.getBytes(), result.getWidth(), result.getHeight());
+    }
+  }
 
-            Log.i(TAG, "Halving dimensions and retrying.");
-            return createScaledBytes(context, model, maxImageWidth / 2, maxImageHeight / 2, maxImageSize, format, sizeAttempt + 1, totalAttempts);
-          } else {
-            throw new BitmapDecodingException("Unable to scale image below " + bytes.length + " bytes.");
-          }
-        }
+  /**
+   * A decoded bitmap for {@link ImageCompressionPlanner}, smaller sizes are scaled down from it
+   * rather than decoded again. The bitmaps are recycled on {@link #close()}.
+   */
+  static final class BitmapImage implements ImageCompressionPlanner.Image, AutoCloseable {
 
-        if (bytes.length <= 0) {
-          throw new BitmapDecodingException("Decoding failed. Bitmap has a length of " + bytes.length + " bytes.");
-        }
+    private final Bitmap         bitmap;
+    private final CompressFormat format;
 
-        Log.i(TAG, String.format(Locale.US, "createScaledBytes(%s) -> quality %d, %d attempt(s) over %d sizes.", model.getClass().getName(), quality, totalAttempts, sizeAttempt));
+    private @Nullable Bitmap scaled;
 
-        return new ScaleResult(bytes, scaledBitmap.getWidth(), scaledBitmap.getHeight());
-      } finally {
-        if (scaledBitmap != null) scaledBitmap.recycle();
+    BitmapImage(@NonNull Bitmap bitmap, @NonNull CompressFormat format) {
+      this.bitmap = bitmap;
+      this.format = format;
+    }
+
+    @Override
+    public int getWidth() {
+      return bitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+      return bitmap.getHeight();
+    }
+
+    @Override
+    public @NonNull byte[] compress(int width, int height, int quality) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      getScaled(width, height).compress(format, quality, baos);
+      return baos.toByteArray();
+    }
+
+    private @NonNull Bitmap getScaled(int width, int height) {
+      if (width == bitmap.getWidth() && height == bitmap.getHeight()) {
+        return bitmap;
       }
-    } catch (InterruptedException | ExecutionException e) {
-      throw new BitmapDecodingException(e);
+
+      if (scaled == null || scaled.getWidth() != width || scaled.getHeight() != height) {
+        if (scaled != null) scaled.recycle();
+        scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+      }
+
+      return scaled;
+    }
+
+    @Override
+    public void close() {
+      if (scaled != null && scaled != bitmap) scaled.recycle();
+      bitmap.recycle();
     }
   }
 
@@ -0,0 +1,226 @@
+package org.thoughtcrime.securesms.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.Locale;
+
+/**
+ * Picks the scale and quality an image is compressed at to fit a size limit, without searching
+ * through full size compressions.
+ *
+ * The size of the image at each quality is estimated from compressions of a small downsampled
+ * probe, scaled by the number of pixels. Each full compression that still turns out too large
+ * corrects the estimates by how far off they were, and at most {@link #MAX_COMPRESSIONS} full
+ * compressions are made per image, the last of which is always the smallest scale at the lowest
+ * quality. Smaller scales are only ever derived from the image that was
+ * decoded once, and only picked once a full size compression confirmed that the image doesn't fit,
+ * as probes tend to overestimate the size of detailed images.
+ */
+final class ImageCompressionPlanner {
+
+  static final int MAX_COMPRESSION_QUALITY = 95;
+  static final int MIN_COMPRESSION_QUALITY = 45;
+  static final int MAX_IMAGE_HALF_SCALES   = 3;
+  static final int MAX_COMPRESSIONS        = 4;
+
+  static final int[] PROBE_QUALITIES = { 95, 85, 75, 65, 55, 45 };
+
+  private static final int PROBE_PIXELS = 512 * 384;
+
+  // Aim a little under the limit, so that a slightly optimistic estimate still fits
+  private static final double TARGET_FILL = 0.95;
+
+  /**
+   * An image that was decoded once and can be compressed at any size up to its own.
+   */
+  interface Image {
+    int getWidth();
+
+    int getHeight();
+
+    @NonNull byte[] compress(int width, int height, int quality) throws BitmapDecodingException;
+  }
+
+  private ImageCompressionPlanner() {}
+
+  @WorkerThread
+  static @NonNull Result compress(@NonNull Image image, int maxSize) throws BitmapDecodingException {
+    long start = System.nanoTime();
+
+    int width  = image.getWidth();
+    int height = image.getHeight();
+
+    if (width <= 0 || height <= 0) {
+      throw new BitmapDecodingException("Invalid image dimensions " + width + "x" + height);
+    }
+
+    double probeScale  = Math.min(1, Math.sqrt((double) PROBE_PIXELS / ((long) width * height)));
+    int    probeWidth  = Math.max(1, (int) Math.round(width * probeScale));
+    int    probeHeight = Math.max(1, (int) Math.round(height * probeScale));
+
+    // Compressed bytes per pixel of the probe at each of the probe qualities
+    double[] bytesPerPixel = new double[PROBE_QUALITIES.length];
+
+    for (int i = 0; i < PROBE_QUALITIES.length; i++) {
+      bytesPerPixel[i] = image.compress(probeWidth, probeHeight, PROBE_QUALITIES[i]).length / ((double) probeWidth * probeHeight);
+    }
+
+    double correction   = 1;
+    int    compressions = 0;
+    byte[] bytes        = null;
+
+    while (compressions < MAX_COMPRESSIONS) {
+      int  maxHalfScales = compressions == 0 ? 0 : MAX_IMAGE_HALF_SCALES;
+      Step step;
+
+      // The last compression allowed is the smallest one, before giving up on the image
+      if (compressions == MAX_COMPRESSIONS - 1) {
+        step = floorStep(width, height);
+      } else {
+        step = chooseStep(width, height, maxSize, bytesPerPixel, correction, maxHalfScales);
+      }
+
+      bytes = image.compress(step.width, step.height, step.quality);
+      compressions++;
+
+      if (bytes.length <= 0) {
+        throw new BitmapDecodingException("Decoding failed. Bitmap has a length of " + bytes.length + " bytes.");
+      }
+
+      if (bytes.length <= maxSize) {
+        return new Result(bytes, step.width, step.height, step.quality, compressions, PROBE_QUALITIES.length, System.nanoTime() - start);
+      }
+
+      if (step.halfScales == MAX_IMAGE_HALF_SCALES && step.quality == MIN_COMPRESSION_QUALITY) {
+        break;
+      }
+
+      // The corrected estimate of this step is now its actual size, so it won't be picked again
+      correction *= bytes.length / step.estimate;
+    }
+
+    throw new BitmapDecodingException("Unable to scale image below " + bytes.length + " bytes.");
+  }
+
+  /**
+   * @return The largest scale down to {@code maxHalfScales} halvings, and the highest quality at
+   *         it, that is estimated to fit. The smallest of those scales at the lowest quality if none is.
+   */
+  private static @NonNull Step chooseStep(int width, int height, int maxSize, double[] bytesPerPixel, double correction, int maxHalfScales) {
+    double target = maxSize * TARGET_FILL;
+
+    for (int halfScales = 0; halfScales <= maxHalfScales; halfScales++) {
+      int    scaledWidth  = Math.max(1, width >> halfScales);
+      int    scaledHeight = Math.max(1, height >> halfScales);
+      double pixels       = (double) scaledWidth * scaledHeight * correction;
+
+      for (int quality = MAX_COMPRESSION_QUALITY; quality >= MIN_COMPRESSION_QUALITY; quality--) {
+        double estimate = estimateBytesPerPixel(bytesPerPixel, quality) * pixels;
+
+        if (estimate <= target || (halfScales == maxHalfScales && quality == MIN_COMPRESSION_QUALITY)) {
+          return new Step(halfScales, scaledWidth, scaledHeight, quality, estimate);
+        }
+      }
+    }
+
+    throw new AssertionError();
+  }
+
+  /**
+   * @return The smallest scale at the lowest quality, the last step before an image is rejected.
+   */
+  private static @NonNull Step floorStep(int width, int height) {
+    int scaledWidth  = Math.max(1, width >> MAX_IMAGE_HALF_SCALES);
+    int scaledHeight = Math.max(1, height >> MAX_IMAGE_HALF_SCALES);
+
+    return new Step(MAX_IMAGE_HALF_SCALES, scaledWidth, scaledHeight, MIN_COMPRESSION_QUALITY, 0);
+  }
+
+  /**
+   * Linearly interpolates between the probe qualities around {@code quality}.
+   */
+  static double estimateBytesPerPixel(double[] bytesPerPixel, int quality) {
+    for (int i = 1; i < PROBE_QUALITIES.length; i++) {
+      int higher = PROBE_QUALITIES[i - 1];
+      int lower  = PROBE_QUALITIES[i];
+
+      if (quality >= lower) {
+        double position = (double) (Math.min(quality, higher) - lower) / (higher - lower);
+        return bytesPerPixel[i] + position * (bytesPerPixel[i - 1] - bytesPerPixel[i]);
+      }
+    }
+
+    return bytesPerPixel[PROBE_QUALITIES.length - 1];
+  }
+
+  private static final class Step {
+    private final int    halfScales;
+    private final int    width;
+    private final int    height;
+    private final int    quality;
+    private final double estimate;
+
+    private Step(int halfScales, int width, int height, int quality, double estimate) {
+      this.halfScales = halfScales;
+      this.width      = width;
+      this.height     = height;
+      this.quality    = quality;
+      this.estimate   = estimate;
+    }
+  }
+
+  static final class Result {
+    private final byte[] bytes;
+    private final int    width;
+    private final int    height;
+    private final int    quality;
+    private final int    compressions;
+    private final int    probeCompressions;
+    private final long   elapsedNanos;
+
+    private Result(byte[] bytes, int width, int height, int quality, int compressions, int probeCompressions, long elapsedNanos) {
+      this.bytes             = bytes;
+      this.width             = width;
+      this.height            = height;
+      this.quality           = quality;
+      this.compressions      = compressions;
+      this.probeCompressions = probeCompressions;
+      this.elapsedNanos      = elapsedNanos;
+    }
+
+    @NonNull byte[] getBytes() {
+      return bytes;
+    }
+
+    int getWidth() {
+      return width;
+    }
+
+    int getHeight() {
+      return height;
+    }
+
+    int getQuality() {
+      return quality;
+    }
+
+    int getCompressions() {
+      return compressions;
+    }
+
+    int getProbeCompressions() {
+      return probeCompressions;
+    }
+
+    long getElapsedMillis() {
+      return elapsedNanos / 1_000_000;
+    }
+
+    @Override
+    public @NonNull String toString() {
+      return String.format(Locale.US, "%dx%d at quality %d, %d bytes, %d compression(s) and %d probe(s) in %d ms",
+                           width, height, quality, bytes.length, compressions, probeCompressions, getElapsedMillis());
+    }
+  }
+}
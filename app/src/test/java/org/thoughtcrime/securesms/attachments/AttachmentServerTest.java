@@ -0,0 +1,50 @@
+package org.thoughtcrime.securesms.attachments;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AttachmentServerTest {
+
+  @Test
+  public void parseRange_bounded() {
+    assertRange(100, 199, AttachmentServer.parseRange("bytes=100-199", 1000));
+  }
+
+  @Test
+  public void parseRange_openEnded() {
+    assertRange(900, 999, AttachmentServer.parseRange("bytes=900-", 1000));
+  }
+
+  @Test
+  public void parseRange_endIsClampedToSize() {
+    assertRange(990, 999, AttachmentServer.parseRange("bytes=990-5000", 1000));
+  }
+
+  @Test
+  public void parseRange_suffix() {
+    assertRange(990, 999, AttachmentServer.parseRange("bytes=-10", 1000));
+    assertRange(0, 999, AttachmentServer.parseRange("bytes=-5000", 1000));
+  }
+
+  @Test
+  public void parseRange_unsatisfiable() {
+    assertEquals(1000, AttachmentServer.parseRange("bytes=1000-", 1000).start);
+    assertEquals(1000, AttachmentServer.parseRange("bytes=-0", 1000).start);
+  }
+
+  @Test
+  public void parseRange_unsupportedServesWholeBody() {
+    assertNull(AttachmentServer.parseRange(null, 1000));
+    assertNull(AttachmentServer.parseRange("items=0-10", 1000));
+    assertNull(AttachmentServer.parseRange("bytes=0-10,20-30", 1000));
+    assertNull(AttachmentServer.parseRange("bytes=20-10", 1000));
+    assertNull(AttachmentServer.parseRange("bytes=abc-", 1000));
+  }
+
+  private static void assertRange(long start, long end, AttachmentServer.ByteRange range) {
+    assertEquals(start, range.start);
+    assertEquals(end, range.end);
+  }
+}
@@ -0,0 +1,78 @@
+package org.thoughtcrime.securesms.components.emoji.parsing
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.mock
+import org.thoughtcrime.securesms.emoji.EmojiPage
+
+class EmojiParserTest {
+
+    private val heart = "\u2764"
+    private val variationSelector = "\uFE0F"
+    private val heartOnFire = "\u2764\uFE0F\u200D\uD83D\uDD25"
+    private val thumbsUp = "\uD83D\uDC4D"
+    private val mediumSkinTone = "\uD83C\uDFFD"
+
+    private val tree = EmojiTree().apply {
+        listOf("$heart$variationSelector", heartOnFire, thumbsUp).forEachIndexed { index, emoji ->
+            add(emoji, EmojiDrawInfo(mock<EmojiPage>(), index, emoji, null, null))
+        }
+    }
+
+    private val parser = EmojiParser(tree)
+
+    private fun ranges(text: String) = parser.findCandidates(text).map { it.startIndex until it.endIndex }
+
+    @Test
+    fun plainTextHasNoCandidates() {
+        val candidates = parser.findCandidates("Just some text, nothing to see here")
+
+        assertEquals(0, candidates.size())
+        assertFalse(candidates.allEmojis)
+    }
+
+    @Test
+    fun emptyTextIsNotAllEmojis() {
+        assertFalse(parser.findCandidates("").allEmojis)
+    }
+
+    @Test
+    fun variationSelectorIsOptional() {
+        assertEquals(listOf(0 until 1, 3 until 5), ranges("$heart, $heart$variationSelector"))
+        assertSame(tree.getEmoji("$heart$variationSelector", 0, 2), parser.findCandidates(heart).list.single().drawInfo)
+    }
+
+    @Test
+    fun longestSequenceWins() {
+        assertEquals(listOf(2 until 7), ranges("a $heartOnFire b"))
+    }
+
+    @Test
+    fun skinToneIsPartOfTheCandidate() {
+        assertEquals(listOf(0 until 4), ranges("$thumbsUp$mediumSkinTone"))
+    }
+
+    @Test
+    fun onlyEmojisAreFlagged() {
+        assertTrue(parser.findCandidates("$thumbsUp$heart$heartOnFire").allEmojis)
+        assertFalse(parser.findCandidates("$thumbsUp!").allEmojis)
+    }
+
+    @Test
+    fun findEmojiEndMatchesIsEmoji() {
+        val text = "x$heartOnFire$heart$variationSelector$thumbsUp y"
+
+        for (start in text.indices) {
+            var expected = -1
+            for (end in start + 1..text.length) {
+                val status = tree.isEmoji(text, start, end)
+                if (status.exactMatch()) expected = end
+                if (status.impossibleMatch()) break
+            }
+            assertEquals("Start $start", expected, tree.findEmojiEnd(text, start))
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.thoughtcrime.securesms.dependencies
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ConfigDumpWriterTest {
+
+    private class Write(val variant: String, val publicKey: String, val data: ByteArray, val timestamp: Long)
+
+    private val executor = Executors.newSingleThreadScheduledExecutor()
+    private val writes = mutableListOf<Write>()
+    private var dumps = 0
+
+    private fun writer(maxStalenessMs: Long = TimeUnit.MINUTES.toMillis(1), onWrite: () -> Unit = {}) =
+        ConfigDumpWriter(executor, maxStalenessMs) { variant, publicKey, data, timestamp ->
+            synchronized(writes) { writes += Write(variant, publicKey, data, timestamp) }
+            onWrite()
+        }
+
+    private fun dumper(size: Int) = ConfigDumpWriter.Dumper {
+        dumps++
+        "publicKey" to ByteArray(size)
+    }
+
+    @After
+    fun tearDown() {
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun burstOfChangesIsWrittenOnce() {
+        val writer = writer()
+
+        repeat(50) { writer.markDirty("CONTACTS", it.toLong(), dumper(1000)) }
+        writer.flush()
+
+        assertEquals(1, dumps)
+        assertEquals(1, writes.size)
+        assertEquals(49L, writes.single().timestamp)
+        assertEquals(ConfigDumpWriter.Stats(persistRequests = 50, dumps = 1, writes = 1, bytesWritten = 1000), writer.stats)
+    }
+
+    @Test
+    fun eachVariantIsWrittenSeparately() {
+        val writer = writer()
+
+        writer.markDirty("CONTACTS", 1, dumper(10))
+        writer.markDirty("USER_PROFILE", 2, dumper(20))
+        writer.markDirty("CONTACTS", 3, dumper(30))
+        writer.flush()
+
+        assertEquals(mapOf("CONTACTS" to 3L, "USER_PROFILE" to 2L), writes.associate { it.variant to it.timestamp })
+        assertEquals(50L, writer.stats.bytesWritten)
+    }
+
+    @Test
+    fun flushWithoutChangesWritesNothing() {
+        val writer = writer()
+
+        writer.markDirty("CONTACTS", 1, dumper(10))
+        writer.flush()
+        writer.flush()
+
+        assertEquals(1, writes.size)
+    }
+
+    @Test
+    fun pendingTimestampIsKnownUntilWritten() {
+        val writer = writer()
+
+        writer.markDirty("CONTACTS", 5, dumper(10))
+        assertEquals(5L, writer.pendingTimestamp("CONTACTS"))
+
+        writer.flush()
+        assertNull(writer.pendingTimestamp("CONTACTS"))
+    }
+
+    @Test
+    fun clearedChangesAreNotWritten() {
+        val writer = writer()
+
+        writer.markDirty("CONTACTS", 1, dumper(10))
+        writer.clear()
+        writer.flush()
+
+        assertTrue(writes.isEmpty())
+    }
+
+    @Test
+    fun changesAreWrittenWithinTheStalenessBound() {
+        val written = CountDownLatch(1)
+        val writer = writer(maxStalenessMs = 50) { written.countDown() }
+
+        writer.markDirty("CONTACTS", 1, dumper(10))
+        writer.markDirty("CONTACTS", 2, dumper(10))
+
+        assertTrue(written.await(5, TimeUnit.SECONDS))
+        assertEquals(2L, writes.single().timestamp)
+    }
+
+    @Test
+    fun failedWriteDoesNotBlockOtherVariants() {
+        val writer = ConfigDumpWriter(executor, TimeUnit.MINUTES.toMillis(1)) { variant, publicKey, data, timestamp ->
+            if (variant == "CONTACTS") throw IllegalStateException()
+            writes += Write(variant, publicKey, data, timestamp)
+        }
+
+        writer.markDirty("CONTACTS", 1, dumper(10))
+        writer.markDirty("USER_PROFILE", 1, dumper(20))
+        writer.flush()
+
+        assertEquals(listOf("USER_PROFILE"), writes.map { it.variant })
+        assertEquals(ConfigDumpWriter.Stats(persistRequests = 2, dumps = 2, writes = 1, bytesWritten = 20), writer.stats)
+    }
+}
@@ -0,0 +1,185 @@
+package org.thoughtcrime.securesms.linkpreview;
+
+import android.app.Application;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewUtil.OpenGraph;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public class HtmlHeadParserTest {
+
+  private static final LinkPreviewUtil.HtmlDecoder DECODER = text -> text.replace("&amp;", "&");
+
+  @Rule
+  public final MockWebServer server = new MockWebServer();
+
+  private final OkHttpClient client = new OkHttpClient();
+
+  private long bytesRead;
+
+  @Test
+  public void parse_openGraphTitleAndFavicon() {
+    OpenGraph openGraph = parse("<!DOCTYPE html><HTML><Head>" +
+                                "<title>Page &amp; title</title>" +
+                                "<meta property=\"og:title\" content=\"Fish &amp; chips\">" +
+                                "<meta content='https://example.com/image.png' property='og:image' />" +
+                                "<link rel=icon href=/favicon.png>" +
+                                "</head></html>");
+
+    assertEquals("Fish & chips", openGraph.getTitle().get());
+    assertEquals("https://example.com/image.png", openGraph.getImageUrl().get());
+  }
+
+  @Test
+  public void parse_fallsBackToTitleAndFavicon() {
+    OpenGraph openGraph = parse("<head><title>\n  Page &amp; title\n</title><link rel=\"shortcut icon\" href=\"/favicon.png\"></head>");
+
+    assertEquals("\n  Page & title\n", openGraph.getTitle().get());
+    assertEquals("/favicon.png", openGraph.getImageUrl().get());
+  }
+
+  @Test
+  public void parse_skipsCommentsAndScripts() {
+    OpenGraph openGraph = parse("<head>" +
+                                "<!-- <meta property=\"og:title\" content=\"Comment\"> -->" +
+                                "<script>document.write('<meta property=\"og:title\" content=\"Script\"></head>');</script>" +
+                                "<meta property=\"og:title\" content=\"Real\">" +
+                                "</head>");
+
+    assertEquals("Real", openGraph.getTitle().get());
+  }
+
+  @Test
+  public void parse_stopsAtEndOfHead() {
+    OpenGraph openGraph = parse("<head><title>Head</title></head><body><meta property=\"og:title\" content=\"Body\"></body>");
+
+    assertEquals("Head", openGraph.getTitle().get());
+  }
+
+  @Test
+  public void parse_stopsAtBodyWithoutEndOfHead() {
+    OpenGraph openGraph = parse("<title>Head</title><body><meta property=\"og:title\" content=\"Body\">");
+
+    assertEquals("Head", openGraph.getTitle().get());
+  }
+
+  @Test(timeout = 10_000)
+  public void fetch_unclosedTitleOnHugePage_readsAtMostTheHeadLimit() throws IOException {
+    server.enqueue(new MockResponse().setBody("<html><head><title>" + repeat("<title a", 2_000_000)));
+
+    OpenGraph openGraph = fetch();
+
+    assertEquals("", openGraph.getTitle().get());
+    assertTrue(bytesRead <= LinkPreviewUtil.MAX_HEAD_SIZE);
+  }
+
+  @Test(timeout = 10_000)
+  public void fetch_tagsPastTheHeadLimit_areIgnored() throws IOException {
+    server.enqueue(new MockResponse().setBody("<html><head>" +
+                                              repeat("<meta name=\"filler\" content=\"filler\">", LinkPreviewUtil.MAX_HEAD_SIZE / 30) +
+                                              "<meta property=\"og:title\" content=\"Too far\"></head>"));
+
+    assertEquals("", fetch().getTitle().get());
+  }
+
+  @Test(timeout = 10_000)
+  public void fetch_manyIconLinks_parsesInLinearTime() throws IOException {
+    server.enqueue(new MockResponse().setBody("<html><head>" +
+                                              repeat("<link rel=\"icon icon icon\">", 5_000) +
+                                              "<link rel=\"icon\" href=\"https://example.com/favicon.png\">" +
+                                              "</head><body>" + repeat("icon ", 1_000_000) + "</body></html>"));
+
+    assertEquals("https://example.com/favicon.png", fetch().getImageUrl().get());
+  }
+
+  @Test(timeout = 10_000)
+  public void fetch_unterminatedAttribute_parsesInLinearTime() throws IOException {
+    server.enqueue(new MockResponse().setBody("<html><head><title>Title</title><link rel=\"" + repeat("icon ", 1_000_000)));
+
+    OpenGraph openGraph = fetch();
+
+    assertEquals("Title", openGraph.getTitle().get());
+    assertEquals("", openGraph.getImageUrl().get());
+  }
+
+  @Test
+  public void fetch_usesCharsetOfContentType() throws IOException {
+    server.enqueue(new MockResponse().setHeader("Content-Type", "text/html; charset=ISO-8859-1")
+                                     .setBody(new Buffer().writeString("<head><title>Café</title></head>", StandardCharsets.ISO_8859_1)));
+
+    assertEquals("Café", fetch().getTitle().get());
+  }
+
+  private static OpenGraph parse(String html) {
+    return LinkPreviewUtil.parseOpenGraphFields(html, DECODER);
+  }
+
+  private OpenGraph fetch() throws IOException {
+    try (Response response = client.newCall(new Request.Builder().url(server.url("/")).build()).execute()) {
+      ResponseBody body        = response.body();
+      MediaType    contentType = body.contentType();
+      Charset      charset     = contentType != null ? contentType.charset(StandardCharsets.UTF_8) : StandardCharsets.UTF_8;
+
+      CountingInputStream in = new CountingInputStream(body.byteStream());
+
+      try {
+        return LinkPreviewUtil.parseOpenGraphFields(in, charset, DECODER);
+      } finally {
+        bytesRead = in.count;
+      }
+    }
+  }
+
+  private static String repeat(String text, int count) {
+    StringBuilder builder = new StringBuilder(text.length() * count);
+    for (int i = 0; i < count; i++) {
+      builder.append(text);
+    }
+    return builder.toString();
+  }
+
+  private static final class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result = super.read();
+      if (result != -1) count++;
+      return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int result = super.read(b, off, len);
+      if (result > 0) count += result;
+      return result;
+    }
+  }
+}
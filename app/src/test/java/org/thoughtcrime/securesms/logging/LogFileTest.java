@@ -0,0 +1,161 @@
+package org.thoughtcrime.securesms.logging;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.session.libsession.utilities.Conversions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class LogFileTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] secret;
+  private File   file;
+
+  @Before
+  public void setUp() throws IOException {
+    secret = new byte[32];
+    new SecureRandom().nextBytes(secret);
+    file = folder.newFile("log-test");
+  }
+
+  @Test
+  public void framed_entries_round_trip() throws IOException {
+    List<String> entries = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      entries.add("2023-01-01 00:00:00.000 UTC D Tag: line " + i);
+    }
+
+    LogFile.Writer writer = new LogFile.Writer(secret, file, 1024);
+    for (String entry : entries) {
+      writer.writeEntry(entry);
+    }
+    writer.flush();
+    writer.close();
+
+    assertEquals(entries, readAll());
+  }
+
+  @Test
+  public void pending_entries_are_not_written_until_flushed() throws IOException {
+    LogFile.Writer writer = new LogFile.Writer(secret, file);
+    writer.writeEntry("buffered");
+
+    assertEquals(0, file.length());
+
+    writer.flush();
+    writer.close();
+
+    assertEquals(1, readAll().size());
+  }
+
+  @Test
+  public void legacy_entries_are_still_readable_alongside_frames() throws Exception {
+    writeLegacyEntry("legacy 1");
+    writeLegacyEntry("legacy 2");
+
+    LogFile.Writer writer = new LogFile.Writer(secret, file);
+    writer.writeEntry("framed 1");
+    writer.writeEntry("framed 2");
+    writer.flush();
+    writer.close();
+
+    List<String> expected = new ArrayList<>();
+    expected.add("legacy 1");
+    expected.add("legacy 2");
+    expected.add("framed 1");
+    expected.add("framed 2");
+
+    assertEquals(expected, readAll());
+  }
+
+  @Test
+  public void truncated_record_ends_the_log() throws IOException {
+    LogFile.Writer writer = new LogFile.Writer(secret, file);
+    writer.writeEntry("complete");
+    writer.flush();
+    writer.close();
+
+    try (FileOutputStream out = new FileOutputStream(file, true)) {
+      out.write(new byte[10]);
+    }
+
+    LogFile.Reader reader = new LogFile.Reader(secret, file);
+    assertEquals("complete", reader.readEntry());
+    assertNull(reader.readEntry());
+  }
+
+  @Ignore("Benchmark, run manually")
+  @Test
+  public void benchmark_lines_per_second() throws IOException {
+    int    lines = 200_000;
+    String entry = "2023-01-01 00:00:00.000 UTC D JobQueue: Dispatching job 1234567890 to the rx dispatcher";
+
+    File perLineFile = folder.newFile("log-per-line");
+    LogFile.Writer perLine = new LogFile.Writer(secret, perLineFile);
+    long start = System.nanoTime();
+    for (int i = 0; i < lines; i++) {
+      perLine.writeEntry(entry);
+      perLine.flush();
+    }
+    perLine.close();
+    long perLineNanos = System.nanoTime() - start;
+
+    File framedFile = folder.newFile("log-framed");
+    LogFile.Writer framed = new LogFile.Writer(secret, framedFile);
+    start = System.nanoTime();
+    for (int i = 0; i < lines; i++) {
+      framed.writeEntry(entry);
+    }
+    framed.flush();
+    framed.close();
+    long framedNanos = System.nanoTime() - start;
+
+    System.out.println("Per-line encryption: " + (lines * 1_000_000_000L / perLineNanos) + " lines/sec, " + perLineFile.length() + " bytes");
+    System.out.println("Framed encryption:   " + (lines * 1_000_000_000L / framedNanos) + " lines/sec, " + framedFile.length() + " bytes");
+  }
+
+  private List<String> readAll() throws IOException {
+    List<String>   result = new ArrayList<>();
+    LogFile.Reader reader = new LogFile.Reader(secret, file);
+
+    String entry;
+    while ((entry = reader.readEntry()) != null) {
+      result.add(entry);
+    }
+
+    return result;
+  }
+
+  private void writeLegacyEntry(String entry) throws Exception {
+    byte[] iv = new byte[16];
+    new SecureRandom().nextBytes(iv);
+
+    Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(secret, "AES"), new IvParameterSpec(iv));
+    byte[] ciphertext = cipher.doFinal(entry.getBytes());
+
+    try (FileOutputStream out = new FileOutputStream(file, true)) {
+      out.write(iv);
+      out.write(Conversions.intToByteArray(ciphertext.length));
+      out.write(ciphertext);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package org.thoughtcrime.securesms.logging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class LogRingBufferTest {
+
+  @Test
+  public void drains_entries_in_order() {
+    LogRingBuffer<Integer> buffer = new LogRingBuffer<>(4);
+    buffer.offer(1);
+    buffer.offer(2);
+    buffer.offer(3);
+
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(0, buffer.drainTo(drained));
+    assertEquals(Arrays.asList(1, 2, 3), drained);
+  }
+
+  @Test
+  public void full_buffer_drops_oldest_entries() {
+    LogRingBuffer<Integer> buffer = new LogRingBuffer<>(3);
+    for (int i = 1; i <= 8; i++) {
+      buffer.offer(i);
+    }
+
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(5, buffer.drainTo(drained));
+    assertEquals(Arrays.asList(6, 7, 8), drained);
+  }
+
+  @Test
+  public void drain_resets_buffer() {
+    LogRingBuffer<Integer> buffer = new LogRingBuffer<>(2);
+    buffer.offer(1);
+    buffer.offer(2);
+    buffer.offer(3);
+    buffer.drainTo(new ArrayList<>());
+
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(0, buffer.drainTo(drained));
+    assertTrue(drained.isEmpty());
+
+    buffer.offer(4);
+    buffer.offer(5);
+    assertEquals(0, buffer.drainTo(drained));
+    assertEquals(Arrays.asList(4, 5), drained);
+  }
+}
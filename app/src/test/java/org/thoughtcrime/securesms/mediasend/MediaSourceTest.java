@@ -0,0 +1,264 @@
+package org.thoughtcrime.securesms.mediasend;
+
+import android.app.Application;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.MediaStore.Images;
+import android.provider.MediaStore.Video;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public class MediaSourceTest {
+
+  private static final int IMAGE_COUNT  = 30_000;
+  private static final int VIDEO_COUNT  = 20_000;
+  private static final int BUCKET_COUNT = 5;
+  private static final int PAGE_SIZE    = 100;
+
+  private FakeMediaProvider provider;
+  private MediaSource       source;
+
+  @Before
+  public void setUp() {
+    provider = Robolectric.buildContentProvider(FakeMediaProvider.class).create("media").get();
+  }
+
+  @After
+  public void tearDown() {
+    if (source != null) source.close();
+  }
+
+  @Test
+  public void firstPage_isNewestOfImagesAndVideos() {
+    List<Row> expected = provider.query(null, false);
+    expected.addAll(provider.query(null, true));
+    Collections.sort(expected, Row.NEWEST_FIRST);
+
+    List<Media> page = open(Media.ALL_MEDIA_BUCKET_ID).loadPage(PAGE_SIZE);
+
+    assertEquals(PAGE_SIZE, page.size());
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      assertEquals(expected.get(i).uri(), page.get(i).getUri());
+      assertEquals(expected.get(i).dateTaken, page.get(i).getDate());
+    }
+  }
+
+  @Test
+  public void pages_coverAllMediaInOrder() {
+    MediaSource source = open(Media.ALL_MEDIA_BUCKET_ID);
+    List<Media> media  = loadAll(source);
+
+    assertEquals(IMAGE_COUNT + VIDEO_COUNT, media.size());
+    for (int i = 1; i < media.size(); i++) {
+      assertTrue(media.get(i - 1).getDate() >= media.get(i).getDate());
+    }
+    assertTrue(source.isExhausted());
+    assertTrue(source.loadPage(PAGE_SIZE).isEmpty());
+    assertEquals(IMAGE_COUNT + VIDEO_COUNT, source.getItemsRead());
+  }
+
+  @Test
+  public void bucket_onlyHasItsMedia() {
+    String      bucketId = FakeMediaProvider.bucketId(2);
+    List<Media> media    = loadAll(open(bucketId));
+
+    assertEquals(provider.query(bucketId, false).size() + provider.query(bucketId, true).size(), media.size());
+    for (Media item : media) {
+      assertEquals(bucketId, provider.find(item.getUri()).bucketId);
+    }
+  }
+
+  @Test
+  public void rotatedImage_hasSwappedDimensions() {
+    for (Media item : loadAll(open(Media.ALL_MEDIA_BUCKET_ID))) {
+      Row row = provider.find(item.getUri());
+
+      if (row.orientation == 90) {
+        assertEquals(row.height, item.getWidth());
+        assertEquals(row.width, item.getHeight());
+      } else {
+        assertEquals(row.width, item.getWidth());
+        assertEquals(row.height, item.getHeight());
+      }
+    }
+  }
+
+  @Test
+  public void timeToFirstPage_isRecordedOnce() {
+    MediaSource source = open(Media.ALL_MEDIA_BUCKET_ID);
+    assertEquals(-1, source.getTimeToFirstPageMs());
+
+    source.loadPage(PAGE_SIZE);
+    long timeToFirstPage = source.getTimeToFirstPageMs();
+    source.loadPage(PAGE_SIZE);
+
+    assertTrue(timeToFirstPage >= 0);
+    assertEquals(timeToFirstPage, source.getTimeToFirstPageMs());
+  }
+
+  private MediaSource open(@NonNull String bucketId) {
+    if (source != null) source.close();
+    source = new MediaSource(ApplicationProvider.getApplicationContext().getContentResolver(), bucketId);
+    return source;
+  }
+
+  private static List<Media> loadAll(@NonNull MediaSource source) {
+    List<Media> media = new ArrayList<>();
+    List<Media> page;
+
+    while (!(page = source.loadPage(PAGE_SIZE)).isEmpty()) {
+      media.addAll(page);
+    }
+
+    return media;
+  }
+
+  private static final class Row {
+    static final Comparator<Row> NEWEST_FIRST = (first, second) -> {
+      // Images come before videos taken at the same time, as in MediaSource
+      int byDate = Long.compare(second.dateTaken, first.dateTaken);
+      if (byDate != 0) return byDate;
+      return Boolean.compare(first.video, second.video);
+    };
+
+    final long    id;
+    final boolean video;
+    final String  bucketId;
+    final long    dateTaken;
+    final int     orientation;
+    final int     width;
+    final int     height;
+
+    Row(long id, boolean video, String bucketId, long dateTaken, int orientation, int width, int height) {
+      this.id          = id;
+      this.video       = video;
+      this.bucketId    = bucketId;
+      this.dateTaken   = dateTaken;
+      this.orientation = orientation;
+      this.width       = width;
+      this.height      = height;
+    }
+
+    Uri uri() {
+      return Uri.withAppendedPath(video ? Video.Media.EXTERNAL_CONTENT_URI : Images.Media.EXTERNAL_CONTENT_URI, String.valueOf(id));
+    }
+  }
+
+  /**
+   * Holds a gallery of 50k images and videos spread over a few buckets, and answers the queries
+   * {@link MediaSource} makes for them.
+   */
+  public static final class FakeMediaProvider extends ContentProvider {
+
+    private final List<Row> rows = new ArrayList<>(IMAGE_COUNT + VIDEO_COUNT);
+
+    static String bucketId(int bucket) {
+      return "bucket-" + bucket;
+    }
+
+    @Override
+    public boolean onCreate() {
+      Random random = new Random(42);
+
+      for (int i = 0; i < IMAGE_COUNT + VIDEO_COUNT; i++) {
+        boolean video = i >= IMAGE_COUNT;
+        rows.add(new Row(i,
+                         video,
+                         bucketId(random.nextInt(BUCKET_COUNT)),
+                         random.nextInt(1_000_000),
+                         video || random.nextBoolean() ? 0 : 90,
+                         640 + random.nextInt(640),
+                         480 + random.nextInt(480)));
+      }
+
+      return true;
+    }
+
+    List<Row> query(@Nullable String bucketId, boolean video) {
+      List<Row> result = new ArrayList<>();
+
+      for (Row row : rows) {
+        if (row.video == video && (bucketId == null || bucketId.equals(row.bucketId))) {
+          result.add(row);
+        }
+      }
+
+      Collections.sort(result, Row.NEWEST_FIRST);
+      return result;
+    }
+
+    Row find(@NonNull Uri uri) {
+      return rows.get(Integer.parseInt(uri.getLastPathSegment()));
+    }
+
+    @Override
+    public @Nullable Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+      boolean      video  = uri.getPathSegments().contains("video");
+      String       bucket = selectionArgs != null ? selectionArgs[0] : null;
+      MatrixCursor cursor = new MatrixCursor(projection);
+
+      for (Row row : query(bucket, video)) {
+        MatrixCursor.RowBuilder builder = cursor.newRow();
+
+        for (String column : projection) {
+          switch (column) {
+            case Images.Media._ID:         builder.add(row.id);                                 break;
+            case Images.Media.MIME_TYPE:   builder.add(row.video ? "video/mp4" : "image/jpeg"); break;
+            case Images.Media.DATE_TAKEN:  builder.add(row.dateTaken);                          break;
+            case Images.Media.ORIENTATION: builder.add(row.orientation);                        break;
+            case Images.Media.WIDTH:       builder.add(row.width);                              break;
+            case Images.Media.HEIGHT:      builder.add(row.height);                             break;
+            case Images.Media.SIZE:        builder.add(100_000L);                               break;
+            default:                       builder.add(null);
+          }
+        }
+      }
+
+      return cursor;
+    }
+
+    @Override
+    public @Nullable String getType(@NonNull Uri uri) {
+      return null;
+    }
+
+    @Override
+    public @Nullable Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+      return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+      return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+      return 0;
+    }
+  }
+}
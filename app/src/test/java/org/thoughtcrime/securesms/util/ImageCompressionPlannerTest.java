@@ -0,0 +1,134 @@
+package org.thoughtcrime.securesms.util;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ImageCompressionPlannerTest {
+
+  private static final int MAX_SIZE = 1024 * 1024;
+
+  @Test
+  public void compress_smallImage_keepsMaxQualityWithOneCompression() throws BitmapDecodingException {
+    FakeImage                      image  = new FakeImage(1600, 1200, 0.2, 0.1);
+    ImageCompressionPlanner.Result result = ImageCompressionPlanner.compress(image, MAX_SIZE);
+
+    assertEquals(ImageCompressionPlanner.MAX_COMPRESSION_QUALITY, result.getQuality());
+    assertEquals(1600, result.getWidth());
+    assertEquals(1, result.getCompressions());
+    assertEquals(1, image.fullCompressions);
+  }
+
+  @Test
+  public void compress_probeOverestimates_staysAtFullScale() throws BitmapDecodingException {
+    // Downsampled probes of detailed photos compress worse per pixel than the photo itself
+    FakeImage                      image  = new FakeImage(4000, 3000, 0.9, 0.15);
+    ImageCompressionPlanner.Result result = ImageCompressionPlanner.compress(image, MAX_SIZE);
+
+    assertEquals(4000, result.getWidth());
+    assertEquals(3000, result.getHeight());
+    assertTrue(result.getBytes().length <= MAX_SIZE);
+    assertEquals(1, result.getCompressions());
+  }
+
+  @Test
+  public void compress_largeImage_scalesDownWithinBudget() throws BitmapDecodingException {
+    FakeImage                      image  = new FakeImage(4000, 3000, 2.5, 0.2);
+    ImageCompressionPlanner.Result result = ImageCompressionPlanner.compress(image, MAX_SIZE);
+
+    assertEquals(2000, result.getWidth());
+    assertEquals(1500, result.getHeight());
+    assertTrue(result.getBytes().length <= MAX_SIZE);
+    assertTrue(result.getCompressions() <= ImageCompressionPlanner.MAX_COMPRESSIONS);
+    assertEquals(result.getCompressions(), image.fullCompressions);
+    assertEquals(ImageCompressionPlanner.PROBE_QUALITIES.length, image.probeCompressions);
+  }
+
+  @Test
+  public void compress_imageThatCannotFit_failsWithinBudget() {
+    FakeImage image = new FakeImage(4000, 3000, 200, 0.1);
+
+    try {
+      ImageCompressionPlanner.compress(image, MAX_SIZE);
+      fail();
+    } catch (BitmapDecodingException e) {
+      assertTrue(image.fullCompressions <= ImageCompressionPlanner.MAX_COMPRESSIONS);
+      assertEquals(4000 >> ImageCompressionPlanner.MAX_IMAGE_HALF_SCALES, image.lastWidth);
+      assertEquals(ImageCompressionPlanner.MIN_COMPRESSION_QUALITY, image.lastQuality);
+    }
+  }
+
+  @Test
+  public void compress_underestimatedSteps_triesTheFloorLast() throws BitmapDecodingException {
+    // Every smaller scale carries more detail per pixel than the corrections expect, so only the
+    // smallest one fits
+    FakeImage                      image  = new FakeImage(4000, 3000, 3.0, 0.75);
+    ImageCompressionPlanner.Result result = ImageCompressionPlanner.compress(image, MAX_SIZE);
+
+    assertEquals(ImageCompressionPlanner.MAX_COMPRESSIONS, result.getCompressions());
+    assertEquals(4000 >> ImageCompressionPlanner.MAX_IMAGE_HALF_SCALES, result.getWidth());
+    assertEquals(ImageCompressionPlanner.MIN_COMPRESSION_QUALITY, result.getQuality());
+    assertTrue(result.getBytes().length <= MAX_SIZE);
+  }
+
+  @Test
+  public void estimateBytesPerPixel_interpolatesBetweenProbes() {
+    double[] bytesPerPixel = { 6, 5, 4, 3, 2, 1 };
+
+    assertEquals(6, ImageCompressionPlanner.estimateBytesPerPixel(bytesPerPixel, 95), 0.0001);
+    assertEquals(5.5, ImageCompressionPlanner.estimateBytesPerPixel(bytesPerPixel, 90), 0.0001);
+    assertEquals(1, ImageCompressionPlanner.estimateBytesPerPixel(bytesPerPixel, 45), 0.0001);
+  }
+
+  /**
+   * Compresses to a size that grows with the quality, with smaller scales carrying more detail per
+   * pixel by {@code detailExponent}.
+   */
+  private static final class FakeImage implements ImageCompressionPlanner.Image {
+
+    private final int    width;
+    private final int    height;
+    private final double bytesPerPixel;
+    private final double detailExponent;
+
+    private int probeCompressions;
+    private int fullCompressions;
+    private int lastWidth;
+    private int lastQuality;
+
+    private FakeImage(int width, int height, double bytesPerPixel, double detailExponent) {
+      this.width          = width;
+      this.height         = height;
+      this.bytesPerPixel  = bytesPerPixel;
+      this.detailExponent = detailExponent;
+    }
+
+    @Override
+    public int getWidth() {
+      return width;
+    }
+
+    @Override
+    public int getHeight() {
+      return height;
+    }
+
+    @Override
+    public @NonNull byte[] compress(int width, int height, int quality) {
+      double pixels = (double) width * height;
+      double detail = Math.pow((double) this.width * this.height / pixels, detailExponent);
+
+      if (pixels <= 512 * 384) probeCompressions++;
+      else                     fullCompressions++;
+
+      lastWidth   = width;
+      lastQuality = quality;
+
+      return new byte[(int) (pixels * bytesPerPixel * detail * Math.exp((quality - 95) / 18.0))];
+    }
+  }
+}
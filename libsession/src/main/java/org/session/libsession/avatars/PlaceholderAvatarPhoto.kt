@@ -12,4 +12,13 @@ class PlaceholderAvatarPhoto(val context: Context,
         messageDigest.update(hashString.encodeToByteArray())
         messageDigest.update(displayName.encodeToByteArray())
     }
-}
\ No newline at end of file
+
+    // Glide's memory cache matches models by equality, so every bind creating a new instance
+    // would otherwise render the placeholder again
+    override fun equals(other: Any?): Boolean {
+        if (other !is PlaceholderAvatarPhoto) return false
+        return hashString == other.hashString && displayName == other.displayName
+    }
+
+    override fun hashCode(): Int = 31 * hashString.hashCode() + displayName.hashCode()
+}
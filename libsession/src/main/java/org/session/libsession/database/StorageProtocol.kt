@@ -179,10 +179,12 @@ interface StorageProtocol {
 
     // Contacts
     fun getContactWithSessionID(sessionID: String): Contact?
+    fun getContactsWithSessionIDs(sessionIDs: Collection<String>): List<Contact>
     fun getAllContacts(): Set<Contact>
     fun setContact(contact: Contact)
     fun getRecipientForThread(threadId: Long): Recipient?
     fun getRecipientSettings(address: Address): RecipientSettings?
+    fun getRecipientSettings(addresses: Collection<Address>): Map<Address, RecipientSettings>
     fun addLibSessionContacts(contacts: List<LibSessionContact>)
     fun addContacts(contacts: List<ConfigurationMessage.Contact>)
 
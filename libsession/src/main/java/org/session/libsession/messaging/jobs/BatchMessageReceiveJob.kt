@@ -7,6 +7,7 @@ import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.runBlocking
 import nl.komponents.kovenant.Promise
 import nl.komponents.kovenant.task
+import org.session.libsession.database.StorageProtocol
 import org.session.libsession.messaging.MessagingModuleConfiguration
 import org.session.libsession.messaging.messages.Message
 import org.session.libsession.messaging.messages.control.CallMessage
@@ -23,6 +24,7 @@ import org.session.libsession.messaging.messages.visible.ParsedMessage
 import org.session.libsession.messaging.messages.visible.VisibleMessage
 import org.session.libsession.messaging.open_groups.OpenGroupApi
 import org.session.libsession.messaging.sending_receiving.MessageReceiver
+import org.session.libsession.messaging.sending_receiving.ProfileUpdateAccumulator
 import org.session.libsession.messaging.sending_receiving.handle
 import org.session.libsession.messaging.sending_receiving.handleOpenGroupReactions
 import org.session.libsession.messaging.sending_receiving.handleUnsendRequest
@@ -91,77 +93,86 @@ class BatchMessageReceiveJob(
         }
     }
 
+    /**
+     * Parses [messages] and groups them by the thread they belong to, collecting the ones that
+     * failed in a way that can be retried into [failures].
+     */
+    internal fun parseAndGroupByThread(
+        storage: StorageProtocol,
+        serverPublicKey: String?,
+        currentClosedGroups: Set<String>
+    ): Map<Long, List<ParsedMessage>> {
+        val threadMap = mutableMapOf<Long, MutableList<ParsedMessage>>()
+        messages.forEach { messageParameters ->
+            val (data, serverHash, openGroupMessageServerID) = messageParameters
+            try {
+                val (message, proto) = MessageReceiver.parse(data, openGroupMessageServerID, openGroupPublicKey = serverPublicKey, currentClosedGroups = currentClosedGroups)
+                message.serverHash = serverHash
+                val parsedParams = ParsedMessage(messageParameters, message, proto)
+                val threadID = Message.getThreadId(message, openGroupID, storage, shouldCreateThread(parsedParams)) ?: NO_THREAD_MAPPING
+                if (!threadMap.containsKey(threadID)) {
+                    threadMap[threadID] = mutableListOf(parsedParams)
+                } else {
+                    threadMap[threadID]!! += parsedParams
+                }
+            } catch (e: Exception) {
+                when (e) {
+                    is MessageReceiver.Error.DuplicateMessage, MessageReceiver.Error.SelfSend -> {
+                        Log.i(TAG, "Couldn't receive message, failed with error: ${e.message} (id: $id)")
+                    }
+                    is MessageReceiver.Error -> {
+                        if (!e.isRetryable) {
+                            Log.e(TAG, "Couldn't receive message, failed permanently (id: $id)", e)
+                        }
+                        else {
+                            Log.e(TAG, "Couldn't receive message, failed (id: $id)", e)
+                            failures += messageParameters
+                        }
+                    }
+                    else -> {
+                        Log.e(TAG, "Couldn't receive message, failed (id: $id)", e)
+                        failures += messageParameters
+                    }
+                }
+            }
+        }
+        return threadMap
+    }
+
     override suspend fun execute(dispatcherName: String) {
         executeAsync(dispatcherName).get()
     }
 
     fun executeAsync(dispatcherName: String): Promise<Unit, Exception> {
         return task {
-            val threadMap = mutableMapOf<Long, MutableList<ParsedMessage>>()
             val storage = MessagingModuleConfiguration.shared.storage
             val context = MessagingModuleConfiguration.shared.context
             val localUserPublicKey = storage.getUserPublicKey()
             val serverPublicKey = openGroupID?.let { storage.getOpenGroupPublicKey(it.split(".").dropLast(1).joinToString(".")) }
             val currentClosedGroups = storage.getAllActiveClosedGroupPublicKeys()
-
-            // parse and collect IDs
-            messages.forEach { messageParameters ->
-                val (data, serverHash, openGroupMessageServerID) = messageParameters
-                try {
-                    val (message, proto) = MessageReceiver.parse(data, openGroupMessageServerID, openGroupPublicKey = serverPublicKey, currentClosedGroups = currentClosedGroups)
-                    message.serverHash = serverHash
-                    val parsedParams = ParsedMessage(messageParameters, message, proto)
-                    val threadID = Message.getThreadId(message, openGroupID, storage, shouldCreateThread(parsedParams)) ?: NO_THREAD_MAPPING
-                    if (!threadMap.containsKey(threadID)) {
-                        threadMap[threadID] = mutableListOf(parsedParams)
-                    } else {
-                        threadMap[threadID]!! += parsedParams
-                    }
-                } catch (e: Exception) {
-                    when (e) {
-                        is MessageReceiver.Error.DuplicateMessage, MessageReceiver.Error.SelfSend -> {
-                            Log.i(TAG, "Couldn't receive message, failed with error: ${e.message} (id: $id)")
-                        }
-                        is MessageReceiver.Error -> {
-                            if (!e.isRetryable) {
-                                Log.e(TAG, "Couldn't receive message, failed permanently (id: $id)", e)
-                            }
-                            else {
-                                Log.e(TAG, "Couldn't receive message, failed (id: $id)", e)
-                                failures += messageParameters
-                            }
-                        }
-                        else -> {
-                            Log.e(TAG, "Couldn't receive message, failed (id: $id)", e)
-                            failures += messageParameters
-                        }
-                    }
-                }
+            val userBlindedPublicKey = serverPublicKey?.let {
+                SodiumUtilities.blindedKeyPair(it, MessagingModuleConfiguration.shared.getUserED25519KeyPair()!!)
+            }?.let {
+                SessionId(IdPrefix.BLINDED, it.publicKey.asBytes).hexString
             }
 
+            val threadMap = parseAndGroupByThread(storage, serverPublicKey, currentClosedGroups)
+
             // iterate over threads and persist them (persistence is the longest constant in the batch process operation)
             runBlocking(Dispatchers.IO) {
 
                 fun processMessages(threadId: Long, messages: List<ParsedMessage>) = async {
                     // The LinkedHashMap should preserve insertion order
                     val messageIds = linkedMapOf<Long, Pair<Boolean, Boolean>>()
+                    // Senders often send many messages per batch, their profile is only applied once
+                    val profileUpdates = ProfileUpdateAccumulator()
                     val myLastSeen = storage.getLastSeen(threadId)
                     var newLastSeen = if (myLastSeen == -1L) 0 else myLastSeen
                     messages.forEach { (parameters, message, proto) ->
                         try {
                             when (message) {
                                 is VisibleMessage -> {
-                                    val isUserBlindedSender =
-                                        message.sender == serverPublicKey?.let {
-                                            SodiumUtilities.blindedKeyPair(
-                                                it,
-                                                MessagingModuleConfiguration.shared.getUserED25519KeyPair()!!
-                                            )
-                                        }?.let {
-                                            SessionId(
-                                                IdPrefix.BLINDED, it.publicKey.asBytes
-                                            ).hexString
-                                        }
+                                    val isUserBlindedSender = message.sender == userBlindedPublicKey
                                     val sentTimestamp = message.sentTimestamp!!
                                     if (message.sender == localUserPublicKey || isUserBlindedSender) {
                                         if (sentTimestamp > newLastSeen) {
@@ -172,7 +183,8 @@ class BatchMessageReceiveJob(
                                     val messageId = MessageReceiver.handleVisibleMessage(
                                         message, proto, openGroupID, threadId,
                                         runThreadUpdate = false,
-                                        runProfileUpdate = true
+                                        runProfileUpdate = true,
+                                        profileUpdates = profileUpdates
                                     )
 
                                     if (messageId != null && message.reaction == null) {
@@ -212,6 +224,12 @@ class BatchMessageReceiveJob(
                             }
                         }
                     }
+                    // apply profiles before notifying so that new senders show up with their name
+                    try {
+                        profileUpdates.apply()
+                    } catch (e: Exception) {
+                        Log.e(TAG, "Couldn't update sender profiles (id: $id)", e)
+                    }
                     // increment unreads, notify, and update thread
                     // last seen will be the current last seen if not changed (re-computes the read counts for thread record)
                     // might have been updated from a different thread at this point
@@ -56,6 +56,9 @@ data class ConfigurationSyncJob(val destination: Destination): Job {
         // don't run anything if we don't need to push anything
         if (configsRequiringPush.isEmpty()) return delegate.handleJobSucceeded(this, dispatcherName)
 
+        // the changes being pushed must be on disk first, so they are never only known to the swarm
+        configFactory.flushPendingDumps()
+
         // need to get the current hashes before we call `push()`
         val toDeleteHashes = mutableListOf<String>()
 
@@ -144,6 +147,8 @@ data class ConfigurationSyncJob(val destination: Destination): Job {
                     configFactory.persist(config, toPushMessage.sentTimestamp ?: sentTimestamp)
                 }
             }
+            // the confirmed hashes are only kept in the dumps
+            configFactory.flushPendingDumps()
         } catch (e: Exception) {
             Log.e(TAG, "Error performing batch request", e)
             return delegate.handleJobFailed(this, dispatcherName, e)
@@ -1,6 +1,5 @@
 package org.session.libsession.messaging.jobs
 
-import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
@@ -32,65 +31,32 @@ class JobQueue : JobDelegate {
     private val queue = Channel<Job>(UNLIMITED)
     private val pendingJobIds = mutableSetOf<String>()
 
-    private val openGroupChannels = mutableMapOf<String, Channel<Job>>()
+    private val foregroundOpenGroupIds = ConcurrentHashMap.newKeySet<String>()
+
+    private val rxExecutor = KeyedSerialExecutor<Job>("rx", scope, rxDispatcher, maxConcurrency = 1) { it.process("rx") }
+    // Send jobs mostly suspend on the network, so they aren't capped beyond the single tx thread
+    private val txExecutor = KeyedSerialExecutor<Job>("tx", scope, txDispatcher, maxConcurrency = Int.MAX_VALUE) { it.process("tx") }
+    private val mediaExecutor = KeyedSerialExecutor<Job>("media", scope, rxMediaDispatcher, maxConcurrency = 4) { it.process("media") }
+    private val openGroupExecutor = KeyedSerialExecutor<Job>(
+        "openGroup", scope, openGroupDispatcher, maxConcurrency = 8, isForeground = foregroundOpenGroupIds::contains
+    ) { it.process("openGroup") }
 
     val timer = Timer()
 
-    private fun CoroutineScope.processWithOpenGroupDispatcher(
-        channel: Channel<Job>,
-        dispatcher: CoroutineDispatcher,
-        name: String
-    ) = launch(dispatcher) {
-        for (job in channel) {
-            if (!isActive) break
-            val openGroupId = when (job) {
-                is BatchMessageReceiveJob -> job.openGroupID
-                is OpenGroupDeleteJob -> job.openGroupId
-                is TrimThreadJob -> job.openGroupId
-                is BackgroundGroupAddJob -> job.openGroupId
-                is GroupAvatarDownloadJob -> "${job.server}.${job.room}"
-                else -> null
-            }
-            if (openGroupId.isNullOrEmpty()) {
-                Log.e("OpenGroupDispatcher", "Open Group ID was null on ${job.javaClass.simpleName}")
-                handleJobFailedPermanently(job, name, NullPointerException("Open Group ID was null"))
-            } else {
-                val groupChannel = if (!openGroupChannels.containsKey(openGroupId)) {
-                    Log.d("OpenGroupDispatcher", "Creating ${openGroupId.hashCode()} channel")
-                    val newGroupChannel = Channel<Job>(UNLIMITED)
-                    launch(dispatcher) {
-                        for (groupJob in newGroupChannel) {
-                            if (!isActive) break
-                            groupJob.process(name)
-                        }
-                    }
-                    openGroupChannels[openGroupId] = newGroupChannel
-                    newGroupChannel
-                } else {
-                    Log.d("OpenGroupDispatcher", "Re-using channel")
-                    openGroupChannels[openGroupId]!!
-                }
-                Log.d("OpenGroupDispatcher", "Sending to channel $groupChannel")
-                groupChannel.send(job)
-            }
+    private fun submitToOpenGroupExecutor(job: Job) {
+        val openGroupId = when (job) {
+            is BatchMessageReceiveJob -> job.openGroupID
+            is OpenGroupDeleteJob -> job.openGroupId
+            is TrimThreadJob -> job.openGroupId
+            is BackgroundGroupAddJob -> job.openGroupId
+            is GroupAvatarDownloadJob -> "${job.server}.${job.room}"
+            else -> null
         }
-    }
-
-    private fun CoroutineScope.processWithDispatcher(
-        channel: Channel<Job>,
-        dispatcher: CoroutineDispatcher,
-        name: String,
-        asynchronous: Boolean = true
-    ) = launch(dispatcher) {
-        for (job in channel) {
-            if (!isActive) break
-            if (asynchronous) {
-                launch(dispatcher) {
-                    job.process(name)
-                }
-            } else {
-                job.process(name)
-            }
+        if (openGroupId.isNullOrEmpty()) {
+            Log.e("OpenGroupDispatcher", "Open Group ID was null on ${job.javaClass.simpleName}")
+            handleJobFailedPermanently(job, openGroupExecutor.name, NullPointerException("Open Group ID was null"))
+        } else {
+            openGroupExecutor.submit(openGroupId, job)
         }
     }
 
@@ -110,37 +76,27 @@ class JobQueue : JobDelegate {
     init {
         // Process jobs
         scope.launch {
-            val rxQueue = Channel<Job>(capacity = UNLIMITED)
-            val txQueue = Channel<Job>(capacity = UNLIMITED)
-            val mediaQueue = Channel<Job>(capacity = UNLIMITED)
-            val openGroupQueue = Channel<Job>(capacity = UNLIMITED)
-
-            val receiveJob = processWithDispatcher(rxQueue, rxDispatcher, "rx", asynchronous = false)
-            val txJob = processWithDispatcher(txQueue, txDispatcher, "tx")
-            val mediaJob = processWithDispatcher(mediaQueue, rxMediaDispatcher, "media")
-            val openGroupJob = processWithOpenGroupDispatcher(openGroupQueue, openGroupDispatcher, "openGroup")
-
             while (isActive) {
                 when (val job = queue.receive()) {
                     is NotifyPNServerJob, is AttachmentUploadJob, is MessageSendJob, is ConfigurationSyncJob -> {
-                        txQueue.send(job)
+                        txExecutor.submit(null, job)
                     }
                     is RetrieveProfileAvatarJob,
                     is AttachmentDownloadJob -> {
-                        mediaQueue.send(job)
+                        mediaExecutor.submit(null, job)
                     }
                     is GroupAvatarDownloadJob,
                     is BackgroundGroupAddJob,
                     is OpenGroupDeleteJob -> {
-                        openGroupQueue.send(job)
+                        submitToOpenGroupExecutor(job)
                     }
                     is MessageReceiveJob, is TrimThreadJob,
                     is BatchMessageReceiveJob -> {
                         if ((job is BatchMessageReceiveJob && !job.openGroupID.isNullOrEmpty())
                             || (job is TrimThreadJob && !job.openGroupId.isNullOrEmpty())) {
-                            openGroupQueue.send(job)
+                            submitToOpenGroupExecutor(job)
                         } else {
-                            rxQueue.send(job)
+                            rxExecutor.submit(null, job)
                         }
                     }
                     else -> {
@@ -148,12 +104,6 @@ class JobQueue : JobDelegate {
                     }
                 }
             }
-
-            // The job has been cancelled
-            receiveJob.cancel()
-            txJob.cancel()
-            mediaJob.cancel()
-            openGroupJob.cancel()
         }
     }
 
@@ -163,6 +113,18 @@ class JobQueue : JobDelegate {
         val shared: JobQueue by lazy { JobQueue() }
     }
 
+    /**
+     * Jobs for open groups marked as being in the foreground (e.g. the conversation is on screen) are
+     * run before those of other open groups, so that background backfill doesn't delay them.
+     */
+    fun setOpenGroupInForeground(openGroupId: String, inForeground: Boolean) {
+        if (inForeground) foregroundOpenGroupIds.add(openGroupId) else foregroundOpenGroupIds.remove(openGroupId)
+        openGroupExecutor.refreshPriorities()
+    }
+
+    fun getDispatcherStats(): List<KeyedSerialExecutor.Stats> =
+        listOf(rxExecutor, txExecutor, mediaExecutor, openGroupExecutor).map { it.stats() }
+
     fun add(job: Job) {
         addWithoutExecuting(job)
         queue.trySend(job) // offer always called on unlimited capacity
@@ -0,0 +1,153 @@
+package org.session.libsession.messaging.jobs
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.DelicateCoroutinesApi
+import kotlinx.coroutines.launch
+
+/**
+ * Runs submitted items on [dispatcher] with at most [maxConcurrency] of them in flight.
+ *
+ * Items submitted with the same key run one at a time in submission order, items without a key
+ * have no ordering constraint. Whenever a slot frees up, keys for which [isForeground] returns
+ * true are served before the others, and keys of the same priority take turns. A key only holds
+ * state while it has queued or running items, so idle keys cost nothing.
+ */
+class KeyedSerialExecutor<T>(
+    val name: String,
+    private val scope: CoroutineScope,
+    private val dispatcher: CoroutineDispatcher,
+    private val maxConcurrency: Int,
+    private val isForeground: (String) -> Boolean = { false },
+    private val process: suspend (T) -> Unit
+) {
+
+    data class Stats(
+        val name: String,
+        val queued: Int,
+        val running: Int,
+        val activeKeys: Int,
+        val started: Long,
+        val averageWaitMs: Long,
+        val maxWaitMs: Long
+    )
+
+    private class Entry<T>(val item: T, val enqueuedAt: Long)
+
+    private class Lane<T>(val key: String?) {
+        val entries = ArrayDeque<Entry<T>>()
+        // Whether the lane is waiting in a ready queue or has an item running
+        var isScheduled = false
+    }
+
+    private val lock = Any()
+    private val lanes = HashMap<String, Lane<T>>()
+    private val foregroundReady = ArrayDeque<Lane<T>>()
+    private val backgroundReady = ArrayDeque<Lane<T>>()
+
+    private var queued = 0
+    private var running = 0
+    private var started = 0L
+    private var totalWaitMs = 0L
+    private var maxWaitMs = 0L
+
+    init {
+        require(maxConcurrency > 0) { "maxConcurrency must be positive" }
+    }
+
+    fun submit(key: String?, item: T) {
+        val toStart = synchronized(lock) {
+            val lane = if (key == null) Lane(null) else lanes.getOrPut(key) { Lane(key) }
+            lane.entries.addLast(Entry(item, now()))
+            queued++
+
+            if (!lane.isScheduled) {
+                lane.isScheduled = true
+                readyQueueFor(lane).addLast(lane)
+            }
+
+            pollStartable()
+        }
+        toStart.forEach { (lane, entry) -> start(lane, entry) }
+    }
+
+    /**
+     * Re-evaluates [isForeground] for every waiting key, should be called whenever its answer changes.
+     */
+    fun refreshPriorities() {
+        synchronized(lock) {
+            val waiting = foregroundReady + backgroundReady
+            foregroundReady.clear()
+            backgroundReady.clear()
+            waiting.forEach { readyQueueFor(it).addLast(it) }
+        }
+    }
+
+    fun stats(): Stats = synchronized(lock) {
+        Stats(
+            name = name,
+            queued = queued,
+            running = running,
+            activeKeys = lanes.size,
+            started = started,
+            averageWaitMs = if (started == 0L) 0 else totalWaitMs / started,
+            maxWaitMs = maxWaitMs
+        )
+    }
+
+    @OptIn(DelicateCoroutinesApi::class)
+    private fun start(lane: Lane<T>, entry: Entry<T>) {
+        // Started atomically so that the lane is released even if the scope is cancelled before the
+        // coroutine gets to run, otherwise its slot would stay taken forever
+        scope.launch(dispatcher, CoroutineStart.ATOMIC) {
+            try {
+                process(entry.item)
+            } finally {
+                finish(lane)
+            }
+        }
+    }
+
+    private fun finish(lane: Lane<T>) {
+        val toStart = synchronized(lock) {
+            running--
+
+            if (lane.entries.isEmpty()) {
+                lane.isScheduled = false
+                lane.key?.let(lanes::remove)
+            } else {
+                readyQueueFor(lane).addLast(lane)
+            }
+
+            pollStartable()
+        }
+        toStart.forEach { (lane, entry) -> start(lane, entry) }
+    }
+
+    // Must be called while holding the lock
+    private fun pollStartable(): List<Pair<Lane<T>, Entry<T>>> {
+        if (running >= maxConcurrency) return emptyList()
+
+        val result = mutableListOf<Pair<Lane<T>, Entry<T>>>()
+        while (running < maxConcurrency) {
+            val lane = foregroundReady.removeFirstOrNull() ?: backgroundReady.removeFirstOrNull() ?: break
+            val entry = lane.entries.removeFirst()
+            val waitMs = now() - entry.enqueuedAt
+
+            queued--
+            running++
+            started++
+            totalWaitMs += waitMs
+            if (waitMs > maxWaitMs) maxWaitMs = waitMs
+
+            result.add(lane to entry)
+        }
+        return result
+    }
+
+    private fun readyQueueFor(lane: Lane<T>): ArrayDeque<Lane<T>> =
+        if (lane.key != null && isForeground(lane.key)) foregroundReady else backgroundReady
+
+    private fun now() = System.nanoTime() / 1_000_000
+}
@@ -0,0 +1,100 @@
+package org.session.libsession.messaging.mentions
+
+import org.session.libsession.messaging.contacts.Contact
+import java.util.Locale
+
+/**
+ * The mention candidates of a single thread, with their display names resolved and lowercased up
+ * front so that a query is only a scan over the names in memory.
+ *
+ * Writes replace the candidate list and queries read whatever list was current when they
+ * started, so the index can be updated from any thread while the user is typing.
+ */
+class MentionIndex {
+
+    private class Entry(val publicKey: String, val regularName: Name?, val openGroupName: Name?) {
+        fun name(isOpenGroup: Boolean) = if (isOpenGroup) openGroupName else regularName
+    }
+
+    private class Name(val displayName: String) {
+        val normalized: String = displayName.lowercase(Locale.getDefault())
+    }
+
+    private val lock = Any()
+
+    // Sorted by public key so that adding a key is a binary search and one copy
+    @Volatile
+    private var entries = emptyList<Entry>()
+
+    val size: Int get() = entries.size
+
+    operator fun contains(publicKey: String): Boolean = indexOf(entries, publicKey) >= 0
+
+    /**
+     * Replaces the candidates with [publicKeys]. Keys without a contact in [contacts] are kept,
+     * but can't be mentioned as there is no name to show for them.
+     */
+    fun setAll(publicKeys: Collection<String>, contacts: Collection<Contact>) {
+        val contactsByKey = contacts.associateBy { it.sessionID }
+        val updated = publicKeys.distinct().sorted().map { entryFor(it, contactsByKey[it]) }
+        synchronized(lock) { entries = updated }
+    }
+
+    /**
+     * Adds or updates a single candidate.
+     */
+    fun add(publicKey: String, contact: Contact?) {
+        val entry = entryFor(publicKey, contact)
+        synchronized(lock) {
+            val current = entries
+            val index = indexOf(current, publicKey)
+            entries = if (index >= 0) {
+                current.toMutableList().apply { set(index, entry) }
+            } else {
+                current.toMutableList().apply { add(-index - 1, entry) }
+            }
+        }
+    }
+
+    /**
+     * Updates the name of [contact] if it is one of the candidates, other contacts are ignored.
+     */
+    fun update(contact: Contact) {
+        if (contact.sessionID !in this) return
+        val entry = entryFor(contact.sessionID, contact)
+        synchronized(lock) {
+            val current = entries
+            val index = indexOf(current, contact.sessionID)
+            if (index >= 0) entries = current.toMutableList().apply { set(index, entry) }
+        }
+    }
+
+    /**
+     * Matches [query] anywhere in the display names once it is at least two characters long.
+     * Results are sorted by where the query occurs in the name, then alphabetically.
+     */
+    fun query(query: String, isOpenGroup: Boolean, excludedPublicKey: String?): List<Mention> {
+        val normalizedQuery = query.lowercase(Locale.getDefault())
+        val isFiltering = query.length >= 2
+
+        return entries.asSequence()
+            .filter { it.publicKey != excludedPublicKey }
+            .mapNotNull { entry ->
+                val name = entry.name(isOpenGroup) ?: return@mapNotNull null
+                val position = if (isFiltering) name.normalized.indexOf(normalizedQuery) else 0
+                if (position < 0) null else Triple(entry, name, position)
+            }
+            .sortedWith(compareBy({ it.third }, { it.second.displayName }))
+            .map { (entry, name) -> Mention(entry.publicKey, name.displayName) }
+            .toList()
+    }
+
+    private fun entryFor(publicKey: String, contact: Contact?) = Entry(
+        publicKey = publicKey,
+        regularName = contact?.displayName(Contact.ContactContext.REGULAR)?.let(::Name),
+        openGroupName = contact?.displayName(Contact.ContactContext.OPEN_GROUP)?.let(::Name)
+    )
+
+    private fun indexOf(entries: List<Entry>, publicKey: String): Int =
+        entries.binarySearch { it.publicKey.compareTo(publicKey) }
+}
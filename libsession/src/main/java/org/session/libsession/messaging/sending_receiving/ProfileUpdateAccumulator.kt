@@ -0,0 +1,50 @@
+package org.session.libsession.messaging.sending_receiving
+
+import org.session.libsession.messaging.MessagingModuleConfiguration
+import org.session.libsession.messaging.messages.visible.Profile
+import org.session.libsession.utilities.Address
+import org.session.libsession.utilities.recipients.Recipient
+
+/**
+ * Collects the profiles senders attach to a batch of received messages, so that each sender's
+ * profile is only applied once, from their newest message, by [apply].
+ *
+ * Not thread safe, a batch is expected to be processed sequentially.
+ */
+class ProfileUpdateAccumulator {
+
+    private class Update(var profile: Profile?, var profileTimestamp: Long, var blocksMessageRequests: Boolean, var timestamp: Long)
+
+    private val updates = LinkedHashMap<String, Update>()
+
+    fun add(sender: String, profile: Profile?, blocksMessageRequests: Boolean, sentTimestamp: Long) {
+        val update = updates[sender]
+        if (update == null) {
+            updates[sender] = Update(profile, sentTimestamp, blocksMessageRequests, sentTimestamp)
+            return
+        }
+        // Messages without a profile don't clear the one sent with an older message
+        if (profile != null && (update.profile == null || sentTimestamp >= update.profileTimestamp)) {
+            update.profile = profile
+            update.profileTimestamp = sentTimestamp
+        }
+        if (sentTimestamp >= update.timestamp) {
+            update.blocksMessageRequests = blocksMessageRequests
+            update.timestamp = sentTimestamp
+        }
+    }
+
+    fun apply() {
+        val context = MessagingModuleConfiguration.shared.context
+        flush { sender, profile, blocksMessageRequests ->
+            val recipient = Recipient.from(context, Address.fromSerialized(sender), false)
+            updateProfileIfNeeded(recipient, profile, blocksMessageRequests)
+        }
+    }
+
+    /** Hands each sender's merged update to [update], in the order they were first seen, and forgets them. */
+    internal fun flush(update: (sender: String, profile: Profile?, blocksMessageRequests: Boolean) -> Unit) {
+        updates.forEach { (sender, merged) -> update(sender, merged.profile, merged.blocksMessageRequests) }
+        updates.clear()
+    }
+}
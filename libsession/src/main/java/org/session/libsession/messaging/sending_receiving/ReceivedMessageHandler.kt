@@ -17,6 +17,7 @@ import org.session.libsession.messaging.messages.control.ReadReceipt
 import org.session.libsession.messaging.messages.control.TypingIndicator
 import org.session.libsession.messaging.messages.control.UnsendRequest
 import org.session.libsession.messaging.messages.visible.Attachment
+import org.session.libsession.messaging.messages.visible.Profile
 import org.session.libsession.messaging.messages.visible.Reaction
 import org.session.libsession.messaging.messages.visible.VisibleMessage
 import org.session.libsession.messaging.open_groups.OpenGroupApi
@@ -250,13 +251,47 @@ fun handleMessageRequestResponse(message: MessageRequestResponse) {
 }
 //endregion
 
+/**
+ * Applies the profile a sender attached to their message, skipping whatever already matches the
+ * cached [recipient].
+ */
+internal fun updateProfileIfNeeded(recipient: Recipient, profile: Profile?, blocksMessageRequests: Boolean) {
+    val context = MessagingModuleConfiguration.shared.context
+    val storage = MessagingModuleConfiguration.shared.storage
+    if (profile != null) {
+        val profileManager = SSKEnvironment.shared.profileManager
+        val name = profile.displayName!!
+        if (name.isNotEmpty() && name != recipient.profileName) {
+            profileManager.setName(context, recipient, name)
+        }
+        val newProfileKey = profile.profileKey
+
+        val needsProfilePicture = !AvatarHelper.avatarFileExists(context, recipient.address)
+        val profileKeyValid = newProfileKey?.isNotEmpty() == true && (newProfileKey.size == 16 || newProfileKey.size == 32) && profile.profilePictureURL?.isNotEmpty() == true
+        val profileKeyChanged = (recipient.profileKey == null || !MessageDigest.isEqual(recipient.profileKey, newProfileKey))
+
+        if ((profileKeyValid && profileKeyChanged) || (profileKeyValid && needsProfilePicture)) {
+            profileManager.setProfilePicture(context, recipient, profile.profilePictureURL, newProfileKey)
+            profileManager.setUnidentifiedAccessMode(context, recipient, Recipient.UnidentifiedAccessMode.UNKNOWN)
+        } else if ((newProfileKey == null || newProfileKey.isEmpty() || profile.profilePictureURL.isNullOrEmpty())
+            && (recipient.profileKey != null || recipient.profileAvatar != null)) {
+            profileManager.setProfilePicture(context, recipient, null, null)
+        }
+    }
+
+    if (recipient.blocksCommunityMessageRequests != blocksMessageRequests) {
+        storage.setBlocksCommunityMessageRequests(recipient, blocksMessageRequests)
+    }
+}
+
 fun MessageReceiver.handleVisibleMessage(
     message: VisibleMessage,
     proto: SignalServiceProtos.Content,
     openGroupID: String?,
     threadId: Long,
     runThreadUpdate: Boolean,
-    runProfileUpdate: Boolean
+    runProfileUpdate: Boolean,
+    profileUpdates: ProfileUpdateAccumulator? = null
 ): Long? {
     val storage = MessagingModuleConfiguration.shared.storage
     val context = MessagingModuleConfiguration.shared.context
@@ -283,30 +318,13 @@ fun MessageReceiver.handleVisibleMessage(
     // Update profile if needed
     val recipient = Recipient.from(context, Address.fromSerialized(messageSender!!), false)
     if (runProfileUpdate) {
-        val profile = message.profile
         val isUserBlindedSender = messageSender == userBlindedKey
-        if (profile != null && userPublicKey != messageSender && !isUserBlindedSender) {
-            val profileManager = SSKEnvironment.shared.profileManager
-            val name = profile.displayName!!
-            if (name.isNotEmpty()) {
-                profileManager.setName(context, recipient, name)
-            }
-            val newProfileKey = profile.profileKey
-
-            val needsProfilePicture = !AvatarHelper.avatarFileExists(context, Address.fromSerialized(messageSender))
-            val profileKeyValid = newProfileKey?.isNotEmpty() == true && (newProfileKey.size == 16 || newProfileKey.size == 32) && profile.profilePictureURL?.isNotEmpty() == true
-            val profileKeyChanged = (recipient.profileKey == null || !MessageDigest.isEqual(recipient.profileKey, newProfileKey))
-
-            if ((profileKeyValid && profileKeyChanged) || (profileKeyValid && needsProfilePicture)) {
-                profileManager.setProfilePicture(context, recipient, profile.profilePictureURL, newProfileKey)
-                profileManager.setUnidentifiedAccessMode(context, recipient, Recipient.UnidentifiedAccessMode.UNKNOWN)
-            } else if (newProfileKey == null || newProfileKey.isEmpty() || profile.profilePictureURL.isNullOrEmpty()) {
-                profileManager.setProfilePicture(context, recipient, null, null)
-            }
-        }
-
         if (userPublicKey != messageSender && !isUserBlindedSender) {
-            storage.setBlocksCommunityMessageRequests(recipient, message.blocksMessageRequests)
+            if (profileUpdates != null) {
+                profileUpdates.add(messageSender, message.profile, message.blocksMessageRequests, message.sentTimestamp ?: 0)
+            } else {
+                updateProfileIfNeeded(recipient, message.profile, message.blocksMessageRequests)
+            }
         }
     }
     // Parse quote if needed
@@ -10,6 +10,9 @@ import okhttp3.Request
 import org.session.libsession.messaging.file_server.FileServerApi
 import org.session.libsession.utilities.AESGCM
 import org.session.libsession.utilities.AESGCM.EncryptionResult
+import org.session.libsession.utilities.bencode.Bencode
+import org.session.libsession.utilities.bencode.BencodeList
+import org.session.libsession.utilities.bencode.BencodeString
 import org.session.libsession.utilities.getBodyForOnionRequest
 import org.session.libsession.utilities.getHeadersForOnionRequest
 import org.session.libsignal.crypto.getRandomElement
@@ -527,18 +530,12 @@ object OnionRequestAPI {
         if (version == Version.V4) {
             try {
                 if (response.size <= AESGCM.ivSize) return deferred.reject(Exception("Invalid response"))
-                // The data will be in the form of `l123:jsone` or `l123:json456:bodye` so we need to break the data into
-                // parts to properly process it
+                // The data will be in the form of `l123:jsone` or `l123:json456:bodye`
                 val plaintext = AESGCM.decrypt(response, destinationSymmetricKey)
-                if (!byteArrayOf(plaintext.first()).contentEquals("l".toByteArray())) return deferred.reject(Exception("Invalid response"))
-                val infoSepIdx = plaintext.indexOfFirst { byteArrayOf(it).contentEquals(":".toByteArray()) }
-                val infoLenSlice = plaintext.slice(1 until infoSepIdx)
-                val infoLength = infoLenSlice.toByteArray().toString(Charsets.US_ASCII).toIntOrNull()
-                if (infoLenSlice.size <= 1 || infoLength == null) return deferred.reject(Exception("Invalid response"))
-                val infoStartIndex = "l$infoLength".length + 1
-                val infoEndIndex = infoStartIndex + infoLength
-                val info = plaintext.slice(infoStartIndex until infoEndIndex)
-                val responseInfo = JsonUtil.fromJson(info.toByteArray(), Map::class.java)
+                val parts = (Bencode.Decoder(plaintext).decode() as? BencodeList)?.values
+                val info = parts?.firstOrNull() as? BencodeString ?: return deferred.reject(Exception("Invalid response"))
+                val body = parts.getOrNull(1) as? BencodeString
+                val responseInfo = info.inputStream().use { JsonUtil.fromJson(it, Map::class.java) }
                 when (val statusCode = responseInfo["code"].toString().toInt()) {
                     // Custom handle a clock out of sync error (v4 returns '425' but included the '406' just in case)
                     406, 425 -> {
@@ -552,9 +549,9 @@ object OnionRequestAPI {
                     }
                     // Handle error status codes
                     !in 200..299 -> {
-                        val responseBody = if (destination is Destination.Server && statusCode == 400) plaintext.getBody(infoLength, infoEndIndex) else null
+                        val responseBody = if (destination is Destination.Server && statusCode == 400) body?.asString() else null
                         val requireBlinding = "Invalid authentication: this server requires the use of blinded ids"
-                        val exception = if (responseBody != null && responseBody.decodeToString() == requireBlinding) {
+                        val exception = if (responseBody == requireBlinding) {
                             HTTPRequestFailedBlindingRequiredException(400, responseInfo, destination.description)
                         } else HTTPRequestFailedAtDestinationException(
                             statusCode,
@@ -565,13 +562,11 @@ object OnionRequestAPI {
                     }
                 }
 
-                val responseBody = plaintext.getBody(infoLength, infoEndIndex)
-
                 // If there is no data in the response, i.e. only `l123:jsone`, then just return the ResponseInfo
-                if (responseBody.isEmpty()) {
+                if (body == null || body.length == 0) {
                     return deferred.resolve(OnionResponse(responseInfo, null))
                 }
-                return deferred.resolve(OnionResponse(responseInfo, responseBody))
+                return deferred.resolve(OnionResponse(responseInfo, body.value))
             } catch (exception: Exception) {
                 deferred.reject(exception)
             }
@@ -661,19 +656,6 @@ object OnionRequestAPI {
         }
     }
 
-    private fun ByteArray.getBody(infoLength: Int, infoEndIndex: Int): ByteArray {
-        // If there is no data in the response, i.e. only `l123:jsone`, then just return the ResponseInfo
-        val infoLengthStringLength = infoLength.toString().length
-        if (size <= infoLength + infoLengthStringLength + 2/*l and e bytes*/) {
-            return byteArrayOf()
-        }
-        // Extract the response data as well
-        val dataSlice = slice(infoEndIndex + 1 until size - 1)
-        val dataSepIdx = dataSlice.indexOfFirst { byteArrayOf(it).contentEquals(":".toByteArray()) }
-        val responseBody = dataSlice.slice(dataSepIdx + 1 until dataSlice.size)
-        return responseBody.toByteArray()
-    }
-
     // endregion
 }
 
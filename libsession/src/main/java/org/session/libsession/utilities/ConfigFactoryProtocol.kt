@@ -14,6 +14,11 @@ interface ConfigFactoryProtocol {
     fun getUserConfigs(): List<ConfigBase>
     fun persist(forConfigObject: ConfigBase, timestamp: Long)
 
+    /**
+     * Writes the dumps of configs that were persisted but not written yet.
+     */
+    fun flushPendingDumps()
+
     fun conversationInConfig(publicKey: String?, groupPublicKey: String?, openGroupId: String?, visibleOnly: Boolean): Boolean
     fun canPerformChange(variant: String, publicKey: String, changeTimestampMs: Long): Boolean
 }
@@ -16,21 +16,23 @@ import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.nio.ShortBuffer
 import kotlin.jvm.Throws
-import kotlin.math.ceil
 import kotlin.math.roundToInt
 import kotlin.math.sqrt
 
 /**
- * Decodes the audio data and provides access to its sample data.
- * We need this to extract RMS values for waveform visualization.
+ * Reads an audio file's format and decodes it on demand to extract RMS values for waveform
+ * visualization.
  *
- * Use static [DecodedAudio.create] methods to instantiate a [DecodedAudio].
+ * Use static [DecodedAudio.create] methods to instantiate a [DecodedAudio]. Creating an instance
+ * only reads the track format, the samples are decoded by [calculateRms], which streams them
+ * through a [WaveformAccumulator] and so never holds the decoded PCM in memory. Both read the
+ * same data source, which is left to its owner to close.
  *
  * Partially based on the old [Google's Ringdroid project]
  * (https://github.com/google/ringdroid/blob/master/app/src/main/java/com/ringdroid/soundfile/SoundFile.java).
  *
- * *NOTE:* This class instance creation might be pretty slow (depends on the source audio file size).
- * It's recommended to instantiate it in the background.
+ * *NOTE:* [calculateRms] might be pretty slow (depends on the source audio file size).
+ * It's recommended to call it in the background.
  */
 @Suppress("MemberVisibilityCanBePrivate")
 class DecodedAudio {
@@ -39,22 +41,22 @@ class DecodedAudio {
         @JvmStatic
         @Throws(IOException::class)
         fun create(fd: FileDescriptor, startOffset: Long, size: Long): DecodedAudio {
-            val mediaExtractor = MediaExtractor().apply { setDataSource(fd, startOffset, size) }
-            return DecodedAudio(mediaExtractor, size)
+            return DecodedAudio({ MediaExtractor().apply { setDataSource(fd, startOffset, size) } }, size)
         }
 
         @JvmStatic
         @RequiresApi(api = Build.VERSION_CODES.M)
         @Throws(IOException::class)
         fun create(dataSource: MediaDataSource): DecodedAudio {
-            val mediaExtractor = MediaExtractor().apply { setDataSource(dataSource) }
-            return DecodedAudio(mediaExtractor, dataSource.size)
+            // Releasing an extractor closes its data source, which calculateRms still needs
+            val unclosable = UnclosableMediaDataSource(dataSource)
+            return DecodedAudio({ MediaExtractor().apply { setDataSource(unclosable) } }, dataSource.size)
         }
     }
 
     val dataSize: Long
 
-    /** Average bit rate in kbps. */
+    /** Average bit rate in kbps, 0 if the duration is unknown. */
     val avgBitRate: Int
 
     val sampleRate: Int
@@ -64,47 +66,21 @@ class DecodedAudio {
 
     val channels: Int
 
-    /** Total number of samples per channel in audio file. */
-    val numSamples: Int
+    /** Expected number of samples per channel according to the duration, -1 if it's unknown. */
+    val expectedNumSamples: Int
 
-    val samples: ShortBuffer
-        get() {
-            return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N &&
-                    Build.VERSION.SDK_INT <= Build.VERSION_CODES.N_MR1
-            ) {
-                // Hack for Nougat where asReadOnlyBuffer fails to respect byte ordering.
-                // See https://code.google.com/p/android/issues/detail?id=223824
-                decodedSamples
-            } else {
-                decodedSamples.asReadOnlyBuffer()
-            }
-        }
-
-    /**
-     * Shared buffer with mDecodedBytes.
-     * Has the following format:
-     * {s1c1, s1c2, ..., s1cM, s2c1, ..., s2cM, ..., sNc1, ..., sNcM}
-     * where sicj is the ith sample of the jth channel (a sample is a signed short)
-     * M is the number of channels (e.g. 2 for stereo) and N is the number of samples per channel.
-     */
-    private val decodedSamples: ShortBuffer
+    private val createExtractor: () -> MediaExtractor
 
     @Throws(IOException::class)
-    private constructor(extractor: MediaExtractor, size: Long) {
+    private constructor(createExtractor: () -> MediaExtractor, size: Long) {
+        this.createExtractor = createExtractor
         dataSize = size
 
-        var mediaFormat: MediaFormat? = null
-        // Find and select the first audio track present in the file.
-        for (trackIndex in 0 until extractor.trackCount) {
-            val format = extractor.getTrackFormat(trackIndex)
-            if (format.getString(MediaFormat.KEY_MIME)!!.startsWith("audio/")) {
-                extractor.selectTrack(trackIndex)
-                mediaFormat = format
-                break
-            }
-        }
-        if (mediaFormat == null) {
-            throw IOException("No audio track found in the data source.")
+        val extractor = createExtractor()
+        val mediaFormat = try {
+            selectAudioTrack(extractor)
+        } finally {
+            extractor.release()
         }
 
         channels = mediaFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT)
@@ -116,17 +92,48 @@ class DecodedAudio {
             -1L
         }
 
-        // Expected total number of samples per channel.
-        val expectedNumSamples = if (totalDuration >= 0) {
+        expectedNumSamples = if (totalDuration >= 0) {
             ((totalDuration / 1000000f) * sampleRate + 0.5f).toInt()
         } else {
-            Int.MAX_VALUE
+            -1
+        }
+        avgBitRate = if (totalDuration > 0) {
+            ((dataSize * 8) / (totalDuration / 1000000f) / 1000).toInt()
+        } else {
+            0
+        }
+    }
+
+    /**
+     * Decodes the audio and computes at most [maxFrames] RMS values for its first channel.
+     *
+     * @return normalized RMS values as a signed byte array.
+     */
+    @Throws(IOException::class)
+    fun calculateRms(maxFrames: Int): ByteArray {
+        val accumulator = WaveformAccumulator(channels, maxFrames, expectedNumSamples)
+
+        val extractor = createExtractor()
+        try {
+            val mediaFormat = selectAudioTrack(extractor)
+            val codec = MediaCodec.createDecoderByType(mediaFormat.getString(MediaFormat.KEY_MIME)!!)
+            try {
+                codec.configure(mediaFormat, null, null, 0)
+                codec.start()
+                decode(extractor, mediaFormat, codec, accumulator)
+                codec.stop()
+            } finally {
+                codec.release()
+            }
+        } finally {
+            extractor.release()
         }
 
-        val codec = MediaCodec.createDecoderByType(mediaFormat.getString(MediaFormat.KEY_MIME)!!)
-        codec.configure(mediaFormat, null, null, 0)
-        codec.start()
+        return accumulator.finish()
+    }
 
+    @Throws(IOException::class)
+    private fun decode(extractor: MediaExtractor, mediaFormat: MediaFormat, codec: MediaCodec, accumulator: WaveformAccumulator) {
         // Check if the track is in PCM 16 bit encoding.
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             try {
@@ -139,19 +146,10 @@ class DecodedAudio {
             }
         }
 
-        var decodedSamplesSize: Int = 0  // size of the output buffer containing decoded samples.
-        var decodedSamples: ByteArray? = null
+        val expectedNumSamples = if (this.expectedNumSamples >= 0) this.expectedNumSamples else Int.MAX_VALUE
         var sampleSize: Int
         val info = MediaCodec.BufferInfo()
-        var presentationTime: Long
-        var totalSizeRead: Int = 0
         var doneReading = false
-
-        // Set the size of the decoded samples buffer to 1MB (~6sec of a stereo stream at 44.1kHz).
-        // For longer streams, the buffer size will be increased later on, calculating a rough
-        // estimate of the total size needed to store all the samples in order to resize the buffer
-        // only once.
-        var decodedBytes: ByteBuffer = ByteBuffer.allocate(1 shl 20)
         var firstSampleData = true
         while (true) {
             // read data from file and feed it to the decoder input buffers.
@@ -169,7 +167,6 @@ class DecodedAudio {
                     // seems OK with other devices (MediaCodec has already been configured and
                     // already knows these parameters).
                     extractor.advance()
-                    totalSizeRead += sampleSize
                 } else if (sampleSize < 0) {
                     // All samples have been read.
                     codec.queueInputBuffer(
@@ -177,62 +174,27 @@ class DecodedAudio {
                     )
                     doneReading = true
                 } else {
-                    presentationTime = extractor.sampleTime
-                    codec.queueInputBuffer(inputBufferIndex, 0, sampleSize, presentationTime, 0)
+                    codec.queueInputBuffer(inputBufferIndex, 0, sampleSize, extractor.sampleTime, 0)
                     extractor.advance()
-                    totalSizeRead += sampleSize
                 }
                 firstSampleData = false
             }
 
-            // Get decoded stream from the decoder output buffers.
+            // Get decoded stream from the decoder output buffers and fold it into the waveform
+            // straight away, the buffer goes back to the codec right after.
             val outputBufferIndex: Int = codec.dequeueOutputBuffer(info, 100)
-            if (outputBufferIndex >= 0 && info.size > 0) {
-                if (decodedSamplesSize < info.size) {
-                    decodedSamplesSize = info.size
-                    decodedSamples = ByteArray(decodedSamplesSize)
+            if (outputBufferIndex >= 0) {
+                if (info.size > 0) {
+                    val outputBuffer: ByteBuffer = codec.getOutputBuffer(outputBufferIndex)!!
+                    outputBuffer.position(info.offset)
+                    outputBuffer.limit(info.offset + info.size)
+                    accumulator.accept(outputBuffer)
                 }
-                val outputBuffer: ByteBuffer = codec.getOutputBuffer(outputBufferIndex)!!
-                outputBuffer.get(decodedSamples!!, 0, info.size)
-                outputBuffer.clear()
-                // Check if buffer is big enough. Resize it if it's too small.
-                if (decodedBytes.remaining() < info.size) {
-                    // Getting a rough estimate of the total size, allocate 20% more, and
-                    // make sure to allocate at least 5MB more than the initial size.
-                    val position = decodedBytes.position()
-                    var newSize = ((position * (1.0 * dataSize / totalSizeRead)) * 1.2).toInt()
-                    if (newSize - position < info.size + 5 * (1 shl 20)) {
-                        newSize = position + info.size + 5 * (1 shl 20)
-                    }
-                    var newDecodedBytes: ByteBuffer? = null
-                    // Try to allocate memory. If we are OOM, try to run the garbage collector.
-                    var retry = 10
-                    while (retry > 0) {
-                        try {
-                            newDecodedBytes = ByteBuffer.allocate(newSize)
-                            break
-                        } catch (e: OutOfMemoryError) {
-                            // setting android:largeHeap="true" in <application> seem to help not
-                            // reaching this section.
-                            retry--
-                        }
-                    }
-                    if (retry == 0) {
-                        // Failed to allocate memory... Stop reading more data and finalize the
-                        // instance with the data decoded so far.
-                        break
-                    }
-                    decodedBytes.rewind()
-                    newDecodedBytes!!.put(decodedBytes)
-                    decodedBytes = newDecodedBytes
-                    decodedBytes.position(position)
-                }
-                decodedBytes.put(decodedSamples, 0, info.size)
                 codec.releaseOutputBuffer(outputBufferIndex, false)
             }
 
             if ((info.flags and MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0
-                    || (decodedBytes.position() / (2 * channels)) >= expectedNumSamples
+                    || accumulator.samplesPerChannel >= expectedNumSamples
             ) {
                 // We got all the decoded data from the decoder. Stop here.
                 // Theoretically dequeueOutputBuffer(info, ...) should have set info.flags to
@@ -246,24 +208,24 @@ class DecodedAudio {
                 break
             }
         }
-        numSamples = decodedBytes.position() / (channels * 2)  // One sample = 2 bytes.
-        decodedBytes.rewind()
-        decodedBytes.order(ByteOrder.LITTLE_ENDIAN)
-        this.decodedSamples = decodedBytes.asShortBuffer()
-        avgBitRate = ((dataSize * 8) * (sampleRate.toFloat() / numSamples) / 1000).toInt()
-
-        extractor.release()
-        codec.stop()
-        codec.release()
     }
+}
 
-    fun calculateRms(maxFrames: Int): ByteArray {
-        return calculateRms(this.samples, this.numSamples, this.channels, maxFrames)
+/** Finds and selects the first audio track present in the data source. */
+@Throws(IOException::class)
+private fun selectAudioTrack(extractor: MediaExtractor): MediaFormat {
+    for (trackIndex in 0 until extractor.trackCount) {
+        val format = extractor.getTrackFormat(trackIndex)
+        if (format.getString(MediaFormat.KEY_MIME)!!.startsWith("audio/")) {
+            extractor.selectTrack(trackIndex)
+            return format
+        }
     }
+    throw IOException("No audio track found in the data source.")
 }
 
 /**
- * Computes audio RMS values for the first channel only.
+ * Computes audio RMS values for the first channel of a 16 bit PCM stream, in constant memory.
  *
  * A typical RMS calculation algorithm is:
  * 1. Square each sample
@@ -271,58 +233,93 @@ class DecodedAudio {
  * 3. Divide the sum of the squared samples by the number of samples
  * 4. Take the square root of step 3., the mean of the squared samples
  *
+ * Steps 1 and 2 happen as samples are [accept]ed, into up to twice [maxFrames] bins whose size is
+ * derived from [expectedSamplesPerChannel]. If the stream turns out longer than expected, or its
+ * length is unknown, neighbouring bins are merged and the bin size doubled, so the bins always
+ * cover the whole stream. [finish] then combines them into the output frames.
+ *
  * @param maxFrames Defines amount of output RMS frames.
  * If number of samples per channel is less than "maxFrames",
  * the result array will match the source sample size instead.
- *
- * @return normalized RMS values as a signed byte array.
  */
-private fun calculateRms(samples: ShortBuffer, numSamples: Int, channels: Int, maxFrames: Int): ByteArray {
-    val numFrames: Int
-    val frameStep: Float
-
-    val samplesPerChannel = numSamples / channels
-    if (samplesPerChannel <= maxFrames) {
-        frameStep = 1f
-        numFrames = samplesPerChannel
-    } else {
-        frameStep = numSamples / maxFrames.toFloat()
-        numFrames = maxFrames
+class WaveformAccumulator(
+    private val channels: Int,
+    private val maxFrames: Int,
+    expectedSamplesPerChannel: Int = -1
+) {
+
+    private val squaredSums = DoubleArray(maxFrames * 2)
+    private val sampleCounts = IntArray(maxFrames * 2)
+    private var samplesPerBin: Long
+    private var usedBins = 0
+    private var channelIndex = 0
+
+    var samplesPerChannel = 0L
+        private set
+
+    init {
+        require(channels > 0) { "channels must be positive" }
+        require(maxFrames > 0) { "maxFrames must be positive" }
+        samplesPerBin = maxOf(1L, expectedSamplesPerChannel.toLong() / maxFrames)
     }
 
-    val rmsValues = FloatArray(numFrames)
-
-    var squaredFrameSum = 0.0
-    var currentFrameIdx = 0
-
-    fun calculateFrameRms(nextFrameIdx: Int) {
-        rmsValues[currentFrameIdx] = sqrt(squaredFrameSum.toFloat())
-
-        // Advance to the next frame.
-        squaredFrameSum = 0.0
-        currentFrameIdx = nextFrameIdx
+    /** Consumes interleaved little endian samples between the buffer's position and limit. */
+    fun accept(pcm: ByteBuffer) {
+        accept(pcm.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer())
     }
 
-    (0 until numSamples * channels step channels).forEach { sampleIdx ->
-        val channelSampleIdx = sampleIdx / channels
-        val frameIdx = (channelSampleIdx / frameStep).toInt()
+    /** Consumes interleaved samples, which may stop in the middle of a frame. */
+    fun accept(samples: ShortBuffer) {
+        while (samples.hasRemaining()) {
+            val sample = samples.get()
+            if (channelIndex == 0) add(sample)
+            channelIndex = (channelIndex + 1) % channels
+        }
+    }
 
-        if (currentFrameIdx != frameIdx) {
-            // Calculate RMS value for the previous frame.
-            calculateFrameRms(frameIdx)
+    /** @return normalized RMS values as a signed byte array. */
+    fun finish(): ByteArray {
+        val numFrames = minOf(usedBins, maxFrames)
+        val rmsValues = FloatArray(numFrames)
+        for (frame in 0 until numFrames) {
+            var squaredSum = 0.0
+            var count = 0L
+            for (bin in frame * usedBins / numFrames until (frame + 1) * usedBins / numFrames) {
+                squaredSum += squaredSums[bin]
+                count += sampleCounts[bin]
+            }
+            rmsValues[frame] = sqrt(squaredSum / count).toFloat()
         }
 
-        val samplesInCurrentFrame = ceil((currentFrameIdx + 1) * frameStep) - ceil(currentFrameIdx * frameStep)
-        squaredFrameSum += (samples[sampleIdx] * samples[sampleIdx]) / samplesInCurrentFrame
+        normalizeArray(rmsValues)
+
+        // Convert normalized result to a signed byte array.
+        return rmsValues.map { value -> normalizedFloatToByte(value) }.toByteArray()
     }
-    // Calculate RMS value for the last frame.
-    calculateFrameRms(-1)
 
-//    smoothArray(rmsValues, 1.0f)
-    normalizeArray(rmsValues)
+    private fun add(sample: Short) {
+        var bin = (samplesPerChannel / samplesPerBin).toInt()
+        while (bin >= squaredSums.size) {
+            mergeBins()
+            bin = (samplesPerChannel / samplesPerBin).toInt()
+        }
+        squaredSums[bin] += (sample * sample).toDouble()
+        sampleCounts[bin]++
+        usedBins = maxOf(usedBins, bin + 1)
+        samplesPerChannel++
+    }
 
-    // Convert normalized result to a signed byte array.
-    return rmsValues.map { value -> normalizedFloatToByte(value) }.toByteArray()
+    private fun mergeBins() {
+        val half = squaredSums.size / 2
+        for (i in 0 until half) {
+            squaredSums[i] = squaredSums[2 * i] + squaredSums[2 * i + 1]
+            sampleCounts[i] = sampleCounts[2 * i] + sampleCounts[2 * i + 1]
+        }
+        squaredSums.fill(0.0, half)
+        sampleCounts.fill(0, half)
+        samplesPerBin *= 2
+        usedBins = (usedBins + 1) / 2
+    }
 }
 
 /**
@@ -368,6 +365,20 @@ inline fun normalizedFloatToByte(value: Float): Byte {
     return (255f * value - 128f).roundToInt().toByte()
 }
 
+/** Passes reads through to [source] but leaves closing it to its owner rather than the extractor. */
+@RequiresApi(api = Build.VERSION_CODES.M)
+private class UnclosableMediaDataSource(private val source: MediaDataSource) : MediaDataSource() {
+
+    @Throws(IOException::class)
+    override fun readAt(position: Long, buffer: ByteArray, offset: Int, size: Int): Int =
+        source.readAt(position, buffer, offset, size)
+
+    @Throws(IOException::class)
+    override fun getSize(): Long = source.size
+
+    override fun close() = Unit
+}
+
 class InputStreamMediaDataSource: MediaDataSource {
 
     private val data: ByteArray
@@ -0,0 +1,158 @@
+package org.session.libsession.utilities;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded cache that evicts the least recently accessed entries first. Keys can be pinned,
+ * pinned entries are never evicted and don't count towards the bound, so the cache may hold more
+ * than {@code maxSize} entries while many of them are pinned.
+ *
+ * Pins are counted, each {@link #pin(Object)} has to be matched by an {@link #unpin(Object)}.
+ */
+public final class PinnedLruCache<K, V> {
+
+  private final int                  maxSize;
+  private final LinkedHashMap<K, V>  cache = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<K, Integer>      pins  = new HashMap<>();
+
+  // How many of the cached entries are pinned
+  private int pinnedEntries;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public PinnedLruCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public synchronized @Nullable V get(@NonNull K key) {
+    V value = cache.get(key);
+
+    if (value != null) hits++;
+    else               misses++;
+
+    return value;
+  }
+
+  public synchronized boolean contains(@NonNull K key) {
+    return cache.containsKey(key);
+  }
+
+  public synchronized void put(@NonNull K key, @NonNull V value) {
+    if (cache.put(key, value) == null && pins.containsKey(key)) {
+      pinnedEntries++;
+    }
+    trim();
+  }
+
+  /**
+   * @return The value already cached for {@code key}, or null if {@code value} was cached.
+   */
+  public synchronized @Nullable V putIfAbsent(@NonNull K key, @NonNull V value) {
+    V existing = cache.get(key);
+    if (existing != null) return existing;
+
+    put(key, value);
+    return null;
+  }
+
+  public synchronized boolean remove(@NonNull K key) {
+    if (cache.remove(key) == null) return false;
+    if (pins.containsKey(key))     pinnedEntries--;
+    return true;
+  }
+
+  public synchronized void pin(@NonNull K key) {
+    Integer count = pins.get(key);
+
+    if (count == null) {
+      pins.put(key, 1);
+      if (cache.containsKey(key)) pinnedEntries++;
+    } else {
+      pins.put(key, count + 1);
+    }
+  }
+
+  public synchronized void unpin(@NonNull K key) {
+    Integer count = pins.get(key);
+
+    if (count == null) return;
+
+    if (count > 1) {
+      pins.put(key, count - 1);
+    } else {
+      pins.remove(key);
+      if (cache.containsKey(key)) pinnedEntries--;
+      trim();
+    }
+  }
+
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  public synchronized @NonNull Stats getStats() {
+    return new Stats(cache.size(), pinnedEntries, hits, misses, evictions);
+  }
+
+  private void trim() {
+    int         unpinned = cache.size() - pinnedEntries;
+    Iterator<K> iterator = cache.keySet().iterator();
+
+    while (unpinned > maxSize && iterator.hasNext()) {
+      if (!pins.containsKey(iterator.next())) {
+        iterator.remove();
+        unpinned--;
+        evictions++;
+      }
+    }
+  }
+
+  public static final class Stats {
+    private final int  size;
+    private final int  pinned;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    private Stats(int size, int pinned, long hits, long misses, long evictions) {
+      this.size      = size;
+      this.pinned    = pinned;
+      this.hits      = hits;
+      this.misses    = misses;
+      this.evictions = evictions;
+    }
+
+    public int getSize() {
+      return size;
+    }
+
+    public int getPinned() {
+      return pinned;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    public long getEvictions() {
+      return evictions;
+    }
+
+    @Override
+    public @NonNull String toString() {
+      return "size=" + size + ", pinned=" + pinned + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+    }
+  }
+}
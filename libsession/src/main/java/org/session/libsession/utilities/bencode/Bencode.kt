@@ -1,92 +1,118 @@
 package org.session.libsession.utilities.bencode
 
-import java.util.LinkedList
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.io.OutputStream
 
 object Bencode {
-    class Decoder(source: ByteArray) {
 
-        private val iterator = LinkedList<Byte>().apply {
-            addAll(source.asIterable())
+    /**
+     * Decodes elements from [length] bytes of [source] starting at [offset]. Decoded strings are
+     * views over [source] rather than copies, so it must not be modified while they are in use.
+     */
+    class Decoder(
+        private val source: ByteArray,
+        offset: Int = 0,
+        length: Int = source.size - offset
+    ) {
+
+        private var position = offset
+        private val end = offset + length
+
+        init {
+            require(offset >= 0 && length >= 0 && end <= source.size) { "Invalid range" }
         }
 
         /**
          * Decode an element based on next marker assumed to be string/int/list/dict or return null
          */
         fun decode(): BencodeElement? {
-            val result = when (iterator.peek()?.toInt()?.toChar()) {
-                in NUMBERS -> decodeString()
+            if (position >= end) return null
+            return when (source[position].toInt().toChar()) {
+                in '0'..'9' -> decodeString()
                 INT_INDICATOR -> decodeInt()
                 LIST_INDICATOR -> decodeList()
                 DICT_INDICATOR -> decodeDict()
-                else -> {
-                    null
-                }
+                else -> null
             }
-            return result
         }
 
         /**
-         * Decode a string element from iterator assumed to have structure `{length}:{data}`
+         * Decode a string element assumed to have structure `{length}:{data}`
          */
         private fun decodeString(): BencodeString? {
-            val lengthStrings = buildString {
-                while (iterator.isNotEmpty() && iterator.peek()?.toInt()?.toChar() != SEPARATOR) {
-                    append(iterator.pop().toInt().toChar())
-                }
-            }
-            iterator.pop() // drop `:`
-            val length = lengthStrings.toIntOrNull(10) ?: return null
-            val remaining = (0 until length).map { iterator.pop() }.toByteArray()
-            return BencodeString(remaining)
+            val length = readNumber(SEPARATOR) ?: return null
+            if (length < 0 || length > end - position) return null
+            val result = BencodeString(source, position, length.toInt())
+            position += length.toInt()
+            return result
         }
 
         /**
-         * Decode an int element from iterator assumed to have structure `i{int}e`
+         * Decode an int element assumed to have structure `i{int}e`
          */
         private fun decodeInt(): BencodeElement? {
-            iterator.pop() // drop `i`
-            val intString = buildString {
-                while (iterator.isNotEmpty() && iterator.peek()?.toInt()?.toChar() != END_INDICATOR) {
-                    append(iterator.pop().toInt().toChar())
-                }
-            }
-            val asInt = intString.toIntOrNull(10) ?: return null
-            iterator.pop() // drop `e`
-            return BencodeInteger(asInt)
+            position++ // drop `i`
+            return readNumber(END_INDICATOR)?.let(::BencodeInteger)
         }
 
         /**
-         * Decode a list element from iterator assumed to have structure `l{data}e`
+         * Decode a list element assumed to have structure `l{data}e`
          */
-        private fun decodeList(): BencodeElement {
-            iterator.pop() // drop `l`
+        private fun decodeList(): BencodeElement? {
+            position++ // drop `l`
             val listElements = mutableListOf<BencodeElement>()
-            while (iterator.isNotEmpty() && iterator.peek()?.toInt()?.toChar() != END_INDICATOR) {
-                decode()?.let { nextElement ->
-                    listElements += nextElement
-                }
+            while (position < end && source[position] != END_INDICATOR.code.toByte()) {
+                listElements += decode() ?: return null
             }
-            iterator.pop() // drop `e`
+            if (position >= end) return null
+            position++ // drop `e`
             return BencodeList(listElements)
         }
 
         /**
-         * Decode a dict element from iterator assumed to have structure `d{data}e`
+         * Decode a dict element assumed to have structure `d{data}e`
          */
         private fun decodeDict(): BencodeElement? {
-            iterator.pop() // drop `d`
-            val dictElements = mutableMapOf<String,BencodeElement>()
-            while (iterator.isNotEmpty() && iterator.peek()?.toInt()?.toChar() != END_INDICATOR) {
+            position++ // drop `d`
+            val dictElements = LinkedHashMap<String, BencodeElement>()
+            while (position < end && source[position] != END_INDICATOR.code.toByte()) {
                 val key = decodeString() ?: return null
                 val value = decode() ?: return null
-                dictElements += key.value.decodeToString() to value
+                dictElements[key.asString()] = value
             }
-            iterator.pop() // drop `e`
+            if (position >= end) return null
+            position++ // drop `e`
             return BencodeDict(dictElements)
         }
 
+        /**
+         * Reads a base 10 number up to and including [terminator], without going through a string.
+         */
+        private fun readNumber(terminator: Char): Long? {
+            val negative = position < end && source[position] == '-'.code.toByte()
+            if (negative) position++
+            val start = position
+            var result = 0L
+            while (position < end) {
+                val digit = source[position] - '0'.code.toByte()
+                if (digit !in 0..9) break
+                // Values are accumulated negatively so that Long.MIN_VALUE fits
+                if (result < (Long.MIN_VALUE + digit) / 10) return null
+                result = result * 10 - digit
+                position++
+            }
+            if (position == start || position >= end || source[position] != terminator.code.toByte()) return null
+            position++ // drop the terminator
+            return when {
+                negative -> result
+                result == Long.MIN_VALUE -> null
+                else -> -result
+            }
+        }
+
         companion object {
-            private val NUMBERS = arrayOf('0', '1', '2', '3', '4', '5', '6', '7', '8', '9')
             private const val INT_INDICATOR = 'i'
             private const val LIST_INDICATOR = 'l'
             private const val DICT_INDICATOR = 'd'
@@ -99,17 +125,47 @@ object Bencode {
 }
 
 sealed class BencodeElement {
-    abstract fun encode(): ByteArray
+
+    /**
+     * Writes the encoded element to [output], nested elements are written in place.
+     */
+    abstract fun encodeTo(output: OutputStream)
+
+    fun encode(): ByteArray = ByteArrayOutputStream().also(::encodeTo).toByteArray()
+
+    protected fun OutputStream.writeAscii(value: Long) {
+        value.toString().forEach { write(it.code) }
+    }
 }
 
 fun String.bencode() = BencodeString(this.encodeToByteArray())
 fun Int.bencode() = BencodeInteger(this)
+fun Long.bencode() = BencodeInteger(this)
+
+/**
+ * [length] bytes of [source] from [offset] on. Decoded strings share the buffer they were decoded
+ * from, [value] only copies them when they don't span the whole buffer.
+ */
+class BencodeString(private val source: ByteArray, val offset: Int, val length: Int): BencodeElement() {
 
-data class BencodeString(val value: ByteArray): BencodeElement() {
-    override fun encode(): ByteArray = buildString {
-        append(value.size.toString())
-        append(':')
-    }.toByteArray() + value
+    constructor(value: ByteArray) : this(value, 0, value.size)
+
+    init {
+        require(offset >= 0 && length >= 0 && offset + length <= source.size) { "Invalid range" }
+    }
+
+    val value: ByteArray
+        get() = if (offset == 0 && length == source.size) source else source.copyOfRange(offset, offset + length)
+
+    fun asString(): String = String(source, offset, length, Charsets.UTF_8)
+
+    fun inputStream(): InputStream = ByteArrayInputStream(source, offset, length)
+
+    override fun encodeTo(output: OutputStream) {
+        output.writeAscii(length.toLong())
+        output.write(':'.code)
+        output.write(source, offset, length)
+    }
 
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
@@ -117,38 +173,62 @@ data class BencodeString(val value: ByteArray): BencodeElement() {
 
         other as BencodeString
 
-        if (!value.contentEquals(other.value)) return false
+        if (length != other.length) return false
+        for (i in 0 until length) {
+            if (source[offset + i] != other.source[other.offset + i]) return false
+        }
 
         return true
     }
 
     override fun hashCode(): Int {
-        return value.contentHashCode()
+        var result = 1
+        for (i in offset until offset + length) {
+            result = 31 * result + source[i]
+        }
+        return result
     }
+
+    override fun toString(): String = "BencodeString(${asString()})"
 }
-data class BencodeInteger(val value: Int): BencodeElement() {
-    override fun encode(): ByteArray = buildString {
-        append('i')
-        append(value.toString())
-        append('e')
-    }.toByteArray()
+data class BencodeInteger(val value: Long): BencodeElement() {
+
+    constructor(value: Int) : this(value.toLong())
+
+    override fun encodeTo(output: OutputStream) {
+        output.write('i'.code)
+        output.writeAscii(value)
+        output.write('e'.code)
+    }
 }
 data class BencodeList(val values: List<BencodeElement>): BencodeElement() {
 
     constructor(vararg values: BencodeElement) : this(values.toList())
 
-    override fun encode(): ByteArray = "l".toByteArray() +
-            values.fold(byteArrayOf()) { array, element -> array + element.encode() } +
-            "e".toByteArray()
+    override fun encodeTo(output: OutputStream) {
+        output.write('l'.code)
+        values.forEach { it.encodeTo(output) }
+        output.write('e'.code)
+    }
 }
 data class BencodeDict(val values: Map<String, BencodeElement>): BencodeElement() {
 
     constructor(vararg values: Pair<String, BencodeElement>) : this(values.toMap())
 
-    override fun encode(): ByteArray = "d".toByteArray() +
-            values.entries.fold(byteArrayOf()) { array, (key, value) ->
-                array + key.bencode().encode() + value.encode()
-            } + "e".toByteArray()
+    /**
+     * Keys are written in the canonical order of their raw bytes, whatever the order of [values].
+     */
+    override fun encodeTo(output: OutputStream) {
+        output.write('d'.code)
+        values.entries
+            .map { (key, value) -> key.encodeToByteArray() to value }
+            .sortedWith { a, b -> compareUnsigned(a.first, b.first) }
+            .forEach { (key, value) ->
+                BencodeString(key).encodeTo(output)
+                value.encodeTo(output)
+            }
+        output.write('e'.code)
+    }
 
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
@@ -165,5 +245,14 @@ data class BencodeDict(val values: Map<String, BencodeElement>): BencodeElement(
         return values.hashCode()
     }
 
+    private companion object {
+        fun compareUnsigned(a: ByteArray, b: ByteArray): Int {
+            for (i in 0 until minOf(a.size, b.size)) {
+                val difference = (a[i].toInt() and 0xFF) - (b[i].toInt() and 0xFF)
+                if (difference != 0) return difference
+            }
+            return a.size - b.size
+        }
+    }
 
-}
\ No newline at end of file
+}
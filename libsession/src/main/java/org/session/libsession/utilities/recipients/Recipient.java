@@ -24,6 +24,7 @@ import android.os.Build;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import com.annimon.stream.function.Consumer;
 
@@ -43,6 +44,7 @@ import org.session.libsession.utilities.GroupRecord;
 import org.session.libsession.utilities.GroupUtil;
 import org.session.libsession.utilities.ListenableFutureTask;
 import org.session.libsession.utilities.MaterialColor;
+import org.session.libsession.utilities.PinnedLruCache;
 import org.session.libsession.utilities.ProfilePictureModifiedEvent;
 import org.session.libsession.utilities.TextSecurePreferences;
 import org.session.libsession.utilities.Util;
@@ -51,6 +53,7 @@ import org.session.libsignal.utilities.Log;
 import org.session.libsignal.utilities.guava.Optional;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -125,6 +128,31 @@ public class Recipient implements RecipientModifiedListener {
     return provider.removeCached(address);
   }
 
+  /**
+   * Resolves the recipients of a page of messages or threads that aren't cached yet in one go, so
+   * that the {@link #from} calls made while reading the page are cache hits.
+   */
+  @WorkerThread
+  public static void resolveAll(@NonNull Context context, @NonNull Collection<Address> addresses) {
+    provider.resolveAll(context, addresses);
+  }
+
+  /**
+   * Keeps the cached recipient for {@code address} from being evicted while a screen showing it is
+   * open, until it is {@link #unpin}ned again.
+   */
+  public static void pin(@NonNull Address address) {
+    provider.pin(address);
+  }
+
+  public static void unpin(@NonNull Address address) {
+    provider.unpin(address);
+  }
+
+  public static @NonNull PinnedLruCache.Stats getCacheStats() {
+    return provider.getCacheStats();
+  }
+
   Recipient(@NonNull  Context context,
             @NonNull  Address address,
             @Nullable Recipient stale,
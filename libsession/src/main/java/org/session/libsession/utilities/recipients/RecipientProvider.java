@@ -29,6 +29,7 @@ import org.session.libsession.utilities.Address;
 import org.session.libsession.utilities.GroupRecord;
 import org.session.libsession.utilities.ListenableFutureTask;
 import org.session.libsession.utilities.MaterialColor;
+import org.session.libsession.utilities.PinnedLruCache;
 import org.session.libsession.utilities.TextSecurePreferences;
 import org.session.libsession.utilities.Util;
 import org.session.libsession.utilities.recipients.Recipient.RecipientSettings;
@@ -37,19 +38,25 @@ import org.session.libsession.utilities.recipients.Recipient.UnidentifiedAccessM
 import org.session.libsession.utilities.recipients.Recipient.VibrateState;
 import org.session.libsignal.utilities.guava.Optional;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 class RecipientProvider {
 
   @SuppressWarnings("unused")
   private static final String TAG = RecipientProvider.class.getSimpleName();
 
-  private static final RecipientCache  recipientCache         = new RecipientCache();
+  // Enough for the conversations and community members on screen and recently scrolled past
+  private static final int MAX_CACHED_RECIPIENTS = 1000;
+
+  private static final PinnedLruCache<Address, Recipient> recipientCache         = new PinnedLruCache<>(MAX_CACHED_RECIPIENTS);
   private static final ExecutorService asyncRecipientResolver = Util.newSingleThreadedLifoExecutor();
 
   @NonNull Recipient getRecipient(@NonNull Context context, @NonNull Address address, @NonNull Optional<RecipientSettings> settings, @NonNull Optional<GroupRecord> groupRecord, boolean asynchronous) {
@@ -64,13 +71,78 @@ class RecipientProvider {
     if (asynchronous) {
       cachedRecipient = new Recipient(context, address, cachedRecipient, prefetchedRecipientDetails, getRecipientDetailsAsync(context, address, settings, groupRecord));
     } else {
-      cachedRecipient = new Recipient(context, address, getRecipientDetailsSync(context, address, settings, groupRecord, false));
+      cachedRecipient = new Recipient(context, address, getRecipientDetailsSync(context, address, settings, groupRecord, false, false));
     }
 
-    recipientCache.set(address, cachedRecipient);
+    recipientCache.put(address, cachedRecipient);
     return cachedRecipient;
   }
 
+  /**
+   * Resolves the individual recipients among {@code addresses} that aren't cached yet, with a single
+   * query for all of their settings rather than one per recipient.
+   */
+  void resolveAll(@NonNull Context context, @NonNull Collection<Address> addresses) {
+    Set<Address> uncached = getUncachedIndividuals(addresses);
+
+    if (uncached.isEmpty()) return;
+
+    Map<Address, RecipientSettings> settings = MessagingModuleConfiguration.getShared().getStorage().getRecipientSettings(uncached);
+
+    for (Address address : uncached) {
+      RecipientDetails details = createIndividualRecipientDetails(context, address, settings.get(address));
+      recipientCache.putIfAbsent(address, new Recipient(context, address, details));
+    }
+  }
+
+  /**
+   * Like {@link #resolveAll(Context, Collection)}, but caches a resolving recipient for each of them
+   * right away and leaves the single settings query to {@link #asyncRecipientResolver}.
+   */
+  private void resolveAllAsync(@NonNull Context context, @NonNull Collection<Address> addresses) {
+    Set<Address> uncached = getUncachedIndividuals(addresses);
+
+    if (uncached.isEmpty()) return;
+
+    FutureTask<Map<Address, RecipientSettings>>  settings = new FutureTask<>(() -> MessagingModuleConfiguration.getShared().getStorage().getRecipientSettings(uncached));
+    List<ListenableFutureTask<RecipientDetails>> details  = new LinkedList<>();
+
+    for (Address address : uncached) {
+      ListenableFutureTask<RecipientDetails> future = new ListenableFutureTask<>(() -> createIndividualRecipientDetails(context, address, settings.get().get(address)));
+      details.add(future);
+      recipientCache.putIfAbsent(address, new Recipient(context, address, null, Optional.absent(), future));
+    }
+
+    asyncRecipientResolver.submit(() -> {
+      settings.run();
+      for (ListenableFutureTask<RecipientDetails> future : details) future.run();
+    });
+  }
+
+  private @NonNull Set<Address> getUncachedIndividuals(@NonNull Collection<Address> addresses) {
+    Set<Address> uncached = new HashSet<>();
+
+    for (Address address : addresses) {
+      if (!address.isGroup() && !recipientCache.contains(address)) {
+        uncached.add(address);
+      }
+    }
+
+    return uncached;
+  }
+
+  void pin(@NonNull Address address) {
+    recipientCache.pin(address);
+  }
+
+  void unpin(@NonNull Address address) {
+    recipientCache.unpin(address);
+  }
+
+  @NonNull PinnedLruCache.Stats getCacheStats() {
+    return recipientCache.getStats();
+  }
+
   @NonNull Optional<Recipient> getCached(@NonNull Address address) {
     return Optional.fromNullable(recipientCache.get(address));
   }
@@ -84,7 +156,7 @@ class RecipientProvider {
                                                                                @NonNull Optional<GroupRecord> groupRecord)
   {
     if (address.isGroup() && settings.isPresent() && groupRecord.isPresent()) {
-      return Optional.of(getGroupRecipientDetails(context, address, groupRecord, settings, true));
+      return Optional.of(getGroupRecipientDetails(context, address, groupRecord, settings, true, false));
     } else if (!address.isGroup() && settings.isPresent()) {
       boolean isLocalNumber = address.serialize().equals(TextSecurePreferences.getLocalNumber(context));
       return Optional.of(new RecipientDetails(null, null, !TextUtils.isEmpty(settings.get().getSystemDisplayName()), isLocalNumber, settings.get(), null));
@@ -95,15 +167,15 @@ class RecipientProvider {
 
   private @NonNull ListenableFutureTask<RecipientDetails> getRecipientDetailsAsync(final Context context, final @NonNull Address address, final @NonNull Optional<RecipientSettings> settings, final @NonNull Optional<GroupRecord> groupRecord)
   {
-    Callable<RecipientDetails> task = () -> getRecipientDetailsSync(context, address, settings, groupRecord, true);
+    Callable<RecipientDetails> task = () -> getRecipientDetailsSync(context, address, settings, groupRecord, true, true);
 
     ListenableFutureTask<RecipientDetails> future = new ListenableFutureTask<>(task);
     asyncRecipientResolver.submit(future);
     return future;
   }
 
-  private @NonNull RecipientDetails getRecipientDetailsSync(Context context, @NonNull Address address, Optional<RecipientSettings> settings, Optional<GroupRecord> groupRecord, boolean nestedAsynchronous) {
-    if (address.isGroup()) return getGroupRecipientDetails(context, address, groupRecord, settings, nestedAsynchronous);
+  private @NonNull RecipientDetails getRecipientDetailsSync(Context context, @NonNull Address address, Optional<RecipientSettings> settings, Optional<GroupRecord> groupRecord, boolean nestedAsynchronous, boolean onResolver) {
+    if (address.isGroup()) return getGroupRecipientDetails(context, address, groupRecord, settings, nestedAsynchronous, onResolver);
     else                   return getIndividualRecipientDetails(context, address, settings);
   }
 
@@ -112,12 +184,16 @@ class RecipientProvider {
       settings = Optional.fromNullable(MessagingModuleConfiguration.getShared().getStorage().getRecipientSettings(address));
     }
 
-    boolean systemContact = settings.isPresent() && !TextUtils.isEmpty(settings.get().getSystemDisplayName());
+    return createIndividualRecipientDetails(context, address, settings.orNull());
+  }
+
+  private @NonNull RecipientDetails createIndividualRecipientDetails(Context context, @NonNull Address address, @Nullable RecipientSettings settings) {
+    boolean systemContact = settings != null && !TextUtils.isEmpty(settings.getSystemDisplayName());
     boolean isLocalNumber = address.serialize().equals(TextSecurePreferences.getLocalNumber(context));
-    return new RecipientDetails(null, null, systemContact, isLocalNumber, settings.orNull(), null);
+    return new RecipientDetails(null, null, systemContact, isLocalNumber, settings, null);
   }
 
-  private @NonNull RecipientDetails getGroupRecipientDetails(Context context, Address groupId, Optional<GroupRecord> groupRecord, Optional<RecipientSettings> settings, boolean asynchronous) {
+  private @NonNull RecipientDetails getGroupRecipientDetails(Context context, Address groupId, Optional<GroupRecord> groupRecord, Optional<RecipientSettings> settings, boolean asynchronous, boolean onResolver) {
 
     if (!groupRecord.isPresent()) {
       groupRecord = Optional.fromNullable(MessagingModuleConfiguration.getShared().getStorage().getGroup(groupId.toGroupString()));
@@ -134,6 +210,10 @@ class RecipientProvider {
       List<Recipient> members         = new LinkedList<>();
       Long            avatarId        = null;
 
+      // Only block on the members' settings where the caller is already waiting on the database
+      if (!asynchronous || onResolver) resolveAll(context, memberAddresses);
+      else                             resolveAllAsync(context, memberAddresses);
+
       for (Address memberAddress : memberAddresses) {
         members.add(getRecipient(context, memberAddress, Optional.absent(), Optional.absent(), asynchronous));
       }
@@ -219,22 +299,4 @@ class RecipientProvider {
     }
   }
 
-  private static class RecipientCache {
-
-    private final Map<Address,Recipient> cache = new ConcurrentHashMap<>(1000);
-
-    public Recipient get(Address address) {
-      return cache.get(address);
-    }
-
-    public void set(Address address, Recipient recipient) {
-      cache.put(address, recipient);
-    }
-
-    public boolean remove(Address address) {
-      return cache.remove(address) != null;
-    }
-
-  }
-
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package org.session.libsession.messaging.jobs
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicInteger
+
+class KeyedSerialExecutorTest {
+
+    private val scope = CoroutineScope(SupervisorJob())
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    @Test
+    fun itemsWithTheSameKeyRunInOrder() = runBlocking {
+        val processed = Collections.synchronizedList(mutableListOf<Int>())
+        val done = CompletableDeferred<Unit>()
+        val executor = KeyedSerialExecutor<Int>("test", scope, Dispatchers.Default, 4) {
+            processed.add(it)
+            if (processed.size == 100) done.complete(Unit)
+        }
+
+        repeat(100) { executor.submit("key", it) }
+
+        withTimeout(5_000) { done.await() }
+        assertEquals((0 until 100).toList(), processed.toList())
+    }
+
+    @Test
+    fun concurrencyIsCapped() = runBlocking {
+        val inFlight = AtomicInteger()
+        val maxInFlight = AtomicInteger()
+        val finished = AtomicInteger()
+        val done = CompletableDeferred<Unit>()
+        val executor = KeyedSerialExecutor<Int>("test", scope, Dispatchers.Default, 3) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), ::maxOf)
+            delay(5)
+            inFlight.decrementAndGet()
+            if (finished.incrementAndGet() == 40) done.complete(Unit)
+        }
+
+        repeat(40) { executor.submit(if (it % 2 == 0) null else "key$it", it) }
+
+        withTimeout(5_000) { done.await() }
+        assertTrue("Ran ${maxInFlight.get()} items at once", maxInFlight.get() <= 3)
+    }
+
+    @Test
+    fun foregroundKeysAreServedFirst() = runBlocking {
+        val release = CompletableDeferred<Unit>()
+        val processed = Collections.synchronizedList(mutableListOf<String>())
+        val done = CompletableDeferred<Unit>()
+        val executor = KeyedSerialExecutor<String>(
+            "test", scope, Dispatchers.Default, 1, isForeground = { it == "foreground" }
+        ) {
+            if (it == "blocker") release.await() else processed.add(it)
+            if (processed.size == 4) done.complete(Unit)
+        }
+
+        executor.submit("blocker", "blocker")
+        executor.submit("background", "b1")
+        executor.submit("background", "b2")
+        executor.submit("foreground", "f1")
+        executor.submit("foreground", "f2")
+        release.complete(Unit)
+
+        withTimeout(5_000) { done.await() }
+        assertEquals(listOf("f1", "f2", "b1", "b2"), processed.toList())
+    }
+
+    @Test
+    fun idleKeysAreEvicted() = runBlocking {
+        val finished = AtomicInteger()
+        val done = CompletableDeferred<Unit>()
+        val executor = KeyedSerialExecutor<Int>("test", scope, Dispatchers.Default, 2) {
+            if (finished.incrementAndGet() == 50) done.complete(Unit)
+        }
+
+        repeat(50) { executor.submit("key$it", it) }
+
+        withTimeout(5_000) { done.await() }
+        // The last item's lane is released just after its body returns
+        withTimeout(5_000) { while (executor.stats().running > 0) delay(1) }
+        val stats = executor.stats()
+        assertEquals(0, stats.activeKeys)
+        assertEquals(0, stats.queued)
+        assertEquals(50L, stats.started)
+    }
+
+    @Test
+    fun slotsAreReleasedWhenTheScopeIsCancelled() = runBlocking {
+        val cancelledScope = CoroutineScope(SupervisorJob()).apply { cancel() }
+        val executor = KeyedSerialExecutor<Int>("test", cancelledScope, Dispatchers.Default, 2) {
+            delay(1)
+        }
+
+        repeat(10) { executor.submit("key${it % 3}", it) }
+
+        withTimeout(5_000) { while (executor.stats().let { it.running > 0 || it.queued > 0 }) delay(1) }
+        assertEquals(0, executor.stats().activeKeys)
+    }
+}
@@ -0,0 +1,85 @@
+package org.session.libsession.messaging.mentions
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.session.libsession.messaging.contacts.Contact
+
+class MentionIndexTest {
+
+    private fun contact(sessionID: String, name: String?, nickname: String? = null) = Contact(sessionID).also {
+        it.name = name
+        it.nickname = nickname
+    }
+
+    private val alice = contact("05aaaa0000000000", "Alice")
+    private val bob = contact("05bbbb0000000000", "Bob")
+    private val carol = contact("05cccc0000000000", "Carol", nickname = "Caroline")
+    private val malice = contact("05dddd0000000000", "Malice")
+
+    private fun MentionIndex.names(query: String, isOpenGroup: Boolean = false, excluded: String? = null) =
+        query(query, isOpenGroup, excluded).map { it.displayName }
+
+    @Test
+    fun shortQueriesListEveryoneAlphabetically() {
+        val index = MentionIndex()
+        index.setAll(listOf(malice, bob, alice, carol).map { it.sessionID }, listOf(malice, bob, alice, carol))
+
+        assertEquals(listOf("Alice", "Bob", "Caroline", "Malice"), index.names(""))
+        assertEquals(listOf("Alice", "Bob", "Caroline", "Malice"), index.names("z"))
+    }
+
+    @Test
+    fun matchesAreSortedByPosition() {
+        val icelyn = contact("05ffff0000000000", "Icelyn")
+        val index = MentionIndex()
+        index.setAll(listOf(malice, alice, bob, icelyn).map { it.sessionID }, listOf(malice, alice, bob, icelyn))
+
+        assertEquals(listOf("Alice", "Malice"), index.names("AL"))
+        assertEquals(listOf("Icelyn", "Alice", "Malice"), index.names("ice"))
+        assertEquals(emptyList<String>(), index.names("zz"))
+    }
+
+    @Test
+    fun keysWithoutNamesAndExcludedKeysAreSkipped() {
+        val index = MentionIndex()
+        index.setAll(listOf(alice.sessionID, bob.sessionID, "05eeee0000000000"), listOf(alice, bob))
+
+        assertEquals(3, index.size)
+        assertEquals(listOf("Bob"), index.names("", excluded = alice.sessionID))
+    }
+
+    @Test
+    fun openGroupNamesIncludeTheSessionId() {
+        val index = MentionIndex()
+        index.add(alice.sessionID, alice)
+
+        assertEquals(listOf("Alice (05aa...0000)"), index.names("al", isOpenGroup = true))
+    }
+
+    @Test
+    fun addedKeysAreSearchableAndUpdatable() {
+        val index = MentionIndex()
+        index.setAll(listOf(bob.sessionID), listOf(bob))
+        index.add(alice.sessionID, null)
+
+        assertTrue(alice.sessionID in index)
+        assertEquals(listOf("Bob"), index.names(""))
+
+        index.add(alice.sessionID, alice)
+        assertEquals(2, index.size)
+        assertEquals(listOf("Alice", "Bob"), index.names(""))
+    }
+
+    @Test
+    fun updatesOnlyRenameExistingCandidates() {
+        val index = MentionIndex()
+        index.setAll(listOf(alice.sessionID, bob.sessionID), listOf(alice, bob))
+
+        index.update(contact(alice.sessionID, "Alicia"))
+        index.update(carol)
+
+        assertEquals(2, index.size)
+        assertEquals(listOf("Alicia", "Bob"), index.names(""))
+    }
+}
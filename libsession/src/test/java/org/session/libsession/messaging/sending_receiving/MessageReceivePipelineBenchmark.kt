@@ -0,0 +1,285 @@
+package org.session.libsession.messaging.sending_receiving
+
+import android.content.Context
+import android.content.SharedPreferences
+import com.google.protobuf.ByteString
+import com.goterl.lazysodium.LazySodiumAndroid
+import com.goterl.lazysodium.SodiumAndroid
+import com.goterl.lazysodium.utils.KeyPair
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.BeforeClass
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.anyOrNull
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.session.libsession.database.StorageProtocol
+import org.session.libsession.messaging.MessagingModuleConfiguration
+import org.session.libsession.messaging.jobs.BatchMessageReceiveJob
+import org.session.libsession.messaging.jobs.MessageReceiveParameters
+import org.session.libsession.messaging.messages.visible.Profile
+import org.session.libsession.messaging.utilities.MessageWrapper
+import org.session.libsession.messaging.utilities.SessionId
+import org.session.libsession.messaging.utilities.SodiumUtilities
+import org.session.libsession.utilities.Device
+import org.session.libsession.utilities.GroupUtil
+import org.session.libsignal.crypto.PushTransportDetails
+import org.session.libsignal.crypto.ecc.DjbECPrivateKey
+import org.session.libsignal.crypto.ecc.DjbECPublicKey
+import org.session.libsignal.crypto.ecc.ECKeyPair
+import org.session.libsignal.protos.SignalServiceProtos.Content
+import org.session.libsignal.protos.SignalServiceProtos.Envelope
+import org.session.libsignal.protos.SignalServiceProtos.GroupContext
+import org.session.libsignal.utilities.IdPrefix
+import org.session.libsignal.utilities.hexEncodedPublicKey
+import java.util.Random
+
+/**
+ * Measures the stages a message goes through on the way in, before it's handled: unwrapping the
+ * web socket message, decrypting it, parsing it into a [org.session.libsession.messaging.messages.Message]
+ * and grouping a batch of them by thread. The envelopes are encrypted locally with real keys for
+ * 1:1, legacy closed group and blinded community messages, and each stage logs its throughput and
+ * how much it allocates.
+ *
+ * It runs on the host JVM, so it's skipped unless asked for with
+ * `./gradlew :libsession:testDebugUnitTest --tests '*MessageReceivePipelineBenchmark' -Pbenchmark`,
+ * and needs libsodium installed on the host (the one bundled in liblazysodium is built for Android).
+ * Storage and the context are stand-ins, so parsing and grouping don't include any database reads.
+ */
+class MessageReceivePipelineBenchmark {
+
+    private val sodium = LazySodiumAndroid(SodiumAndroid())
+    private val random = Random(42)
+
+    private val user = Identity.generate(sodium)
+    private val senders = List(SENDER_COUNT) { Identity.generate(sodium) }
+    private val groupPublicKey = ecKeyPair(sodium.cryptoBoxKeypair()).hexEncodedPublicKey
+    private val groupEncryptionKeyPairs = List(GROUP_KEY_PAIR_COUNT) { ecKeyPair(sodium.cryptoBoxKeypair()) }
+    private val serverPublicKey = sodium.cryptoSignKeypair().publicKey.asHexString.lowercase()
+    private val threadIds = mutableMapOf<String, Long>()
+
+    // Encryption and decryption both use whichever identity this is
+    private var signedInAs: Identity = user
+    // Keeps the results of the measured blocks live
+    private var sink = 0L
+
+    private lateinit var contacts: List<ReceivedMessage>
+    private lateinit var closedGroups: List<ReceivedMessage>
+    private lateinit var communityInbox: List<ReceivedMessage>
+
+    @Before
+    fun setUp() {
+        val storage = BenchmarkStorage(mock())
+        val sharedPreferences = mock<SharedPreferences>()
+        lateinit var configuration: MessagingModuleConfiguration
+        val context = mock<Context> {
+            on { getSystemService(MessagingModuleConfiguration.MESSAGING_MODULE_SERVICE) } doAnswer { configuration }
+            on { getSharedPreferences(anyOrNull(), any()) } doReturn sharedPreferences
+        }
+        configuration = MessagingModuleConfiguration(context, storage, Device.ANDROID, mock(), { signedInAs.ed25519KeyPair }, mock())
+        MessagingModuleConfiguration.configure(context)
+
+        contacts = List(MESSAGE_COUNT) { contactMessage(it) }
+        closedGroups = List(MESSAGE_COUNT) { closedGroupMessage(it) }
+        communityInbox = List(MESSAGE_COUNT) { communityInboxMessage(it) }
+        signedInAs = user
+    }
+
+    @Test
+    fun receivePipeline() {
+        val currentClosedGroups = setOf(groupPublicKey)
+        val userX25519KeyPair = user.x25519KeyPair
+
+        measure("unwrap, 1:1", contacts) { MessageWrapper.unwrap(it.wrapped).serializedSize }
+        measure("unwrap, closed group", closedGroups) { MessageWrapper.unwrap(it.wrapped).serializedSize }
+
+        measure("decrypt, 1:1", contacts) { MessageDecrypter.decrypt(it.ciphertext, userX25519KeyPair).first.size }
+        measure("decrypt, closed group", closedGroups) { MessageDecrypter.decrypt(it.ciphertext, groupEncryptionKeyPairs.last()).first.size }
+        measure("decrypt, community inbox", communityInbox) {
+            MessageDecrypter.decryptBlinded(it.ciphertext, false, it.sender, serverPublicKey).first.size
+        }
+
+        measure("parse, 1:1", contacts) {
+            MessageReceiver.parse(it.envelope, null, currentClosedGroups = currentClosedGroups).second.serializedSize
+        }
+        measure("parse, closed group", closedGroups) {
+            MessageReceiver.parse(it.envelope, null, currentClosedGroups = currentClosedGroups).second.serializedSize
+        }
+        measure("parse, community inbox", communityInbox) {
+            MessageReceiver.parse(it.envelope, null, false, it.sender, serverPublicKey, emptySet()).second.serializedSize
+        }
+
+        val batches = (contacts + closedGroups).shuffled(random)
+            .chunked(BatchMessageReceiveJob.BATCH_DEFAULT_NUMBER)
+            .map { batch -> BatchMessageReceiveJob(batch.map { MessageReceiveParameters(it.envelope, serverHash = it.serverHash) }) }
+        measure("parse and group, batch of ${BatchMessageReceiveJob.BATCH_DEFAULT_NUMBER}", batches) { job ->
+            job.parseAndGroupByThread(MessagingModuleConfiguration.shared.storage, null, currentClosedGroups).size
+        }
+
+        batches.forEach { job ->
+            val threads = job.parseAndGroupByThread(MessagingModuleConfiguration.shared.storage, null, currentClosedGroups)
+            assertTrue(job.failures.isEmpty())
+            assertEquals(job.messages.size, threads.values.sumOf { it.size })
+        }
+    }
+
+    @Test
+    fun envelopesDecryptToTheirSender() {
+        contacts.forEach {
+            assertEquals(it.unblindedSender, MessageDecrypter.decrypt(it.ciphertext, user.x25519KeyPair).second)
+        }
+        closedGroups.forEach {
+            assertEquals(it.unblindedSender, MessageDecrypter.decrypt(it.ciphertext, groupEncryptionKeyPairs.last()).second)
+        }
+        communityInbox.forEach {
+            assertEquals(it.unblindedSender, MessageDecrypter.decryptBlinded(it.ciphertext, false, it.sender, serverPublicKey).second)
+        }
+    }
+
+    /**
+     * Runs [block] over [inputs] a few times to warm up, then logs the operations per second and
+     * bytes allocated per operation over [MEASURED_ROUNDS] more.
+     */
+    private fun <T> measure(stage: String, inputs: List<T>, block: (T) -> Int) {
+        repeat(WARMUP_ROUNDS) { inputs.forEach { sink += block(it) } }
+
+        val allocatedBefore = AllocationCounter.allocatedBytes()
+        val start = System.nanoTime()
+        repeat(MEASURED_ROUNDS) { inputs.forEach { sink += block(it) } }
+        val elapsedNanos = System.nanoTime() - start
+        val allocated = AllocationCounter.allocatedBytes() - allocatedBefore
+
+        val operations = inputs.size.toLong() * MEASURED_ROUNDS
+        println(String.format(
+            "%-36s %10.0f ops/s %10.1f us/op %10d B/op %8.1f MB/s",
+            stage,
+            operations * 1e9 / elapsedNanos,
+            elapsedNanos / 1e3 / operations,
+            allocated / operations,
+            allocated * 1e3 / elapsedNanos
+        ))
+    }
+
+    private fun contactMessage(index: Int): ReceivedMessage {
+        val sender = senders[index % senders.size]
+        val plaintext = PushTransportDetails.getPaddedMessageBody(content(sender, null).toByteArray())
+        signedInAs = sender
+        val ciphertext = MessageEncrypter.encrypt(plaintext, user.sessionId)
+        return received(index, Envelope.Type.SESSION_MESSAGE, "", ciphertext, sender.sessionId, sender.sessionId)
+    }
+
+    private fun closedGroupMessage(index: Int): ReceivedMessage {
+        val sender = senders[index % senders.size]
+        val plaintext = PushTransportDetails.getPaddedMessageBody(content(sender, groupPublicKey).toByteArray())
+        signedInAs = sender
+        val ciphertext = MessageEncrypter.encrypt(plaintext, groupEncryptionKeyPairs.last().hexEncodedPublicKey)
+        return received(index, Envelope.Type.CLOSED_GROUP_MESSAGE, groupPublicKey, ciphertext, sender.sessionId, sender.sessionId)
+    }
+
+    private fun communityInboxMessage(index: Int): ReceivedMessage {
+        val sender = senders[index % senders.size]
+        val plaintext = PushTransportDetails.getPaddedMessageBody(content(sender, null).toByteArray())
+        val senderBlindedId = sender.blindedId(serverPublicKey)
+        signedInAs = sender
+        val ciphertext = MessageEncrypter.encryptBlinded(plaintext, user.blindedId(serverPublicKey), serverPublicKey)
+        return received(index, Envelope.Type.SESSION_MESSAGE, senderBlindedId, ciphertext, senderBlindedId, sender.sessionId)
+    }
+
+    private fun received(index: Int, type: Envelope.Type, source: String, ciphertext: ByteArray, sender: String, unblindedSender: String): ReceivedMessage {
+        val timestamp = FIRST_TIMESTAMP + index * 1_000L
+        val wrapped = MessageWrapper.wrap(type, timestamp, source, ciphertext)
+        // The server timestamp is set as a poll would, which keeps parsing off the snode clock
+        val envelope = MessageWrapper.unwrap(wrapped).toBuilder().setServerTimestamp(timestamp + 500).build().toByteArray()
+        return ReceivedMessage(wrapped, ciphertext, envelope, sender, unblindedSender, "hash-$type-$index")
+    }
+
+    private fun content(sender: Identity, groupPublicKey: String?): Content {
+        val profileKey = ByteArray(32).also(random::nextBytes)
+        val dataMessage = Profile(sender.displayName, profileKey, "http://filev2.getsession.org/file/${random.nextInt(1_000_000)}").toProto()!!.toBuilder()
+        dataMessage.body = (0 until 1 + random.nextInt(MAX_WORDS)).joinToString(" ") { WORDS[random.nextInt(WORDS.size)] }
+        dataMessage.timestamp = FIRST_TIMESTAMP
+        if (groupPublicKey != null) {
+            dataMessage.group = GroupContext.newBuilder()
+                .setId(ByteString.copyFrom(GroupUtil.getDecodedGroupIDAsData(GroupUtil.doubleEncodeGroupID(groupPublicKey))))
+                .setType(GroupContext.Type.DELIVER)
+                .build()
+        }
+        return Content.newBuilder().setDataMessage(dataMessage).build()
+    }
+
+    private data class ReceivedMessage(
+        val wrapped: ByteArray,
+        val ciphertext: ByteArray,
+        val envelope: ByteArray,
+        val sender: String,
+        val unblindedSender: String,
+        val serverHash: String
+    )
+
+    private class Identity(val ed25519KeyPair: KeyPair, val x25519KeyPair: ECKeyPair, val displayName: String) {
+        val sessionId: String = x25519KeyPair.hexEncodedPublicKey
+
+        fun blindedId(serverPublicKey: String): String =
+            SessionId(IdPrefix.BLINDED, SodiumUtilities.blindedKeyPair(serverPublicKey, ed25519KeyPair)!!.publicKey.asBytes).hexString
+
+        companion object {
+            private var count = 0
+
+            fun generate(sodium: LazySodiumAndroid): Identity {
+                val ed25519KeyPair = sodium.cryptoSignKeypair()
+                return Identity(ed25519KeyPair, ecKeyPair(sodium.convertKeyPairEd25519ToCurve25519(ed25519KeyPair)), "Sender ${count++}")
+            }
+        }
+    }
+
+    /**
+     * Answers what the receive path asks storage for directly rather than through a mock, so the
+     * mock's bookkeeping doesn't show up in the numbers.
+     */
+    private inner class BenchmarkStorage(delegate: StorageProtocol) : StorageProtocol by delegate {
+        override fun getUserPublicKey(): String = user.sessionId
+        override fun getUserX25519KeyPair(): ECKeyPair = user.x25519KeyPair
+        override fun isClosedGroup(publicKey: String): Boolean = publicKey == groupPublicKey
+        override fun getClosedGroupEncryptionKeyPairs(groupPublicKey: String): MutableList<ECKeyPair> = groupEncryptionKeyPairs.toMutableList()
+        override fun isDuplicateMessage(timestamp: Long): Boolean = false
+        override fun addReceivedMessageTimestamp(timestamp: Long) = Unit
+        override fun getThreadIdFor(publicKey: String, groupPublicKey: String?, openGroupID: String?, createThread: Boolean): Long =
+            threadIds.getOrPut(groupPublicKey ?: publicKey) { threadIds.size + 1L }
+    }
+
+    /**
+     * Reads how many bytes the current thread has allocated. It goes through reflection because
+     * `com.sun.management` isn't in the android.jar the unit tests compile against.
+     */
+    private object AllocationCounter {
+        private val threadMXBean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null)
+        private val getThreadAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+            .getMethod("getThreadAllocatedBytes", Long::class.javaPrimitiveType)
+
+        fun allocatedBytes(): Long = getThreadAllocatedBytes.invoke(threadMXBean, Thread.currentThread().id) as Long
+    }
+
+    companion object {
+        @BeforeClass
+        @JvmStatic
+        fun benchmarkRequested() {
+            assumeTrue("Run with -Pbenchmark", java.lang.Boolean.getBoolean("benchmark"))
+        }
+
+        private const val SENDER_COUNT = 20
+        private const val GROUP_KEY_PAIR_COUNT = 3
+        private const val MESSAGE_COUNT = 1_000
+        private const val WARMUP_ROUNDS = 3
+        private const val MEASURED_ROUNDS = 5
+        private const val MAX_WORDS = 40
+        private const val FIRST_TIMESTAMP = 1_700_000_000_000L
+        private val WORDS = listOf("hey", "are", "we", "still", "on", "for", "tomorrow", "the", "build", "is", "green", "again", "see", "you", "at", "eight", "👍")
+
+        private fun ecKeyPair(keyPair: KeyPair) =
+            ECKeyPair(DjbECPublicKey(keyPair.publicKey.asBytes), DjbECPrivateKey(keyPair.secretKey.asBytes))
+    }
+}
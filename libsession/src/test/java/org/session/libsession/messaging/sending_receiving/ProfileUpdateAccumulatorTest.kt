@@ -0,0 +1,86 @@
+package org.session.libsession.messaging.sending_receiving
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.session.libsession.messaging.messages.visible.Profile
+
+class ProfileUpdateAccumulatorTest {
+
+    private class Flushed(val sender: String, val profile: Profile?, val blocksMessageRequests: Boolean)
+
+    private fun ProfileUpdateAccumulator.flushAll(): List<Flushed> {
+        val flushed = mutableListOf<Flushed>()
+        flush { sender, profile, blocksMessageRequests -> flushed += Flushed(sender, profile, blocksMessageRequests) }
+        return flushed
+    }
+
+    @Test
+    fun eachSenderIsFlushedOnceInTheOrderFirstSeen() {
+        val accumulator = ProfileUpdateAccumulator()
+        accumulator.add("bob", Profile("Bob"), false, 1)
+        accumulator.add("alice", Profile("Alice"), false, 2)
+        accumulator.add("bob", Profile("Bobby"), false, 3)
+
+        val flushed = accumulator.flushAll()
+        assertEquals(listOf("bob", "alice"), flushed.map { it.sender })
+        assertEquals(listOf("Bobby", "Alice"), flushed.map { it.profile?.displayName })
+    }
+
+    @Test
+    fun newestProfileWinsRegardlessOfArrivalOrder() {
+        val accumulator = ProfileUpdateAccumulator()
+        val newest = Profile("New")
+        accumulator.add("bob", newest, false, 5)
+        accumulator.add("bob", Profile("Old"), false, 1)
+
+        assertSame(newest, accumulator.flushAll().single().profile)
+    }
+
+    @Test
+    fun messagesWithoutProfileKeepTheOneSentEarlier() {
+        val accumulator = ProfileUpdateAccumulator()
+        val profile = Profile("Bob")
+        accumulator.add("bob", profile, false, 1)
+        accumulator.add("bob", null, false, 2)
+
+        assertSame(profile, accumulator.flushAll().single().profile)
+    }
+
+    @Test
+    fun laterProfileReplacesMissingOne() {
+        val accumulator = ProfileUpdateAccumulator()
+        val profile = Profile("Bob")
+        accumulator.add("bob", null, false, 2)
+        accumulator.add("bob", profile, false, 1)
+
+        assertSame(profile, accumulator.flushAll().single().profile)
+    }
+
+    @Test
+    fun blocksMessageRequestsFollowsTheNewestMessage() {
+        val accumulator = ProfileUpdateAccumulator()
+        accumulator.add("bob", null, true, 3)
+        accumulator.add("bob", Profile("Bob"), false, 1)
+        assertTrue(accumulator.flushAll().single().blocksMessageRequests)
+
+        accumulator.add("bob", null, true, 1)
+        accumulator.add("bob", null, false, 2)
+        assertFalse(accumulator.flushAll().single().blocksMessageRequests)
+    }
+
+    @Test
+    fun flushForgetsTheUpdates() {
+        val accumulator = ProfileUpdateAccumulator()
+        accumulator.add("bob", Profile("Bob"), false, 1)
+        accumulator.flushAll()
+
+        assertTrue(accumulator.flushAll().isEmpty())
+
+        accumulator.add("bob", null, false, 2)
+        assertNull(accumulator.flushAll().single().profile)
+    }
+}
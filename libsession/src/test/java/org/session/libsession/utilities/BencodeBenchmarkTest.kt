@@ -0,0 +1,42 @@
+package org.session.libsession.utilities
+
+import org.junit.Assert.assertEquals
+import org.junit.Ignore
+import org.junit.Test
+import org.session.libsession.utilities.bencode.Bencode
+import org.session.libsession.utilities.bencode.BencodeDict
+import org.session.libsession.utilities.bencode.BencodeList
+import org.session.libsession.utilities.bencode.BencodeString
+import org.session.libsession.utilities.bencode.bencode
+
+class BencodeBenchmarkTest {
+
+    @Ignore("Benchmark, run manually")
+    @Test
+    fun `benchmark encode and decode`() {
+        val warmups = 20
+        val iterations = 100
+        val element = BencodeDict((0 until 5_000).associate { index ->
+            "%05d".format(index) to BencodeList(
+                "contact $index".bencode(),
+                (index * 1_000_000_000L).bencode(),
+                BencodeString(ByteArray(32) { index.toByte() })
+            )
+        })
+        val encoded = element.encode()
+
+        repeat(warmups) { assertEquals(element, Bencode.Decoder(element.encode()).decode()) }
+
+        var start = System.nanoTime()
+        repeat(iterations) { element.encode() }
+        val encodeNanos = System.nanoTime() - start
+
+        start = System.nanoTime()
+        repeat(iterations) { Bencode.Decoder(encoded).decode() }
+        val decodeNanos = System.nanoTime() - start
+
+        println("Encode: ${encodeNanos / iterations / 1_000} us per ${encoded.size} byte payload")
+        println("Decode: ${decodeNanos / iterations / 1_000} us per ${encoded.size} byte payload")
+    }
+
+}
@@ -2,11 +2,13 @@ package org.session.libsession.utilities
 
 import org.junit.Assert.assertArrayEquals
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
 import org.junit.Test
 import org.session.libsession.utilities.bencode.Bencode
 import org.session.libsession.utilities.bencode.BencodeDict
 import org.session.libsession.utilities.bencode.BencodeInteger
 import org.session.libsession.utilities.bencode.BencodeList
+import org.session.libsession.utilities.bencode.BencodeString
 import org.session.libsession.utilities.bencode.bencode
 
 class BencoderTest {
@@ -104,4 +106,53 @@ class BencoderTest {
         assertEquals(expected, result)
     }
 
-}
\ No newline at end of file
+    @Test
+    fun `it should round trip 64-bit integers`() {
+        listOf(0L, -1L, 1_700_000_000_000L, Long.MAX_VALUE, Long.MIN_VALUE).forEach { value ->
+            val encoded = value.bencode().encode()
+            assertArrayEquals("i${value}e".toByteArray(), encoded)
+            assertEquals(BencodeInteger(value), Bencode.Decoder(encoded).decode())
+        }
+    }
+
+    @Test
+    fun `it should reject malformed input`() {
+        listOf("i92233720368547758080e", "ie", "i12", "5:abc", "l1:a", "d1:ai1e", "x").forEach { source ->
+            assertNull(source, Bencode.Decoder(source.toByteArray()).decode())
+        }
+    }
+
+    @Test
+    fun `it should encode dict keys in canonical order`() {
+        val element = BencodeDict(linkedMapOf("b" to 1.bencode(), "a" to 2.bencode(), "ab" to 3.bencode()))
+        assertArrayEquals("d1:ai2e2:abi3e1:bi1ee".toByteArray(), element.encode())
+    }
+
+    @Test
+    fun `it should decode strings as views over the source`() {
+        val body = byteArrayOf(0, -1, 'e'.code.toByte(), ':'.code.toByte())
+        val source = "xxl13:{\"code\": 200}4:".toByteArray() + body + "eyy".toByteArray()
+        val result = Bencode.Decoder(source, 2, source.size - 4).decode() as BencodeList
+
+        val info = result.values[0] as BencodeString
+        assertEquals("{\"code\": 200}", info.asString())
+        assertEquals(6, info.offset)
+        assertArrayEquals(body, (result.values[1] as BencodeString).value)
+    }
+
+    @Test
+    fun `it should round trip a config sized payload`() {
+        val element = BencodeDict((0 until 10_000).associate { index ->
+            "%05d".format(index) to BencodeList(
+                "contact $index".bencode(),
+                (index * 1_000_000_000L).bencode(),
+                BencodeString(ByteArray(32) { index.toByte() })
+            )
+        })
+        val encoded = element.encode()
+
+        assertEquals(element, Bencode.Decoder(encoded).decode())
+        assertArrayEquals(encoded, Bencode.Decoder(encoded).decode()!!.encode())
+    }
+
+}
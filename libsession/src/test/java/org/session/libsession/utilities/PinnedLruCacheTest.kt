@@ -0,0 +1,99 @@
+package org.session.libsession.utilities
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PinnedLruCacheTest {
+
+    private fun cacheOf(maxSize: Int, vararg keys: String) =
+        PinnedLruCache<String, String>(maxSize).apply { keys.forEach { put(it, it) } }
+
+    @Test
+    fun leastRecentlyAccessedEntryIsEvicted() {
+        val cache = cacheOf(2, "a", "b")
+
+        cache.get("a")
+        cache.put("c", "c")
+
+        assertTrue(cache.contains("a"))
+        assertFalse(cache.contains("b"))
+        assertTrue(cache.contains("c"))
+        assertEquals(1, cache.stats.evictions)
+    }
+
+    @Test
+    fun pinnedEntriesAreNotEvictedOrCounted() {
+        val cache = PinnedLruCache<String, String>(2)
+        cache.pin("a")
+
+        listOf("a", "b", "c", "d").forEach { cache.put(it, it) }
+
+        assertTrue(cache.contains("a"))
+        assertEquals(3, cache.size())
+        assertEquals(1, cache.stats.pinned)
+    }
+
+    @Test
+    fun unpinnedEntryBecomesEvictable() {
+        val cache = PinnedLruCache<String, String>(1)
+        cache.pin("a")
+        cache.put("a", "a")
+        cache.put("b", "b")
+
+        cache.unpin("a")
+
+        assertFalse(cache.contains("a"))
+        assertTrue(cache.contains("b"))
+    }
+
+    @Test
+    fun pinsAreCounted() {
+        val cache = PinnedLruCache<String, String>(1)
+        cache.pin("a")
+        cache.pin("a")
+        cache.put("a", "a")
+
+        cache.unpin("a")
+        cache.put("b", "b")
+
+        assertTrue(cache.contains("a"))
+    }
+
+    @Test
+    fun removingPinnedEntryKeepsBoundForOthers() {
+        val cache = PinnedLruCache<String, String>(1)
+        cache.pin("a")
+        cache.put("a", "a")
+        cache.remove("a")
+
+        cache.put("b", "b")
+        cache.put("c", "c")
+
+        assertEquals(1, cache.size())
+        assertEquals(0, cache.stats.pinned)
+    }
+
+    @Test
+    fun putIfAbsentKeepsExistingValue() {
+        val cache = cacheOf(2, "a")
+
+        assertEquals("a", cache.putIfAbsent("a", "other"))
+        assertNull(cache.putIfAbsent("b", "b"))
+        assertEquals("a", cache.get("a"))
+    }
+
+    @Test
+    fun hitsAndMissesAreCounted() {
+        val cache = cacheOf(2, "a")
+
+        cache.get("a")
+        cache.get("a")
+        cache.get("b")
+
+        assertEquals(2, cache.stats.hits)
+        assertEquals(1, cache.stats.misses)
+    }
+}
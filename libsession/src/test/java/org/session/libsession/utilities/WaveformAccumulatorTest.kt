@@ -0,0 +1,74 @@
+package org.session.libsession.utilities
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.ShortBuffer
+
+class WaveformAccumulatorTest {
+
+    private val min = normalizedFloatToByte(0f)
+    private val max = normalizedFloatToByte(1f)
+
+    private fun pcm(vararg samples: Short): ByteBuffer {
+        val buffer = ByteBuffer.allocate(samples.size * 2).order(ByteOrder.LITTLE_ENDIAN)
+        samples.forEach { buffer.putShort(it) }
+        buffer.flip()
+        return buffer
+    }
+
+    private fun quietThenLoud(samples: Int) = ShortArray(samples) { if (it < samples / 2) 100 else 1000 }
+
+    @Test
+    fun binsAreSizedFromTheExpectedLength() {
+        val accumulator = WaveformAccumulator(1, 10, 1000)
+        accumulator.accept(ShortBuffer.wrap(quietThenLoud(1000)))
+
+        val expected = ByteArray(10) { if (it < 5) min else max }
+        assertArrayEquals(expected, accumulator.finish())
+    }
+
+    @Test
+    fun unknownLengthStillFitsIntoMaxFrames() {
+        val accumulator = WaveformAccumulator(1, 16)
+        accumulator.accept(ShortBuffer.wrap(quietThenLoud(10_000)))
+
+        val result = accumulator.finish()
+        assertEquals(16, result.size)
+        assertEquals(min, result.first())
+        assertEquals(max, result.last())
+        assertEquals(10_000L, accumulator.samplesPerChannel)
+    }
+
+    @Test
+    fun longerThanExpectedStreamIsFullyCovered() {
+        val accumulator = WaveformAccumulator(1, 10, 100)
+        accumulator.accept(ShortBuffer.wrap(quietThenLoud(1000)))
+
+        val result = accumulator.finish()
+        assertEquals(10, result.size)
+        assertEquals(min, result.first())
+        assertEquals(max, result.last())
+    }
+
+    @Test
+    fun shortStreamYieldsOneFramePerSample() {
+        val accumulator = WaveformAccumulator(1, 100, 3)
+        accumulator.accept(pcm(0, 50, 100))
+
+        assertArrayEquals(byteArrayOf(min, normalizedFloatToByte(0.5f), max), accumulator.finish())
+    }
+
+    @Test
+    fun onlyTheFirstChannelIsUsedAcrossBuffers() {
+        val accumulator = WaveformAccumulator(2, 2, 2)
+        // Frames split across buffers, the second channel is loud where the first one is quiet
+        accumulator.accept(pcm(10, 1000, 200))
+        accumulator.accept(pcm(0))
+
+        assertEquals(2L, accumulator.samplesPerChannel)
+        assertArrayEquals(byteArrayOf(min, max), accumulator.finish())
+    }
+}